@@ -36,4 +36,40 @@ public interface DeltaLakeConnectorStats {
     String FETCH_ADN_PARSE_FILE_LATENCY = SOURCE_SCOPE + "_fetch_and_parse_file_latency";
     String FILTERED_FILES = SOURCE_SCOPE + "_filtered_files_count";
 
+    // sink connector
+    String SINK_QUEUE_DEPTH = SINK_SCOPE + "_queue_depth";
+    String SINK_QUEUE_OFFER_WAIT_TIME = SINK_SCOPE + "_queue_offer_wait_time";
+    String SINK_QUEUE_DRAIN_WAIT_TIME = SINK_SCOPE + "_queue_drain_wait_time";
+    String SINK_QUEUE_BUFFERED_BYTES = SINK_SCOPE + "_queue_buffered_bytes";
+    String SINK_RECORDS_IN_RATE = SINK_SCOPE + "_records_in_rate";
+    String SINK_BYTES_IN_RATE = SINK_SCOPE + "_bytes_in_rate";
+    String SINK_CONVERT_TIME_PER_RECORD = SINK_SCOPE + "_convert_time_per_record_ns";
+    String SINK_WRITE_TIME_PER_RECORD = SINK_SCOPE + "_write_time_per_record_ns";
+    // share of the writer threads time spent converting and writing, from 0 to 1
+    String SINK_CONVERT_STAGE_UTILIZATION = SINK_SCOPE + "_convert_stage_utilization";
+    String SINK_WRITE_STAGE_UTILIZATION = SINK_SCOPE + "_write_stage_utilization";
+    // per lakehouse format, e.g. sink_delta_commit_latency
+    String SINK_FLUSH_LATENCY_SUFFIX = "_flush_latency";
+    String SINK_COMMIT_LATENCY_SUFFIX = "_commit_latency";
+    String SINK_COMMIT_FILES_COUNT = SINK_SCOPE + "_commit_files_count";
+    String SINK_COMMIT_FILES_BYTES = SINK_SCOPE + "_commit_files_bytes";
+    String SINK_COMMIT_RETRY_COUNT = SINK_SCOPE + "_commit_retry_count";
+    String SINK_COMMIT_FAILED_COUNT = SINK_SCOPE + "_commit_failed_count";
+    String SINK_OLDEST_UNACKED_RECORD_AGE = SINK_SCOPE + "_oldest_unacked_record_age";
+    String SINK_ADAPTIVE_COMMIT_INTERVAL = SINK_SCOPE + "_adaptive_commit_interval";
+    String SINK_ADAPTIVE_RECORDS_PER_COMMIT = SINK_SCOPE + "_adaptive_records_per_commit";
+    String SINK_DEDUP_DROPPED_RECORDS = SINK_SCOPE + "_dedup_dropped_records";
+    String SINK_REDELIVERED_RECORDS = SINK_SCOPE + "_redelivered_records_dropped";
+    // freshness of the sampled records once committed, in milliseconds
+    String SINK_PUBLISH_TO_QUERYABLE_P50 = SINK_SCOPE + "_publish_to_queryable_latency_p50";
+    String SINK_PUBLISH_TO_QUERYABLE_P99 = SINK_SCOPE + "_publish_to_queryable_latency_p99";
+    String SINK_PUBLISH_TO_QUERYABLE_MAX = SINK_SCOPE + "_publish_to_queryable_latency_max";
+    String SINK_EVENT_TO_QUERYABLE_P50 = SINK_SCOPE + "_event_to_queryable_latency_p50";
+    String SINK_EVENT_TO_QUERYABLE_P99 = SINK_SCOPE + "_event_to_queryable_latency_p99";
+    String SINK_TRACE_QUEUE_WAIT_TIME = SINK_SCOPE + "_trace_queue_wait_time";
+    String SINK_TRACE_CONVERT_TIME = SINK_SCOPE + "_trace_convert_time";
+    String SINK_TRACE_WRITE_TIME = SINK_SCOPE + "_trace_write_time";
+    String SINK_TRACE_COMMIT_WAIT_TIME = SINK_SCOPE + "_trace_commit_wait_time";
+    String SINK_TRACE_COMMIT_TIME = SINK_SCOPE + "_trace_commit_time";
+
 }
@@ -18,19 +18,16 @@
  */
 package org.apache.pulsar.ecosystem.io.lakehouse;
 
-import io.netty.util.concurrent.DefaultThreadFactory;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.pulsar.client.api.SubscriptionType;
 import org.apache.pulsar.client.api.schema.GenericObject;
+import org.apache.pulsar.ecosystem.io.lakehouse.common.FlightRecorderEvent;
+import org.apache.pulsar.ecosystem.io.lakehouse.common.LakehouseEvents;
 import org.apache.pulsar.ecosystem.io.lakehouse.exception.LakehouseConnectorException;
 import org.apache.pulsar.ecosystem.io.lakehouse.sink.PulsarSinkRecord;
-import org.apache.pulsar.ecosystem.io.lakehouse.sink.SinkWriter;
+import org.apache.pulsar.ecosystem.io.lakehouse.sink.SinkWriterCoordinator;
 import org.apache.pulsar.functions.api.Record;
 import org.apache.pulsar.io.core.Sink;
 import org.apache.pulsar.io.core.SinkContext;
@@ -42,31 +39,19 @@ import org.apache.pulsar.io.core.SinkContext;
 @Data
 public class SinkConnector implements Sink<GenericObject> {
     private SinkConnectorConfig sinkConnectorConfig;
-    private LinkedBlockingQueue<PulsarSinkRecord> messages;
-    private ExecutorService executor;
-    private SinkWriter writer;
+    private SinkWriterCoordinator coordinator;
 
     @Override
     public void open(Map<String, Object> config, SinkContext sinkContext) throws Exception {
         log.info("Starting lakehouse sink connector, topicName: {}, connector name: {}, subScriptionType: {}",
             sinkContext.getInputTopics(), sinkContext.getSinkName(), sinkContext.getSubscriptionType());
 
-        if (sinkContext.getSubscriptionType() != SubscriptionType.Failover
-            && sinkContext.getSubscriptionType() != SubscriptionType.Exclusive) {
-            String msg = "Lakehouse sink connector only support accumulative acknowledge, "
-                + "so only support Failover or Exclusive subscription type.";
-            log.error(msg);
-            throw new IllegalArgumentException(msg);
-        }
-
         this.sinkConnectorConfig = SinkConnectorConfig.load(config);
         this.sinkConnectorConfig.validate();
         log.info("{} sink connector config: {}", this.sinkConnectorConfig.getType(), this.sinkConnectorConfig);
 
-        messages = new LinkedBlockingQueue<>(this.sinkConnectorConfig.getSinkConnectorQueueSize());
-        writer = new SinkWriter(sinkConnectorConfig, messages);
-        executor = Executors.newSingleThreadExecutor(new DefaultThreadFactory("lakehouse-io"));
-        executor.execute(writer);
+        coordinator = new SinkWriterCoordinator(sinkConnectorConfig, sinkContext);
+        coordinator.start();
     }
 
     @Override
@@ -78,25 +63,33 @@ public class SinkConnector implements Sink<GenericObject> {
 
         log.info("DEBUG-Received message: " + record);
 
-        while (!messages.offer(new PulsarSinkRecord(record), 1, TimeUnit.SECONDS)) {
-            if (!writer.isRunning()) {
+        PulsarSinkRecord pulsarSinkRecord = new PulsarSinkRecord(record);
+        coordinator.onReceived(pulsarSinkRecord);
+        // committed only when the offer waited longer than the event threshold
+        FlightRecorderEvent.Recording backpressure = LakehouseEvents.SINK_BACKPRESSURE.begin();
+        int attempts = 1;
+        while (!coordinator.offer(pulsarSinkRecord, 1, TimeUnit.SECONDS)) {
+            if (!coordinator.isRunning()) {
                 String err = "Exit caused by lakehouse writer stop working";
                 log.error("{}", err);
                 throw new LakehouseConnectorException(err);
             }
 
             log.info("DEBUG-pending on adding into the blocking queue.");
-
+            attempts++;
+        }
+        if (backpressure.isRecording()) {
+            backpressure.set("topic", pulsarSinkRecord.getTopicName())
+                .set("bufferedBytes", coordinator.getBufferedBytes())
+                .set("attempts", attempts)
+                .commit();
         }
     }
 
     @Override
     public void close() throws Exception {
-        if (writer != null) {
-            writer.close();
-        }
-        if (executor != null) {
-            executor.shutdown();
+        if (coordinator != null) {
+            coordinator.close();
         }
         log.info("{} sink connector closed.", sinkConnectorConfig.getType());
     }
@@ -18,20 +18,28 @@
  */
 package org.apache.pulsar.ecosystem.io.lakehouse;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.IOException;
 import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
+import java.util.Set;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.hudi.config.HoodieWriteConfig;
 import org.apache.pulsar.ecosystem.io.lakehouse.common.Category;
 import org.apache.pulsar.ecosystem.io.lakehouse.common.FieldContext;
+import org.apache.pulsar.ecosystem.io.lakehouse.common.SpscRingBuffer;
 import org.apache.pulsar.ecosystem.io.lakehouse.common.Utils;
 import org.apache.pulsar.ecosystem.io.lakehouse.exception.IncorrectParameterException;
 import org.apache.pulsar.ecosystem.io.lakehouse.sink.delta.DeltaSinkConnectorConfig;
@@ -45,18 +53,33 @@ import org.apache.pulsar.ecosystem.io.lakehouse.sink.iceberg.IcebergSinkConnecto
 public abstract class SinkConnectorConfig implements Serializable {
     private static final long serialVersionUID = 1L;
 
-    private static Properties properties = new Properties();
+    // all the settings of this instance, e.g. the hadoop.* and hoodie.* ones, which have no config field
+    @JsonIgnore
+    private final Properties properties = new Properties();
 
     public static final int MB = 1024 * 1024;
     public static final int DEFAULT_SINK_CONNECTOR_QUEUE_SIZE = 10_000;
+    public static final long DEFAULT_SINK_CONNECTOR_QUEUE_MAX_BYTES = 256L * MB;
     public static final int DEFAULT_MAX_COMMIT_INTERVAL = 120;
     public static final int DEFAULT_MAX_RECORDS_PER_COMMIT = 10_000_000;
     public static final int DEFAULT_MAX_COMMIT_FAILED_TIMES = 5;
+    public static final int DEFAULT_MAX_IN_FLIGHT_COMMITS = 2;
+    public static final int DEFAULT_SINK_WRITER_THREADS = 1;
+    public static final int DEFAULT_MIN_COMMIT_INTERVAL = 10;
+    public static final long DEFAULT_ADAPTIVE_COMMIT_TARGET_FILE_SIZE = 128L * MB;
+    public static final int DEFAULT_ADAPTIVE_COMMIT_FRESHNESS_SLO = 120;
+    public static final long DEFAULT_DEDUP_MAX_MEMORY_BYTES = 128L * MB;
+    public static final String DEFAULT_KEY_VALUE_KEY_PREFIX = "key_";
+    public static final String DEFAULT_KEY_VALUE_VALUE_PREFIX = "";
+    public static final String DEFAULT_SINK_CONNECTOR_QUEUE_WAIT_STRATEGY = "blocking";
 
     public static final String HUDI = "hudi";
     public static final String ICEBERG = "iceberg";
     public static final String DELTA = "delta";
 
+    public static final String SHARD_BY_KEY = "key";
+    public static final String SHARD_BY_PARTITION = "partition";
+
     @Category
     protected static final String CATEGORY_SINK = "Sink";
 
@@ -69,28 +92,79 @@ public abstract class SinkConnectorConfig implements Serializable {
 
     @FieldContext(
         category = CATEGORY_SINK,
+        dynamic = true,
         doc = "Max flush interval in seconds for each batch. Default is 120s."
     )
     int maxCommitInterval = DEFAULT_MAX_COMMIT_INTERVAL;
 
     @FieldContext(
         category = CATEGORY_SINK,
+        dynamic = true,
         doc = "Max records number for each batch to commit. Default is 10_000_000."
     )
     int maxRecordsPerCommit = DEFAULT_MAX_RECORDS_PER_COMMIT;
 
     @FieldContext(
         category = CATEGORY_SINK,
+        dynamic = true,
         doc = "Max commit fail times to fail the process. Default is 5."
     )
     int maxCommitFailedTimes = DEFAULT_MAX_COMMIT_FAILED_TIMES;
 
     @FieldContext(
         category = CATEGORY_SINK,
+        dynamic = true,
+        doc = "Max number of commits in flight. Writers keep writing new files while the previous batches are "
+            + "committed in the background, one at a time and in order. Default is 2."
+    )
+    int maxInFlightCommits = DEFAULT_MAX_IN_FLIGHT_COMMITS;
+
+    @FieldContext(
+        category = CATEGORY_SINK,
+        dynamic = true,
         doc = "The max queue size of sink connector to buffer records before writing into lakehouse table."
     )
     int sinkConnectorQueueSize = DEFAULT_SINK_CONNECTOR_QUEUE_SIZE;
 
+    @FieldContext(
+        category = CATEGORY_SINK,
+        dynamic = true,
+        doc = "The max estimated size in bytes of the records buffered by sink connector before writing into "
+            + "lakehouse table. The connector stops accepting records when either this or sinkConnectorQueueSize "
+            + "is reached. With a Shared or Key_Shared subscription the records count until they are committed and "
+            + "acked, and a commit is triggered when they reach it. Default is 256MB."
+    )
+    long sinkConnectorQueueMaxBytes = DEFAULT_SINK_CONNECTOR_QUEUE_MAX_BYTES;
+
+    @FieldContext(
+        category = CATEGORY_SINK,
+        doc = "How the sink connector and the writer wait on the buffering queue. Available values: blocking, "
+            + "busy_spin, park. busy_spin has the lowest latency but keeps a core busy. Default is blocking."
+    )
+    String sinkConnectorQueueWaitStrategy = DEFAULT_SINK_CONNECTOR_QUEUE_WAIT_STRATEGY;
+
+    @FieldContext(
+        category = CATEGORY_SINK,
+        doc = "Number of writer threads. Records are sharded across the writers, and the data of all writers is "
+            + "committed into the lakehouse table together. Default is 1."
+    )
+    int sinkWriterThreads = DEFAULT_SINK_WRITER_THREADS;
+
+    @FieldContext(
+        category = CATEGORY_SINK,
+        doc = "How records are sharded across writer threads. Available values: key, partition. "
+            + "'key' routes by message key, 'partition' routes by the values of the partition columns. Default is key. "
+            + "Ignored with dedupKeyColumns."
+    )
+    String sinkWriterShardBy = SHARD_BY_KEY;
+
+    @FieldContext(
+        category = CATEGORY_SINK,
+        doc = "Whether each writer converts and writes the records on two threads. The conversion of a batch of "
+            + "records then overlaps the encoding and writing of the previous batches. Default is false."
+    )
+    boolean sinkWriterPipelineEnabled = false;
+
     @FieldContext(
         category = CATEGORY_SINK,
         doc = "Partition columns for lakehouse table."
@@ -103,8 +177,159 @@ public abstract class SinkConnectorConfig implements Serializable {
     )
     String overrideFieldName = "";
 
+    @FieldContext(
+        category = CATEGORY_SINK,
+        doc = "The record columns to write, in table column order. All the columns are written if it is empty."
+    )
+    List<String> projectColumns = Collections.emptyList();
+
+    @FieldContext(
+        category = CATEGORY_SINK,
+        doc = "The record columns not to write."
+    )
+    List<String> dropColumns = Collections.emptyList();
+
+    @FieldContext(
+        category = CATEGORY_SINK,
+        doc = "Maps record columns to the names of their table columns."
+    )
+    Map<String, String> renameColumns = Collections.emptyMap();
+
+    @FieldContext(
+        category = CATEGORY_SINK,
+        doc = "Maps table columns to the type they are cast to: string, int, long, float, double or boolean. "
+            + "Values which can't be cast are written as null."
+    )
+    Map<String, String> castColumns = Collections.emptyMap();
+
+    @FieldContext(
+        category = CATEGORY_SINK,
+        doc = "Maps the names of added table columns to their value: a string constant, or one of $topic, $key, "
+            + "$messageId, $publishTime, $eventTime, $processingTime and $field.NAME for a copy of a record column. "
+            + "A constant starting with '$' is escaped as '$$'."
+    )
+    Map<String, String> addColumns = Collections.emptyMap();
+
+    @FieldContext(
+        category = CATEGORY_SINK,
+        doc = "Prefix of the columns flattened from the key of KEY_VALUE messages. A primitive key is written into "
+            + "one column named after the prefix without its trailing underscore. Default is 'key_'."
+    )
+    String keyValueKeyPrefix = DEFAULT_KEY_VALUE_KEY_PREFIX;
+
+    @FieldContext(
+        category = CATEGORY_SINK,
+        doc = "Prefix of the columns flattened from the value of KEY_VALUE messages. A primitive value is written "
+            + "into one column named after the prefix without its trailing underscore, or 'value' if the prefix is "
+            + "empty. Default is ''."
+    )
+    String keyValueValuePrefix = DEFAULT_KEY_VALUE_VALUE_PREFIX;
+
+    @FieldContext(
+        category = CATEGORY_SINK,
+        doc = "Route records to other tables of the same lakehouse. Maps topic names, or the values of "
+            + "tableRouteField, to the target tables. Records without a route are written into the configured table."
+    )
+    Map<String, String> tableRoutes = Collections.emptyMap();
+
+    @FieldContext(
+        category = CATEGORY_SINK,
+        doc = "The record field whose value selects the table route. The records are routed by topic name if it is "
+            + "empty."
+    )
+    String tableRouteField = "";
+
+    @FieldContext(
+        category = CATEGORY_SINK,
+        doc = "Path of a JSON file with new values of the dynamic settings, e.g. maxCommitInterval. The file is "
+            + "checked for changes every few seconds, and the new values are applied without restarting the "
+            + "connector. Disabled if it is empty."
+    )
+    String dynamicConfigFile = "";
+
+    @FieldContext(
+        category = CATEGORY_SINK,
+        doc = "Tune the commit interval and the records per commit from the observed ingest rate, commit latency and "
+            + "queue fill, aiming at adaptiveCommitTargetFileSize within adaptiveCommitFreshnessSlo. "
+            + "maxCommitInterval and maxRecordsPerCommit become the upper bounds. Default is false."
+    )
+    boolean adaptiveCommitEnabled = false;
+
+    @FieldContext(
+        category = CATEGORY_SINK,
+        dynamic = true,
+        doc = "The data file size in bytes the adaptive commit aims at. Default is 128MB."
+    )
+    long adaptiveCommitTargetFileSize = DEFAULT_ADAPTIVE_COMMIT_TARGET_FILE_SIZE;
+
+    @FieldContext(
+        category = CATEGORY_SINK,
+        dynamic = true,
+        doc = "Max delay in seconds between receiving a record and committing it the adaptive commit aims at, "
+            + "commit latency included. Default is 120s."
+    )
+    int adaptiveCommitFreshnessSlo = DEFAULT_ADAPTIVE_COMMIT_FRESHNESS_SLO;
+
+    @FieldContext(
+        category = CATEGORY_SINK,
+        dynamic = true,
+        doc = "Min commit interval in seconds the adaptive commit can choose. Default is 10s."
+    )
+    int minCommitInterval = DEFAULT_MIN_COMMIT_INTERVAL;
+
+    @FieldContext(
+        category = CATEGORY_SINK,
+        doc = "Key columns to deduplicate the records of each commit by. Only the latest record of each key is "
+            + "written, by dedupOrderingColumn or by arrival order. Disabled if it is empty. The records are sharded "
+            + "across the writer threads by these columns instead of sinkWriterShardBy."
+    )
+    List<String> dedupKeyColumns = Collections.emptyList();
+
+    @FieldContext(
+        category = CATEGORY_SINK,
+        doc = "The column whose greatest value selects the latest record of a key, e.g. a CDC sequence number. "
+            + "The last record received wins if it is empty."
+    )
+    String dedupOrderingColumn = "";
+
+    @FieldContext(
+        category = CATEGORY_SINK,
+        doc = "Max estimated size in bytes of the records kept in memory for deduplication by each writer thread "
+            + "and table. Above it the records are spilled to disk. Default is 128MB."
+    )
+    long dedupMaxMemoryBytes = DEFAULT_DEDUP_MAX_MEMORY_BYTES;
+
+    @FieldContext(
+        category = CATEGORY_SINK,
+        doc = "The directory of the deduplication records spilled to disk. Default is the java.io.tmpdir directory."
+    )
+    String dedupSpillPath = "";
+
+    @FieldContext(
+        category = CATEGORY_SINK,
+        doc = "Whether to drop the records redelivered after a broker failover or a connector restart, which were "
+            + "written already. The position of the last record of each topic partition is committed with the data, "
+            + "and the redelivered records at or before it are only acked. Needs a Failover or Exclusive "
+            + "subscription. Disable it before seeking the subscription backwards to write the records again."
+    )
+    boolean redeliveryFilterEnabled = false;
+
+    @FieldContext(
+        category = CATEGORY_SINK,
+        doc = "Trace one record out of this many from its receipt to its commit, and report the publish to queryable "
+            + "latency percentiles and the time spent in each stage with every commit, e.g. 1000. Default is 0, "
+            + "which disables the tracing."
+    )
+    int freshnessTraceSampleInterval = 0;
+
+    @FieldContext(
+        category = CATEGORY_SINK,
+        doc = "Whether to log the trace of every sampled record as a JSON line once it is committed. Needs "
+            + "freshnessTraceSampleInterval. Default is false."
+    )
+    boolean freshnessTraceLogEnabled = false;
+
     static SinkConnectorConfig load(Map<String, Object> map) throws IOException, IncorrectParameterException {
-        properties.putAll(map);
         String type = (String) map.get("type");
         if (StringUtils.isBlank(type)) {
             String error = "type must be set.";
@@ -112,20 +337,26 @@ public abstract class SinkConnectorConfig implements Serializable {
             throw new IllegalArgumentException(error);
         }
 
+        SinkConnectorConfig config;
         switch (type.toLowerCase(Locale.ROOT)) {
             case ICEBERG:
-                return jsonMapper().readValue(new ObjectMapper().writeValueAsString(map),
+                config = jsonMapper().readValue(new ObjectMapper().writeValueAsString(map),
                     IcebergSinkConnectorConfig.class);
+                break;
             case DELTA:
-                return jsonMapper().readValue(new ObjectMapper().writeValueAsString(map),
+                config = jsonMapper().readValue(new ObjectMapper().writeValueAsString(map),
                     DeltaSinkConnectorConfig.class);
+                break;
             case HUDI:
-                return jsonMapper().readValue(new ObjectMapper().writeValueAsString(map),
+                config = jsonMapper().readValue(new ObjectMapper().writeValueAsString(map),
                     DefaultSinkConnectorConfig.class);
+                break;
             default:
                 throw new IncorrectParameterException("Unexpected type. Only supports 'iceberg', 'delta', and 'hudi', "
                     + "but got " + type);
         }
+        config.properties.putAll(map);
+        return config;
     }
 
     public static ObjectMapper jsonMapper() {
@@ -150,17 +381,168 @@ public abstract class SinkConnectorConfig implements Serializable {
             maxCommitInterval = DEFAULT_MAX_COMMIT_INTERVAL;
         }
 
+        if (minCommitInterval <= 0 || minCommitInterval > maxCommitInterval) {
+            log.warn("minCommitInterval: {} should be > 0 and <= maxCommitInterval: {}, using: {}",
+                minCommitInterval, maxCommitInterval, Math.min(DEFAULT_MIN_COMMIT_INTERVAL, maxCommitInterval));
+            minCommitInterval = Math.min(DEFAULT_MIN_COMMIT_INTERVAL, maxCommitInterval);
+        }
+
+        if (adaptiveCommitTargetFileSize <= 0) {
+            log.warn("adaptiveCommitTargetFileSize: {} should be > 0, using default: {}",
+                adaptiveCommitTargetFileSize, DEFAULT_ADAPTIVE_COMMIT_TARGET_FILE_SIZE);
+            adaptiveCommitTargetFileSize = DEFAULT_ADAPTIVE_COMMIT_TARGET_FILE_SIZE;
+        }
+
+        if (adaptiveCommitFreshnessSlo <= 0) {
+            log.warn("adaptiveCommitFreshnessSlo: {} should be > 0, using default: {}",
+                adaptiveCommitFreshnessSlo, DEFAULT_ADAPTIVE_COMMIT_FRESHNESS_SLO);
+            adaptiveCommitFreshnessSlo = DEFAULT_ADAPTIVE_COMMIT_FRESHNESS_SLO;
+        }
+
+        if (dedupKeyColumns == null) {
+            dedupKeyColumns = Collections.emptyList();
+        }
+        if (dedupMaxMemoryBytes <= 0) {
+            log.warn("dedupMaxMemoryBytes: {} should be > 0, using default: {}",
+                dedupMaxMemoryBytes, DEFAULT_DEDUP_MAX_MEMORY_BYTES);
+            dedupMaxMemoryBytes = DEFAULT_DEDUP_MAX_MEMORY_BYTES;
+        }
+
+        if (maxInFlightCommits <= 0) {
+            log.warn("maxInFlightCommits: {} should be > 0, using default: {}",
+                maxInFlightCommits, DEFAULT_MAX_IN_FLIGHT_COMMITS);
+            maxInFlightCommits = DEFAULT_MAX_IN_FLIGHT_COMMITS;
+        }
+
+        if (freshnessTraceSampleInterval < 0) {
+            log.warn("freshnessTraceSampleInterval: {} should be >= 0, disabling the freshness tracing",
+                freshnessTraceSampleInterval);
+            freshnessTraceSampleInterval = 0;
+        }
+
         if (sinkConnectorQueueSize <= 0) {
             log.warn("sinkConnectorQueueSize: {} should be > 0, using default: {}",
                 sinkConnectorQueueSize, DEFAULT_SINK_CONNECTOR_QUEUE_SIZE);
             sinkConnectorQueueSize = DEFAULT_SINK_CONNECTOR_QUEUE_SIZE;
         }
 
+        if (sinkConnectorQueueMaxBytes <= 0) {
+            log.warn("sinkConnectorQueueMaxBytes: {} should be > 0, using default: {}",
+                sinkConnectorQueueMaxBytes, DEFAULT_SINK_CONNECTOR_QUEUE_MAX_BYTES);
+            sinkConnectorQueueMaxBytes = DEFAULT_SINK_CONNECTOR_QUEUE_MAX_BYTES;
+        }
+
         if (maxRecordsPerCommit <= 0) {
             log.warn("maxRecordsPerCommit: {} should be > 0, using default: {}",
                 maxRecordsPerCommit, DEFAULT_MAX_RECORDS_PER_COMMIT);
             maxRecordsPerCommit = DEFAULT_MAX_RECORDS_PER_COMMIT;
         }
+
+        try {
+            SpscRingBuffer.WaitStrategy.fromString(sinkConnectorQueueWaitStrategy);
+        } catch (IllegalArgumentException | NullPointerException e) {
+            log.warn("sinkConnectorQueueWaitStrategy: {} should be one of blocking, busy_spin or park, "
+                + "using default: {}", sinkConnectorQueueWaitStrategy, DEFAULT_SINK_CONNECTOR_QUEUE_WAIT_STRATEGY);
+            sinkConnectorQueueWaitStrategy = DEFAULT_SINK_CONNECTOR_QUEUE_WAIT_STRATEGY;
+        }
+
+        if (sinkWriterThreads <= 0) {
+            log.warn("sinkWriterThreads: {} should be > 0, using default: {}",
+                sinkWriterThreads, DEFAULT_SINK_WRITER_THREADS);
+            sinkWriterThreads = DEFAULT_SINK_WRITER_THREADS;
+        }
+
+        if (StringUtils.isBlank(sinkWriterShardBy)
+            || (!SHARD_BY_KEY.equals(sinkWriterShardBy.toLowerCase(Locale.ROOT))
+                && !SHARD_BY_PARTITION.equals(sinkWriterShardBy.toLowerCase(Locale.ROOT)))) {
+            log.warn("sinkWriterShardBy: {} should be one of key or partition, using default: {}",
+                sinkWriterShardBy, SHARD_BY_KEY);
+            sinkWriterShardBy = SHARD_BY_KEY;
+        }
+        sinkWriterShardBy = sinkWriterShardBy.toLowerCase(Locale.ROOT);
+
+        if (tableRoutes == null) {
+            tableRoutes = Collections.emptyMap();
+        }
+    }
+
+    /**
+     * Update the settings marked as {@link FieldContext#dynamic()}. The new values are validated like the startup
+     * config, and invalid values fall back to their defaults. The other dynamic settings adjusted by the validation,
+     * e.g. minCommitInterval when maxCommitInterval is lowered below it, are updated too.
+     * @return the names of the settings whose value has changed
+     * @throws IllegalArgumentException if a setting is unknown or not dynamic
+     */
+    public synchronized Set<String> updateDynamicFields(Map<String, Object> values) {
+        SinkConnectorConfig updated = jsonMapper().convertValue(this, getClass());
+        try {
+            for (Map.Entry<String, Object> entry : values.entrySet()) {
+                Field field = getDynamicField(entry.getKey());
+                field.set(updated, jsonMapper().convertValue(entry.getValue(), field.getType()));
+            }
+            updated.validate();
+
+            Set<String> changed = new LinkedHashSet<>();
+            for (Field field : getDynamicFields()) {
+                Object value = field.get(updated);
+                if (!Objects.equals(field.get(this), value)) {
+                    log.info("Update {} from {} to {}", field.getName(), field.get(this), value);
+                    field.set(this, value);
+                    changed.add(field.getName());
+                }
+            }
+            return changed;
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Failed to update the sink connector config", e);
+        }
+    }
+
+    private List<Field> getDynamicFields() {
+        List<Field> fields = new ArrayList<>();
+        for (Class<?> clazz = getClass(); clazz != Object.class; clazz = clazz.getSuperclass()) {
+            for (Field field : clazz.getDeclaredFields()) {
+                FieldContext context = field.getAnnotation(FieldContext.class);
+                if (context != null && context.dynamic()) {
+                    field.setAccessible(true);
+                    fields.add(field);
+                }
+            }
+        }
+        return fields;
+    }
+
+    private Field getDynamicField(String name) {
+        for (Class<?> clazz = getClass(); clazz != Object.class; clazz = clazz.getSuperclass()) {
+            try {
+                Field field = clazz.getDeclaredField(name);
+                FieldContext context = field.getAnnotation(FieldContext.class);
+                if (context == null || !context.dynamic()) {
+                    throw new IllegalArgumentException(name + " can't be updated dynamically");
+                }
+                field.setAccessible(true);
+                return field;
+            } catch (NoSuchFieldException e) {
+                // look up the super class
+            }
+        }
+        throw new IllegalArgumentException("Unknown setting " + name);
+    }
+
+    /**
+     * A copy of the config which writes into the given table of the same lakehouse, for the table routes.
+     */
+    public SinkConnectorConfig forTable(String table) {
+        SinkConnectorConfig config = jsonMapper().convertValue(this, getClass());
+        config.properties.putAll(properties);
+        config.setTargetTable(table);
+        return config;
+    }
+
+    /**
+     * Point the config to the given table.
+     */
+    protected void setTargetTable(String table) {
+        throw new UnsupportedOperationException("Table routing is not supported by the " + type + " sink");
     }
 
     public Properties getProperties() {
@@ -185,5 +567,19 @@ public abstract class SinkConnectorConfig implements Serializable {
         }
     }
 
-    public static class DefaultSinkConnectorConfig extends SinkConnectorConfig { }
+    /**
+     * The config of the Hudi sink, whose table is set by the hoodie.* properties.
+     */
+    public static class DefaultSinkConnectorConfig extends SinkConnectorConfig {
+
+        /**
+         * Point the config to the Hudi table at the given base path, named after the last element of the path.
+         */
+        @Override
+        protected void setTargetTable(String table) {
+            String basePath = StringUtils.stripEnd(table, "/");
+            setProperty(HoodieWriteConfig.BASE_PATH.key(), basePath);
+            setProperty(HoodieWriteConfig.TBL_NAME.key(), basePath.substring(basePath.lastIndexOf('/') + 1));
+        }
+    }
 }
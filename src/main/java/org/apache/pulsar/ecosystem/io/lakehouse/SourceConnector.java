@@ -79,7 +79,7 @@ public class SourceConnector implements Source<GenericRecord> {
     // metrics
     private final AtomicInteger processingException = new AtomicInteger(0);
     private long recordCnt = 0;
-    private static long checkpointId = 0;
+    private long checkpointId = 0;
 
 
     @Override
@@ -148,7 +148,7 @@ public class SourceConnector implements Source<GenericRecord> {
 
         // TODO checkpoint support version
         snapshotExecutor.scheduleAtFixedRate(() -> {
-            Map<Integer, DeltaCheckpoint> currentCheckpoint = DeltaRecord.currentSnapshot();
+            Map<Integer, DeltaCheckpoint> currentCheckpoint = reader.getState().currentSnapshot();
             Long startCheckpoint = System.currentTimeMillis();
             currentCheckpoint.forEach((key, value) -> {
                 try {
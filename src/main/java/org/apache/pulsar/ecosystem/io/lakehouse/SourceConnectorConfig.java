@@ -18,6 +18,7 @@
  */
 package org.apache.pulsar.ecosystem.io.lakehouse;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.IOException;
@@ -51,7 +52,9 @@ public abstract class SourceConnectorConfig implements Serializable {
     @Category
     public static final String CATEGORY_SOURCE = "Source";
 
-    private static Properties properties = new Properties();
+    // all the settings of this instance, e.g. the hadoop.* ones, which have no config field
+    @JsonIgnore
+    private final Properties properties = new Properties();
 
     public static final String HUDI = "hudi";
     public static final String ICEBERG = "iceberg";
@@ -89,8 +92,6 @@ public abstract class SourceConnectorConfig implements Serializable {
     Long startTimestamp;
 
     public static SourceConnectorConfig load(Map<String, Object> map) throws IOException, IncorrectParameterException {
-        properties.putAll(map);
-
         String type = (String) map.get("type");
         if (StringUtils.isBlank(type)) {
             String error = "type must be set.";
@@ -100,8 +101,10 @@ public abstract class SourceConnectorConfig implements Serializable {
 
         switch (type) {
             case DELTA:
-                return Utils.JSON_MAPPER.get().readValue(new ObjectMapper().writeValueAsString(map),
-                    DeltaSourceConfig.class);
+                SourceConnectorConfig config = Utils.JSON_MAPPER.get().readValue(
+                    new ObjectMapper().writeValueAsString(map), DeltaSourceConfig.class);
+                config.properties.putAll(map);
+                return config;
 
             default:
                 throw new IncorrectParameterException("Unexpected type. Only supports 'delta' type, but got " + type);
@@ -0,0 +1,83 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.lakehouse.common;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Watches a JSON config file, and hands its settings over to the listener every time the file changes. The file is
+ * polled for its modification time and size, which works on every file system, including mounted config maps.
+ *
+ * <p>Errors reading the file or applying the settings are logged, and the file is read again on its next change.
+ */
+@Slf4j
+public class ConfigFileWatcher implements AutoCloseable {
+    private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<Map<String, Object>>() {};
+
+    private final File file;
+    private final Consumer<Map<String, Object>> listener;
+    private final ScheduledExecutorService executor;
+    private long lastModified;
+    private long lastLength = -1;
+
+    public ConfigFileWatcher(String path, long intervalMillis, Consumer<Map<String, Object>> listener) {
+        this.file = new File(path);
+        this.listener = listener;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("lakehouse-config"));
+        executor.scheduleWithFixedDelay(this::check, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Read the file if it has changed since the last check. Only called by the watcher thread.
+     */
+    void check() {
+        if (!file.isFile()) {
+            return;
+        }
+        long modified = file.lastModified();
+        long length = file.length();
+        if (modified == lastModified && length == lastLength) {
+            return;
+        }
+        lastModified = modified;
+        lastLength = length;
+        try {
+            Map<String, Object> settings = Utils.JSON_MAPPER.get().readValue(file, MAP_TYPE);
+            if (settings != null && !settings.isEmpty()) {
+                listener.accept(settings);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to apply the config file {}", file, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
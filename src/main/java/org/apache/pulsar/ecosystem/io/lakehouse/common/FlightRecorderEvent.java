@@ -0,0 +1,353 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.lakehouse.common;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A JDK Flight Recorder event type with a duration and a few attributes, e.g. a table commit or a file roll.
+ *
+ * <p>The connector targets Java 8, so the event types can't extend {@code jdk.jfr.Event}. They are defined at runtime
+ * with {@code jdk.jfr.EventFactory} through method handles instead, when the JVM has Flight Recorder. Otherwise, or
+ * if the definition fails, the events are no-ops. Whether each event type is enabled is refreshed when a recording
+ * starts or stops, and while it isn't enabled {@link #begin()} returns a shared no-op {@link Recording}, so an event
+ * costs a single volatile read when nothing is recorded.
+ *
+ * <pre>
+ * FlightRecorderEvent.Recording event = LakehouseEvents.DELTA_COMMIT.begin();
+ * ... // the recorded operation
+ * event.set("files", files).commit();
+ * </pre>
+ */
+@Slf4j
+public final class FlightRecorderEvent {
+    private static final String CATEGORY = "Pulsar Lakehouse";
+    private static final Recording DISABLED = new Recording(null, null);
+    private static final List<FlightRecorderEvent> EVENTS = new CopyOnWriteArrayList<>();
+    private static final Jfr JFR = Jfr.load();
+
+    private final String name;
+    private final Map<String, Integer> fields;
+    // null without Flight Recorder
+    private final Object factory;
+    private final MethodHandle isEnabled;
+    private volatile boolean enabled;
+
+    private FlightRecorderEvent(Builder builder) {
+        this.name = builder.name;
+        Map<String, Integer> indexes = new HashMap<>();
+        for (int i = 0; i < builder.fieldNames.size(); i++) {
+            indexes.put(builder.fieldNames.get(i), i);
+        }
+        this.fields = Collections.unmodifiableMap(indexes);
+        Object eventFactory = null;
+        MethodHandle enabled = null;
+        if (JFR != null) {
+            try {
+                eventFactory = JFR.create(builder);
+                enabled = JFR.isEnabled.bindTo(JFR.getEventType.invoke(eventFactory));
+            } catch (Throwable e) {
+                log.warn("Failed to define the Flight Recorder event {}, it isn't recorded", name, e);
+                eventFactory = null;
+            }
+        }
+        this.factory = eventFactory;
+        this.isEnabled = enabled;
+        if (factory != null) {
+            refresh();
+            EVENTS.add(this);
+        }
+    }
+
+    public static Builder builder(String name, String label) {
+        return new Builder(name, label);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Whether the event type is recorded by a running recording.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    private void refresh() {
+        try {
+            enabled = (boolean) isEnabled.invokeExact();
+        } catch (Throwable e) {
+            enabled = false;
+        }
+    }
+
+    /**
+     * Called when a recording changes state, which may enable or disable the event types.
+     */
+    private static void refreshAll() {
+        for (FlightRecorderEvent event : EVENTS) {
+            event.refresh();
+        }
+    }
+
+    /**
+     * Start timing an event, a no-op recording unless the event type is enabled.
+     */
+    public Recording begin() {
+        if (!isEnabled()) {
+            return DISABLED;
+        }
+        try {
+            Object event = JFR.newEvent.invoke(factory);
+            JFR.begin.invoke(event);
+            return new Recording(this, event);
+        } catch (Throwable e) {
+            log.debug("Failed to begin the Flight Recorder event {}", name, e);
+            return DISABLED;
+        }
+    }
+
+    /**
+     * An event being timed. The attributes are set by name, and ignored if the event isn't recorded.
+     */
+    public static final class Recording {
+        private final FlightRecorderEvent type;
+        private final Object event;
+
+        private Recording(FlightRecorderEvent type, Object event) {
+            this.type = type;
+            this.event = event;
+        }
+
+        public boolean isRecording() {
+            return event != null;
+        }
+
+        public Recording set(String field, Object value) {
+            if (event == null) {
+                return this;
+            }
+            Integer index = type.fields.get(field);
+            if (index == null) {
+                throw new IllegalArgumentException("Unknown field " + field + " of event " + type.name);
+            }
+            try {
+                JFR.set.invoke(event, index.intValue(), value);
+            } catch (Throwable e) {
+                log.debug("Failed to set the field {} of the Flight Recorder event {}", field, type.name, e);
+            }
+            return this;
+        }
+
+        public Recording set(String field, long value) {
+            return event == null ? this : set(field, (Object) value);
+        }
+
+        public Recording set(String field, int value) {
+            return event == null ? this : set(field, (Object) value);
+        }
+
+        public Recording set(String field, boolean value) {
+            return event == null ? this : set(field, (Object) value);
+        }
+
+        /**
+         * End the event, and commit it if it lasted longer than the threshold of the recording.
+         */
+        public void commit() {
+            if (event == null) {
+                return;
+            }
+            try {
+                JFR.end.invoke(event);
+                if ((boolean) JFR.shouldCommit.invoke(event)) {
+                    JFR.commit.invoke(event);
+                }
+            } catch (Throwable e) {
+                log.debug("Failed to commit the Flight Recorder event {}", type.name, e);
+            }
+        }
+    }
+
+    /**
+     * Definition of an event type.
+     */
+    public static final class Builder {
+        private final String name;
+        private final String label;
+        private String description;
+        private String threshold;
+        private final List<String> fieldNames = new ArrayList<>();
+        private final List<Class<?>> fieldTypes = new ArrayList<>();
+
+        private Builder(String name, String label) {
+            this.name = name;
+            this.label = label;
+        }
+
+        public Builder description(String description) {
+            this.description = description;
+            return this;
+        }
+
+        /**
+         * The default min duration of the recorded events, e.g. "10 ms".
+         */
+        public Builder threshold(String threshold) {
+            this.threshold = threshold;
+            return this;
+        }
+
+        /**
+         * Add an attribute, of a primitive type or String.
+         */
+        public Builder field(String fieldName, Class<?> type) {
+            fieldNames.add(fieldName);
+            fieldTypes.add(type);
+            return this;
+        }
+
+        public FlightRecorderEvent build() {
+            return new FlightRecorderEvent(this);
+        }
+    }
+
+    /**
+     * The jdk.jfr API, looked up once.
+     */
+    private static final class Jfr {
+        private final Class<? extends Annotation> nameType;
+        private final Class<? extends Annotation> labelType;
+        private final Class<? extends Annotation> descriptionType;
+        private final Class<? extends Annotation> categoryType;
+        private final Class<? extends Annotation> thresholdType;
+        private final Constructor<?> annotationElement;
+        private final Constructor<?> valueDescriptor;
+        private final MethodHandle createFactory;
+        private final MethodHandle getEventType;
+        private final MethodHandle isEnabled;
+        private final MethodHandle newEvent;
+        private final MethodHandle begin;
+        private final MethodHandle end;
+        private final MethodHandle shouldCommit;
+        private final MethodHandle commit;
+        private final MethodHandle set;
+
+        private Jfr() throws ReflectiveOperationException {
+            ClassLoader loader = ClassLoader.getSystemClassLoader();
+            Class<?> factoryType = Class.forName("jdk.jfr.EventFactory", false, loader);
+            Class<?> eventType = Class.forName("jdk.jfr.EventType", false, loader);
+            Class<?> event = Class.forName("jdk.jfr.Event", false, loader);
+            Class<?> annotationElementType = Class.forName("jdk.jfr.AnnotationElement", false, loader);
+            this.nameType = annotation("jdk.jfr.Name", loader);
+            this.labelType = annotation("jdk.jfr.Label", loader);
+            this.descriptionType = annotation("jdk.jfr.Description", loader);
+            this.categoryType = annotation("jdk.jfr.Category", loader);
+            this.thresholdType = annotation("jdk.jfr.Threshold", loader);
+            this.annotationElement = annotationElementType.getConstructor(Class.class, Object.class);
+            this.valueDescriptor = Class.forName("jdk.jfr.ValueDescriptor", false, loader)
+                .getConstructor(Class.class, String.class, List.class);
+
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            this.createFactory = lookup.findStatic(factoryType, "create",
+                MethodType.methodType(factoryType, List.class, List.class));
+            this.getEventType = lookup.findVirtual(factoryType, "getEventType", MethodType.methodType(eventType));
+            this.isEnabled = lookup.findVirtual(eventType, "isEnabled", MethodType.methodType(boolean.class));
+            this.newEvent = lookup.findVirtual(factoryType, "newEvent", MethodType.methodType(event));
+            this.begin = lookup.findVirtual(event, "begin", MethodType.methodType(void.class));
+            this.end = lookup.findVirtual(event, "end", MethodType.methodType(void.class));
+            this.shouldCommit = lookup.findVirtual(event, "shouldCommit", MethodType.methodType(boolean.class));
+            this.commit = lookup.findVirtual(event, "commit", MethodType.methodType(void.class));
+            this.set = lookup.findVirtual(event, "set", MethodType.methodType(void.class, int.class, Object.class));
+
+            Class<?> listenerType = Class.forName("jdk.jfr.FlightRecorderListener", false, loader);
+            Object listener = Proxy.newProxyInstance(listenerType.getClassLoader(), new Class<?>[] {listenerType},
+                (proxy, method, args) -> {
+                    if (method.getDeclaringClass() == Object.class) {
+                        switch (method.getName()) {
+                            case "equals":
+                                return proxy == args[0];
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            default:
+                                return FlightRecorderEvent.class.getName() + "$Listener";
+                        }
+                    }
+                    if ("recordingStateChanged".equals(method.getName())) {
+                        refreshAll();
+                    }
+                    return null;
+                });
+            Class.forName("jdk.jfr.FlightRecorder", false, loader).getMethod("addListener", listenerType)
+                .invoke(null, listener);
+        }
+
+        /**
+         * The jdk.jfr API, null if the JVM has no Flight Recorder.
+         */
+        static Jfr load() {
+            try {
+                return new Jfr();
+            } catch (ReflectiveOperationException | LinkageError | SecurityException e) {
+                log.info("Flight Recorder isn't available, the lakehouse events aren't recorded");
+                return null;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private static Class<? extends Annotation> annotation(String className, ClassLoader loader)
+            throws ClassNotFoundException {
+            return (Class<? extends Annotation>) Class.forName(className, false, loader);
+        }
+
+        Object create(Builder builder) throws Throwable {
+            List<Object> annotations = new ArrayList<>();
+            annotations.add(annotationElement.newInstance(nameType, builder.name));
+            annotations.add(annotationElement.newInstance(labelType, builder.label));
+            annotations.add(annotationElement.newInstance(categoryType, new String[] {CATEGORY}));
+            if (builder.description != null) {
+                annotations.add(annotationElement.newInstance(descriptionType, builder.description));
+            }
+            if (builder.threshold != null) {
+                annotations.add(annotationElement.newInstance(thresholdType, builder.threshold));
+            }
+            List<Object> fields = new ArrayList<>();
+            for (int i = 0; i < builder.fieldNames.size(); i++) {
+                String fieldName = builder.fieldNames.get(i);
+                List<Object> fieldAnnotations = Collections.singletonList(
+                    annotationElement.newInstance(labelType, fieldName));
+                fields.add(valueDescriptor.newInstance(builder.fieldTypes.get(i), fieldName, fieldAnnotations));
+            }
+            return createFactory.invoke(annotations, fields);
+        }
+    }
+}
@@ -0,0 +1,479 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.lakehouse.common;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.avro.AvroTypeException;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+
+/**
+ * Decode a Jackson {@link JsonNode} into an Avro {@link GenericRecord} of the given schema. The schema is compiled
+ * once into a tree of decoders, so decoding a record walks the JSON tree directly instead of serializing it to a
+ * string and parsing it again with an Avro json decoder.
+ *
+ * <p>Records, arrays and maps of the previous result are reused when passed back in. A JSON null or missing field
+ * decodes to null if its schema is nullable. Otherwise a missing field takes its default value, and a null, a missing
+ * field without default or a value of the wrong JSON type fails the record, like the Avro JSON decoder. Unions pick the
+ * first non-null branch which accepts the JSON value. Strings decode to {@link String}, and bytes and fixed follow the
+ * Avro JSON encoding.
+ */
+public class JsonRecordDecoder {
+
+    private interface ValueDecoder {
+        Object decode(JsonNode node, Object reuse);
+
+        default boolean accepts(JsonNode node) {
+            return true;
+        }
+
+        /**
+         * Whether the schema accepts a JSON null or a missing value.
+         */
+        default boolean nullable() {
+            return false;
+        }
+    }
+
+    private final Schema schema;
+    private final RecordDecoder root;
+
+    public JsonRecordDecoder(Schema schema) {
+        if (schema.getType() != Schema.Type.RECORD) {
+            throw new IllegalArgumentException("Expected a record schema, but got " + schema.getType());
+        }
+        this.schema = schema;
+        this.root = (RecordDecoder) compile(schema, new IdentityHashMap<>());
+    }
+
+    public Schema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Decode the JSON object.
+     * @param node the JSON object
+     * @param reuse the record returned by the previous call, or null
+     * @return the decoded record, which is the reused record if it had the same schema
+     */
+    public GenericRecord decode(JsonNode node, GenericRecord reuse) throws IOException {
+        if (node == null || !node.isObject()) {
+            throw new IOException("Expected a JSON object for record " + schema.getFullName() + ", but got "
+                + (node == null ? null : node.getNodeType()));
+        }
+        try {
+            return (GenericRecord) root.decode(node, reuse);
+        } catch (AvroTypeException e) {
+            throw new IOException("Failed to decode JSON record " + schema.getFullName(), e);
+        }
+    }
+
+    private static ValueDecoder compile(Schema schema, Map<Schema, RecordDecoder> records) {
+        switch (schema.getType()) {
+            case RECORD:
+                RecordDecoder recordDecoder = records.get(schema);
+                if (recordDecoder == null) {
+                    // register before compiling the fields, so recursive schemas refer to the same decoder
+                    recordDecoder = new RecordDecoder(schema);
+                    records.put(schema, recordDecoder);
+                    recordDecoder.compileFields(records);
+                }
+                return recordDecoder;
+            case UNION:
+                return new UnionDecoder(schema, records);
+            case ARRAY:
+                return new ArrayDecoder(schema, compile(schema.getElementType(), records));
+            case MAP:
+                return new MapDecoder(compile(schema.getValueType(), records));
+            case ENUM:
+                return new EnumDecoder(schema);
+            case STRING:
+                return new ValueDecoder() {
+                    @Override
+                    public Object decode(JsonNode node, Object reuse) {
+                        if (!node.isTextual()) {
+                            throw typeError("string", node);
+                        }
+                        return node.textValue();
+                    }
+
+                    @Override
+                    public boolean accepts(JsonNode node) {
+                        return node.isTextual();
+                    }
+                };
+            case INT:
+                return new ValueDecoder() {
+                    @Override
+                    public Object decode(JsonNode node, Object reuse) {
+                        if (!node.isNumber() || !node.canConvertToInt()) {
+                            throw typeError("int", node);
+                        }
+                        return node.intValue();
+                    }
+
+                    @Override
+                    public boolean accepts(JsonNode node) {
+                        return node.isIntegralNumber() && node.canConvertToInt();
+                    }
+                };
+            case LONG:
+                return new ValueDecoder() {
+                    @Override
+                    public Object decode(JsonNode node, Object reuse) {
+                        if (!node.isNumber() || !node.canConvertToLong()) {
+                            throw typeError("long", node);
+                        }
+                        return node.longValue();
+                    }
+
+                    @Override
+                    public boolean accepts(JsonNode node) {
+                        return node.isIntegralNumber() && node.canConvertToLong();
+                    }
+                };
+            case FLOAT:
+                return new ValueDecoder() {
+                    @Override
+                    public Object decode(JsonNode node, Object reuse) {
+                        if (!node.isNumber()) {
+                            throw typeError("float", node);
+                        }
+                        return node.floatValue();
+                    }
+
+                    @Override
+                    public boolean accepts(JsonNode node) {
+                        return node.isNumber();
+                    }
+                };
+            case DOUBLE:
+                return new ValueDecoder() {
+                    @Override
+                    public Object decode(JsonNode node, Object reuse) {
+                        if (!node.isNumber()) {
+                            throw typeError("double", node);
+                        }
+                        return node.doubleValue();
+                    }
+
+                    @Override
+                    public boolean accepts(JsonNode node) {
+                        return node.isNumber();
+                    }
+                };
+            case BOOLEAN:
+                return new ValueDecoder() {
+                    @Override
+                    public Object decode(JsonNode node, Object reuse) {
+                        if (!node.isBoolean()) {
+                            throw typeError("boolean", node);
+                        }
+                        return node.booleanValue();
+                    }
+
+                    @Override
+                    public boolean accepts(JsonNode node) {
+                        return node.isBoolean();
+                    }
+                };
+            case BYTES:
+                return new ValueDecoder() {
+                    @Override
+                    public Object decode(JsonNode node, Object reuse) {
+                        return ByteBuffer.wrap(bytesOf(node));
+                    }
+
+                    @Override
+                    public boolean accepts(JsonNode node) {
+                        return node.isTextual() || node.isBinary();
+                    }
+                };
+            case FIXED:
+                return new ValueDecoder() {
+                    @Override
+                    public Object decode(JsonNode node, Object reuse) {
+                        byte[] bytes = bytesOf(node);
+                        if (bytes.length != schema.getFixedSize()) {
+                            throw new AvroTypeException("Expected fixed length " + schema.getFixedSize()
+                                + ", but got " + bytes.length);
+                        }
+                        return new GenericData.Fixed(schema, bytes);
+                    }
+
+                    @Override
+                    public boolean accepts(JsonNode node) {
+                        return node.isTextual() || node.isBinary();
+                    }
+                };
+            case NULL:
+                return new ValueDecoder() {
+                    @Override
+                    public Object decode(JsonNode node, Object reuse) {
+                        if (!node.isNull()) {
+                            throw typeError("null", node);
+                        }
+                        return null;
+                    }
+
+                    @Override
+                    public boolean accepts(JsonNode node) {
+                        return node.isNull();
+                    }
+
+                    @Override
+                    public boolean nullable() {
+                        return true;
+                    }
+                };
+            default:
+                throw new IllegalArgumentException("Unsupported schema type " + schema.getType());
+        }
+    }
+
+    private static byte[] bytesOf(JsonNode node) {
+        if (node.isBinary()) {
+            try {
+                return node.binaryValue();
+            } catch (IOException e) {
+                throw new AvroTypeException(e.getMessage());
+            }
+        }
+        if (!node.isTextual()) {
+            throw typeError("bytes", node);
+        }
+        // Avro JSON encoding maps each byte to a code point
+        return node.textValue().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static AvroTypeException typeError(String expected, JsonNode node) {
+        return new AvroTypeException("Expected " + expected + ". Got " + node.getNodeType());
+    }
+
+    private static boolean isNull(JsonNode node) {
+        return node == null || node.isNull() || node.isMissingNode();
+    }
+
+    /**
+     * Decode a value which may be null, failing if the schema of the value isn't nullable.
+     */
+    private static Object decodeNullable(ValueDecoder decoder, JsonNode node, Object reuse) {
+        if (!isNull(node)) {
+            return decoder.decode(node, reuse);
+        }
+        if (!decoder.nullable()) {
+            throw new AvroTypeException("Expected a non-null value. Got " + (node == null ? "nothing" : "null"));
+        }
+        return null;
+    }
+
+    private static final class RecordDecoder implements ValueDecoder {
+        private final Schema schema;
+        private String[] names;
+        private ValueDecoder[] decoders;
+        // fields with a default value, used when the field is missing and not nullable
+        private Schema.Field[] defaults;
+
+        RecordDecoder(Schema schema) {
+            this.schema = schema;
+        }
+
+        void compileFields(Map<Schema, RecordDecoder> records) {
+            List<Schema.Field> fields = schema.getFields();
+            names = new String[fields.size()];
+            decoders = new ValueDecoder[fields.size()];
+            defaults = new Schema.Field[fields.size()];
+            for (Schema.Field field : fields) {
+                names[field.pos()] = field.name();
+                decoders[field.pos()] = compile(field.schema(), records);
+                defaults[field.pos()] = field.hasDefaultValue() ? field : null;
+            }
+        }
+
+        @Override
+        public Object decode(JsonNode node, Object reuse) {
+            if (!node.isObject()) {
+                throw typeError("record " + schema.getFullName(), node);
+            }
+            GenericData.Record record = reuse instanceof GenericData.Record
+                && ((GenericData.Record) reuse).getSchema() == schema
+                ? (GenericData.Record) reuse : new GenericData.Record(schema);
+            for (int i = 0; i < names.length; i++) {
+                JsonNode value = node.get(names[i]);
+                if (!isNull(value) || decoders[i].nullable()) {
+                    record.put(i, decodeNullable(decoders[i], value, record.get(i)));
+                } else if (value == null && defaults[i] != null) {
+                    // a copy of the default value, since the decoded values of the record may be reused
+                    record.put(i, GenericData.get().getDefaultValue(defaults[i]));
+                } else {
+                    throw new AvroTypeException("Expected field " + names[i] + " of record " + schema.getFullName()
+                        + ". Got " + (value == null ? "nothing" : "null"));
+                }
+            }
+            return record;
+        }
+
+        @Override
+        public boolean accepts(JsonNode node) {
+            return node.isObject();
+        }
+    }
+
+    private static final class UnionDecoder implements ValueDecoder {
+        private final ValueDecoder[] branches;
+        private final boolean nullable;
+
+        UnionDecoder(Schema schema, Map<Schema, RecordDecoder> records) {
+            List<ValueDecoder> decoders = new ArrayList<>();
+            boolean hasNull = false;
+            for (Schema branch : schema.getTypes()) {
+                if (branch.getType() != Schema.Type.NULL) {
+                    decoders.add(compile(branch, records));
+                } else {
+                    hasNull = true;
+                }
+            }
+            this.branches = decoders.toArray(new ValueDecoder[0]);
+            this.nullable = hasNull;
+        }
+
+        @Override
+        public boolean nullable() {
+            return nullable;
+        }
+
+        @Override
+        public Object decode(JsonNode node, Object reuse) {
+            if (isNull(node)) {
+                if (!nullable) {
+                    throw new AvroTypeException("Expected a non-null union value. Got null");
+                }
+                return null;
+            }
+            if (branches.length == 0) {
+                throw typeError("null", node);
+            }
+            for (ValueDecoder branch : branches) {
+                if (branch.accepts(node)) {
+                    return branch.decode(node, reuse);
+                }
+            }
+            return branches[0].decode(node, reuse);
+        }
+    }
+
+    private static final class ArrayDecoder implements ValueDecoder {
+        private final Schema schema;
+        private final ValueDecoder elementDecoder;
+
+        ArrayDecoder(Schema schema, ValueDecoder elementDecoder) {
+            this.schema = schema;
+            this.elementDecoder = elementDecoder;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object decode(JsonNode node, Object reuse) {
+            if (!node.isArray()) {
+                throw typeError("array", node);
+            }
+            GenericData.Array<Object> array;
+            if (reuse instanceof GenericData.Array) {
+                array = (GenericData.Array<Object>) reuse;
+                array.clear();
+            } else {
+                array = new GenericData.Array<>(node.size(), schema);
+            }
+            for (JsonNode element : node) {
+                array.add(decodeNullable(elementDecoder, element, array.peek()));
+            }
+            return array;
+        }
+
+        @Override
+        public boolean accepts(JsonNode node) {
+            return node.isArray();
+        }
+    }
+
+    private static final class MapDecoder implements ValueDecoder {
+        private final ValueDecoder valueDecoder;
+
+        MapDecoder(ValueDecoder valueDecoder) {
+            this.valueDecoder = valueDecoder;
+        }
+
+        @Override
+        public Object decode(JsonNode node, Object reuse) {
+            if (!node.isObject()) {
+                throw typeError("map", node);
+            }
+            Map<String, Object> map = new LinkedHashMap<>(Math.max(4, node.size() * 2));
+            Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> entry = fields.next();
+                JsonNode value = entry.getValue();
+                map.put(entry.getKey(), decodeNullable(valueDecoder, value, null));
+            }
+            return map;
+        }
+
+        @Override
+        public boolean accepts(JsonNode node) {
+            return node.isObject();
+        }
+    }
+
+    private static final class EnumDecoder implements ValueDecoder {
+        private final Schema schema;
+        private final Map<String, GenericData.EnumSymbol> symbols = new HashMap<>();
+
+        EnumDecoder(Schema schema) {
+            this.schema = schema;
+            for (String symbol : schema.getEnumSymbols()) {
+                symbols.put(symbol, new GenericData.EnumSymbol(schema, symbol));
+            }
+        }
+
+        @Override
+        public Object decode(JsonNode node, Object reuse) {
+            GenericData.EnumSymbol symbol = node.isTextual() ? symbols.get(node.textValue()) : null;
+            if (symbol == null) {
+                throw new AvroTypeException("Unknown symbol " + node + " of enum " + schema.getFullName());
+            }
+            return symbol;
+        }
+
+        @Override
+        public boolean accepts(JsonNode node) {
+            return node.isTextual() && symbols.containsKey(node.textValue());
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.lakehouse.common;
+
+/**
+ * The Flight Recorder events of the connector, recorded with their durations to explain where a stalled sink or
+ * source spends its time. Like other custom events, they are enabled in every recording unless its settings disable
+ * them, e.g. with {@code jfr configure org.apache.pulsar.lakehouse.ParquetFileOpen#enabled=false}.
+ */
+public final class LakehouseEvents {
+    private static final String PREFIX = "org.apache.pulsar.lakehouse.";
+
+    public static final FlightRecorderEvent DELTA_COMMIT = FlightRecorderEvent
+        .builder(PREFIX + "DeltaCommit", "Delta Commit")
+        .description("Commit of data files into a Delta table with an optimistic transaction")
+        .field("table", String.class)
+        .field("files", long.class)
+        .field("bytes", long.class)
+        .field("version", long.class)
+        .build();
+
+    public static final FlightRecorderEvent ICEBERG_FLUSH = FlightRecorderEvent
+        .builder(PREFIX + "IcebergFlush", "Iceberg Flush")
+        .description("Close of the data files of an Iceberg writer, and their commit unless they are only prepared")
+        .field("table", String.class)
+        .field("files", long.class)
+        .field("bytes", long.class)
+        .field("committed", boolean.class)
+        .build();
+
+    public static final FlightRecorderEvent HUDI_FLUSH = FlightRecorderEvent
+        .builder(PREFIX + "HudiFlush", "Hudi Flush")
+        .description("Write of the buffered records into a Hudi table")
+        .field("table", String.class)
+        .field("records", long.class)
+        .field("files", long.class)
+        .build();
+
+    public static final FlightRecorderEvent SCHEMA_UPDATE = FlightRecorderEvent
+        .builder(PREFIX + "SchemaUpdate", "Schema Update")
+        .description("Table schema change, which flushes the files written with the previous schema")
+        .field("format", String.class)
+        .field("table", String.class)
+        .field("fields", int.class)
+        .field("changed", boolean.class)
+        .field("attempts", int.class)
+        .build();
+
+    public static final FlightRecorderEvent PARQUET_FILE_OPEN = FlightRecorderEvent
+        .builder(PREFIX + "ParquetFileOpen", "Parquet File Open")
+        .description("Open of a new parquet data file by a Delta writer")
+        .field("path", String.class)
+        .build();
+
+    public static final FlightRecorderEvent PARQUET_FILE_CLOSE = FlightRecorderEvent
+        .builder(PREFIX + "ParquetFileClose", "Parquet File Close")
+        .description("Close of a parquet data file by a Delta writer, when it is rolled or flushed")
+        .field("path", String.class)
+        .field("bytes", long.class)
+        .build();
+
+    public static final FlightRecorderEvent SINK_BACKPRESSURE = FlightRecorderEvent
+        .builder(PREFIX + "SinkBackpressure", "Sink Backpressure")
+        .description("Wait of SinkConnector.write for room in the writer queues or the buffered bytes budget")
+        .threshold("10 ms")
+        .field("topic", String.class)
+        .field("bufferedBytes", long.class)
+        .field("attempts", int.class)
+        .build();
+
+    public static final FlightRecorderEvent SOURCE_READ_ACTIONS = FlightRecorderEvent
+        .builder(PREFIX + "SourceReadActions", "Source Read Actions")
+        .description("Read of the file actions of a Delta table from a version")
+        .field("table", String.class)
+        .field("startVersion", long.class)
+        .field("fullSnapshot", boolean.class)
+        .field("actions", int.class)
+        .field("bytes", long.class)
+        .build();
+
+    public static final FlightRecorderEvent SOURCE_PARQUET_PARSE = FlightRecorderEvent
+        .builder(PREFIX + "SourceParquetParse", "Source Parquet Parse")
+        .description("Parse of a parquet file of a Delta table into records")
+        .field("path", String.class)
+        .field("rows", long.class)
+        .build();
+
+    private LakehouseEvents() {
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.lakehouse.common;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Byte budget shared by the producers and consumers of a buffer. Producers acquire the estimated size of an element
+ * before buffering it, and wait while the budget is used up. Consumers release it once the element is processed.
+ *
+ * <p>An element larger than the whole budget is admitted when nothing else is buffered, so it can't block forever.
+ */
+public class MemoryLimiter {
+    private volatile long maxBytes;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private volatile long usedBytes;
+
+    public MemoryLimiter(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes should be > 0, but got " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Acquire the given bytes if they fit into the budget.
+     * @return false if the budget is used up
+     */
+    public boolean tryAcquire(long bytes) {
+        lock.lock();
+        try {
+            return acquireIfFits(bytes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Acquire the given bytes, waiting up to the given timeout for other elements to be released.
+     * @return false if the bytes still don't fit into the budget after the timeout
+     */
+    public boolean tryAcquire(long bytes, long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (!acquireIfFits(bytes)) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = released.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean acquireIfFits(long bytes) {
+        if (usedBytes > 0 && usedBytes + bytes > maxBytes) {
+            return false;
+        }
+        usedBytes += bytes;
+        return true;
+    }
+
+    public void release(long bytes) {
+        if (bytes <= 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            usedBytes = Math.max(0, usedBytes - bytes);
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Change the budget. Bytes already acquired above a lowered budget are kept until they are released.
+     */
+    public void setMaxBytes(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes should be > 0, but got " + maxBytes);
+        }
+        lock.lock();
+        try {
+            this.maxBytes = maxBytes;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,266 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.lakehouse.common;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.Message;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.avro.JsonProperties;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+
+/**
+ * Convert protobuf messages of the given descriptor into Avro {@link GenericRecord}s, the row representation of the
+ * lakehouse writers. The Avro schema is derived from the descriptor, and the descriptor is compiled once into a tree
+ * of field converters, so a message is converted by reading its fields directly instead of going through JSON.
+ *
+ * <p>Fields with presence, i.e. message, oneof and proto3 optional fields, are nullable. Repeated fields convert to
+ * arrays and map fields to maps with string keys. Enums convert to their value names, and bytes to read only
+ * buffers over the message bytes. Records, arrays and maps of the previous result are reused when passed back in.
+ */
+public class ProtobufRecordConverter {
+
+    private interface ValueConverter {
+        Object convert(Object value, Object reuse);
+    }
+
+    private static final ValueConverter IDENTITY = (value, reuse) -> value;
+    private static final ValueConverter BYTES = (value, reuse) -> ((ByteString) value).asReadOnlyByteBuffer();
+    private static final ValueConverter ENUM =
+        (value, reuse) -> ((Descriptors.EnumValueDescriptor) value).getName();
+
+    private final Descriptors.Descriptor descriptor;
+    private final RecordConverter root;
+
+    public ProtobufRecordConverter(Descriptors.Descriptor descriptor) {
+        this.descriptor = descriptor;
+        this.root = compile(descriptor, new HashMap<>());
+    }
+
+    public Descriptors.Descriptor getDescriptor() {
+        return descriptor;
+    }
+
+    /**
+     * The Avro schema derived from the descriptor.
+     */
+    public Schema getSchema() {
+        return root.schema;
+    }
+
+    /**
+     * Convert the message.
+     * @param message a message of the descriptor
+     * @param reuse the record returned by the previous call, or null
+     * @return the converted record, which is the reused record if it had the same schema
+     */
+    public GenericRecord convert(Message message, GenericRecord reuse) {
+        if (message.getDescriptorForType() != descriptor
+            && !message.getDescriptorForType().getFullName().equals(descriptor.getFullName())) {
+            throw new IllegalArgumentException("Expected a message of " + descriptor.getFullName() + ", but got "
+                + message.getDescriptorForType().getFullName());
+        }
+        return (GenericRecord) root.convert(message, reuse);
+    }
+
+    private static RecordConverter compile(Descriptors.Descriptor descriptor,
+                                           Map<Descriptors.Descriptor, RecordConverter> records) {
+        RecordConverter recordConverter = records.get(descriptor);
+        if (recordConverter == null) {
+            // register before compiling the fields, so recursive messages refer to the same converter and schema
+            recordConverter = new RecordConverter(descriptor);
+            records.put(descriptor, recordConverter);
+            recordConverter.compileFields(records);
+        }
+        return recordConverter;
+    }
+
+    private static final class RecordConverter implements ValueConverter {
+        private final Descriptors.Descriptor descriptor;
+        private final Schema schema;
+        private Descriptors.FieldDescriptor[] fields;
+        private boolean[] nullable;
+        private ValueConverter[] converters;
+
+        RecordConverter(Descriptors.Descriptor descriptor) {
+            this.descriptor = descriptor;
+            String fullName = descriptor.getFullName();
+            String namespace = fullName.length() > descriptor.getName().length()
+                ? fullName.substring(0, fullName.length() - descriptor.getName().length() - 1) : null;
+            this.schema = Schema.createRecord(descriptor.getName(), null, namespace, false);
+        }
+
+        void compileFields(Map<Descriptors.Descriptor, RecordConverter> records) {
+            List<Descriptors.FieldDescriptor> fieldDescriptors = descriptor.getFields();
+            int n = fieldDescriptors.size();
+            fields = new Descriptors.FieldDescriptor[n];
+            nullable = new boolean[n];
+            converters = new ValueConverter[n];
+            List<Schema.Field> avroFields = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                Descriptors.FieldDescriptor field = fieldDescriptors.get(i);
+                fields[i] = field;
+                nullable[i] = !field.isRepeated() && field.hasPresence();
+
+                Schema fieldSchema;
+                if (field.isMapField()) {
+                    Descriptors.FieldDescriptor key = field.getMessageType().findFieldByNumber(1);
+                    Descriptors.FieldDescriptor value = field.getMessageType().findFieldByNumber(2);
+                    fieldSchema = Schema.createMap(valueSchema(value, records));
+                    converters[i] = new MapConverter(key, value, valueConverter(value, records));
+                } else if (field.isRepeated()) {
+                    fieldSchema = Schema.createArray(valueSchema(field, records));
+                    converters[i] = new ArrayConverter(fieldSchema, valueConverter(field, records));
+                } else {
+                    fieldSchema = valueSchema(field, records);
+                    converters[i] = valueConverter(field, records);
+                }
+
+                if (nullable[i]) {
+                    avroFields.add(new Schema.Field(field.getName(),
+                        Schema.createUnion(Schema.create(Schema.Type.NULL), fieldSchema), null,
+                        JsonProperties.NULL_VALUE));
+                } else {
+                    avroFields.add(new Schema.Field(field.getName(), fieldSchema, null, (Object) null));
+                }
+            }
+            schema.setFields(avroFields);
+        }
+
+        @Override
+        public Object convert(Object value, Object reuse) {
+            Message message = (Message) value;
+            GenericRecord record = reuse instanceof GenericData.Record && ((GenericRecord) reuse).getSchema() == schema
+                ? (GenericRecord) reuse : new GenericData.Record(schema);
+            for (int i = 0; i < fields.length; i++) {
+                if (nullable[i] && !message.hasField(fields[i])) {
+                    record.put(i, null);
+                } else {
+                    record.put(i, converters[i].convert(message.getField(fields[i]), record.get(i)));
+                }
+            }
+            return record;
+        }
+    }
+
+    private static final class ArrayConverter implements ValueConverter {
+        private final Schema schema;
+        private final ValueConverter elementConverter;
+
+        ArrayConverter(Schema schema, ValueConverter elementConverter) {
+            this.schema = schema;
+            this.elementConverter = elementConverter;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object convert(Object value, Object reuse) {
+            Collection<?> elements = (Collection<?>) value;
+            GenericData.Array<Object> array;
+            if (reuse instanceof GenericData.Array) {
+                array = (GenericData.Array<Object>) reuse;
+                array.clear();
+            } else {
+                array = new GenericData.Array<>(elements.size(), schema);
+            }
+            for (Object element : elements) {
+                array.add(elementConverter.convert(element, null));
+            }
+            return array;
+        }
+    }
+
+    private static final class MapConverter implements ValueConverter {
+        private final Descriptors.FieldDescriptor key;
+        private final Descriptors.FieldDescriptor value;
+        private final ValueConverter valueConverter;
+
+        MapConverter(Descriptors.FieldDescriptor key, Descriptors.FieldDescriptor value,
+                     ValueConverter valueConverter) {
+            this.key = key;
+            this.value = value;
+            this.valueConverter = valueConverter;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object convert(Object entries, Object reuse) {
+            Map<String, Object> map;
+            if (reuse instanceof LinkedHashMap) {
+                map = (Map<String, Object>) reuse;
+                map.clear();
+            } else {
+                map = new LinkedHashMap<>();
+            }
+            for (Object entry : (Collection<?>) entries) {
+                Message message = (Message) entry;
+                map.put(String.valueOf(message.getField(key)),
+                    valueConverter.convert(message.getField(value), null));
+            }
+            return map;
+        }
+    }
+
+    private static Schema valueSchema(Descriptors.FieldDescriptor field,
+                                      Map<Descriptors.Descriptor, RecordConverter> records) {
+        switch (field.getJavaType()) {
+            case INT:
+                return Schema.create(Schema.Type.INT);
+            case LONG:
+                return Schema.create(Schema.Type.LONG);
+            case FLOAT:
+                return Schema.create(Schema.Type.FLOAT);
+            case DOUBLE:
+                return Schema.create(Schema.Type.DOUBLE);
+            case BOOLEAN:
+                return Schema.create(Schema.Type.BOOLEAN);
+            case STRING:
+            case ENUM:
+                return Schema.create(Schema.Type.STRING);
+            case BYTE_STRING:
+                return Schema.create(Schema.Type.BYTES);
+            case MESSAGE:
+                return compile(field.getMessageType(), records).schema;
+            default:
+                throw new IllegalArgumentException("Unsupported protobuf field type " + field.getJavaType()
+                    + " of field " + field.getFullName());
+        }
+    }
+
+    private static ValueConverter valueConverter(Descriptors.FieldDescriptor field,
+                                                 Map<Descriptors.Descriptor, RecordConverter> records) {
+        switch (field.getJavaType()) {
+            case BYTE_STRING:
+                return BYTES;
+            case ENUM:
+                return ENUM;
+            case MESSAGE:
+                return compile(field.getMessageType(), records);
+            default:
+                return IDENTITY;
+        }
+    }
+}
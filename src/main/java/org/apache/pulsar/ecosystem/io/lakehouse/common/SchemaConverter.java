@@ -31,6 +31,7 @@ import io.delta.standalone.types.StringType;
 import io.delta.standalone.types.StructField;
 import io.delta.standalone.types.StructType;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.avro.Schema;
@@ -120,6 +121,27 @@ public class SchemaConverter {
         return (StructType) field.getDataType();
     }
 
+    /**
+     * The schema itself if it accepts null, otherwise a union of null and the schema.
+     */
+    public static Schema nullable(Schema schema) {
+        if (schema.getType() == Schema.Type.NULL) {
+            return schema;
+        }
+        if (schema.getType() == Schema.Type.UNION) {
+            for (Schema type : schema.getTypes()) {
+                if (type.getType() == Schema.Type.NULL) {
+                    return schema;
+                }
+            }
+            List<Schema> types = new ArrayList<>(schema.getTypes().size() + 1);
+            types.add(Schema.create(Schema.Type.NULL));
+            types.addAll(schema.getTypes());
+            return Schema.createUnion(types);
+        }
+        return Schema.createUnion(Arrays.asList(Schema.create(Schema.Type.NULL), schema));
+    }
+
     public static Schema convertPulsarAvroSchemaToNonNullSchema(Schema schema) {
         List<Schema.Field> newFields = new ArrayList<>();
         schema.getFields().forEach(f->{
@@ -0,0 +1,318 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.lakehouse.common;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded single-producer single-consumer ring buffer. The consumer drains the elements in batches, and both sides
+ * wait with the configured {@link WaitStrategy} when the buffer is empty or full. The slots are allocated by a power of
+ * two, but the buffer never holds more elements than the requested capacity.
+ *
+ * <p>Several threads may offer elements as long as the offers are serialized by the caller, e.g. with a lock.
+ *
+ * <p>The number of buffered elements can be limited below the capacity at runtime, see {@link #setLimit(int)}.
+ *
+ * @param <E> the type of the elements
+ */
+public class SpscRingBuffer<E> {
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    /**
+     * How a side waits for the other one.
+     */
+    public enum WaitStrategy {
+        /**
+         * Park on a condition, and get signalled by the other side. Lowest CPU usage.
+         */
+        BLOCKING,
+        /**
+         * Spin on the buffer indexes, only yielding the CPU between checks. Lowest latency, but burns a core while
+         * waiting.
+         */
+        BUSY_SPIN,
+        /**
+         * Park for a few microseconds between checks, without signalling.
+         */
+        PARK;
+
+        public static WaitStrategy fromString(String strategy) {
+            return valueOf(strategy.toUpperCase(Locale.ROOT));
+        }
+    }
+
+    private final Object[] buffer;
+    private final int capacity;
+    private final int mask;
+    private final WaitStrategy waitStrategy;
+    private volatile int limit;
+
+    // next index to consume, written by the consumer
+    private final AtomicLong head = new AtomicLong();
+    // next index to produce, written by the producer
+    private final AtomicLong tail = new AtomicLong();
+    // producer's view of head and consumer's view of tail, to avoid reading the other side's index on every call
+    private long cachedHead;
+    private long cachedTail;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private volatile boolean consumerWaiting;
+    private volatile boolean producerWaiting;
+
+    private volatile long offerWaitNanos;
+    private volatile long drainWaitNanos;
+
+    public SpscRingBuffer(int capacity, WaitStrategy waitStrategy) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity should be > 0, but got " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.buffer = new Object[size];
+        this.capacity = capacity;
+        this.mask = size - 1;
+        this.limit = capacity;
+        this.waitStrategy = waitStrategy;
+    }
+
+    /**
+     * Add the element if there is room for it.
+     * @return false if the buffer is full
+     */
+    public boolean offer(E e) {
+        long t = tail.get();
+        int max = limit;
+        if (t - cachedHead >= max) {
+            cachedHead = head.get();
+            if (t - cachedHead >= max) {
+                return false;
+            }
+        }
+        buffer[(int) t & mask] = e;
+        if (waitStrategy == WaitStrategy.BLOCKING) {
+            tail.set(t + 1);
+            if (consumerWaiting) {
+                signal(notEmpty);
+            }
+        } else {
+            tail.lazySet(t + 1);
+        }
+        return true;
+    }
+
+    /**
+     * Add the element, waiting up to the given timeout for room.
+     * @return false if the buffer is still full after the timeout
+     */
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        if (offer(e)) {
+            return true;
+        }
+        long start = System.nanoTime();
+        long deadline = start + unit.toNanos(timeout);
+        try {
+            while (true) {
+                if (offer(e)) {
+                    return true;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                awaitNotFull(remaining);
+            }
+        } finally {
+            offerWaitNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Move the available elements into the given array, from index 0.
+     * @return the number of elements moved
+     */
+    @SuppressWarnings("unchecked")
+    public int drainTo(E[] out) {
+        long h = head.get();
+        if (cachedTail == h) {
+            cachedTail = tail.get();
+            if (cachedTail == h) {
+                return 0;
+            }
+        }
+        int n = (int) Math.min(cachedTail - h, out.length);
+        for (int i = 0; i < n; i++) {
+            int index = (int) (h + i) & mask;
+            out[i] = (E) buffer[index];
+            buffer[index] = null;
+        }
+        if (waitStrategy == WaitStrategy.BLOCKING) {
+            head.set(h + n);
+            if (producerWaiting) {
+                signal(notFull);
+            }
+        } else {
+            head.lazySet(h + n);
+        }
+        return n;
+    }
+
+    /**
+     * Move the available elements into the given array, waiting up to the given timeout for the first one.
+     * @return the number of elements moved, 0 if the buffer is still empty after the timeout
+     */
+    public int drainTo(E[] out, long timeout, TimeUnit unit) throws InterruptedException {
+        int n = drainTo(out);
+        if (n > 0) {
+            return n;
+        }
+        long start = System.nanoTime();
+        long deadline = start + unit.toNanos(timeout);
+        try {
+            while (true) {
+                n = drainTo(out);
+                if (n > 0) {
+                    return n;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return 0;
+                }
+                awaitNotEmpty(remaining);
+            }
+        } finally {
+            drainWaitNanos += System.nanoTime() - start;
+        }
+    }
+
+    private void awaitNotEmpty(long nanos) throws InterruptedException {
+        switch (waitStrategy) {
+            case BLOCKING:
+                lock.lockInterruptibly();
+                try {
+                    consumerWaiting = true;
+                    while (isEmpty() && nanos > 0) {
+                        nanos = notEmpty.awaitNanos(nanos);
+                    }
+                } finally {
+                    consumerWaiting = false;
+                    lock.unlock();
+                }
+                break;
+            case PARK:
+                LockSupport.parkNanos(Math.min(PARK_NANOS, nanos));
+                checkInterrupted();
+                break;
+            default:
+                Thread.yield();
+                checkInterrupted();
+        }
+    }
+
+    private void awaitNotFull(long nanos) throws InterruptedException {
+        switch (waitStrategy) {
+            case BLOCKING:
+                lock.lockInterruptibly();
+                try {
+                    producerWaiting = true;
+                    while (size() >= limit && nanos > 0) {
+                        nanos = notFull.awaitNanos(nanos);
+                    }
+                } finally {
+                    producerWaiting = false;
+                    lock.unlock();
+                }
+                break;
+            case PARK:
+                LockSupport.parkNanos(Math.min(PARK_NANOS, nanos));
+                checkInterrupted();
+                break;
+            default:
+                Thread.yield();
+                checkInterrupted();
+        }
+    }
+
+    private void signal(Condition condition) {
+        lock.lock();
+        try {
+            condition.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void checkInterrupted() throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    public boolean isEmpty() {
+        return tail.get() == head.get();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * The max number of buffered elements, which is the capacity unless it was limited.
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Limit the number of buffered elements, between 1 and the capacity. Elements already buffered above a lowered
+     * limit stay in the buffer.
+     */
+    public void setLimit(int limit) {
+        this.limit = Math.max(1, Math.min(limit, capacity));
+        if (waitStrategy == WaitStrategy.BLOCKING && producerWaiting) {
+            signal(notFull);
+        }
+    }
+
+    /**
+     * Total time the producer has waited for room.
+     */
+    public long getOfferWaitNanos() {
+        return offerWaitNanos;
+    }
+
+    /**
+     * Total time the consumer has waited for elements.
+     */
+    public long getDrainWaitNanos() {
+        return drainWaitNanos;
+    }
+}
@@ -40,6 +40,8 @@ import org.apache.parquet.avro.AvroParquetWriter;
 import org.apache.parquet.hadoop.ParquetWriter;
 import org.apache.parquet.hadoop.metadata.CompressionCodecName;
 import org.apache.parquet.hadoop.util.HadoopInputFile;
+import org.apache.pulsar.ecosystem.io.lakehouse.common.FlightRecorderEvent;
+import org.apache.pulsar.ecosystem.io.lakehouse.common.LakehouseEvents;
 
 
 /**
@@ -90,6 +92,24 @@ public class DeltaParquetFileWriter implements DeltaParquetWriter {
         log.info("DEBUG-Record written to parquet file at: " + currentFileFullPath);
     }
 
+    @Override
+    public void writeToParquetFile(List<GenericRecord> records) throws IOException {
+        if (records.isEmpty()) {
+            return;
+        }
+        if (isClosed.get() || StringUtils.isBlank(currentFileFullPath)) {
+            currentFileFullPath = generateNextFilePath(partitionColumnPath, tablePath, compression);
+            writer = openNewFile(currentFileFullPath, schema, configuration, compression);
+            isClosed.set(false);
+        }
+        for (GenericRecord record : records) {
+            writer.write(record);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("{} records written to parquet file at: {}", records.size(), currentFileFullPath);
+        }
+    }
+
     @VisibleForTesting
     public long getFileSize(String fileFullPath) throws IOException {
         Path path = new Path(fileFullPath);
@@ -102,12 +122,14 @@ public class DeltaParquetFileWriter implements DeltaParquetWriter {
         if (isClosed.get()) {
             return null;
         }
+        FlightRecorderEvent.Recording event = LakehouseEvents.PARQUET_FILE_CLOSE.begin();
         String closedFileFullPath = currentFileFullPath;
         String filePath = currentFileFullPath.substring(
                 currentFileFullPath.indexOf(tablePath) + tablePath.length() + 1);
         close();
         lastRollFileTimestamp = System.currentTimeMillis();
         FileStat fileStat = new FileStat(filePath, getFileSize(closedFileFullPath), partitionValues);
+        event.set("path", closedFileFullPath).set("bytes", fileStat.getFileSize()).commit();
         return Collections.singletonList(fileStat);
     }
 
@@ -167,6 +189,7 @@ public class DeltaParquetFileWriter implements DeltaParquetWriter {
                                                        Schema schema,
                                                        Configuration configuration,
                                                        String compression) throws IOException {
+        FlightRecorderEvent.Recording event = LakehouseEvents.PARQUET_FILE_OPEN.begin();
         ParquetWriter<GenericRecord> writer = AvroParquetWriter
             .<GenericRecord>builder(new Path(currentFileFullPath))
             .withRowGroupSize(DEFAULT_BLOCK_SIZE)
@@ -180,6 +203,7 @@ public class DeltaParquetFileWriter implements DeltaParquetWriter {
 
         log.info("DEBUG-Parquet Writer-Schema: " + schema);
         log.info("open: {} parquet writer succeed. {}", currentFileFullPath, writer);
+        event.set("path", currentFileFullPath).commit();
         return writer;
     }
 
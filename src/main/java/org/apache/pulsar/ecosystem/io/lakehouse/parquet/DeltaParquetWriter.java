@@ -62,6 +62,15 @@ public interface DeltaParquetWriter {
 
     void writeToParquetFile(GenericRecord record) throws IOException;
 
+    /**
+     * Write a batch of records, in order. The records may be reused by the caller once the call returns.
+     */
+    default void writeToParquetFile(List<GenericRecord> records) throws IOException {
+        for (GenericRecord record : records) {
+            writeToParquetFile(record);
+        }
+    }
+
     List<FileStat> closeAndFlush() throws IOException;
 
     void updateSchema(Schema schema);
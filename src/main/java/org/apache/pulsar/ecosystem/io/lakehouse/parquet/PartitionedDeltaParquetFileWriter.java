@@ -21,6 +21,7 @@ package org.apache.pulsar.ecosystem.io.lakehouse.parquet;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -41,6 +42,9 @@ public class PartitionedDeltaParquetFileWriter implements DeltaParquetWriter {
     private final List<String> partitionColumns;
     private final Configuration configuration;
     private final String compression;
+    // partition column fields of the last record schema, resolved once per schema for the batch path
+    private Schema resolvedSchema;
+    private Schema.Field[] resolvedFields;
 
     public PartitionedDeltaParquetFileWriter(Configuration configuration, String tablePath,
                                              List<String> partitionColumns, String compression, Schema schema) {
@@ -78,6 +82,74 @@ public class PartitionedDeltaParquetFileWriter implements DeltaParquetWriter {
         writer.writeToParquetFile(record);
     }
 
+    /**
+     * Group the records by partition, so each partition writer is looked up once per batch. The records of a
+     * partition keep their order.
+     */
+    @Override
+    public void writeToParquetFile(List<GenericRecord> records) throws IOException {
+        if (records.isEmpty()) {
+            return;
+        }
+        Map<String, List<GenericRecord>> partitions = new LinkedHashMap<>();
+        String lastPartitionValue = null;
+        List<GenericRecord> lastPartition = null;
+        for (GenericRecord record : records) {
+            String partitionValue = getPartitionValuePath(record);
+            if (!partitionValue.equals(lastPartitionValue)) {
+                lastPartitionValue = partitionValue;
+                lastPartition = partitions.computeIfAbsent(partitionValue, k -> new ArrayList<>());
+            }
+            lastPartition.add(record);
+        }
+
+        for (Map.Entry<String, List<GenericRecord>> partition : partitions.entrySet()) {
+            DeltaParquetFileWriter writer = writerMap.get(partition.getKey());
+            if (writer == null) {
+                writer = new DeltaParquetFileWriter(configuration, tablePath, compression, schema,
+                    partition.getKey(), getPartitionValues(partition.getValue().get(0), partitionColumns));
+                writerMap.put(partition.getKey(), writer);
+            }
+            writer.writeToParquetFile(partition.getValue());
+        }
+    }
+
+    /**
+     * Same as {@link #getPartitionValuePath(GenericRecord, List)}, with the partition fields resolved once per
+     * record schema.
+     */
+    private String getPartitionValuePath(GenericRecord record) {
+        if (partitionColumns == null || partitionColumns.isEmpty()) {
+            return "";
+        }
+        if (record.getSchema() != resolvedSchema) {
+            resolvedSchema = record.getSchema();
+            resolvedFields = new Schema.Field[partitionColumns.size()];
+            for (int i = 0; i < resolvedFields.length; i++) {
+                Schema.Field field = resolvedSchema.getField(partitionColumns.get(i));
+                if (field == null) {
+                    resolvedFields = null;
+                    break;
+                }
+                resolvedFields[i] = field;
+            }
+        }
+        if (resolvedFields == null) {
+            return "";
+        }
+
+        StringBuilder pathBuilder = new StringBuilder();
+        for (int i = 0; i < resolvedFields.length; i++) {
+            if (i > 0) {
+                pathBuilder.append("/");
+            }
+            pathBuilder.append(resolvedFields[i].name())
+                .append("=")
+                .append(record.get(resolvedFields[i].pos()));
+        }
+        return pathBuilder.toString();
+    }
+
     public static Map<String, String> getPartitionValues(GenericRecord genericRecord, List<String> partitionColumns) {
         Map<String, String> partitionValues = new ConcurrentHashMap<>();
         if (partitionColumns == null || partitionColumns.isEmpty()) {
@@ -0,0 +1,179 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.lakehouse.sink;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.pulsar.ecosystem.io.lakehouse.SinkConnectorConfig;
+
+/**
+ * Tunes the commit triggers from the observed load. Every few seconds it estimates how fast the data files grow,
+ * from the dispatched bytes and the ratio of committed file bytes to dispatched bytes, and picks the commit interval
+ * and records per commit which reach adaptiveCommitTargetFileSize per file.
+ *
+ * <p>The interval is shortened so records are committed within adaptiveCommitFreshnessSlo, commit latency included,
+ * and kept between minCommitInterval and maxCommitInterval. It is never shorter than the commit latency divided by
+ * maxInFlightCommits, which is the rate the committer can sustain, nor than the commit latency when the writer
+ * queues are nearly full, so commits don't pile up behind a slow table.
+ *
+ * <p>The observations are made by the dispatcher, except the commits which are reported by the committer thread.
+ */
+class AdaptiveCommitController {
+    static final long EVALUATE_INTERVAL_MS = 10_000;
+    private static final double SMOOTHING = 0.3;
+    private static final double HIGH_QUEUE_FILL = 0.8;
+
+    private final SinkConnectorConfig config;
+
+    // written by the dispatcher only
+    private long lastEvaluateTime;
+    private long dispatchedBytes;
+    private long dispatchedRecords;
+    private double bytesPerSecond = -1;
+    private double bytesPerRecord = -1;
+    private double fileBytesRatio = 1;
+    private double filesPerCommit;
+    private long intervalMillis;
+    private long minIntervalMillis;
+    private long recordsPerCommit;
+
+    // written by the committer
+    private final LongAdder commits = new LongAdder();
+    private final LongAdder committedFiles = new LongAdder();
+    private final LongAdder committedBytes = new LongAdder();
+    private volatile double commitLatencyMillis;
+
+    /**
+     * @param writers the number of writers, each one writes at least one file per commit
+     */
+    AdaptiveCommitController(SinkConnectorConfig config, int writers, long now) {
+        this.config = config;
+        this.filesPerCommit = writers;
+        this.lastEvaluateTime = now;
+        this.intervalMillis = TimeUnit.SECONDS.toMillis(config.getMaxCommitInterval());
+        this.recordsPerCommit = config.getMaxRecordsPerCommit();
+    }
+
+    void onDispatched(long bytes) {
+        dispatchedRecords++;
+        dispatchedBytes += bytes;
+    }
+
+    /**
+     * Called by the committer once the prepared data is committed.
+     */
+    void onCommitted(long nanos, List<PreparedCommit> committed) {
+        long files = 0;
+        long bytes = 0;
+        for (PreparedCommit preparedCommit : committed) {
+            files += preparedCommit.getFileCount();
+            bytes += preparedCommit.getFileBytes();
+        }
+        commits.increment();
+        committedFiles.add(files);
+        committedBytes.add(bytes);
+        commitLatencyMillis = smooth(commitLatencyMillis, TimeUnit.NANOSECONDS.toMillis(nanos));
+    }
+
+    boolean isDue(long now) {
+        return now - lastEvaluateTime >= EVALUATE_INTERVAL_MS;
+    }
+
+    /**
+     * Update the estimates with the load observed since the previous evaluation, and pick new commit triggers.
+     * @param queueFill the fraction of the writer queues in use, between 0 and 1
+     * @return true if a trigger has changed
+     */
+    boolean evaluate(long now, double queueFill) {
+        long elapsed = now - lastEvaluateTime;
+        if (elapsed <= 0) {
+            return false;
+        }
+        lastEvaluateTime = now;
+
+        bytesPerSecond = smooth(bytesPerSecond, dispatchedBytes * 1000.0 / elapsed);
+        if (dispatchedRecords > 0) {
+            bytesPerRecord = smooth(bytesPerRecord, (double) dispatchedBytes / dispatchedRecords);
+        }
+        long commitCount = commits.sumThenReset();
+        long files = committedFiles.sumThenReset();
+        long bytes = committedBytes.sumThenReset();
+        // formats which don't report their files keep the estimates from the dispatched bytes
+        if (files > 0 && dispatchedBytes > 0) {
+            fileBytesRatio = smooth(fileBytesRatio, (double) bytes / dispatchedBytes);
+            filesPerCommit = smooth(filesPerCommit, (double) files / commitCount);
+        }
+        dispatchedBytes = 0;
+        dispatchedRecords = 0;
+
+        long maxInterval = TimeUnit.SECONDS.toMillis(config.getMaxCommitInterval());
+        long latency = (long) commitLatencyMillis;
+        double commitBytes = (double) config.getAdaptiveCommitTargetFileSize() * Math.max(1, filesPerCommit);
+
+        long interval = maxInterval;
+        double fileBytesPerSecond = bytesPerSecond * fileBytesRatio;
+        if (fileBytesPerSecond > 0) {
+            interval = (long) Math.min(maxInterval, commitBytes * 1000 / fileBytesPerSecond);
+        }
+        interval = Math.min(interval, TimeUnit.SECONDS.toMillis(config.getAdaptiveCommitFreshnessSlo()) - latency);
+
+        long minInterval = Math.max(TimeUnit.SECONDS.toMillis(config.getMinCommitInterval()),
+            latency / Math.max(1, config.getMaxInFlightCommits()));
+        if (queueFill >= HIGH_QUEUE_FILL) {
+            minInterval = Math.max(minInterval, latency);
+        }
+        minInterval = Math.min(minInterval, maxInterval);
+        interval = Math.max(minInterval, interval);
+
+        long records = config.getMaxRecordsPerCommit();
+        if (bytesPerRecord > 0) {
+            records = (long) Math.max(1, Math.min(records, commitBytes / (bytesPerRecord * fileBytesRatio)));
+        }
+
+        boolean changed = interval != intervalMillis || minInterval != minIntervalMillis
+            || records != recordsPerCommit;
+        intervalMillis = interval;
+        minIntervalMillis = minInterval;
+        recordsPerCommit = records;
+        return changed;
+    }
+
+    /**
+     * The time after which the records dispatched since the previous commit are committed.
+     */
+    long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    /**
+     * The min time between commits triggered by the number of records.
+     */
+    long getMinIntervalMillis() {
+        return minIntervalMillis;
+    }
+
+    long getRecordsPerCommit() {
+        return recordsPerCommit;
+    }
+
+    private static double smooth(double average, double value) {
+        return average <= 0 ? value : average + SMOOTHING * (value - average);
+    }
+}
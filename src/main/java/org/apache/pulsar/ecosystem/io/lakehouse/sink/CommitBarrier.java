@@ -0,0 +1,103 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.lakehouse.sink;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Commit barrier. It is put into every writer queue at the same position of the input stream, so all the records
+ * dispatched before it are written by the time every writer has reached it.
+ */
+class CommitBarrier extends PulsarSinkRecord {
+    private final long id;
+    private final int parties;
+    private final PendingAcks pendingAcks;
+    private final long oldestAddTime;
+    private final Map<String, String> commitProperties;
+    private final List<FreshnessTrace> traces;
+    private final List<PreparedCommit> prepared;
+    private int arrived;
+    private final CompletableFuture<Boolean> committed;
+
+    CommitBarrier(long id, int parties, PendingAcks pendingAcks, Map<String, String> commitProperties,
+                  List<FreshnessTrace> traces) {
+        super(null);
+        this.id = id;
+        this.parties = parties;
+        this.pendingAcks = pendingAcks;
+        this.oldestAddTime = pendingAcks.getOldestAddTime();
+        this.commitProperties = commitProperties;
+        this.traces = traces;
+        this.prepared = new ArrayList<>(parties);
+        this.committed = new CompletableFuture<>();
+    }
+
+    long getId() {
+        return id;
+    }
+
+    /**
+     * The records dispatched since the previous barrier, acked once the barrier is committed.
+     */
+    PendingAcks getPendingAcks() {
+        return pendingAcks;
+    }
+
+    /**
+     * When the oldest record of the barrier was dispatched, 0 if no records were dispatched before it. Taken when the
+     * barrier is created, so it can be read while the committer acks the records.
+     */
+    long getOldestAddTime() {
+        return oldestAddTime;
+    }
+
+    /**
+     * The properties recorded with the commit of the barrier, e.g. the redelivery watermarks.
+     */
+    Map<String, String> getCommitProperties() {
+        return commitProperties;
+    }
+
+    /**
+     * The freshness traces of the sampled records dispatched since the previous barrier.
+     */
+    List<FreshnessTrace> getTraces() {
+        return traces;
+    }
+
+    /**
+     * Record the data prepared by one writer, one per table it writes.
+     * @return true if all the writers have arrived
+     */
+    synchronized boolean arrive(List<PreparedCommit> preparedCommits) {
+        prepared.addAll(preparedCommits);
+        return ++arrived == parties;
+    }
+
+    synchronized List<PreparedCommit> getPrepared() {
+        return new ArrayList<>(prepared);
+    }
+
+    CompletableFuture<Boolean> getCommitted() {
+        return committed;
+    }
+}
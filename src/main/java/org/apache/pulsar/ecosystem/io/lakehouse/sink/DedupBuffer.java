@@ -0,0 +1,240 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.lakehouse.sink;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.hudi.common.util.collection.ExternalSpillableMap;
+
+/**
+ * Buffers the records of a commit batch by key, keeping only the latest record of each key. The latest record is the
+ * one with the greatest value of the ordering column, or the last one added without an ordering column. Records
+ * with the same ordering value are resolved by arrival order.
+ *
+ * <p>The records are kept Avro encoded in an {@link ExternalSpillableMap}, like the Hudi writer buffers its records,
+ * so the buffer spills to disk once it goes beyond its memory budget. All the records of the buffer have the same
+ * schema, so the buffer must be written out before the schema of the table changes.
+ */
+class DedupBuffer implements Closeable {
+    private static final int WRITE_BATCH_SIZE = 1024;
+    // estimated heap overhead of an entry besides the encoded record
+    private static final long ENTRY_OVERHEAD = 64;
+
+    private final List<String> keyColumns;
+    private final String orderingColumn;
+    private final long maxMemoryBytes;
+    private final String spillPath;
+    private final StringBuilder keyBuilder = new StringBuilder();
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final GenericRecord[] reusedRecords = new GenericRecord[WRITE_BATCH_SIZE];
+    private BinaryEncoder encoder;
+    private BinaryDecoder decoder;
+
+    // layout of the buffered records, taken from the first record of a batch
+    private Schema schema;
+    private int[] keyPositions;
+    private int orderingPosition;
+    private GenericDatumWriter<GenericRecord> datumWriter;
+    private GenericDatumReader<GenericRecord> datumReader;
+    private ExternalSpillableMap<String, Entry> records;
+    private long added;
+
+    /**
+     * @param orderingColumn the column ordering the records of a key, or null to keep the last record added
+     * @param spillPath the directory of the spilled records
+     */
+    DedupBuffer(List<String> keyColumns, String orderingColumn, long maxMemoryBytes, String spillPath) {
+        this.keyColumns = keyColumns;
+        this.orderingColumn = orderingColumn;
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.spillPath = spillPath;
+    }
+
+    /**
+     * Buffer the record, unless a record with the same key and a greater ordering value is buffered already. The
+     * record is copied, so the caller may reuse it.
+     * @throws IllegalArgumentException if the record misses a key or ordering column
+     */
+    void add(GenericRecord record) throws IOException {
+        if (records == null) {
+            init(record.getSchema());
+        }
+        String key = keyOf(record);
+        Serializable ordering = null;
+        if (orderingPosition >= 0) {
+            ordering = normalize(record.get(orderingPosition));
+            Entry buffered = records.get(key);
+            if (buffered != null && compare(ordering, buffered.ordering) < 0) {
+                added++;
+                return;
+            }
+        }
+        records.put(key, new Entry(ordering, encode(record)));
+        added++;
+    }
+
+    boolean isEmpty() {
+        return added == 0;
+    }
+
+    /**
+     * Hand the latest record of every key over to the lakehouse writer, and empty the buffer.
+     * @return the number of records dropped as older versions of a key
+     */
+    long writeTo(LakehouseWriter writer) throws IOException {
+        if (records == null) {
+            return 0;
+        }
+        List<GenericRecord> batch = new ArrayList<>(WRITE_BATCH_SIZE);
+        Iterator<Entry> iterator = records.iterator();
+        while (iterator.hasNext()) {
+            int slot = batch.size();
+            decoder = DecoderFactory.get().binaryDecoder(iterator.next().record, decoder);
+            reusedRecords[slot] = datumReader.read(reusedRecords[slot], decoder);
+            batch.add(reusedRecords[slot]);
+            if (batch.size() == WRITE_BATCH_SIZE) {
+                writer.writeAvroRecords(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            writer.writeAvroRecords(batch);
+        }
+        long dropped = added - records.size();
+        close();
+        return dropped;
+    }
+
+    /**
+     * Drop the buffered records and delete the spilled ones.
+     */
+    @Override
+    public void close() {
+        if (records != null) {
+            records.close();
+            records = null;
+        }
+        added = 0;
+    }
+
+    private void init(Schema schema) throws IOException {
+        if (this.schema != schema) {
+            this.keyPositions = new int[keyColumns.size()];
+            for (int i = 0; i < keyPositions.length; i++) {
+                keyPositions[i] = positionOf(schema, keyColumns.get(i));
+            }
+            this.orderingPosition = orderingColumn == null ? -1 : positionOf(schema, orderingColumn);
+            this.datumWriter = new GenericDatumWriter<>(schema);
+            this.datumReader = new GenericDatumReader<>(schema);
+            this.schema = schema;
+        }
+        this.records = new ExternalSpillableMap<>(maxMemoryBytes, spillPath,
+            key -> ENTRY_OVERHEAD + 2L * key.length(),
+            entry -> ENTRY_OVERHEAD + entry.record.length,
+            ExternalSpillableMap.DiskMapType.BITCASK, false);
+    }
+
+    private static int positionOf(Schema schema, String column) {
+        Schema.Field field = schema.getField(column);
+        if (field == null) {
+            throw new IllegalArgumentException("Dedup column '" + column + "' is missing from the record schema "
+                + schema.getFullName());
+        }
+        return field.pos();
+    }
+
+    /**
+     * The values of the key columns, each prefixed with its length so the composite keys can't collide.
+     */
+    private String keyOf(GenericRecord record) {
+        keyBuilder.setLength(0);
+        for (int position : keyPositions) {
+            Object value = record.get(position);
+            if (value == null) {
+                keyBuilder.append('-');
+            } else {
+                String s = value.toString();
+                keyBuilder.append(s.length()).append(':').append(s);
+            }
+        }
+        return keyBuilder.toString();
+    }
+
+    private byte[] encode(GenericRecord record) throws IOException {
+        out.reset();
+        encoder = EncoderFactory.get().binaryEncoder(out, encoder);
+        datumWriter.write(record, encoder);
+        encoder.flush();
+        return out.toByteArray();
+    }
+
+    private static Serializable normalize(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof Float || value instanceof Double) {
+            return ((Number) value).doubleValue();
+        }
+        return value.toString();
+    }
+
+    /**
+     * Compare two ordering values, null being the lowest one.
+     */
+    private static int compare(Serializable a, Serializable b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : -1) : 1;
+        }
+        if (a instanceof Long && b instanceof Long) {
+            return Long.compare((Long) a, (Long) b);
+        }
+        if (a instanceof Number && b instanceof Number) {
+            return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+        }
+        return a.toString().compareTo(b.toString());
+    }
+
+    private static final class Entry implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final Serializable ordering;
+        private final byte[] record;
+
+        Entry(Serializable ordering, byte[] record) {
+            this.ordering = ordering;
+            this.record = record;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.lakehouse.sink;
+
+/**
+ * Timestamps of a sampled record on its way from the producer to a committed and acked table commit. The publish
+ * and event times are wall clock times taken from the message, the stage timestamps are {@link System#nanoTime()}.
+ * Each stage sets its timestamp before handing the record over to the next one.
+ */
+class FreshnessTrace {
+    private final String messageId;
+    private final String topic;
+    // 0 if unknown
+    private final long publishTime;
+    private final long eventTime;
+    private final long receivedNanos;
+    private long dequeuedNanos;
+    private long convertedNanos;
+    private long writtenNanos;
+    // index of the record in the converted batch of its writer
+    private int batchIndex;
+
+    FreshnessTrace(PulsarSinkRecord record, long receivedNanos) {
+        this.messageId = record.getMessageIdKey();
+        this.topic = record.getTopicName();
+        Long publish = record.getPublishTime();
+        Long event = record.getEventTime();
+        this.publishTime = publish == null ? 0 : publish;
+        this.eventTime = event == null ? 0 : event;
+        this.receivedNanos = receivedNanos;
+    }
+
+    String getMessageId() {
+        return messageId;
+    }
+
+    String getTopic() {
+        return topic;
+    }
+
+    long getPublishTime() {
+        return publishTime;
+    }
+
+    long getEventTime() {
+        return eventTime;
+    }
+
+    long getReceivedNanos() {
+        return receivedNanos;
+    }
+
+    long getDequeuedNanos() {
+        return dequeuedNanos;
+    }
+
+    long getConvertedNanos() {
+        return convertedNanos;
+    }
+
+    long getWrittenNanos() {
+        return writtenNanos;
+    }
+
+    int getBatchIndex() {
+        return batchIndex;
+    }
+
+    /**
+     * Called by the writer once the record is drained from its queue and converted.
+     */
+    void onConverted(long dequeuedNanos, long convertedNanos, int batchIndex) {
+        this.dequeuedNanos = dequeuedNanos;
+        this.convertedNanos = convertedNanos;
+        this.batchIndex = batchIndex;
+    }
+
+    /**
+     * Called by the writer once the record is handed over to the lakehouse writer of its table.
+     */
+    void onWritten(long writtenNanos) {
+        this.writtenNanos = writtenNanos;
+    }
+}
@@ -0,0 +1,201 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.lakehouse.sink;
+
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_EVENT_TO_QUERYABLE_P50;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_EVENT_TO_QUERYABLE_P99;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_PUBLISH_TO_QUERYABLE_MAX;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_PUBLISH_TO_QUERYABLE_P50;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_PUBLISH_TO_QUERYABLE_P99;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_TRACE_COMMIT_TIME;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_TRACE_COMMIT_WAIT_TIME;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_TRACE_CONVERT_TIME;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_TRACE_QUEUE_WAIT_TIME;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_TRACE_WRITE_TIME;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pulsar.ecosystem.io.lakehouse.common.Utils;
+
+/**
+ * Traces the freshness of the sink: how long a record takes from its publish time to a committed and acked table
+ * commit, where it is queryable. One record out of freshnessTraceSampleInterval is sampled when it is received, and
+ * carries a {@link FreshnessTrace} through the writer stages. When the commit of the sampled records succeeds, the
+ * publish to queryable and event to queryable latency percentiles, and the average time spent in each stage, are
+ * recorded through the sink metrics, and each trace is logged as a JSON line when freshnessTraceLogEnabled is set.
+ */
+@Slf4j
+class FreshnessTracer {
+    private final int sampleInterval;
+    private final boolean traceLog;
+    private final SinkMetrics metrics;
+
+    // written by the thread receiving the records only
+    private int received;
+    // written by the dispatcher only, the traces of the records dispatched since the previous barrier
+    private List<FreshnessTrace> dispatched = new ArrayList<>();
+    // written by the committer only, the traces of the failed commits, reported once they are committed again
+    private final List<FreshnessTrace> retained = new ArrayList<>();
+
+    FreshnessTracer(int sampleInterval, boolean traceLog, SinkMetrics metrics) {
+        this.sampleInterval = sampleInterval;
+        this.traceLog = traceLog;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Called for each record received by the sink, before it is dispatched.
+     */
+    void onReceived(PulsarSinkRecord record) {
+        if (++received < sampleInterval) {
+            return;
+        }
+        received = 0;
+        record.setTrace(new FreshnessTrace(record, System.nanoTime()));
+    }
+
+    /**
+     * Called by the dispatcher once a sampled record is put into a writer queue.
+     */
+    void onDispatched(FreshnessTrace trace) {
+        dispatched.add(trace);
+    }
+
+    /**
+     * The traces of the records dispatched since the previous call, committed with the next barrier.
+     */
+    List<FreshnessTrace> takeDispatched() {
+        if (dispatched.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<FreshnessTrace> traces = dispatched;
+        dispatched = new ArrayList<>();
+        return traces;
+    }
+
+    /**
+     * Called by the committer when the commit of the traced records failed, they are committed with the next barrier.
+     */
+    void onCommitFailed(List<FreshnessTrace> traces) {
+        retained.addAll(traces);
+    }
+
+    /**
+     * Called by the committer once the traced records are committed and acked.
+     * @param commitStartNanos when the commit started
+     * @param committedNanos when the records were acked
+     */
+    void onCommitted(List<FreshnessTrace> traces, long commitStartNanos, long committedNanos) {
+        if (!retained.isEmpty()) {
+            retained.addAll(traces);
+            traces = new ArrayList<>(retained);
+            retained.clear();
+        }
+        if (traces.isEmpty()) {
+            return;
+        }
+        long committedTime = System.currentTimeMillis();
+        long[] publishToQueryable = new long[traces.size()];
+        long[] eventToQueryable = new long[traces.size()];
+        int published = 0;
+        int events = 0;
+        int traced = 0;
+        long queueWait = 0;
+        long convert = 0;
+        long write = 0;
+        long commitWait = 0;
+        for (FreshnessTrace trace : traces) {
+            if (trace.getWrittenNanos() == 0) {
+                // the record couldn't be converted, it isn't written into the table
+                continue;
+            }
+            traced++;
+            queueWait += trace.getDequeuedNanos() - trace.getReceivedNanos();
+            convert += trace.getConvertedNanos() - trace.getDequeuedNanos();
+            write += trace.getWrittenNanos() - trace.getConvertedNanos();
+            commitWait += commitStartNanos - trace.getWrittenNanos();
+            if (trace.getPublishTime() > 0) {
+                publishToQueryable[published++] = Math.max(0, committedTime - trace.getPublishTime());
+            }
+            if (trace.getEventTime() > 0) {
+                eventToQueryable[events++] = Math.max(0, committedTime - trace.getEventTime());
+            }
+            if (traceLog) {
+                logTrace(trace, commitStartNanos, committedNanos, committedTime);
+            }
+        }
+        if (traced == 0) {
+            return;
+        }
+
+        if (published > 0) {
+            Arrays.sort(publishToQueryable, 0, published);
+            metrics.record(SINK_PUBLISH_TO_QUERYABLE_P50, percentile(publishToQueryable, published, 0.5));
+            metrics.record(SINK_PUBLISH_TO_QUERYABLE_P99, percentile(publishToQueryable, published, 0.99));
+            metrics.record(SINK_PUBLISH_TO_QUERYABLE_MAX, publishToQueryable[published - 1]);
+        }
+        if (events > 0) {
+            Arrays.sort(eventToQueryable, 0, events);
+            metrics.record(SINK_EVENT_TO_QUERYABLE_P50, percentile(eventToQueryable, events, 0.5));
+            metrics.record(SINK_EVENT_TO_QUERYABLE_P99, percentile(eventToQueryable, events, 0.99));
+        }
+        metrics.record(SINK_TRACE_QUEUE_WAIT_TIME, toMillis(queueWait) / traced);
+        metrics.record(SINK_TRACE_CONVERT_TIME, toMillis(convert) / traced);
+        metrics.record(SINK_TRACE_WRITE_TIME, toMillis(write) / traced);
+        metrics.record(SINK_TRACE_COMMIT_WAIT_TIME, toMillis(commitWait) / traced);
+        metrics.record(SINK_TRACE_COMMIT_TIME, toMillis(committedNanos - commitStartNanos));
+    }
+
+    /**
+     * The nearest rank percentile of the first n sorted values.
+     */
+    static long percentile(long[] sorted, int n, double p) {
+        int rank = (int) Math.ceil(p * n);
+        return sorted[Math.max(0, Math.min(n, rank) - 1)];
+    }
+
+    private static double toMillis(long nanos) {
+        return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private void logTrace(FreshnessTrace trace, long commitStartNanos, long committedNanos, long committedTime) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("messageId", trace.getMessageId());
+        fields.put("topic", trace.getTopic());
+        fields.put("publishTime", trace.getPublishTime());
+        fields.put("eventTime", trace.getEventTime());
+        fields.put("committedTime", committedTime);
+        fields.put("queueWaitMs", toMillis(trace.getDequeuedNanos() - trace.getReceivedNanos()));
+        fields.put("convertMs", toMillis(trace.getConvertedNanos() - trace.getDequeuedNanos()));
+        fields.put("writeMs", toMillis(trace.getWrittenNanos() - trace.getConvertedNanos()));
+        fields.put("commitWaitMs", toMillis(commitStartNanos - trace.getWrittenNanos()));
+        fields.put("commitMs", toMillis(committedNanos - commitStartNanos));
+        try {
+            log.info("{}", Utils.JSON_MAPPER.get().writeValueAsString(fields));
+        } catch (JsonProcessingException e) {
+            log.warn("Failed to log the freshness trace of message {}", trace.getMessageId(), e);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.lakehouse.sink;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.pulsar.client.api.schema.GenericObject;
+import org.apache.pulsar.common.schema.KeyValue;
+import org.apache.pulsar.common.schema.SchemaInfo;
+import org.apache.pulsar.common.schema.SchemaType;
+import org.apache.pulsar.ecosystem.io.lakehouse.common.JsonRecordDecoder;
+import org.apache.pulsar.ecosystem.io.lakehouse.common.SchemaConverter;
+
+/**
+ * Converts KEY_VALUE records into a single row. The fields of AVRO and JSON keys and values become the columns of the
+ * row, named with the key or value prefix. A primitive key or value becomes one column, named after its prefix
+ * without the trailing underscore, or 'key' and 'value' when the prefix is empty.
+ *
+ * <p>The row schema and the position of every part in it are computed once per key and value schema, so each record
+ * only costs copying the fields. All the columns are nullable, since the key or the value may be missing.
+ */
+public class KeyValueRecordConverter {
+    private final Schema schema;
+    private final Part key;
+    private final Part value;
+
+    /**
+     * Compile the conversion of the given key and value schemas.
+     * @throws IllegalArgumentException if a part has an unsupported schema type, or the prefixed names collide
+     */
+    public KeyValueRecordConverter(SchemaInfo keySchemaInfo, SchemaInfo valueSchemaInfo,
+                                   String keyPrefix, String valuePrefix) {
+        List<Schema.Field> fields = new ArrayList<>();
+        this.key = new Part(keySchemaInfo, keyPrefix == null ? "" : keyPrefix, "key", fields);
+        this.value = new Part(valueSchemaInfo, valuePrefix == null ? "" : valuePrefix, "value", fields);
+        Set<String> names = new HashSet<>();
+        for (Schema.Field field : fields) {
+            if (!names.add(field.name())) {
+                throw new IllegalArgumentException("Column '" + field.name() + "' exists in both the key and the "
+                    + "value, use different key and value prefixes");
+            }
+        }
+        this.schema = Schema.createRecord("KeyValue", null, null, false);
+        this.schema.setFields(fields);
+    }
+
+    /**
+     * The schema of the rows.
+     */
+    public Schema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Convert the key and value into a row.
+     * @param reuse the record returned by a previous call, or null
+     * @return the converted record, which is the reused record if it had the same schema
+     */
+    public GenericRecord convert(KeyValue<?, ?> keyValue, GenericRecord reuse) throws IOException {
+        GenericRecord record = reuse != null && reuse.getSchema() == schema ? reuse : new GenericData.Record(schema);
+        key.convert(keyValue.getKey(), record);
+        value.convert(keyValue.getValue(), record);
+        return record;
+    }
+
+    private static final class Part {
+        private final SchemaType type;
+        private final int offset;
+        private final int width;
+        // schema of the struct records, and the last record schema known to have its fields in the same order
+        private final Schema recordSchema;
+        private Schema positionalSchema;
+        private final JsonRecordDecoder jsonDecoder;
+
+        Part(SchemaInfo schemaInfo, String prefix, String defaultName, List<Schema.Field> fields) {
+            this.type = schemaInfo.getType();
+            this.offset = fields.size();
+            switch (type) {
+                case AVRO:
+                case JSON:
+                    this.recordSchema = new Schema.Parser()
+                        .parse(new String(schemaInfo.getSchema(), StandardCharsets.UTF_8));
+                    this.positionalSchema = recordSchema;
+                    for (Schema.Field field : recordSchema.getFields()) {
+                        fields.add(new Schema.Field(prefix + field.name(),
+                            SchemaConverter.nullable(field.schema()), field.doc(), (Object) null));
+                    }
+                    // JSON records are decoded like the JSON topics, with the non-null schema
+                    this.jsonDecoder = type == SchemaType.JSON
+                        ? new JsonRecordDecoder(SchemaConverter.convertPulsarAvroSchemaToNonNullSchema(recordSchema))
+                        : null;
+                    break;
+                default:
+                    if (!PrimitiveFactory.isSupported(type)) {
+                        throw new IllegalArgumentException("Unsupported " + defaultName + " schema type of "
+                            + "KEY_VALUE records: " + type);
+                    }
+                    this.recordSchema = null;
+                    this.jsonDecoder = null;
+                    String name = prefix.endsWith("_") ? prefix.substring(0, prefix.length() - 1) : prefix;
+                    fields.add(new Schema.Field(name.isEmpty() ? defaultName : name,
+                        SchemaConverter.nullable(PrimitiveFactory.getAvroSchema(type)), null, (Object) null));
+            }
+            this.width = fields.size() - offset;
+        }
+
+        void convert(Object part, GenericRecord out) throws IOException {
+            Object value = part instanceof GenericObject ? ((GenericObject) part).getNativeObject() : part;
+            if (value == null) {
+                for (int i = 0; i < width; i++) {
+                    out.put(offset + i, null);
+                }
+                return;
+            }
+            if (recordSchema == null) {
+                out.put(offset, PrimitiveFactory.getAvroValue(type, value));
+                return;
+            }
+            GenericRecord record;
+            if (value instanceof JsonNode) {
+                // the decoded values are kept by the row, so the record isn't reused
+                record = jsonDecoder.decode((JsonNode) value, null);
+            } else if (value instanceof GenericRecord) {
+                record = (GenericRecord) value;
+            } else {
+                throw new IllegalArgumentException("Unexpected " + type + " value of KEY_VALUE record: "
+                    + value.getClass().getName());
+            }
+            copyFields(record, out);
+        }
+
+        private void copyFields(GenericRecord record, GenericRecord out) {
+            Schema schema = record.getSchema();
+            if (schema != positionalSchema && schema.getFields().size() == width
+                && sameFieldOrder(schema)) {
+                positionalSchema = schema;
+            }
+            if (schema == positionalSchema) {
+                for (int i = 0; i < width; i++) {
+                    out.put(offset + i, record.get(i));
+                }
+                return;
+            }
+            List<Schema.Field> fields = recordSchema.getFields();
+            for (int i = 0; i < width; i++) {
+                Schema.Field field = schema.getField(fields.get(i).name());
+                out.put(offset + i, field == null ? null : record.get(field.pos()));
+            }
+        }
+
+        private boolean sameFieldOrder(Schema schema) {
+            List<Schema.Field> expected = recordSchema.getFields();
+            List<Schema.Field> actual = schema.getFields();
+            for (int i = 0; i < width; i++) {
+                if (!expected.get(i).name().equals(actual.get(i).name())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -19,6 +19,9 @@
 package org.apache.pulsar.ecosystem.io.lakehouse.sink;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericRecord;
 import org.apache.pulsar.ecosystem.io.lakehouse.SinkConnectorConfig;
@@ -47,6 +50,22 @@ public interface LakehouseWriter {
         }
     }
 
+    /**
+     * The properties recorded by the recent commits of the table, the latest value of each key.
+     * @param prefix the prefix of the properties to get
+     * @return the properties, empty if the table doesn't exist or the format doesn't record properties
+     */
+    static Map<String, String> getCommittedProperties(SinkConnectorConfig config, String prefix) throws IOException {
+        switch (config.getType()) {
+            case SinkConnectorConfig.DELTA:
+                return DeltaWriter.getCommittedProperties(config, prefix);
+            case SinkConnectorConfig.ICEBERG:
+                return IcebergWriter.getCommittedProperties(config, prefix);
+            default:
+                return Collections.emptyMap();
+        }
+    }
+
     /**
      * Update lakehouse table's schema.
      * @param schema
@@ -55,17 +74,63 @@ public interface LakehouseWriter {
     boolean updateSchema(Schema schema) throws IOException, LakehouseConnectorException;
 
     /**
-     * Write avro record into lakehouse.
+     * Switch the writer to a new schema without committing any data. The data written with the previous schema is
+     * closed and handed back, and committed with the data written with the new schema. Formats which need the new
+     * columns in the table before writing them, like Iceberg, only add them to the table here, and the callers make
+     * the schema changes of the writers of a table one at a time.
+     * @param schema
+     * @return the data written with the previous schema, which is empty if the schema is not changed
+     */
+    PreparedCommit prepareSchemaUpdate(Schema schema) throws IOException, LakehouseConnectorException;
+
+    /**
+     * Write avro record into lakehouse. The caller may reuse the record once the call returns, so it must not be
+     * kept by the writer.
      * @param record
      */
     void writeAvroRecord(GenericRecord record) throws IOException;
 
+    /**
+     * Write a batch of avro records into lakehouse, in order. Formats override it to group the records once per
+     * batch. The caller may reuse the list and the records once the call returns.
+     * @param records
+     */
+    default void writeAvroRecords(List<GenericRecord> records) throws IOException {
+        for (GenericRecord record : records) {
+            writeAvroRecord(record);
+        }
+    }
+
     /**
      * Flush record into lakehouse table.
      * @return
      */
     boolean flush();
 
+    /**
+     * Close the data written since the last commit and hand it back without committing it.
+     * @return the prepared data, which is empty if nothing was written
+     */
+    PreparedCommit prepareCommit() throws IOException;
+
+    /**
+     * Commit data prepared by this writer, or by other writers of the same table, in a single table commit.
+     * @param prepared
+     * @return true if the commit succeeded
+     */
+    boolean commit(List<PreparedCommit> prepared);
+
+    /**
+     * Commit data prepared by this writer, or by other writers of the same table, and record the properties with the
+     * commit. Formats which can't record properties with a commit ignore them.
+     * @param prepared
+     * @param properties
+     * @return true if the commit succeeded
+     */
+    default boolean commit(List<PreparedCommit> prepared, Map<String, String> properties) {
+        return commit(prepared);
+    }
+
     /**
      * Close the writer.
      *
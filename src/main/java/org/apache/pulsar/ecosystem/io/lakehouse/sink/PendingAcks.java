@@ -0,0 +1,197 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.lakehouse.sink;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Records dispatched since the previous commit barrier, acked once the commit containing them succeeds.
+ */
+abstract class PendingAcks {
+    private long oldestAddTime;
+    private long bytes;
+
+    /**
+     * Track every record and ack them one by one, for Shared and Key_Shared subscriptions.
+     */
+    static PendingAcks individual() {
+        return new IndividualAcks();
+    }
+
+    /**
+     * Track the last record of each topic partition and ack it cumulatively, for Failover and Exclusive
+     * subscriptions.
+     */
+    static PendingAcks cumulative() {
+        return new CumulativeAcks();
+    }
+
+    final void add(PulsarSinkRecord record) {
+        if (isEmpty()) {
+            oldestAddTime = System.currentTimeMillis();
+        }
+        bytes += record.getEstimatedSize();
+        addRecord(record);
+    }
+
+    /**
+     * Move the records of the other pending acks, which were dispatched after the ones in this, into this one.
+     */
+    final void addAll(PendingAcks other) {
+        if (other.isEmpty()) {
+            return;
+        }
+        if (isEmpty()) {
+            oldestAddTime = other.oldestAddTime;
+        }
+        bytes += other.bytes;
+        other.bytes = 0;
+        moveFrom(other);
+    }
+
+    /**
+     * Ack all the records, and clear them.
+     * @return the estimated size of the records added since the previous ack
+     */
+    final long ackAll() {
+        long acked = bytes;
+        bytes = 0;
+        ackRecords();
+        return acked;
+    }
+
+    /**
+     * When the oldest record was added, 0 if there are no records.
+     */
+    long getOldestAddTime() {
+        return isEmpty() ? 0 : oldestAddTime;
+    }
+
+    abstract void addRecord(PulsarSinkRecord record);
+
+    abstract void ackRecords();
+
+    abstract void moveFrom(PendingAcks other);
+
+    abstract boolean isEmpty();
+
+    /**
+     * Number of records to ack.
+     */
+    abstract int size();
+
+    /**
+     * Records kept in fixed size chunks, so tracking a record costs one array slot.
+     */
+    private static final class IndividualAcks extends PendingAcks {
+        private static final int CHUNK_SIZE = 1024;
+
+        private final List<PulsarSinkRecord[]> chunks = new ArrayList<>();
+        private int size;
+
+        @Override
+        void addRecord(PulsarSinkRecord record) {
+            int offset = size % CHUNK_SIZE;
+            if (offset == 0) {
+                chunks.add(new PulsarSinkRecord[CHUNK_SIZE]);
+            }
+            chunks.get(chunks.size() - 1)[offset] = record;
+            size++;
+        }
+
+        @Override
+        void moveFrom(PendingAcks other) {
+            IndividualAcks acks = (IndividualAcks) other;
+            acks.forEach(this::addRecord);
+            acks.clear();
+        }
+
+        @Override
+        void ackRecords() {
+            forEach(PulsarSinkRecord::ack);
+            clear();
+        }
+
+        private void forEach(Consumer<PulsarSinkRecord> action) {
+            int remaining = size;
+            for (PulsarSinkRecord[] chunk : chunks) {
+                int n = Math.min(remaining, CHUNK_SIZE);
+                for (int i = 0; i < n; i++) {
+                    action.accept(chunk[i]);
+                }
+                remaining -= n;
+            }
+        }
+
+        private void clear() {
+            chunks.clear();
+            size = 0;
+        }
+
+        @Override
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Watermark of each topic partition, the last record dispatched from it. A cumulative ack of the watermark acks
+     * all the earlier records of the partition.
+     */
+    private static final class CumulativeAcks extends PendingAcks {
+        private final Map<String, PulsarSinkRecord> watermarks = new HashMap<>();
+
+        @Override
+        void addRecord(PulsarSinkRecord record) {
+            watermarks.put(record.getPartitionId(), record);
+        }
+
+        @Override
+        void moveFrom(PendingAcks other) {
+            CumulativeAcks acks = (CumulativeAcks) other;
+            watermarks.putAll(acks.watermarks);
+            acks.watermarks.clear();
+        }
+
+        @Override
+        void ackRecords() {
+            watermarks.values().forEach(PulsarSinkRecord::ack);
+            watermarks.clear();
+        }
+
+        @Override
+        boolean isEmpty() {
+            return watermarks.isEmpty();
+        }
+
+        @Override
+        int size() {
+            return watermarks.size();
+        }
+    }
+}
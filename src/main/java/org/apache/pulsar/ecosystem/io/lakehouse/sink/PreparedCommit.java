@@ -0,0 +1,45 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.lakehouse.sink;
+
+/**
+ * Data closed by a {@link LakehouseWriter} which is waiting to be committed into the lakehouse table.
+ */
+public interface PreparedCommit {
+
+    /**
+     * Whether there is nothing to commit.
+     * @return true if no data was written since the last commit
+     */
+    boolean isEmpty();
+
+    /**
+     * Number of data files to commit, 0 if the format doesn't commit files.
+     */
+    default long getFileCount() {
+        return 0;
+    }
+
+    /**
+     * Total size of the data files to commit.
+     */
+    default long getFileBytes() {
+        return 0;
+    }
+}
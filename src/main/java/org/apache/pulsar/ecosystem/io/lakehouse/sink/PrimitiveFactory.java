@@ -19,32 +19,140 @@
 package org.apache.pulsar.ecosystem.io.lakehouse.sink;
 
 import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import org.apache.avro.LogicalTypes;
 import org.apache.avro.Schema;
 import org.apache.commons.lang.StringUtils;
 import org.apache.pulsar.common.schema.SchemaType;
 
 /**
  *  PrimitiveFactory provides a way to get different PulsarObject according to the given schema type.
+ *
+ *  <p>INT8 and INT16 values are widened to Avro ints. DATE, TIME and TIMESTAMP values are written with the Avro date,
+ *  time-millis and timestamp-millis logical types: days since the epoch, milliseconds of the day and epoch
+ *  milliseconds.
  */
 public class PrimitiveFactory {
+    private static final Schema BYTES_SCHEMA = Schema.create(Schema.Type.BYTES);
+    private static final Schema STRING_SCHEMA = Schema.create(Schema.Type.STRING);
+    private static final Schema INT_SCHEMA = Schema.create(Schema.Type.INT);
+    private static final Schema LONG_SCHEMA = Schema.create(Schema.Type.LONG);
+    private static final Schema FLOAT_SCHEMA = Schema.create(Schema.Type.FLOAT);
+    private static final Schema DOUBLE_SCHEMA = Schema.create(Schema.Type.DOUBLE);
+    private static final Schema BOOLEAN_SCHEMA = Schema.create(Schema.Type.BOOLEAN);
+    private static final Schema DATE_SCHEMA = LogicalTypes.date().addToSchema(Schema.create(Schema.Type.INT));
+    private static final Schema TIME_SCHEMA = LogicalTypes.timeMillis().addToSchema(Schema.create(Schema.Type.INT));
+    private static final Schema TIMESTAMP_SCHEMA =
+        LogicalTypes.timestampMillis().addToSchema(Schema.create(Schema.Type.LONG));
+    private static final long MILLIS_PER_DAY = TimeUnit.DAYS.toMillis(1);
 
-    public static PulsarObject getPulsarPrimitiveObject(SchemaType schemaType, Object value,
-                                                         String overrideFieldName) {
-        PulsarObject object;
+    /**
+     * Whether the schema type is written through a {@link PulsarObject} wrapper.
+     */
+    public static boolean isSupported(SchemaType schemaType) {
         switch (schemaType) {
             case BYTES:
-                object = new PulsarObject<>(ByteBuffer.wrap((byte[]) value), Schema.create(Schema.Type.BYTES));
-                break;
             case STRING:
-                object = new PulsarObject<>((String) value, Schema.create(Schema.Type.STRING));
-                break;
+            case INT8:
+            case INT16:
+            case INT32:
+            case INT64:
+            case FLOAT:
+            case DOUBLE:
+            case BOOLEAN:
+            case DATE:
+            case TIME:
+            case TIMESTAMP:
+                return true;
             default:
-                throw new RuntimeException("Failed to build pulsar object, the given type '" + schemaType + "' "
-                    + "is not supported yet.");
+                return false;
         }
+    }
+
+    public static PulsarObject getPulsarPrimitiveObject(SchemaType schemaType, Object value,
+                                                         String overrideFieldName) {
+        return getPulsarPrimitiveObject(schemaType, value, overrideFieldName, null);
+    }
+
+    /**
+     * Wrap the primitive value.
+     * @param key the record key, e.g. the message ID, a random UUID is used if it is null
+     */
+    public static PulsarObject getPulsarPrimitiveObject(SchemaType schemaType, Object value,
+                                                         String overrideFieldName, String key) {
+        if (!isSupported(schemaType)) {
+            throw new RuntimeException("Failed to build pulsar object, the given type '" + schemaType + "' "
+                + "is not supported yet.");
+        }
+        PulsarObject object = new PulsarObject<>(getAvroValue(schemaType, value), getAvroSchema(schemaType), key);
         if (StringUtils.isNotEmpty(overrideFieldName)) {
             object.overrideFieldName(overrideFieldName);
         }
         return object;
     }
+
+    /**
+     * The Avro schema of the values of a supported primitive schema type.
+     */
+    public static Schema getAvroSchema(SchemaType schemaType) {
+        switch (schemaType) {
+            case BYTES:
+                return BYTES_SCHEMA;
+            case STRING:
+                return STRING_SCHEMA;
+            case INT8:
+            case INT16:
+            case INT32:
+                return INT_SCHEMA;
+            case INT64:
+                return LONG_SCHEMA;
+            case DATE:
+                return DATE_SCHEMA;
+            case TIME:
+                return TIME_SCHEMA;
+            case TIMESTAMP:
+                return TIMESTAMP_SCHEMA;
+            case FLOAT:
+                return FLOAT_SCHEMA;
+            case DOUBLE:
+                return DOUBLE_SCHEMA;
+            case BOOLEAN:
+                return BOOLEAN_SCHEMA;
+            default:
+                throw new IllegalArgumentException("Unsupported primitive schema type: " + schemaType);
+        }
+    }
+
+    /**
+     * Convert a value of a supported primitive schema type to its Avro value.
+     */
+    public static Object getAvroValue(SchemaType schemaType, Object value) {
+        switch (schemaType) {
+            case BYTES:
+                return ByteBuffer.wrap((byte[]) value);
+            case STRING:
+                return (String) value;
+            case INT8:
+            case INT16:
+            case INT32:
+                return ((Number) value).intValue();
+            case INT64:
+                return ((Number) value).longValue();
+            case FLOAT:
+                return (Float) value;
+            case DOUBLE:
+                return (Double) value;
+            case BOOLEAN:
+                return (Boolean) value;
+            case DATE:
+                return (int) Math.floorDiv(((Date) value).getTime(), MILLIS_PER_DAY);
+            case TIMESTAMP:
+                return ((Date) value).getTime();
+            case TIME:
+                return (int) Math.floorMod(((Date) value).getTime(), MILLIS_PER_DAY);
+            default:
+                throw new IllegalArgumentException("Unsupported primitive schema type: " + schemaType);
+        }
+    }
 }
@@ -18,7 +18,10 @@
  */
 package org.apache.pulsar.ecosystem.io.lakehouse.sink;
 
+import java.util.Map;
+import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import lombok.EqualsAndHashCode;
 import org.apache.avro.Schema;
 import org.apache.avro.SchemaBuilder;
@@ -34,8 +37,12 @@ import org.apache.avro.generic.GenericRecord;
 @EqualsAndHashCode
 public class PulsarObject<T> {
 
-    private static String defaultFieldname = "message";
+    public static final String DEFAULT_FIELD_NAME = "message";
+    private static final String UUID_FIELD_NAME = "uuid";
+    // wrapper record schemas by value schema and field name, so they aren't built for every message
+    private static final Map<WrapperKey, Schema> WRAPPER_SCHEMAS = new ConcurrentHashMap<>();
     private final Schema valueSchema;
+    private String fieldName = DEFAULT_FIELD_NAME;
     T value;
     String uuid;
 
@@ -45,37 +52,82 @@ public class PulsarObject<T> {
         this.uuid = UUID.randomUUID().toString();
     }
 
-    private PulsarObject(T value, Schema schema, String uuid) {
+    /**
+     * Create the object with the given record key, e.g. derived from the message ID, so the key is deterministic.
+     * @param uuid the record key, a random UUID is used if it is null
+     */
+    public PulsarObject(T value, Schema schema, String uuid) {
         this.value = value;
         valueSchema = schema;
-        this.uuid = uuid;
+        this.uuid = uuid == null ? UUID.randomUUID().toString() : uuid;
     }
 
-    public static void overrideFieldName(String fieldName) {
-        defaultFieldname = fieldName;
+    /**
+     * Name the value field of the wrapper record, instead of {@link #DEFAULT_FIELD_NAME}.
+     */
+    public void overrideFieldName(String fieldName) {
+        this.fieldName = fieldName;
     }
 
     public Schema getSchema() {
-        return SchemaBuilder.record("PulsarObject")
-            .fields()
-            .name(defaultFieldname).type(valueSchema).noDefault()
-            .name("uuid").type(Schema.create(Schema.Type.STRING)).noDefault()
-            .endRecord();
+        String fieldName = this.fieldName;
+        return WRAPPER_SCHEMAS.computeIfAbsent(new WrapperKey(valueSchema, fieldName),
+            k -> SchemaBuilder.record("PulsarObject")
+                .fields()
+                .name(fieldName).type(valueSchema).noDefault()
+                .name(UUID_FIELD_NAME).type(Schema.create(Schema.Type.STRING)).noDefault()
+                .endRecord());
     }
 
     public GenericRecord getRecord() {
         GenericRecord record = new GenericData.Record(getSchema());
-        record.put(defaultFieldname, value);
-        record.put("uuid", uuid);
+        record.put(0, value);
+        record.put(1, uuid);
         return record;
     }
 
     public static <T> PulsarObject<T> fromGenericRecord(GenericRecord record) {
-        if (!record.hasField(defaultFieldname) && !record.hasField("uuid")) {
+        return fromGenericRecord(record, DEFAULT_FIELD_NAME);
+    }
+
+    /**
+     * Parse a wrapper record whose value field has the given name.
+     */
+    public static <T> PulsarObject<T> fromGenericRecord(GenericRecord record, String fieldName) {
+        if (!record.hasField(fieldName) && !record.hasField(UUID_FIELD_NAME)) {
             throw new RuntimeException("Unexpected record when parsing to the PulsarObject");
         }
-        return new PulsarObject(record.get(defaultFieldname),
-            record.getSchema().getField(defaultFieldname).schema()
-            , record.get("uuid").toString());
+        PulsarObject<T> object = new PulsarObject(record.get(fieldName),
+            record.getSchema().getField(fieldName).schema()
+            , record.get(UUID_FIELD_NAME).toString());
+        object.overrideFieldName(fieldName);
+        return object;
+    }
+
+    private static final class WrapperKey {
+        private final Schema valueSchema;
+        private final String fieldName;
+
+        WrapperKey(Schema valueSchema, String fieldName) {
+            this.valueSchema = valueSchema;
+            this.fieldName = fieldName;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof WrapperKey)) {
+                return false;
+            }
+            WrapperKey that = (WrapperKey) o;
+            return valueSchema.equals(that.valueSchema) && fieldName.equals(that.fieldName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(valueSchema, fieldName);
+        }
     }
 }
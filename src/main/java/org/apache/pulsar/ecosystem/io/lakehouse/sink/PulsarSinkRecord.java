@@ -18,8 +18,18 @@
  */
 package org.apache.pulsar.ecosystem.io.lakehouse.sink;
 
+import java.util.Optional;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.Schema;
 import org.apache.pulsar.client.api.schema.GenericObject;
+import org.apache.pulsar.common.schema.SchemaInfo;
 import org.apache.pulsar.common.schema.SchemaType;
 import org.apache.pulsar.functions.api.Record;
 
@@ -28,18 +38,109 @@ import org.apache.pulsar.functions.api.Record;
  */
 @Data
 public class PulsarSinkRecord {
+    // rough heap cost of the record, message and schema wrappers on top of the payload
+    private static final int RECORD_OVERHEAD_BYTES = 128;
+
     private final Record<GenericObject> record;
+    private final long estimatedSize;
+    // null unless the record is sampled by the freshness tracer
+    @Getter(AccessLevel.PACKAGE)
+    @Setter(AccessLevel.PACKAGE)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private FreshnessTrace trace;
 
     public PulsarSinkRecord(Record<GenericObject> record) {
         this.record = record;
+        this.estimatedSize = record == null ? 0 : estimateSize(record);
+    }
+
+    private static long estimateSize(Record<GenericObject> record) {
+        return RECORD_OVERHEAD_BYTES + record.getMessage().map(m -> (long) m.size()).orElse(0L);
     }
 
+    /**
+     * The schema type of the record. It is taken from the record schema when that is a concrete schema, since getting
+     * the value of a message decodes its payload.
+     */
     public SchemaType getSchemaType() {
+        Schema<?> schema = record.getSchema();
+        SchemaInfo schemaInfo = schema == null ? null : schema.getSchemaInfo();
+        if (schemaInfo != null && schemaInfo.getType() != SchemaType.AUTO_CONSUME
+            && schemaInfo.getType() != SchemaType.NONE) {
+            return schemaInfo.getType();
+        }
         return record.getValue().getSchemaType();
     }
 
     public String getSchema() {
-        return record.getSchema().getSchemaInfo().getSchemaDefinition();
+        return getSchemaInfo().getSchemaDefinition();
+    }
+
+    public SchemaInfo getSchemaInfo() {
+        return record.getSchema().getSchemaInfo();
+    }
+
+    /**
+     * The schema version of the message, null if the record doesn't come from a message with a schema version.
+     */
+    public byte[] getSchemaVersion() {
+        return record.getMessage().map(Message::getSchemaVersion).orElse(null);
+    }
+
+    /**
+     * The raw payload of the message, null if the record doesn't come from a message.
+     */
+    public byte[] getData() {
+        return record.getMessage().map(Message::getData).orElse(null);
+    }
+
+    /**
+     * A key derived from the message ID, unique within the cluster and the same when the message is redelivered.
+     * @return null if the record doesn't come from a message
+     */
+    public String getMessageIdKey() {
+        return record.getMessage().map(m -> m.getMessageId().toString()).orElse(null);
+    }
+
+    /**
+     * The ID of the message, null if the record doesn't come from a message.
+     */
+    public MessageId getMessageId() {
+        return record.getMessage().map(Message::getMessageId).orElse(null);
+    }
+
+    /**
+     * The publish time of the message, null if the record doesn't come from a message.
+     */
+    public Long getPublishTime() {
+        return record.getMessage().map(Message::getPublishTime).orElse(null);
+    }
+
+    /**
+     * The event time set by the producer, null if it isn't set.
+     */
+    public Long getEventTime() {
+        return record.getEventTime().orElse(null);
+    }
+
+    public String getTopicName() {
+        return record.getTopicName().orElse(null);
+    }
+
+    /**
+     * The topic partition of the record, used to track the ack watermark of each partition.
+     */
+    public String getPartitionId() {
+        return record.getPartitionId().orElseGet(() -> record.getTopicName().orElse(""));
+    }
+
+    public GenericObject getValue() {
+        return record.getValue();
+    }
+
+    public Optional<String> getKey() {
+        return record.getKey();
     }
 
     public Object getNativeObject() {
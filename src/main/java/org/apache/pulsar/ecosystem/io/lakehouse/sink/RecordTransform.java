@@ -0,0 +1,372 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.lakehouse.sink;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import org.apache.avro.LogicalTypes;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.pulsar.ecosystem.io.lakehouse.SinkConnectorConfig;
+import org.apache.pulsar.ecosystem.io.lakehouse.common.SchemaConverter;
+
+/**
+ * Column transform applied to the records before they are written: keep or drop columns, rename them, cast them to
+ * another primitive type, and add columns holding a constant or a value derived from the message. The steps run in
+ * that order, so renames refer to the input columns, and casts to the output columns, added ones included.
+ *
+ * <p>The transform is compiled once per input schema into a plan holding the input position and the cast of each
+ * output column, so a record only costs copying its kept columns. Columns missing from an input schema are skipped,
+ * since the schema versions of a topic may not all have them.
+ *
+ * <p>Added column values starting with '$' are derived: $topic, $key, $messageId, $publishTime, $eventTime,
+ * $processingTime, or $field.NAME for a copy of an input column. Other values are string constants, and '$$' escapes
+ * a constant starting with '$'. Not thread safe, each writer owns its transform.
+ */
+public class RecordTransform {
+    // bounds the plans, in case records come with a new schema instance every time
+    private static final int MAX_SCHEMAS = 64;
+    private static final String FIELD_PREFIX = "$field.";
+
+    private final List<String> projectColumns;
+    private final Set<String> dropColumns;
+    private final Map<String, String> renameColumns;
+    private final Map<String, Cast> castColumns;
+    private final List<AddedColumn> addedColumns;
+    private final Map<Schema, Plan> plans = new IdentityHashMap<>();
+
+    /**
+     * @param projectColumns the input columns to keep, in output order, or empty to keep all of them
+     * @throws IllegalArgumentException if a cast type or derived value is unknown, or columns are added twice
+     */
+    public RecordTransform(List<String> projectColumns, List<String> dropColumns, Map<String, String> renameColumns,
+                           Map<String, String> castColumns, Map<String, String> addColumns) {
+        this.projectColumns = projectColumns == null || projectColumns.isEmpty() ? null : projectColumns;
+        this.dropColumns = dropColumns == null ? Collections.emptySet() : new HashSet<>(dropColumns);
+        this.renameColumns = renameColumns == null ? Collections.emptyMap() : renameColumns;
+        this.castColumns = new LinkedHashMap<>();
+        if (castColumns != null) {
+            castColumns.forEach((column, type) -> this.castColumns.put(column, Cast.of(column, type)));
+        }
+        this.addedColumns = new ArrayList<>();
+        if (addColumns != null) {
+            addColumns.forEach((column, value) -> addedColumns.add(new AddedColumn(column, value)));
+        }
+    }
+
+    /**
+     * The transform configured for the sink.
+     * @return null if the config has no transform
+     */
+    public static RecordTransform of(SinkConnectorConfig config) {
+        if (isEmpty(config.getProjectColumns()) && isEmpty(config.getDropColumns())
+            && isEmpty(config.getRenameColumns()) && isEmpty(config.getCastColumns())
+            && isEmpty(config.getAddColumns())) {
+            return null;
+        }
+        return new RecordTransform(config.getProjectColumns(), config.getDropColumns(), config.getRenameColumns(),
+            config.getCastColumns(), config.getAddColumns());
+    }
+
+    private static boolean isEmpty(Object columns) {
+        return columns == null
+            || (columns instanceof List ? ((List<?>) columns).isEmpty() : ((Map<?, ?>) columns).isEmpty());
+    }
+
+    /**
+     * The schema of the records transformed from the input schema.
+     * @throws IllegalArgumentException if two output columns have the same name
+     */
+    public Schema getSchema(Schema inputSchema) {
+        return planOf(inputSchema).schema;
+    }
+
+    /**
+     * Transform the record.
+     * @param source the message of the record, for the derived columns
+     * @param reuse the record returned by a previous call, or null
+     * @return the transformed record, which is the reused record if it had the same schema
+     */
+    public GenericRecord apply(PulsarSinkRecord source, GenericRecord record, GenericRecord reuse) {
+        Plan plan = planOf(record.getSchema());
+        GenericRecord transformed = reuse != null && reuse.getSchema() == plan.schema
+            ? reuse : new GenericData.Record(plan.schema);
+        for (int i = 0; i < plan.sources.length; i++) {
+            int position = plan.sources[i];
+            Object value = position >= 0 ? record.get(position) : plan.added[i].valueOf(source);
+            transformed.put(i, plan.casts[i] == null ? value : plan.casts[i].apply(value));
+        }
+        return transformed;
+    }
+
+    private Plan planOf(Schema inputSchema) {
+        Plan plan = plans.get(inputSchema);
+        if (plan == null) {
+            if (plans.size() >= MAX_SCHEMAS) {
+                plans.clear();
+            }
+            plan = compile(inputSchema);
+            plans.put(inputSchema, plan);
+        }
+        return plan;
+    }
+
+    private Plan compile(Schema inputSchema) {
+        List<Schema.Field> fields = new ArrayList<>();
+        List<Integer> sources = new ArrayList<>();
+        List<AddedColumn> added = new ArrayList<>();
+        List<Schema.Field> selected = new ArrayList<>();
+        if (projectColumns == null) {
+            selected.addAll(inputSchema.getFields());
+        } else {
+            for (String column : projectColumns) {
+                Schema.Field field = inputSchema.getField(column);
+                if (field != null) {
+                    selected.add(field);
+                }
+            }
+        }
+        for (Schema.Field field : selected) {
+            if (dropColumns.contains(field.name())) {
+                continue;
+            }
+            String name = renameColumns.getOrDefault(field.name(), field.name());
+            fields.add(new Schema.Field(name, field.schema(), field.doc(), field.defaultVal()));
+            sources.add(field.pos());
+            added.add(null);
+        }
+        for (AddedColumn column : addedColumns) {
+            Schema.Field source = column.sourceField == null ? null : inputSchema.getField(column.sourceField);
+            if (source != null) {
+                fields.add(new Schema.Field(column.name, SchemaConverter.nullable(source.schema()), null,
+                    (Object) null));
+                sources.add(source.pos());
+            } else {
+                fields.add(new Schema.Field(column.name, column.schema, null, (Object) null));
+                sources.add(-1);
+            }
+            added.add(column);
+        }
+
+        Set<String> names = new HashSet<>();
+        Cast[] casts = new Cast[fields.size()];
+        for (int i = 0; i < fields.size(); i++) {
+            Schema.Field field = fields.get(i);
+            if (!names.add(field.name())) {
+                throw new IllegalArgumentException("Column '" + field.name() + "' appears twice in the transformed "
+                    + "schema of " + inputSchema.getFullName());
+            }
+            casts[i] = castColumns.get(field.name());
+            if (casts[i] != null) {
+                fields.set(i, new Schema.Field(field.name(), SchemaConverter.nullable(Schema.create(casts[i].type)),
+                    field.doc(), (Object) null));
+            }
+        }
+        Schema schema = Schema.createRecord(inputSchema.getName(), inputSchema.getDoc(), inputSchema.getNamespace(),
+            false);
+        schema.setFields(fields);
+
+        int[] sourcePositions = new int[sources.size()];
+        for (int i = 0; i < sourcePositions.length; i++) {
+            sourcePositions[i] = sources.get(i);
+        }
+        return new Plan(schema, sourcePositions, casts, added.toArray(new AddedColumn[0]));
+    }
+
+    /**
+     * The transform of an input schema. Output column i is copied from input position sources[i], or taken from
+     * added[i] when the position is negative, then cast with casts[i] if it isn't null.
+     */
+    private static final class Plan {
+        private final Schema schema;
+        private final int[] sources;
+        private final Cast[] casts;
+        private final AddedColumn[] added;
+
+        Plan(Schema schema, int[] sources, Cast[] casts, AddedColumn[] added) {
+            this.schema = schema;
+            this.sources = sources;
+            this.casts = casts;
+            this.added = added;
+        }
+    }
+
+    private enum Derived {
+        CONSTANT, TOPIC, KEY, MESSAGE_ID, PUBLISH_TIME, EVENT_TIME, PROCESSING_TIME, FIELD
+    }
+
+    private static final class AddedColumn {
+        private final String name;
+        private final Derived derived;
+        private final Object constant;
+        private final String sourceField;
+        private final Schema schema;
+
+        AddedColumn(String name, String value) {
+            this.name = name;
+            Derived derived = Derived.CONSTANT;
+            String field = null;
+            if (value != null && value.startsWith("$") && !value.startsWith("$$")) {
+                if (value.startsWith(FIELD_PREFIX)) {
+                    derived = Derived.FIELD;
+                    field = value.substring(FIELD_PREFIX.length());
+                } else {
+                    switch (value) {
+                        case "$topic":
+                            derived = Derived.TOPIC;
+                            break;
+                        case "$key":
+                            derived = Derived.KEY;
+                            break;
+                        case "$messageId":
+                            derived = Derived.MESSAGE_ID;
+                            break;
+                        case "$publishTime":
+                            derived = Derived.PUBLISH_TIME;
+                            break;
+                        case "$eventTime":
+                            derived = Derived.EVENT_TIME;
+                            break;
+                        case "$processingTime":
+                            derived = Derived.PROCESSING_TIME;
+                            break;
+                        default:
+                            throw new IllegalArgumentException("Unknown derived value '" + value + "' of column '"
+                                + name + "'");
+                    }
+                }
+            }
+            this.derived = derived;
+            this.sourceField = field;
+            this.constant = derived == Derived.CONSTANT && value != null && value.startsWith("$$")
+                ? value.substring(1) : value;
+            switch (derived) {
+                case PUBLISH_TIME:
+                case EVENT_TIME:
+                case PROCESSING_TIME:
+                    this.schema = SchemaConverter.nullable(
+                        LogicalTypes.timestampMillis().addToSchema(Schema.create(Schema.Type.LONG)));
+                    break;
+                default:
+                    // also the schema of $field columns missing from the input schema
+                    this.schema = SchemaConverter.nullable(Schema.create(Schema.Type.STRING));
+            }
+        }
+
+        Object valueOf(PulsarSinkRecord source) {
+            switch (derived) {
+                case TOPIC:
+                    return source.getTopicName();
+                case KEY:
+                    return source.getKey().orElse(null);
+                case MESSAGE_ID:
+                    return source.getMessageIdKey();
+                case PUBLISH_TIME:
+                    return source.getPublishTime();
+                case EVENT_TIME:
+                    return source.getEventTime();
+                case PROCESSING_TIME:
+                    return System.currentTimeMillis();
+                case FIELD:
+                    return null;
+                default:
+                    return constant;
+            }
+        }
+    }
+
+    /**
+     * Cast to a primitive type. Values which can't be cast become null.
+     */
+    private enum Cast {
+        STRING(Schema.Type.STRING),
+        INT(Schema.Type.INT),
+        LONG(Schema.Type.LONG),
+        FLOAT(Schema.Type.FLOAT),
+        DOUBLE(Schema.Type.DOUBLE),
+        BOOLEAN(Schema.Type.BOOLEAN);
+
+        private final Schema.Type type;
+
+        Cast(Schema.Type type) {
+            this.type = type;
+        }
+
+        static Cast of(String column, String type) {
+            try {
+                return valueOf(type.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException | NullPointerException e) {
+                throw new IllegalArgumentException("Unknown cast type '" + type + "' of column '" + column
+                    + "', expected one of string, int, long, float, double or boolean");
+            }
+        }
+
+        Object apply(Object value) {
+            if (value == null) {
+                return null;
+            }
+            try {
+                switch (this) {
+                    case STRING:
+                        return value.toString();
+                    case BOOLEAN:
+                        if (value instanceof Boolean) {
+                            return value;
+                        }
+                        return value instanceof Number
+                            ? ((Number) value).doubleValue() != 0 : Boolean.parseBoolean(value.toString().trim());
+                    default:
+                        return toNumber(value);
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        private Object toNumber(Object value) {
+            Number number;
+            if (value instanceof Number) {
+                number = (Number) value;
+            } else if (value instanceof Boolean) {
+                number = (Boolean) value ? 1 : 0;
+            } else {
+                String s = value.toString().trim();
+                number = this == INT || this == LONG ? (Number) Long.parseLong(s) : (Number) Double.parseDouble(s);
+            }
+            switch (this) {
+                case INT:
+                    return number.intValue();
+                case LONG:
+                    return number.longValue();
+                case FLOAT:
+                    return number.floatValue();
+                default:
+                    return number.doubleValue();
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.lakehouse.sink;
+
+import java.util.HashMap;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.impl.BatchMessageIdImpl;
+import org.apache.pulsar.client.impl.MessageIdImpl;
+import org.apache.pulsar.client.impl.TopicMessageIdImpl;
+
+/**
+ * Recognizes the records redelivered after a broker failover or a connector restart, which were dispatched or
+ * committed already. Failover and Exclusive subscriptions deliver the messages of each topic partition in order, so
+ * the position of the last message dispatched from each partition is enough to recognize a redelivered message, with
+ * no false positives and one entry per partition.
+ *
+ * <p>The positions are recorded with every commit as watermark properties, and seeded from the recent commits of the
+ * table on startup, so the messages redelivered after a restart are recognized too. Only used by the dispatcher.
+ */
+@Slf4j
+class RedeliveryFilter {
+    static final String WATERMARK_PREFIX = "pulsar.watermark.";
+
+    private final Map<String, Position> positions = new HashMap<>();
+
+    /**
+     * Seed the positions from the watermark properties of the committed data.
+     */
+    void seed(Map<String, String> properties) {
+        for (Map.Entry<String, String> entry : properties.entrySet()) {
+            if (!entry.getKey().startsWith(WATERMARK_PREFIX)) {
+                continue;
+            }
+            String[] parts = entry.getValue().split(":");
+            try {
+                positions.put(entry.getKey().substring(WATERMARK_PREFIX.length()),
+                    new Position(Long.parseLong(parts[0]), Long.parseLong(parts[1]), Integer.parseInt(parts[2])));
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                log.warn("Ignore the invalid committed watermark {}={}", entry.getKey(), entry.getValue());
+            }
+        }
+        log.info("Seeded the redelivery filter with the committed watermarks {}", positions);
+    }
+
+    /**
+     * Whether a record at or after the position of the record was dispatched or committed already.
+     */
+    boolean isRedelivered(PulsarSinkRecord record) {
+        MessageIdImpl id = messageIdOf(record);
+        if (id == null) {
+            return false;
+        }
+        Position position = positions.get(record.getPartitionId());
+        return position != null && position.compareTo(id.getLedgerId(), id.getEntryId(), batchIndexOf(id)) >= 0;
+    }
+
+    /**
+     * Move the position of the record partition to the record, once it is dispatched.
+     */
+    void onDispatched(PulsarSinkRecord record) {
+        MessageIdImpl id = messageIdOf(record);
+        if (id == null) {
+            return;
+        }
+        Position position = positions.get(record.getPartitionId());
+        if (position == null) {
+            positions.put(record.getPartitionId(), new Position(id.getLedgerId(), id.getEntryId(), batchIndexOf(id)));
+        } else {
+            position.set(id.getLedgerId(), id.getEntryId(), batchIndexOf(id));
+        }
+    }
+
+    /**
+     * The watermark properties of the positions, committed with the records dispatched so far.
+     */
+    Map<String, String> getWatermarks() {
+        Map<String, String> watermarks = new HashMap<>(positions.size() * 2);
+        positions.forEach((partition, position) -> watermarks.put(WATERMARK_PREFIX + partition, position.toString()));
+        return watermarks;
+    }
+
+    private static MessageIdImpl messageIdOf(PulsarSinkRecord record) {
+        MessageId id = record.getMessageId();
+        if (id instanceof TopicMessageIdImpl) {
+            id = ((TopicMessageIdImpl) id).getInnerMessageId();
+        }
+        return id instanceof MessageIdImpl ? (MessageIdImpl) id : null;
+    }
+
+    private static int batchIndexOf(MessageIdImpl id) {
+        return id instanceof BatchMessageIdImpl ? ((BatchMessageIdImpl) id).getBatchIndex() : -1;
+    }
+
+    private static final class Position {
+        private long ledgerId;
+        private long entryId;
+        private int batchIndex;
+
+        Position(long ledgerId, long entryId, int batchIndex) {
+            set(ledgerId, entryId, batchIndex);
+        }
+
+        void set(long ledgerId, long entryId, int batchIndex) {
+            this.ledgerId = ledgerId;
+            this.entryId = entryId;
+            this.batchIndex = batchIndex;
+        }
+
+        int compareTo(long otherLedgerId, long otherEntryId, int otherBatchIndex) {
+            if (ledgerId != otherLedgerId) {
+                return Long.compare(ledgerId, otherLedgerId);
+            }
+            if (entryId != otherEntryId) {
+                return Long.compare(entryId, otherEntryId);
+            }
+            return Integer.compare(batchIndex, otherBatchIndex);
+        }
+
+        @Override
+        public String toString() {
+            return ledgerId + ":" + entryId + ":" + batchIndex;
+        }
+    }
+}
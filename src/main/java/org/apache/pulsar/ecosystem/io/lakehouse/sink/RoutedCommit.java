@@ -0,0 +1,58 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.lakehouse.sink;
+
+/**
+ * Data prepared by a writer for one of the tables it routes records to.
+ */
+class RoutedCommit implements PreparedCommit {
+    private final String table;
+    private final PreparedCommit prepared;
+
+    RoutedCommit(String table, PreparedCommit prepared) {
+        this.table = table;
+        this.prepared = prepared;
+    }
+
+    /**
+     * The table route, {@link SinkWriter#DEFAULT_TABLE} for the configured table.
+     */
+    String getTable() {
+        return table;
+    }
+
+    PreparedCommit getPrepared() {
+        return prepared;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return prepared.isEmpty();
+    }
+
+    @Override
+    public long getFileCount() {
+        return prepared.getFileCount();
+    }
+
+    @Override
+    public long getFileBytes() {
+        return prepared.getFileBytes();
+    }
+}
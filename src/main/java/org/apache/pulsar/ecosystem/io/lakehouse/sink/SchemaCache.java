@@ -0,0 +1,281 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.lakehouse.sink;
+
+import com.google.common.base.Strings;
+import com.google.protobuf.Descriptors;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.pulsar.client.impl.schema.KeyValueSchemaInfo;
+import org.apache.pulsar.client.impl.schema.ProtobufNativeSchemaUtils;
+import org.apache.pulsar.common.schema.KeyValue;
+import org.apache.pulsar.common.schema.SchemaInfo;
+import org.apache.pulsar.ecosystem.io.lakehouse.common.JsonRecordDecoder;
+import org.apache.pulsar.ecosystem.io.lakehouse.common.ProtobufRecordConverter;
+import org.apache.pulsar.ecosystem.io.lakehouse.common.SchemaConverter;
+
+/**
+ * Bounded LRU cache of parsed record schemas, keyed by the topic and schema version of the records. Records without
+ * a schema version fall back to their schema definition as the key.
+ *
+ * <p>The last looked up schema is checked first, so records of the same schema version cost a byte array comparison
+ * instead of rebuilding and comparing the schema definition. Not thread safe, each writer owns its cache.
+ */
+@Slf4j
+public class SchemaCache {
+    public static final int DEFAULT_CAPACITY = 32;
+
+    private final Map<Object, ParsedSchema> cache;
+    // primitive wrapper schemas are shared instances, see PulsarObject
+    private final Map<Schema, ParsedSchema> wrapperSchemas = new IdentityHashMap<>();
+
+    private String lastTopic;
+    private byte[] lastVersion;
+    private String lastDefinition;
+    private ParsedSchema last;
+
+    public SchemaCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public SchemaCache(int capacity) {
+        this.cache = new LinkedHashMap<Object, ParsedSchema>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, ParsedSchema> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Get the parsed schema of the record.
+     * @return null if the record doesn't have a schema definition
+     */
+    public ParsedSchema get(PulsarSinkRecord record) {
+        return get(record.getTopicName(), record.getSchemaVersion(), record::getSchema, ParsedSchema::new);
+    }
+
+    /**
+     * Get the parsed schema of a PROTOBUF_NATIVE record, whose schema definition is a protobuf descriptor set.
+     * @return null if the record doesn't have a schema definition
+     */
+    public ParsedSchema getProtobuf(PulsarSinkRecord record) {
+        return get(record.getTopicName(), record.getSchemaVersion(), record::getSchema, schemaStr -> {
+            Descriptors.Descriptor descriptor =
+                ProtobufNativeSchemaUtils.deserialize(schemaStr.getBytes(StandardCharsets.UTF_8));
+            return new ParsedSchema(schemaStr, new ProtobufRecordConverter(descriptor));
+        });
+    }
+
+    /**
+     * Get the parsed schema of a KEY_VALUE record, flattening its key and value schemas into one row schema.
+     * @return null if the record doesn't have a schema definition, or the key or value schema is not supported
+     */
+    public ParsedSchema getKeyValue(PulsarSinkRecord record, String keyPrefix, String valuePrefix) {
+        try {
+            return get(record.getTopicName(), record.getSchemaVersion(), record::getSchema, schemaStr -> {
+                KeyValue<SchemaInfo, SchemaInfo> schemaInfos =
+                    KeyValueSchemaInfo.decodeKeyValueSchemaInfo(record.getSchemaInfo());
+                return new ParsedSchema(schemaStr, new KeyValueRecordConverter(schemaInfos.getKey(),
+                    schemaInfos.getValue(), keyPrefix, valuePrefix));
+            });
+        } catch (IllegalArgumentException e) {
+            log.error("Failed to flatten the KEY_VALUE schema of topic {}", record.getTopicName(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Get the parsed schema for the given schema version of the topic.
+     * @param topic the topic name, may be null
+     * @param version the schema version, null to look up by the schema definition
+     * @param definition supplies the schema definition, only called if the version is not cached
+     * @return null if the schema definition is empty
+     */
+    public ParsedSchema get(String topic, byte[] version, Supplier<String> definition) {
+        return get(topic, version, definition, ParsedSchema::new);
+    }
+
+    private ParsedSchema get(String topic, byte[] version, Supplier<String> definition,
+                             Function<String, ParsedSchema> parser) {
+        Object key;
+        String schemaStr = null;
+        if (version != null) {
+            if (last != null && Arrays.equals(version, lastVersion) && Objects.equals(topic, lastTopic)) {
+                return last;
+            }
+            key = new VersionKey(topic, version);
+        } else {
+            schemaStr = definition.get();
+            if (last != null && lastVersion == null && schemaStr.equals(lastDefinition)) {
+                return last;
+            }
+            key = schemaStr;
+        }
+
+        ParsedSchema parsed = cache.get(key);
+        if (parsed == null) {
+            if (schemaStr == null) {
+                schemaStr = definition.get();
+            }
+            if (Strings.isNullOrEmpty(schemaStr.trim())) {
+                return null;
+            }
+            parsed = parse(schemaStr, parser);
+            cache.put(key, parsed);
+        }
+
+        lastTopic = topic;
+        lastVersion = version;
+        lastDefinition = version == null ? parsed.getDefinition() : null;
+        last = parsed;
+        return parsed;
+    }
+
+    /**
+     * Get the parsed schema of a primitive wrapper record schema.
+     */
+    public ParsedSchema get(Schema wrapperSchema) {
+        return wrapperSchemas.computeIfAbsent(wrapperSchema, s -> new ParsedSchema(s.toString()));
+    }
+
+    private ParsedSchema parse(String schemaStr, Function<String, ParsedSchema> parser) {
+        // versions or topics sharing a definition share the parsed schema, so switching between them is not a
+        // schema change for the writer
+        for (ParsedSchema parsed : cache.values()) {
+            if (parsed.getDefinition().equals(schemaStr)) {
+                return parsed;
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("parse new schema: {}", schemaStr);
+        }
+        return parser.apply(schemaStr);
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * Parsed record schema, with the non-null schema and the decoders of the records. PROTOBUF_NATIVE and KEY_VALUE
+     * schemas carry the converter of their records.
+     */
+    @Getter
+    public static class ParsedSchema {
+        private final String definition;
+        private final Schema schema;
+        private final Schema schemaWithoutNull;
+        private final GenericDatumReader<GenericRecord> datumReader;
+        private JsonRecordDecoder jsonDecoder;
+        private GenericDatumReader<GenericRecord> binaryReader;
+        private final ProtobufRecordConverter protobufConverter;
+        private final KeyValueRecordConverter keyValueConverter;
+
+        ParsedSchema(String definition) {
+            this(definition, new Schema.Parser().parse(definition), null, null);
+        }
+
+        /**
+         * Schema of PROTOBUF_NATIVE records, derived from the descriptor of the converter.
+         */
+        ParsedSchema(String definition, ProtobufRecordConverter protobufConverter) {
+            this(definition, protobufConverter.getSchema(), protobufConverter, null);
+        }
+
+        /**
+         * Row schema of KEY_VALUE records, flattened from the key and value schemas by the converter.
+         */
+        ParsedSchema(String definition, KeyValueRecordConverter keyValueConverter) {
+            this(definition, keyValueConverter.getSchema(), null, keyValueConverter);
+        }
+
+        private ParsedSchema(String definition, Schema schema, ProtobufRecordConverter protobufConverter,
+                             KeyValueRecordConverter keyValueConverter) {
+            this.definition = definition;
+            this.schema = schema;
+            // protobuf messages are converted directly, and their schema may be recursive
+            this.schemaWithoutNull = protobufConverter == null
+                ? SchemaConverter.convertPulsarAvroSchemaToNonNullSchema(schema) : schema;
+            this.datumReader = new GenericDatumReader<>(schemaWithoutNull, schemaWithoutNull);
+            this.protobufConverter = protobufConverter;
+            this.keyValueConverter = keyValueConverter;
+        }
+
+        /**
+         * Decoder of JSON records, compiled on first use since only JSON topics need it.
+         */
+        public JsonRecordDecoder getJsonDecoder() {
+            if (jsonDecoder == null) {
+                jsonDecoder = new JsonRecordDecoder(schemaWithoutNull);
+            }
+            return jsonDecoder;
+        }
+
+        /**
+         * Reader of the Avro binary payload of AVRO records, which is written with the full schema.
+         */
+        public GenericDatumReader<GenericRecord> getBinaryReader() {
+            if (binaryReader == null) {
+                binaryReader = new GenericDatumReader<>(schema, schema);
+            }
+            return binaryReader;
+        }
+    }
+
+    private static final class VersionKey {
+        private final String topic;
+        private final byte[] version;
+        private final int hash;
+
+        VersionKey(String topic, byte[] version) {
+            this.topic = topic;
+            this.version = version;
+            this.hash = 31 * Objects.hashCode(topic) + Arrays.hashCode(version);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof VersionKey)) {
+                return false;
+            }
+            VersionKey that = (VersionKey) o;
+            return Objects.equals(topic, that.topic) && Arrays.equals(version, that.version);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
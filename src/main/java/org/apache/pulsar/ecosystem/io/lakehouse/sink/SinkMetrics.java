@@ -0,0 +1,192 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.lakehouse.sink;
+
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_ADAPTIVE_COMMIT_INTERVAL;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_ADAPTIVE_RECORDS_PER_COMMIT;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_BYTES_IN_RATE;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_COMMIT_FAILED_COUNT;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_COMMIT_FILES_BYTES;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_COMMIT_FILES_COUNT;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_COMMIT_LATENCY_SUFFIX;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_COMMIT_RETRY_COUNT;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_CONVERT_STAGE_UTILIZATION;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_CONVERT_TIME_PER_RECORD;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_DEDUP_DROPPED_RECORDS;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_FLUSH_LATENCY_SUFFIX;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_OLDEST_UNACKED_RECORD_AGE;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_RECORDS_IN_RATE;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_REDELIVERED_RECORDS;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_SCOPE;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_WRITE_STAGE_UTILIZATION;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_WRITE_TIME_PER_RECORD;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.pulsar.io.core.SinkContext;
+
+/**
+ * Sink metrics, recorded through {@link SinkContext#recordMetric}. Latencies are recorded once per flush or commit,
+ * so the function runtime summarizes them into quantiles. Per record costs are accumulated by the writers for each
+ * drained batch, and reported as rates and averages by the dispatcher at a fixed interval. The utilization of the
+ * convert and write stages is their share of the elapsed time, averaged over the writers.
+ */
+class SinkMetrics {
+    private final SinkContext sinkContext;
+    private final String flushLatency;
+    private final String commitLatency;
+    private final int writers;
+
+    // written by the dispatcher only
+    private long recordsIn;
+    private long bytesIn;
+    private long redelivered;
+    private long lastReportTime;
+
+    // written by the writers
+    private final LongAdder recordsWritten = new LongAdder();
+    private final LongAdder convertNanos = new LongAdder();
+    private final LongAdder writeNanos = new LongAdder();
+    private final LongAdder commitFailures = new LongAdder();
+
+    SinkMetrics(SinkContext sinkContext, String type) {
+        this(sinkContext, type, 1);
+    }
+
+    SinkMetrics(SinkContext sinkContext, String type, int writers) {
+        this.sinkContext = sinkContext;
+        this.writers = Math.max(1, writers);
+        this.flushLatency = SINK_SCOPE + "_" + type + SINK_FLUSH_LATENCY_SUFFIX;
+        this.commitLatency = SINK_SCOPE + "_" + type + SINK_COMMIT_LATENCY_SUFFIX;
+        this.lastReportTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Called by the dispatcher for each record put into a writer queue.
+     */
+    void onDispatched(long bytes) {
+        recordsIn++;
+        bytesIn += bytes;
+    }
+
+    /**
+     * Called by the dispatcher for each redelivered record, which is acked without being written again.
+     */
+    void onRedelivered() {
+        redelivered++;
+    }
+
+    /**
+     * Called by a writer once it has written a batch of records.
+     */
+    void onWritten(int records, long batchConvertNanos, long batchWriteNanos) {
+        if (records == 0) {
+            return;
+        }
+        recordsWritten.add(records);
+        convertNanos.add(batchConvertNanos);
+        writeNanos.add(batchWriteNanos);
+    }
+
+    /**
+     * Called by a writer once it has prepared the data written since the previous barrier.
+     */
+    void onFlushed(long nanos) {
+        record(flushLatency, TimeUnit.NANOSECONDS.toMillis(nanos));
+    }
+
+    void onCommitted(long nanos, List<PreparedCommit> prepared) {
+        long files = 0;
+        long bytes = 0;
+        for (PreparedCommit preparedCommit : prepared) {
+            files += preparedCommit.getFileCount();
+            bytes += preparedCommit.getFileBytes();
+        }
+        record(commitLatency, TimeUnit.NANOSECONDS.toMillis(nanos));
+        record(SINK_COMMIT_FILES_COUNT, files);
+        record(SINK_COMMIT_FILES_BYTES, bytes);
+    }
+
+    /**
+     * Called when a commit failed.
+     * @param failedTimes the number of consecutive failures, the commit is retried with the next barrier
+     */
+    void onCommitFailed(int failedTimes) {
+        commitFailures.increment();
+        record(SINK_COMMIT_RETRY_COUNT, failedTimes);
+        record(SINK_COMMIT_FAILED_COUNT, commitFailures.sum());
+    }
+
+    /**
+     * Called by a writer once it has written the deduplicated records of a table.
+     * @param dropped the number of records replaced by a later record of the same key
+     */
+    void onDeduplicated(long dropped) {
+        record(SINK_DEDUP_DROPPED_RECORDS, dropped);
+    }
+
+    /**
+     * Called by the dispatcher when the adaptive commit has changed the commit triggers.
+     */
+    void onCommitTriggersAdjusted(long intervalMillis, long recordsPerCommit) {
+        record(SINK_ADAPTIVE_COMMIT_INTERVAL, intervalMillis);
+        record(SINK_ADAPTIVE_RECORDS_PER_COMMIT, recordsPerCommit);
+    }
+
+    /**
+     * Report the rates and averages accumulated since the previous report. Called by the dispatcher.
+     * @param oldestUnackedTime when the oldest record not acked yet was dispatched, 0 if all records are acked
+     */
+    void report(long now, long oldestUnackedTime) {
+        long elapsed = now - lastReportTime;
+        if (sinkContext == null || elapsed <= 0) {
+            return;
+        }
+        lastReportTime = now;
+
+        sinkContext.recordMetric(SINK_RECORDS_IN_RATE, recordsIn * 1000.0 / elapsed);
+        sinkContext.recordMetric(SINK_BYTES_IN_RATE, bytesIn * 1000.0 / elapsed);
+        sinkContext.recordMetric(SINK_REDELIVERED_RECORDS, redelivered);
+        recordsIn = 0;
+        bytesIn = 0;
+        redelivered = 0;
+
+        long records = recordsWritten.sumThenReset();
+        long convert = convertNanos.sumThenReset();
+        long write = writeNanos.sumThenReset();
+        if (records > 0) {
+            sinkContext.recordMetric(SINK_CONVERT_TIME_PER_RECORD, (double) convert / records);
+            sinkContext.recordMetric(SINK_WRITE_TIME_PER_RECORD, (double) write / records);
+        }
+        double elapsedNanos = (double) TimeUnit.MILLISECONDS.toNanos(elapsed) * writers;
+        sinkContext.recordMetric(SINK_CONVERT_STAGE_UTILIZATION, Math.min(1.0, convert / elapsedNanos));
+        sinkContext.recordMetric(SINK_WRITE_STAGE_UTILIZATION, Math.min(1.0, write / elapsedNanos));
+        sinkContext.recordMetric(SINK_OLDEST_UNACKED_RECORD_AGE,
+            oldestUnackedTime == 0 ? 0 : Math.max(0, now - oldestUnackedTime));
+    }
+
+    /**
+     * Record a metric, ignored without a sink context.
+     */
+    void record(String metricName, double value) {
+        if (sinkContext != null) {
+            sinkContext.recordMetric(metricName, value);
+        }
+    }
+}
@@ -19,102 +19,167 @@
 
 package org.apache.pulsar.ecosystem.io.lakehouse.sink;
 
-import com.google.common.base.Strings;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.protobuf.Message;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericDatumReader;
 import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryDecoder;
 import org.apache.avro.io.Decoder;
 import org.apache.avro.io.DecoderFactory;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.pulsar.common.naming.TopicName;
+import org.apache.pulsar.common.schema.KeyValue;
+import org.apache.pulsar.common.schema.SchemaType;
 import org.apache.pulsar.ecosystem.io.lakehouse.SinkConnectorConfig;
-import org.apache.pulsar.ecosystem.io.lakehouse.common.SchemaConverter;
-import org.apache.pulsar.ecosystem.io.lakehouse.exception.CommitFailedException;
-import org.apache.pulsar.ecosystem.io.lakehouse.exception.LakehouseConnectorException;
+import org.apache.pulsar.ecosystem.io.lakehouse.common.SpscRingBuffer;
 import org.apache.pulsar.ecosystem.io.lakehouse.exception.LakehouseWriterException;
 
 /**
- * Writer thread. Fetch records from queue, and write them into lakehouse table.
+ * Writer thread. Fetch records from queue, and write them into lakehouse table. The data is committed by the
+ * {@link SinkWriterCoordinator} once every writer has reached the same commit barrier.
+ *
+ * <p>With table routes, the records are routed by topic name or by the value of a record field, and every table gets
+ * its own lakehouse writer, created when the first record is routed to it.
+ *
+ * <p>The records are transformed by the configured {@link RecordTransform} once they are routed, so the tables are
+ * created with the transformed schema.
+ *
+ * <p>With dedupKeyColumns, the records of each table are collapsed by key in a {@link DedupBuffer} until the next
+ * commit barrier or schema change, and only the latest record of each key is written.
+ *
+ * <p>The work is split into two stages. The convert stage drains the queue, then decodes, converts, routes, transforms
+ * and projects the records into a {@link Batch}, together with the steps to hand them over to the tables. The write
+ * stage runs the steps: it encodes the records into the files, switches the writers to new table schemas and prepares
+ * the commits. By default both stages run one after the other on the writer thread. With sinkWriterPipelineEnabled the
+ * write stage runs on its own thread, connected to the convert stage by a bounded queue of batches, so the conversion
+ * of a batch overlaps the writing of the previous ones.
  */
 @Slf4j
 public class SinkWriter implements Runnable {
+    /**
+     * Route of the records written into the configured table.
+     */
+    public static final String DEFAULT_TABLE = "";
+    private static final int DRAIN_BATCH_SIZE = 1024;
+
+    // converted batches in flight between the convert and the write stage
+    private static final int PIPELINE_DEPTH = 4;
+
     private final SinkConnectorConfig sinkConnectorConfig;
-    private LakehouseWriter writer;
-    private Schema currentPulsarSchema;
-    private Schema schemaWithoutNull;
-    private PulsarSinkRecord lastRecord;
-    private final GenericDatumReader<GenericRecord> datumReader;
-    private final long timeIntervalPerCommit;
-    private long lastCommitTime;
-    private long recordsCnt;
-    private final long maxRecordsPerCommit;
-    private final int maxCommitFailedTimes;
+    private final SinkWriterCoordinator coordinator;
+    private final SchemaCache schemaCache;
+    private SchemaCache.ParsedSchema currentSchema;
+    private final Map<String, String> tableRoutes;
+    private final String tableRouteField;
+    // table routes resolved by topic name
+    private final Map<String, String> topicRoutes = new HashMap<>();
+    // routed tables, owned by the convert stage
+    private final Map<String, TableWriter> tables = new LinkedHashMap<>();
+    // tables handed over to the write stage, owned by the write stage
+    private final List<TableWriter> writtenTables = new ArrayList<>();
+    private final boolean dedup;
+    // null without column transform
+    private final RecordTransform transform;
+    // table of the records converted since the last write step
+    private TableWriter currentTable;
     private volatile boolean running;
-    private final LinkedBlockingQueue<PulsarSinkRecord> messages;
-    private int commitFailedCnt;
+    private final SpscRingBuffer<PulsarSinkRecord> messages;
+    private final PulsarSinkRecord[] drained;
+    // the batch of the writer when the stages run on the same thread
+    private final Batch batch;
+    // null when the stages run on the same thread. Converted batches go to the write stage through convertedBatches,
+    // and come back to the convert stage through freeBatches to be reused
+    private final SpscRingBuffer<Batch> convertedBatches;
+    private final SpscRingBuffer<Batch> freeBatches;
+    private BinaryDecoder binaryDecoder;
 
 
-    public SinkWriter(SinkConnectorConfig sinkConnectorConfig, LinkedBlockingQueue<PulsarSinkRecord> messages) {
+    public SinkWriter(SinkConnectorConfig sinkConnectorConfig, SpscRingBuffer<PulsarSinkRecord> messages,
+                      SinkWriterCoordinator coordinator) {
         this.messages = messages;
+        this.drained = new PulsarSinkRecord[DRAIN_BATCH_SIZE];
         this.sinkConnectorConfig = sinkConnectorConfig;
-        this.datumReader = new GenericDatumReader<>();
-        this.timeIntervalPerCommit = TimeUnit.SECONDS.toMillis(sinkConnectorConfig.getMaxCommitInterval());
-        this.maxRecordsPerCommit = sinkConnectorConfig.getMaxRecordsPerCommit();
-        this.maxCommitFailedTimes = sinkConnectorConfig.getMaxCommitFailedTimes();
-        this.lastCommitTime = System.currentTimeMillis();
-        this.recordsCnt = 0;
-        this.commitFailedCnt = 0;
+        this.coordinator = coordinator;
+        this.schemaCache = new SchemaCache();
+        this.tableRoutes = sinkConnectorConfig.getTableRoutes() == null
+            ? Collections.emptyMap() : sinkConnectorConfig.getTableRoutes();
+        this.tableRouteField = StringUtils.isBlank(sinkConnectorConfig.getTableRouteField())
+            ? null : sinkConnectorConfig.getTableRouteField();
+        this.transform = RecordTransform.of(sinkConnectorConfig);
+        this.dedup = sinkConnectorConfig.getDedupKeyColumns() != null
+            && !sinkConnectorConfig.getDedupKeyColumns().isEmpty();
+        this.currentTable = newTableWriter(DEFAULT_TABLE);
+        this.tables.put(DEFAULT_TABLE, currentTable);
+        if (sinkConnectorConfig.isSinkWriterPipelineEnabled()) {
+            this.batch = null;
+            this.convertedBatches = new SpscRingBuffer<>(PIPELINE_DEPTH, SpscRingBuffer.WaitStrategy.BLOCKING);
+            this.freeBatches = new SpscRingBuffer<>(PIPELINE_DEPTH, SpscRingBuffer.WaitStrategy.BLOCKING);
+            for (int i = 0; i < PIPELINE_DEPTH; i++) {
+                freeBatches.offer(new Batch());
+            }
+        } else {
+            this.batch = new Batch();
+            this.convertedBatches = null;
+            this.freeBatches = null;
+        }
         this.running = true;
     }
 
+    /**
+     * The stages of the writer, each run on its own thread: the writer itself, followed by the write stage when the
+     * stages are pipelined.
+     */
+    public List<Runnable> getStages() {
+        if (convertedBatches == null) {
+            return Collections.singletonList(this);
+        }
+        return Arrays.asList(this, this::runWriteStage);
+    }
+
+    /**
+     * Run the convert stage, and the write stage too unless the stages are pipelined.
+     */
     public void run() {
         log.info("DEBUG-Running Status Start: " + running);
         while (running) {
             try {
-                PulsarSinkRecord pulsarSinkRecord = messages.poll(100, TimeUnit.MILLISECONDS);
-                if (pulsarSinkRecord == null) {
-                    if (recordsCnt > 0) {
-                        commitIfNeed();
-                    }
+                int size = messages.drainTo(drained, coordinator.getIdleWaitMillis(), TimeUnit.MILLISECONDS);
+                if (size == 0) {
+                    coordinator.onIdle();
                     continue;
                 }
 
-                if (log.isDebugEnabled()) {
-                    pulsarSinkRecord.getRecord().getMessage().ifPresent(m -> {
-                        log.debug("Handling message: {}", m.getMessageId());
-                    });
+                Batch converted = convertedBatches == null ? batch : acquireBatch();
+                if (converted == null) {
+                    break;
                 }
-
-                String schemaStr = pulsarSinkRecord.getSchema();
-                if (Strings.isNullOrEmpty(schemaStr.trim())) {
-                    log.error("Failed to get schema from record, skip the record");
-                    continue;
+                try {
+                    convert(converted, size);
+                } catch (Exception e) {
+                    finish(converted);
+                    throw e;
                 }
-                if (currentPulsarSchema == null || !currentPulsarSchema.toString().equals(schemaStr)) {
-                    Schema schema = new Schema.Parser().parse(schemaStr);
-                    currentPulsarSchema = schema;
-                    if (log.isDebugEnabled()) {
-                        log.debug("new schema: {}", currentPulsarSchema);
+                if (convertedBatches == null) {
+                    write(converted);
+                } else {
+                    while (!convertedBatches.offer(converted, 1, TimeUnit.SECONDS)) {
+                        if (!running) {
+                            break;
+                        }
                     }
-                    schemaWithoutNull = SchemaConverter.convertPulsarAvroSchemaToNonNullSchema(schema);
-                    datumReader.setSchema(schemaWithoutNull);
-                    datumReader.setExpected(schemaWithoutNull);
-                    if (getOrCreateWriter().updateSchema(schema)) {
-                        resetStatus();
-                    }
-                }
-                Optional<GenericRecord> avroRecord =
-                    convertToAvroGenericData(pulsarSinkRecord, schemaWithoutNull, datumReader);
-                if (avroRecord.isPresent()) {
-                    getOrCreateWriter().writeAvroRecord(avroRecord.get());
-                    lastRecord = pulsarSinkRecord;
-                    recordsCnt++;
-                    commitIfNeed();
                 }
-
             } catch (Exception e) {
                 log.error("process record failed. ", e);
                 // fail the sink connector.
@@ -124,48 +189,366 @@ public class SinkWriter implements Runnable {
         log.info("DEBUG-Running Status End: " + running);
     }
 
-    private void commitIfNeed() throws LakehouseConnectorException {
-        log.info("DEBUG-needCommit: " + needCommit());
-        if (needCommit()) {
-            if (log.isDebugEnabled()) {
-                log.debug("Commit ");
+    private void runWriteStage() {
+        Batch[] next = new Batch[1];
+        while (running) {
+            try {
+                if (convertedBatches.drainTo(next, coordinator.getIdleWaitMillis(), TimeUnit.MILLISECONDS) == 0) {
+                    continue;
+                }
+                Batch converted = next[0];
+                next[0] = null;
+                try {
+                    write(converted);
+                } finally {
+                    freeBatches.offer(converted);
+                }
+            } catch (Exception e) {
+                log.error("write records failed. ", e);
+                // fail the sink connector.
+                running = false;
+            }
+        }
+    }
+
+    /**
+     * A batch written by the write stage, waiting for it if all the batches are in flight.
+     * @return null if the writer is stopped
+     */
+    private Batch acquireBatch() throws InterruptedException {
+        Batch[] free = new Batch[1];
+        while (running) {
+            if (freeBatches.drainTo(free, 1, TimeUnit.SECONDS) > 0) {
+                return free[0];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Convert the drained records into the batch.
+     */
+    private void convert(Batch batch, int size) throws Exception {
+        batch.drainedNanos = System.nanoTime();
+        for (int i = 0; i < size; i++) {
+            PulsarSinkRecord pulsarSinkRecord = drained[i];
+            drained[i] = null;
+            batch.bytes += pulsarSinkRecord.getEstimatedSize();
+            process(batch, pulsarSinkRecord, i);
+        }
+        endWriteStep(batch);
+    }
+
+    /**
+     * Process a record of the drained batch.
+     * @param slot the index of the record in the drained batch, which owns the reused records of the same index
+     */
+    private void process(Batch batch, PulsarSinkRecord pulsarSinkRecord, int slot) throws Exception {
+        if (pulsarSinkRecord instanceof CommitBarrier) {
+            endWriteStep(batch);
+            batch.steps.add(new Step(null, 0, null, (CommitBarrier) pulsarSinkRecord));
+            return;
+        }
+
+        if (log.isDebugEnabled()) {
+            pulsarSinkRecord.getRecord().getMessage().ifPresent(m -> {
+                log.debug("Handling message: {}", m.getMessageId());
+            });
+        }
+
+        SchemaType schemaType = pulsarSinkRecord.getSchemaType();
+        PulsarObject<?> primitive = null;
+        SchemaCache.ParsedSchema parsedSchema;
+        if (PrimitiveFactory.isSupported(schemaType)) {
+            // primitive records have no schema definition, they are written with their wrapper schema
+            primitive = PrimitiveFactory.getPulsarPrimitiveObject(schemaType, pulsarSinkRecord.getNativeObject(),
+                sinkConnectorConfig.getOverrideFieldName(), pulsarSinkRecord.getMessageIdKey());
+            parsedSchema = schemaCache.get(primitive.getSchema());
+        } else if (schemaType == SchemaType.PROTOBUF_NATIVE) {
+            parsedSchema = schemaCache.getProtobuf(pulsarSinkRecord);
+        } else if (schemaType == SchemaType.KEY_VALUE) {
+            parsedSchema = schemaCache.getKeyValue(pulsarSinkRecord, sinkConnectorConfig.getKeyValueKeyPrefix(),
+                sinkConnectorConfig.getKeyValueValuePrefix());
+        } else {
+            parsedSchema = schemaCache.get(pulsarSinkRecord);
+        }
+        if (parsedSchema == null) {
+            log.error("Failed to get schema from record, skip the record");
+            return;
+        }
+        currentSchema = parsedSchema;
+        long start = System.nanoTime();
+        Optional<GenericRecord> avroRecord = primitive != null
+            ? Optional.of(primitive.getRecord()) : convert(batch, pulsarSinkRecord, slot);
+        if (!avroRecord.isPresent()) {
+            batch.convertNanos += System.nanoTime() - start;
+            return;
+        }
+
+        TableWriter table = routeOf(pulsarSinkRecord, avroRecord.get());
+        if (table != currentTable) {
+            // a write step only holds the records of one table
+            endWriteStep(batch);
+            currentTable = table;
+        }
+        GenericRecord record = avroRecord.get();
+        Schema recordSchema = currentSchema.getSchema();
+        if (transform != null) {
+            record = transform.apply(pulsarSinkRecord, record, batch.transformedRecords[slot]);
+            batch.transformedRecords[slot] = record;
+            recordSchema = record.getSchema();
+        }
+        if (table.mergedSchema != recordSchema) {
+            table.mergedSchema = recordSchema;
+            if (table.schema.merge(table.mergedSchema)) {
+                // the records projected onto the old schema are written before the schema is updated
+                endWriteStep(batch);
+                if (log.isDebugEnabled()) {
+                    log.debug("new schema of table '{}': {}", table.table, table.schema.getSchema());
+                }
+                batch.steps.add(new Step(table, 0, table.schema.getSchema(), null));
+            }
+        }
+        GenericRecord projected = table.schema.project(record, batch.projectedRecords[slot]);
+        if (projected != record) {
+            // kept apart from the converted records, which are reused by the decoders
+            batch.projectedRecords[slot] = projected;
+        }
+        batch.records.add(projected);
+        long end = System.nanoTime();
+        batch.convertNanos += end - start;
+        FreshnessTrace trace = pulsarSinkRecord.getTrace();
+        if (trace != null) {
+            trace.onConverted(batch.drainedNanos, end, batch.records.size() - 1);
+            batch.traces.add(trace);
+        }
+    }
+
+    /**
+     * Add a step writing the records converted since the last write step into the current table.
+     */
+    private void endWriteStep(Batch batch) {
+        int end = batch.records.size();
+        int start = batch.lastWriteEnd;
+        if (end > start) {
+            batch.steps.add(new Step(currentTable, end, null, null));
+            batch.lastWriteEnd = end;
+        }
+    }
+
+    /**
+     * Run the steps of the converted batch, then release it.
+     */
+    private void write(Batch batch) throws Exception {
+        try {
+            int start = 0;
+            for (Step step : batch.steps) {
+                if (step.barrier != null) {
+                    prepareCommit(batch, step.barrier);
+                } else if (step.schema != null) {
+                    updateSchema(batch, step.table, step.schema);
+                } else {
+                    writeRecords(batch, step.table, batch.records.subList(start, step.end));
+                    onWritten(batch, step.end);
+                    start = step.end;
+                }
+            }
+        } finally {
+            finish(batch);
+        }
+    }
+
+    /**
+     * Mark the traced records of the batch up to the given index as written, before their barrier is prepared.
+     */
+    private static void onWritten(Batch batch, int end) {
+        long now = 0;
+        while (batch.writtenTraces < batch.traces.size()
+            && batch.traces.get(batch.writtenTraces).getBatchIndex() < end) {
+            if (now == 0) {
+                now = System.nanoTime();
             }
-            if (getOrCreateWriter().flush()) {
-                resetStatus();
-            } else {
-                commitFailedCnt++;
-                log.warn("Commit records failed {} times", commitFailedCnt);
-                if (commitFailedCnt > maxCommitFailedTimes) {
-                    String errMsg = "Exceed the max commit failed times, the allowed max failure times is "
-                        + maxCommitFailedTimes;
-                    log.error(errMsg);
-                    throw new CommitFailedException(errMsg);
+            batch.traces.get(batch.writtenTraces++).onWritten(now);
+        }
+    }
+
+    private void prepareCommit(Batch batch, CommitBarrier barrier) throws Exception {
+        for (TableWriter table : writtenTables) {
+            writeDeduplicated(batch, table);
+        }
+        List<PreparedCommit> prepared = new ArrayList<>(writtenTables.size());
+        long start = System.nanoTime();
+        for (TableWriter table : writtenTables) {
+            for (PreparedCommit preparedCommit : table.schemaUpdates) {
+                prepared.add(new RoutedCommit(table.table, preparedCommit));
+            }
+            table.schemaUpdates.clear();
+            if (table.writer != null) {
+                prepared.add(new RoutedCommit(table.table, table.writer.prepareCommit()));
+            }
+        }
+        if (!prepared.isEmpty()) {
+            coordinator.getMetrics().onFlushed(System.nanoTime() - start);
+        }
+        coordinator.onPrepared(barrier, prepared);
+    }
+
+    private void updateSchema(Batch batch, TableWriter table, Schema schema) throws Exception {
+        if (table.writerSchema == null) {
+            writtenTables.add(table);
+        }
+        writeDeduplicated(batch, table);
+        table.writerSchema = schema;
+        // the data written with the old schema is committed with the next commit barrier, together with the data
+        // written with the new schema. Iceberg adds the new columns to the table first, so the schema changes of the
+        // writers of a table are made one at a time
+        LakehouseWriter writer = getOrCreateWriter(table);
+        PreparedCommit prepared;
+        synchronized (coordinator.getTableLock(table.table)) {
+            prepared = writer.prepareSchemaUpdate(schema);
+        }
+        if (!prepared.isEmpty()) {
+            table.schemaUpdates.add(prepared);
+        }
+    }
+
+    /**
+     * Release the memory of the records of the batch and report its costs, so the batch can be reused.
+     */
+    private void finish(Batch batch) {
+        coordinator.onProcessed(batch.bytes);
+        coordinator.getMetrics().onWritten(batch.written, batch.convertNanos, batch.writeNanos);
+        batch.clear();
+    }
+
+    /**
+     * The table of the record, by the value of the route field or by topic name.
+     */
+    private TableWriter routeOf(PulsarSinkRecord record, GenericRecord avroRecord) {
+        if (tableRoutes.isEmpty()) {
+            return currentTable;
+        }
+        String table;
+        if (tableRouteField != null) {
+            Schema.Field field = avroRecord.getSchema().getField(tableRouteField);
+            Object value = field == null ? null : avroRecord.get(field.pos());
+            table = value == null ? null : tableRoutes.get(value.toString());
+        } else {
+            String topic = record.getTopicName();
+            table = topic == null ? null : topicRoutes.computeIfAbsent(topic, this::routeOfTopic);
+        }
+        if (table == null || table.isEmpty()) {
+            return tables.get(DEFAULT_TABLE);
+        }
+        return tables.computeIfAbsent(table, this::newTableWriter);
+    }
+
+    private TableWriter newTableWriter(String table) {
+        TableWriter tableWriter = new TableWriter(table);
+        if (dedup) {
+            String spillPath = StringUtils.isBlank(sinkConnectorConfig.getDedupSpillPath())
+                ? System.getProperty("java.io.tmpdir") : sinkConnectorConfig.getDedupSpillPath();
+            tableWriter.dedup = new DedupBuffer(sinkConnectorConfig.getDedupKeyColumns(),
+                StringUtils.isBlank(sinkConnectorConfig.getDedupOrderingColumn())
+                    ? null : sinkConnectorConfig.getDedupOrderingColumn(),
+                sinkConnectorConfig.getDedupMaxMemoryBytes(), spillPath);
+        }
+        return tableWriter;
+    }
+
+    /**
+     * Look up the route of the topic by its full name, its partitioned topic name and its local name.
+     * @return the table, or an empty string for the configured table
+     */
+    private String routeOfTopic(String topic) {
+        String table = tableRoutes.get(topic);
+        if (table == null) {
+            try {
+                TopicName topicName = TopicName.get(topic);
+                table = tableRoutes.get(topicName.getPartitionedTopicName());
+                if (table == null) {
+                    table = tableRoutes.get(TopicName.get(topicName.getPartitionedTopicName()).getLocalName());
                 }
+            } catch (IllegalArgumentException e) {
+                log.warn("Invalid topic name {}, write its records into the configured table", topic);
             }
         }
+        return table == null ? DEFAULT_TABLE : table;
     }
 
-    private LakehouseWriter getOrCreateWriter() throws LakehouseWriterException {
-        if (writer != null) {
-            return writer;
+    /**
+     * Hand the converted records over to the lakehouse writer, or to the dedup buffer of the table.
+     */
+    private void writeRecords(Batch batch, TableWriter table, List<GenericRecord> records)
+        throws IOException, LakehouseWriterException {
+        long start = System.nanoTime();
+        if (table.dedup != null) {
+            for (GenericRecord record : records) {
+                table.dedup.add(record);
+            }
+        } else {
+            getOrCreateWriter(table).writeAvroRecords(records);
         }
-        writer = LakehouseWriter.getWriter(sinkConnectorConfig, currentPulsarSchema);
-        return writer;
+        batch.writeNanos += System.nanoTime() - start;
+        batch.written += records.size();
     }
 
-    private void resetStatus() {
-        if (lastRecord != null) {
-            lastRecord.ack();
+    /**
+     * Hand the latest record of each key buffered for the table over to its lakehouse writer.
+     */
+    private void writeDeduplicated(Batch batch, TableWriter table) throws IOException, LakehouseWriterException {
+        if (table.dedup == null || table.dedup.isEmpty()) {
+            return;
         }
-        lastCommitTime = System.currentTimeMillis();
-        recordsCnt = 0;
-        commitFailedCnt = 0;
+        long start = System.nanoTime();
+        long dropped = table.dedup.writeTo(getOrCreateWriter(table));
+        batch.writeNanos += System.nanoTime() - start;
+        coordinator.getMetrics().onDeduplicated(dropped);
     }
 
-    private boolean needCommit() {
-//        log.info("DEBUG: last"+);
-        return System.currentTimeMillis() - lastCommitTime >= timeIntervalPerCommit
-            || recordsCnt >= maxRecordsPerCommit;
+    /**
+     * The lakehouse writer of the table, created with the table schema of the write stage.
+     */
+    private LakehouseWriter getOrCreateWriter(TableWriter table) throws LakehouseWriterException {
+        if (table.writer == null) {
+            table.writer = coordinator.createWriter(table.table, table.writerSchema);
+        }
+        return table.writer;
+    }
+
+    /**
+     * Convert the record with the decoders of the current schema, into the record reused for its slot of the batch.
+     * AVRO records are decoded from the message payload, so the value decoded by the client isn't needed. JSON
+     * records are decoded from the Jackson tree, and PROTOBUF_NATIVE records are converted from the dynamic message.
+     * The key and value of KEY_VALUE records are flattened into one row.
+     */
+    private Optional<GenericRecord> convert(Batch batch, PulsarSinkRecord record, int slot) throws IOException {
+        SchemaType schemaType = record.getSchemaType();
+        if (schemaType == SchemaType.AVRO && record.getSchemaVersion() != null) {
+            byte[] data = record.getData();
+            if (data != null) {
+                binaryDecoder = DecoderFactory.get().binaryDecoder(data, binaryDecoder);
+                batch.reusedRecords[slot] =
+                    currentSchema.getBinaryReader().read(batch.reusedRecords[slot], binaryDecoder);
+                return Optional.of(batch.reusedRecords[slot]);
+            }
+        }
+        if (schemaType == SchemaType.PROTOBUF_NATIVE && record.getNativeObject() instanceof Message) {
+            batch.reusedRecords[slot] = currentSchema.getProtobufConverter()
+                .convert((Message) record.getNativeObject(), batch.reusedRecords[slot]);
+            return Optional.of(batch.reusedRecords[slot]);
+        }
+        if (schemaType == SchemaType.KEY_VALUE && record.getNativeObject() instanceof KeyValue) {
+            batch.reusedRecords[slot] = currentSchema.getKeyValueConverter()
+                .convert((KeyValue<?, ?>) record.getNativeObject(), batch.reusedRecords[slot]);
+            return Optional.of(batch.reusedRecords[slot]);
+        }
+        if (schemaType == SchemaType.JSON && record.getNativeObject() instanceof JsonNode) {
+            batch.reusedRecords[slot] =
+                currentSchema.getJsonDecoder().decode((JsonNode) record.getNativeObject(), batch.reusedRecords[slot]);
+            return Optional.of(batch.reusedRecords[slot]);
+        }
+        return convertToAvroGenericData(record, currentSchema.getSchemaWithoutNull(), currentSchema.getDatumReader());
     }
 
     public Optional<GenericRecord> convertToAvroGenericData(PulsarSinkRecord record,
@@ -182,7 +565,8 @@ public class SinkWriter implements Runnable {
             default:
                 try {
                     GenericRecord gr = PrimitiveFactory.getPulsarPrimitiveObject(record.getSchemaType(),
-                        record.getNativeObject(), sinkConnectorConfig.getOverrideFieldName()).getRecord();
+                        record.getNativeObject(), sinkConnectorConfig.getOverrideFieldName(),
+                        record.getMessageIdKey()).getRecord();
                     return Optional.of(gr);
                 } catch (Exception e) {
                     log.error("not support this kind of schema: {}", record.getSchemaType(), e);
@@ -195,13 +579,95 @@ public class SinkWriter implements Runnable {
         return running;
     }
 
+    public void stop() {
+        running = false;
+    }
+
     public void close() throws IOException {
         running = false;
-        if (writer != null) {
-            writer.close();
+        for (TableWriter table : tables.values()) {
+            if (table.dedup != null) {
+                table.dedup.close();
+            }
+            if (table.writer != null) {
+                table.writer.close();
+            }
+        }
+    }
+
+    /**
+     * The lakehouse writer of a table route, and the table schema unified over the schema versions of its records,
+     * so interleaved versions share the open files.
+     */
+    private static final class TableWriter {
+        private final String table;
+        // owned by the convert stage
+        private final UnifiedSchema schema = new UnifiedSchema();
+        // the last record schema merged into the unified schema
+        private Schema mergedSchema;
+        // owned by the write stage, the unified schema of the records written so far
+        private Schema writerSchema;
+        private LakehouseWriter writer;
+        // data written with the previous schemas since the last commit barrier, owned by the write stage
+        private final List<PreparedCommit> schemaUpdates = new ArrayList<>();
+        // records of the commit batch collapsed by key, null without dedupKeyColumns
+        private DedupBuffer dedup;
+
+        TableWriter(String table) {
+            this.table = table;
         }
-        if (lastRecord != null) {
-            lastRecord.ack();
+    }
+
+    /**
+     * Records converted from a drained batch, and the steps handing them over to the tables in order.
+     */
+    private static final class Batch {
+        // lakehouse writers don't keep the records, so the records decoded into each slot are reused by the next
+        // conversion into the batch
+        private final GenericRecord[] reusedRecords = new GenericRecord[DRAIN_BATCH_SIZE];
+        private final GenericRecord[] transformedRecords = new GenericRecord[DRAIN_BATCH_SIZE];
+        private final GenericRecord[] projectedRecords = new GenericRecord[DRAIN_BATCH_SIZE];
+        private final List<GenericRecord> records = new ArrayList<>(DRAIN_BATCH_SIZE);
+        private final List<Step> steps = new ArrayList<>();
+        private int lastWriteEnd;
+        // freshness traces of the sampled records, and how many of them are written
+        private final List<FreshnessTrace> traces = new ArrayList<>();
+        private int writtenTraces;
+        private long drainedNanos;
+        private long bytes;
+        // costs reported to the sink metrics once the batch is written
+        private int written;
+        private long convertNanos;
+        private long writeNanos;
+
+        void clear() {
+            records.clear();
+            steps.clear();
+            lastWriteEnd = 0;
+            traces.clear();
+            writtenTraces = 0;
+            bytes = 0;
+            written = 0;
+            convertNanos = 0;
+            writeNanos = 0;
+        }
+    }
+
+    /**
+     * A step of the write stage: writing the records of a batch up to an index into a table, updating the schema of
+     * a table, or preparing the commit of a barrier.
+     */
+    private static final class Step {
+        private final TableWriter table;
+        private final int end;
+        private final Schema schema;
+        private final CommitBarrier barrier;
+
+        Step(TableWriter table, int end, Schema schema, CommitBarrier barrier) {
+            this.table = table;
+            this.end = end;
+            this.schema = schema;
+            this.barrier = barrier;
         }
     }
 }
@@ -0,0 +1,802 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.lakehouse.sink;
+
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_QUEUE_BUFFERED_BYTES;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_QUEUE_DEPTH;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_QUEUE_DRAIN_WAIT_TIME;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_QUEUE_OFFER_WAIT_TIME;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.avro.Schema;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.hudi.keygen.constant.KeyGeneratorOptions;
+import org.apache.pulsar.client.api.SubscriptionType;
+import org.apache.pulsar.client.api.schema.GenericObject;
+import org.apache.pulsar.client.api.schema.GenericRecord;
+import org.apache.pulsar.ecosystem.io.lakehouse.SinkConnectorConfig;
+import org.apache.pulsar.ecosystem.io.lakehouse.common.ConfigFileWatcher;
+import org.apache.pulsar.ecosystem.io.lakehouse.common.MemoryLimiter;
+import org.apache.pulsar.ecosystem.io.lakehouse.common.Murmur32Hash;
+import org.apache.pulsar.ecosystem.io.lakehouse.common.SpscRingBuffer;
+import org.apache.pulsar.ecosystem.io.lakehouse.exception.CommitFailedException;
+import org.apache.pulsar.ecosystem.io.lakehouse.exception.LakehouseWriterException;
+import org.apache.pulsar.io.core.SinkContext;
+
+/**
+ * Sink writer coordinator. It routes records to the sink writers, and turns the data prepared by all the writers
+ * into a single lakehouse table commit.
+ *
+ * <p>When a commit is needed, a {@link CommitBarrier} is put into every writer queue. Each writer prepares the data
+ * it has written when it reaches the barrier and goes on writing new files. Once all the writers have arrived, the
+ * barrier is committed on the committer thread, which commits the data of all the writers and cumulatively acks the
+ * last record dispatched before the barrier from each topic partition. Up to maxInFlightCommits barriers are pending
+ * at a time, and they are committed in order.
+ *
+ * <p>With a Shared or Key_Shared subscription a cumulative ack isn't possible, so every record dispatched before the
+ * barrier is tracked with it and acked individually after the commit.
+ *
+ * <p>With table routes, the writers write each table with its own lakehouse writer, and a barrier commits the data
+ * of every table. The records of the barrier are acked once all the tables are committed, and the data of the tables
+ * which failed to commit is retried with the next barrier.
+ *
+ * <p>The data of a failed commit is retried by a barrier of its own once a backoff, which grows with the consecutive
+ * failures, has passed, or with the next regular commit if that comes first.
+ *
+ * <p>With adaptiveCommitEnabled, the commit interval and records per commit are tuned by an
+ * {@link AdaptiveCommitController}, and the configured ones are their upper bounds.
+ *
+ * <p>With redeliveryFilterEnabled, the records redelivered after a failover or a restart are recognized by a
+ * {@link RedeliveryFilter} before they are dispatched, and only acked again.
+ */
+@Slf4j
+public class SinkWriterCoordinator {
+    private static final long CLOSE_TIMEOUT_SECONDS = 60;
+    private static final long IDLE_WAIT_MS = 100;
+    private static final long METRICS_INTERVAL_MS = 1000;
+    private static final long CONFIG_CHECK_INTERVAL_MS = 5000;
+    // the delay before retrying a failed commit doubles with each failure, from the min to the max
+    static final long MIN_RETRY_BACKOFF_MS = 1000;
+    static final long MAX_RETRY_BACKOFF_MS = 60000;
+
+    private final SinkConnectorConfig sinkConnectorConfig;
+    private final SinkContext sinkContext;
+    private final List<SpscRingBuffer<PulsarSinkRecord>> queues;
+    private final List<SinkWriter> writers;
+    private final MemoryLimiter memoryLimiter;
+    private final SinkMetrics metrics;
+    // the input columns the records are sharded by, null to shard them by message key
+    private final List<String> shardColumns;
+    private final boolean shardByDedupKey;
+    // dynamic settings, refreshed from the config by the dispatcher, see applyConfigIfNeed()
+    private long timeIntervalPerCommit;
+    private long maxRecordsPerCommit;
+    // min interval between commits triggered by maxRecordsPerCommit, only set by the adaptive commit
+    private long minTimeIntervalPerCommit;
+    private volatile int maxCommitFailedTimes;
+    private int maxInFlightCommits;
+    private final boolean individualAck;
+    private ExecutorService executor;
+    private ExecutorService commitExecutor;
+    private ConfigFileWatcher configWatcher;
+    // bumped after the dynamic settings of the config are updated
+    private final AtomicLong configVersion = new AtomicLong();
+    private long appliedConfigVersion;
+    private final AdaptiveCommitController commitController;
+    private final RedeliveryFilter redeliveryFilter;
+    // null without freshnessTraceSampleInterval
+    private final FreshnessTracer freshnessTracer;
+
+    // dispatch state, guarded by dispatchLock. Writers only try to acquire it, so a dispatcher blocked on a full
+    // writer queue can never deadlock with the writer.
+    private final ReentrantLock dispatchLock = new ReentrantLock();
+    private long lastCommitTime;
+    private volatile long commitDueTime = Long.MAX_VALUE;
+    private long recordsCnt;
+    private long nextBarrierId;
+    private int roundRobinIndex;
+    private PendingAcks pendingAcks;
+    private final Deque<CommitBarrier> pendingBarriers = new ArrayDeque<>();
+    private long lastMetricsTime;
+    private long lastOfferWaitNanos;
+    private long lastDrainWaitNanos;
+
+    // commit state, guarded by this. Barriers are committed one at a time on the committer thread
+    private final List<PreparedCommit> retained = new ArrayList<>();
+    private final PendingAcks retainedAcks;
+    private int commitFailedCnt;
+    // read by the dispatcher without blocking on a running commit
+    private volatile boolean hasRetained;
+    // when the retained data is committed again without waiting for the next regular commit
+    private volatile long nextRetryTime;
+    private volatile long oldestRetainedAckTime;
+    private volatile boolean failed;
+    // the first lakehouse writer created for each table commits the data of all the writers of the table
+    private final Map<String, LakehouseWriter> committers = new ConcurrentHashMap<>();
+    // serializes the changes of the table metadata by the writers of each table, apart from the commits
+    private final Map<String, Object> tableLocks = new ConcurrentHashMap<>();
+
+    public SinkWriterCoordinator(SinkConnectorConfig sinkConnectorConfig, SinkContext sinkContext) {
+        this.sinkConnectorConfig = sinkConnectorConfig;
+        this.sinkContext = sinkContext;
+        int threads = sinkConnectorConfig.getSinkWriterThreads();
+        int queueSize = Math.max(1, sinkConnectorConfig.getSinkConnectorQueueSize() / threads);
+        SpscRingBuffer.WaitStrategy waitStrategy =
+            SpscRingBuffer.WaitStrategy.fromString(sinkConnectorConfig.getSinkConnectorQueueWaitStrategy());
+        this.queues = new ArrayList<>(threads);
+        this.writers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            SpscRingBuffer<PulsarSinkRecord> queue = new SpscRingBuffer<>(queueSize, waitStrategy);
+            queues.add(queue);
+            writers.add(new SinkWriter(sinkConnectorConfig, queue, this));
+        }
+        this.memoryLimiter = new MemoryLimiter(sinkConnectorConfig.getSinkConnectorQueueMaxBytes());
+        this.metrics = new SinkMetrics(sinkContext, sinkConnectorConfig.getType(), threads);
+        this.shardByDedupKey = sinkConnectorConfig.getDedupKeyColumns() != null
+            && !sinkConnectorConfig.getDedupKeyColumns().isEmpty();
+        this.shardColumns = getShardColumns(sinkConnectorConfig);
+        if (shardByDedupKey && threads > 1
+            && SinkConnectorConfig.SHARD_BY_PARTITION.equals(sinkConnectorConfig.getSinkWriterShardBy())) {
+            log.info("Shard the records by dedupKeyColumns {} instead of the partition columns",
+                sinkConnectorConfig.getDedupKeyColumns());
+        }
+        this.commitController = sinkConnectorConfig.isAdaptiveCommitEnabled()
+            ? new AdaptiveCommitController(sinkConnectorConfig, threads, System.currentTimeMillis()) : null;
+        applyConfig();
+        this.individualAck = sinkContext != null && isIndividualAck(sinkContext.getSubscriptionType());
+        if (sinkConnectorConfig.isRedeliveryFilterEnabled() && individualAck) {
+            log.warn("The redelivery filter needs ordered partitions, it is disabled with the {} subscription",
+                sinkContext.getSubscriptionType());
+        }
+        this.redeliveryFilter = sinkConnectorConfig.isRedeliveryFilterEnabled() && !individualAck
+            ? new RedeliveryFilter() : null;
+        this.freshnessTracer = sinkConnectorConfig.getFreshnessTraceSampleInterval() > 0
+            ? new FreshnessTracer(sinkConnectorConfig.getFreshnessTraceSampleInterval(),
+                sinkConnectorConfig.isFreshnessTraceLogEnabled(), metrics)
+            : null;
+        this.pendingAcks = newPendingAcks();
+        this.retainedAcks = newPendingAcks();
+        this.lastCommitTime = System.currentTimeMillis();
+    }
+
+    public void start() {
+        seedRedeliveryFilter();
+        commitExecutor = Executors.newSingleThreadExecutor(new DefaultThreadFactory("lakehouse-committer"));
+        List<Runnable> stages = new ArrayList<>();
+        writers.forEach(writer -> stages.addAll(writer.getStages()));
+        executor = Executors.newFixedThreadPool(stages.size(), new DefaultThreadFactory("lakehouse-io"));
+        stages.forEach(executor::execute);
+        if (StringUtils.isNotBlank(sinkConnectorConfig.getDynamicConfigFile())) {
+            configWatcher = new ConfigFileWatcher(sinkConnectorConfig.getDynamicConfigFile(),
+                CONFIG_CHECK_INTERVAL_MS, this::updateConfig);
+        }
+    }
+
+    private void seedRedeliveryFilter() {
+        if (redeliveryFilter == null) {
+            return;
+        }
+        // the tables of the routes are committed independently, a watermark of one table doesn't cover the others
+        if (!sinkConnectorConfig.getTableRoutes().isEmpty()) {
+            log.info("The redelivery filter isn't seeded from the committed watermarks with table routes");
+            return;
+        }
+        try {
+            redeliveryFilter.seed(LakehouseWriter.getCommittedProperties(sinkConnectorConfig,
+                RedeliveryFilter.WATERMARK_PREFIX));
+        } catch (Exception e) {
+            log.warn("Failed to read the committed watermarks, the redelivery filter isn't seeded", e);
+        }
+    }
+
+    /**
+     * Update the dynamic settings of the config. They are applied by the dispatcher with the next record, or by the
+     * next idle writer.
+     */
+    public void updateConfig(Map<String, Object> settings) {
+        Set<String> changed = sinkConnectorConfig.updateDynamicFields(settings);
+        if (!changed.isEmpty()) {
+            log.info("Dynamic settings {} updated", changed);
+            configVersion.incrementAndGet();
+        }
+    }
+
+    private void applyConfigIfNeed() {
+        long version = configVersion.get();
+        if (version != appliedConfigVersion) {
+            appliedConfigVersion = version;
+            applyConfig();
+            if (recordsCnt > 0) {
+                commitDueTime = lastCommitTime + timeIntervalPerCommit;
+            }
+        }
+    }
+
+    private void adjustCommitTriggersIfNeed() {
+        long now = System.currentTimeMillis();
+        if (commitController == null || !commitController.isDue(now)) {
+            return;
+        }
+        long size = 0;
+        long limit = 0;
+        for (SpscRingBuffer<PulsarSinkRecord> queue : queues) {
+            size += queue.size();
+            limit += queue.getLimit();
+        }
+        if (!commitController.evaluate(now, (double) size / limit)) {
+            return;
+        }
+        timeIntervalPerCommit = commitController.getIntervalMillis();
+        minTimeIntervalPerCommit = commitController.getMinIntervalMillis();
+        maxRecordsPerCommit = commitController.getRecordsPerCommit();
+        if (recordsCnt > 0) {
+            commitDueTime = lastCommitTime + timeIntervalPerCommit;
+        }
+        metrics.onCommitTriggersAdjusted(timeIntervalPerCommit, maxRecordsPerCommit);
+        if (log.isDebugEnabled()) {
+            log.debug("Adjust the commit interval to {} ms, and the records per commit to {}",
+                timeIntervalPerCommit, maxRecordsPerCommit);
+        }
+    }
+
+    private void applyConfig() {
+        timeIntervalPerCommit = TimeUnit.SECONDS.toMillis(sinkConnectorConfig.getMaxCommitInterval());
+        maxRecordsPerCommit = sinkConnectorConfig.getMaxRecordsPerCommit();
+        if (commitController != null) {
+            // the adaptive triggers stay within the new bounds until the next evaluation
+            timeIntervalPerCommit = Math.min(timeIntervalPerCommit, commitController.getIntervalMillis());
+            maxRecordsPerCommit = Math.min(maxRecordsPerCommit, commitController.getRecordsPerCommit());
+            minTimeIntervalPerCommit = Math.min(timeIntervalPerCommit, commitController.getMinIntervalMillis());
+        }
+        maxCommitFailedTimes = sinkConnectorConfig.getMaxCommitFailedTimes();
+        maxInFlightCommits = sinkConnectorConfig.getMaxInFlightCommits();
+        memoryLimiter.setMaxBytes(sinkConnectorConfig.getSinkConnectorQueueMaxBytes());
+        int queueSize = Math.max(1, sinkConnectorConfig.getSinkConnectorQueueSize() / queues.size());
+        for (SpscRingBuffer<PulsarSinkRecord> queue : queues) {
+            if (queueSize > queue.capacity()) {
+                log.warn("sinkConnectorQueueSize can't grow beyond the size the connector started with, "
+                    + "limit each writer queue to {}", queue.capacity());
+            }
+            queue.setLimit(queueSize);
+        }
+    }
+
+    /**
+     * Called for each record received by the sink, before it is offered.
+     */
+    public void onReceived(PulsarSinkRecord record) {
+        if (freshnessTracer != null) {
+            freshnessTracer.onReceived(record);
+        }
+    }
+
+    /**
+     * Route the record to its writer.
+     * @return false if the writer queue or the buffered bytes budget is still full after waiting for the given
+     *     timeout
+     */
+    public boolean offer(PulsarSinkRecord record, long timeout, TimeUnit unit) throws InterruptedException {
+        dispatchLock.lock();
+        try {
+            applyConfigIfNeed();
+            if (redeliveryFilter != null && redeliveryFilter.isRedelivered(record)) {
+                // written already, only acked again with the next barrier
+                pendingAcks.add(record);
+                metrics.onRedelivered();
+                if (recordsCnt++ == 0) {
+                    commitDueTime = lastCommitTime + timeIntervalPerCommit;
+                }
+                triggerCommitIfNeed(false);
+                recordMetricsIfNeed();
+                return true;
+            }
+            if (!memoryLimiter.tryAcquire(record.getEstimatedSize())) {
+                if (individualAck && !hasRetained) {
+                    // the budget is held by the records waiting for a commit, commit them to give it back
+                    triggerCommitIfNeed(true);
+                }
+                if (!memoryLimiter.tryAcquire(record.getEstimatedSize(), timeout, unit)) {
+                    recordMetricsIfNeed();
+                    return false;
+                }
+            }
+            if (!queues.get(shardOf(record)).offer(record, timeout, unit)) {
+                memoryLimiter.release(record.getEstimatedSize());
+                recordMetricsIfNeed();
+                return false;
+            }
+            if (redeliveryFilter != null) {
+                redeliveryFilter.onDispatched(record);
+            }
+            pendingAcks.add(record);
+            if (record.getTrace() != null) {
+                freshnessTracer.onDispatched(record.getTrace());
+            }
+            metrics.onDispatched(record.getEstimatedSize());
+            if (commitController != null) {
+                commitController.onDispatched(record.getEstimatedSize());
+            }
+            if (recordsCnt++ == 0) {
+                commitDueTime = lastCommitTime + timeIntervalPerCommit;
+            }
+            adjustCommitTriggersIfNeed();
+            triggerCommitIfNeed(false);
+            recordMetricsIfNeed();
+            return true;
+        } finally {
+            dispatchLock.unlock();
+        }
+    }
+
+    /**
+     * Called by a writer when its queue is empty, so commits are still triggered when no records arrive.
+     */
+    void onIdle() throws InterruptedException {
+        if (dispatchLock.tryLock()) {
+            try {
+                applyConfigIfNeed();
+                adjustCommitTriggersIfNeed();
+                triggerCommitIfNeed(false);
+                recordMetricsIfNeed();
+            } finally {
+                dispatchLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Called by a writer once it has written the records, to give their bytes back to the buffer budget. With
+     * individual acks every record is held until it is acked, so its bytes are given back by the commit instead.
+     */
+    void onProcessed(long bytes) {
+        if (!individualAck) {
+            memoryLimiter.release(bytes);
+        }
+    }
+
+    /**
+     * How long an idle writer waits for records before calling {@link #onIdle()}, so a due commit isn't delayed.
+     */
+    long getIdleWaitMillis() {
+        long untilCommit = commitDueTime - System.currentTimeMillis();
+        return Math.max(1, Math.min(IDLE_WAIT_MS, untilCommit));
+    }
+
+    /**
+     * Called by a writer when it reaches a commit barrier. The last writer to arrive hands the barrier over to the
+     * committer thread. Barriers complete in the order they were injected, since every writer reaches them in that
+     * order, so they are committed in order too.
+     */
+    void onPrepared(CommitBarrier barrier, List<PreparedCommit> preparedCommits) {
+        if (barrier.arrive(preparedCommits)) {
+            commitExecutor.execute(() -> {
+                try {
+                    commit(barrier);
+                } catch (CommitFailedException e) {
+                    // the coordinator is failed, which stops the connector
+                } catch (RuntimeException e) {
+                    log.error("Commit barrier {} failed. ", barrier.getId(), e);
+                    failed = true;
+                    barrier.getCommitted().complete(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Create a lakehouse writer for the table. The writers of a table are created one at a time, so the table is
+     * only created by the first one when it doesn't exist.
+     * @param table the table route, {@link SinkWriter#DEFAULT_TABLE} for the configured table
+     */
+    LakehouseWriter createWriter(String table, Schema schema) throws LakehouseWriterException {
+        synchronized (getTableLock(table)) {
+            LakehouseWriter writer = openWriter(table, schema);
+            committers.putIfAbsent(table, writer);
+            return writer;
+        }
+    }
+
+    /**
+     * The lock held by the writers of the table while they change its metadata, e.g. create it or add columns.
+     */
+    Object getTableLock(String table) {
+        return tableLocks.computeIfAbsent(table, t -> new Object());
+    }
+
+    /**
+     * Open a lakehouse writer with the config of the table.
+     */
+    LakehouseWriter openWriter(String table, Schema schema) throws LakehouseWriterException {
+        SinkConnectorConfig config = SinkWriter.DEFAULT_TABLE.equals(table)
+            ? sinkConnectorConfig : sinkConnectorConfig.forTable(table);
+        return LakehouseWriter.getWriter(config, schema);
+    }
+
+    private synchronized void commit(CommitBarrier barrier) throws CommitFailedException {
+        if (failed) {
+            barrier.getCommitted().complete(false);
+            return;
+        }
+        List<PreparedCommit> prepared = new ArrayList<>(retained);
+        for (PreparedCommit preparedCommit : barrier.getPrepared()) {
+            if (!preparedCommit.isEmpty()) {
+                prepared.add(preparedCommit);
+            }
+        }
+        retained.clear();
+        hasRetained = false;
+
+        long start = System.nanoTime();
+        List<PreparedCommit> failedCommits = commitTables(prepared, barrier.getCommitProperties());
+        if (failedCommits.size() < prepared.size()) {
+            List<PreparedCommit> committed = new ArrayList<>(prepared);
+            committed.removeAll(failedCommits);
+            long nanos = System.nanoTime() - start;
+            metrics.onCommitted(nanos, committed);
+            if (commitController != null) {
+                commitController.onCommitted(nanos, committed);
+            }
+        }
+        if (failedCommits.isEmpty()) {
+            retainedAcks.addAll(barrier.getPendingAcks());
+            long ackedBytes = retainedAcks.ackAll();
+            if (individualAck) {
+                memoryLimiter.release(ackedBytes);
+            }
+            if (freshnessTracer != null) {
+                freshnessTracer.onCommitted(barrier.getTraces(), start, System.nanoTime());
+            }
+            oldestRetainedAckTime = 0;
+            commitFailedCnt = 0;
+            nextRetryTime = 0;
+            barrier.getCommitted().complete(true);
+            return;
+        }
+
+        // keep the data which failed to commit, it is committed again together with the next barrier
+        commitFailedCnt++;
+        nextRetryTime = System.currentTimeMillis() + getRetryBackoffMillis(commitFailedCnt);
+        retained.addAll(failedCommits);
+        hasRetained = true;
+        retainedAcks.addAll(barrier.getPendingAcks());
+        oldestRetainedAckTime = retainedAcks.getOldestAddTime();
+        if (freshnessTracer != null) {
+            freshnessTracer.onCommitFailed(barrier.getTraces());
+        }
+        metrics.onCommitFailed(commitFailedCnt);
+        log.warn("Commit records failed {} times", commitFailedCnt);
+        if (commitFailedCnt > maxCommitFailedTimes) {
+            failed = true;
+            barrier.getCommitted().complete(false);
+            String errMsg = "Exceed the max commit failed times, the allowed max failure times is "
+                + maxCommitFailedTimes;
+            log.error(errMsg);
+            throw new CommitFailedException(errMsg);
+        }
+        barrier.getCommitted().complete(false);
+    }
+
+    /**
+     * Commit the prepared data of each table in a single table commit, with the given properties.
+     * @return the data of the tables which failed to commit
+     */
+    private List<PreparedCommit> commitTables(List<PreparedCommit> prepared, Map<String, String> properties) {
+        Map<String, List<PreparedCommit>> byTable = new LinkedHashMap<>();
+        for (PreparedCommit preparedCommit : prepared) {
+            byTable.computeIfAbsent(((RoutedCommit) preparedCommit).getTable(), t -> new ArrayList<>())
+                .add(preparedCommit);
+        }
+        List<PreparedCommit> failedCommits = new ArrayList<>();
+        for (Map.Entry<String, List<PreparedCommit>> entry : byTable.entrySet()) {
+            List<PreparedCommit> tableCommits = new ArrayList<>(entry.getValue().size());
+            for (PreparedCommit preparedCommit : entry.getValue()) {
+                tableCommits.add(((RoutedCommit) preparedCommit).getPrepared());
+            }
+            if (!committers.get(entry.getKey()).commit(tableCommits, properties)) {
+                log.warn("Failed to commit {} prepared writes into table {}", tableCommits.size(), entry.getKey());
+                failedCommits.addAll(entry.getValue());
+            }
+        }
+        return failedCommits;
+    }
+
+    /**
+     * How long to wait before retrying after the given number of consecutive commit failures.
+     */
+    static long getRetryBackoffMillis(int failedTimes) {
+        int shift = Math.min(Math.max(failedTimes - 1, 0), 16);
+        return Math.min(MIN_RETRY_BACKOFF_MS << shift, MAX_RETRY_BACKOFF_MS);
+    }
+
+    private void triggerCommitIfNeed(boolean force) throws InterruptedException {
+        while (!pendingBarriers.isEmpty() && pendingBarriers.peekFirst().getCommitted().isDone()) {
+            pendingBarriers.pollFirst();
+        }
+        if (pendingBarriers.size() >= maxInFlightCommits) {
+            return;
+        }
+        // a failed commit is retried after its backoff, or with the next regular commit if that comes first
+        boolean retry = hasRetained && (force || System.currentTimeMillis() >= nextRetryTime);
+        if (!retry && (recordsCnt == 0 || (!force && !needCommit()))) {
+            return;
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Commit ");
+        }
+        CommitBarrier barrier = new CommitBarrier(nextBarrierId++, queues.size(), pendingAcks,
+            redeliveryFilter == null ? Collections.emptyMap() : redeliveryFilter.getWatermarks(),
+            freshnessTracer == null ? Collections.emptyList() : freshnessTracer.takeDispatched());
+        pendingAcks = newPendingAcks();
+        pendingBarriers.addLast(barrier);
+        recordsCnt = 0;
+        lastCommitTime = System.currentTimeMillis();
+        commitDueTime = Long.MAX_VALUE;
+        for (SpscRingBuffer<PulsarSinkRecord> queue : queues) {
+            while (!queue.offer(barrier, 1, TimeUnit.SECONDS)) {
+                if (!isRunning()) {
+                    log.warn("Sink writer stopped, give up the commit barrier {}", barrier.getId());
+                    return;
+                }
+            }
+        }
+    }
+
+    private void recordMetricsIfNeed() {
+        long now = System.currentTimeMillis();
+        if (sinkContext == null || now - lastMetricsTime < METRICS_INTERVAL_MS) {
+            return;
+        }
+        lastMetricsTime = now;
+
+        long depth = 0;
+        long offerWaitNanos = 0;
+        long drainWaitNanos = 0;
+        for (SpscRingBuffer<PulsarSinkRecord> queue : queues) {
+            depth += queue.size();
+            offerWaitNanos += queue.getOfferWaitNanos();
+            drainWaitNanos += queue.getDrainWaitNanos();
+        }
+        sinkContext.recordMetric(SINK_QUEUE_DEPTH, depth);
+        sinkContext.recordMetric(SINK_QUEUE_BUFFERED_BYTES, memoryLimiter.getUsedBytes());
+        sinkContext.recordMetric(SINK_QUEUE_OFFER_WAIT_TIME,
+            TimeUnit.NANOSECONDS.toMillis(offerWaitNanos - lastOfferWaitNanos));
+        sinkContext.recordMetric(SINK_QUEUE_DRAIN_WAIT_TIME,
+            TimeUnit.NANOSECONDS.toMillis(drainWaitNanos - lastDrainWaitNanos));
+        lastOfferWaitNanos = offerWaitNanos;
+        lastDrainWaitNanos = drainWaitNanos;
+        metrics.report(now, getOldestUnackedTime());
+    }
+
+    /**
+     * When the oldest record which isn't acked yet was dispatched, 0 if all the dispatched records are acked.
+     */
+    private long getOldestUnackedTime() {
+        long oldest = oldestRetainedAckTime;
+        if (oldest != 0) {
+            return oldest;
+        }
+        for (CommitBarrier barrier : pendingBarriers) {
+            if (!barrier.getCommitted().isDone() && barrier.getOldestAddTime() != 0) {
+                return barrier.getOldestAddTime();
+            }
+        }
+        return pendingAcks.getOldestAddTime();
+    }
+
+    private PendingAcks newPendingAcks() {
+        return individualAck ? PendingAcks.individual() : PendingAcks.cumulative();
+    }
+
+    static boolean isIndividualAck(SubscriptionType subscriptionType) {
+        return subscriptionType == SubscriptionType.Shared || subscriptionType == SubscriptionType.Key_Shared;
+    }
+
+    private boolean needCommit() {
+        long elapsed = System.currentTimeMillis() - lastCommitTime;
+        return elapsed >= timeIntervalPerCommit
+            || (recordsCnt >= maxRecordsPerCommit && elapsed >= minTimeIntervalPerCommit);
+    }
+
+    /**
+     * The input columns to shard the records by. Each writer deduplicates the records it writes, so with
+     * dedupKeyColumns the records are sharded by the dedup key, and the records of a key are written by the same
+     * writer. Likewise a Hudi writer combines the records of a record key, so Hudi records are sharded by the record
+     * key fields. The configured columns refer to the transformed columns, they are read by their names before the
+     * rename.
+     * @return null to shard the records by message key
+     */
+    static List<String> getShardColumns(SinkConnectorConfig config) {
+        List<String> columns;
+        Object recordKeyFields = config.getProperties().get(KeyGeneratorOptions.RECORDKEY_FIELD_NAME.key());
+        if (config.getDedupKeyColumns() != null && !config.getDedupKeyColumns().isEmpty()) {
+            columns = config.getDedupKeyColumns();
+        } else if (SinkConnectorConfig.HUDI.equals(config.getType()) && recordKeyFields != null
+            && StringUtils.isNotBlank(recordKeyFields.toString())) {
+            columns = new ArrayList<>();
+            for (String field : recordKeyFields.toString().split(",")) {
+                columns.add(field.trim());
+            }
+        } else if (SinkConnectorConfig.SHARD_BY_PARTITION.equals(config.getSinkWriterShardBy())
+            && config.getPartitionColumns() != null && !config.getPartitionColumns().isEmpty()) {
+            columns = config.getPartitionColumns();
+        } else {
+            return null;
+        }
+        Map<String, String> inputNames = new HashMap<>();
+        if (config.getRenameColumns() != null) {
+            config.getRenameColumns().forEach((input, output) -> inputNames.put(output, input));
+        }
+        List<String> inputColumns = new ArrayList<>(columns.size());
+        for (String column : columns) {
+            inputColumns.add(inputNames.getOrDefault(column, column));
+        }
+        return inputColumns;
+    }
+
+    private int shardOf(PulsarSinkRecord record) {
+        int shards = queues.size();
+        if (shards == 1) {
+            return 0;
+        }
+
+        String shardKey = shardColumns != null ? getColumnValues(record.getValue()) : null;
+        if (shardKey == null && shardByDedupKey) {
+            // the dedup key isn't a column of the record before the transform, e.g. an added column, so all the
+            // records go to the same writer rather than risk keeping several records of a key
+            return 0;
+        }
+        if (shardKey == null) {
+            shardKey = record.getKey().orElse(null);
+        }
+        if (shardKey == null) {
+            roundRobinIndex = (roundRobinIndex + 1) % shards;
+            return roundRobinIndex;
+        }
+        return Murmur32Hash.getInstance().makeHash(shardKey.getBytes(StandardCharsets.UTF_8)) % shards;
+    }
+
+    private String getColumnValues(GenericObject value) {
+        if (!(value instanceof GenericRecord)) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        try {
+            for (String column : shardColumns) {
+                sb.append(((GenericRecord) value).getField(column)).append('/');
+            }
+        } catch (RuntimeException e) {
+            // the record doesn't contain the shard columns
+            return null;
+        }
+        return sb.toString();
+    }
+
+    public boolean isRunning() {
+        if (failed) {
+            return false;
+        }
+        for (SinkWriter writer : writers) {
+            if (!writer.isRunning()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isQueueEmpty() {
+        for (SpscRingBuffer<PulsarSinkRecord> queue : queues) {
+            if (!queue.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    SinkMetrics getMetrics() {
+        return metrics;
+    }
+
+    public long getBufferedBytes() {
+        return memoryLimiter.getUsedBytes();
+    }
+
+    public List<SinkWriter> getWriters() {
+        return writers;
+    }
+
+    /**
+     * Commit all the records dispatched so far, then stop and close the writers.
+     */
+    public void close() throws IOException {
+        dispatchLock.lock();
+        try {
+            awaitPendingBarriers();
+            if (isRunning()) {
+                triggerCommitIfNeed(true);
+                awaitPendingBarriers();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            dispatchLock.unlock();
+        }
+
+        if (configWatcher != null) {
+            configWatcher.close();
+        }
+        writers.forEach(SinkWriter::stop);
+        shutdown(executor);
+        shutdown(commitExecutor);
+        for (SinkWriter writer : writers) {
+            writer.close();
+        }
+    }
+
+    private void shutdown(ExecutorService executorService) {
+        if (executorService == null) {
+            return;
+        }
+        executorService.shutdown();
+        try {
+            executorService.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void awaitPendingBarriers() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(CLOSE_TIMEOUT_SECONDS);
+        while (!pendingBarriers.isEmpty()) {
+            CommitBarrier barrier = pendingBarriers.peekFirst();
+            while (!barrier.getCommitted().isDone()) {
+                if (!isRunning() || System.currentTimeMillis() >= deadline) {
+                    return;
+                }
+                try {
+                    barrier.getCommitted().get(1, TimeUnit.SECONDS);
+                } catch (TimeoutException e) {
+                    // check the writers are still running and wait again
+                } catch (ExecutionException e) {
+                    log.error("Commit barrier {} failed. ", barrier.getId(), e);
+                }
+            }
+            pendingBarriers.pollFirst();
+        }
+    }
+}
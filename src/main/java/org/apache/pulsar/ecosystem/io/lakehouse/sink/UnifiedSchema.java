@@ -0,0 +1,169 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.lakehouse.sink;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.pulsar.ecosystem.io.lakehouse.common.SchemaConverter;
+
+/**
+ * Table schema of a writer, unified over the schema versions of the records it has written. A version whose fields
+ * are compatible with the unified schema is merged into it: new fields are appended as nullable columns, and fields
+ * missing from some version become nullable. The records of every version are then projected onto the unified
+ * schema, so interleaved versions share the open files and the table schema only changes when a version brings
+ * something new.
+ *
+ * <p>A version which changes the type of an existing field replaces the unified schema. Not thread safe, each writer
+ * owns its unified schema.
+ */
+@Slf4j
+public class UnifiedSchema {
+    // marks record schemas with the same fields, in the same order, as the unified schema
+    private static final int[] IDENTITY = new int[0];
+    // bounds the identity maps, in case records come with a new schema instance every time
+    private static final int MAX_SCHEMAS = 64;
+
+    private Schema schema;
+    // record schemas already merged into the unified schema, cleared when the schema is replaced
+    private final Map<Schema, Boolean> merged = new IdentityHashMap<>();
+    // source field positions of each unified field by record schema, cleared when the unified schema changes
+    private final Map<Schema, int[]> projections = new IdentityHashMap<>();
+
+    /**
+     * The unified schema, null until a schema is merged.
+     */
+    public Schema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Merge the schema of a record version.
+     * @return true if the unified schema has changed, and the table schema should be updated
+     */
+    public boolean merge(Schema recordSchema) {
+        if (merged.containsKey(recordSchema)) {
+            return false;
+        }
+        if (merged.size() >= MAX_SCHEMAS) {
+            merged.clear();
+        }
+        Schema unified = schema == null ? recordSchema : merge(schema, recordSchema);
+        if (unified == null) {
+            log.info("Schema {} is not compatible with the unified schema {}, replacing it", recordSchema, schema);
+            unified = recordSchema;
+            merged.clear();
+        }
+        merged.put(recordSchema, Boolean.TRUE);
+        if (unified.equals(schema)) {
+            return false;
+        }
+        schema = unified;
+        projections.clear();
+        return true;
+    }
+
+    /**
+     * Project the record onto the unified schema.
+     * @param reuse the record returned by a previous call, or null
+     * @return the record itself if it already has the fields of the unified schema, otherwise the projected record,
+     *     which is the reused record if it had the unified schema
+     */
+    public GenericRecord project(GenericRecord record, GenericRecord reuse) {
+        if (projections.size() >= MAX_SCHEMAS && !projections.containsKey(record.getSchema())) {
+            projections.clear();
+        }
+        int[] positions = projections.computeIfAbsent(record.getSchema(), this::compile);
+        if (positions == IDENTITY) {
+            return record;
+        }
+        GenericRecord projected = reuse != null && reuse.getSchema() == schema
+            ? reuse : new GenericData.Record(schema);
+        for (int i = 0; i < positions.length; i++) {
+            projected.put(i, positions[i] < 0 ? null : record.get(positions[i]));
+        }
+        return projected;
+    }
+
+    private int[] compile(Schema recordSchema) {
+        List<Schema.Field> fields = schema.getFields();
+        int[] positions = new int[fields.size()];
+        boolean identity = recordSchema.getFields().size() == fields.size();
+        for (int i = 0; i < positions.length; i++) {
+            Schema.Field field = recordSchema.getField(fields.get(i).name());
+            positions[i] = field == null ? -1 : field.pos();
+            identity &= positions[i] == i;
+        }
+        return identity ? IDENTITY : positions;
+    }
+
+    /**
+     * Merge the fields of the record schema into the unified schema.
+     * @return the merged schema, or null if a field has a different type in the record schema
+     */
+    public static Schema merge(Schema unified, Schema recordSchema) {
+        List<Schema.Field> fields = new ArrayList<>();
+        for (Schema.Field field : unified.getFields()) {
+            Schema.Field other = recordSchema.getField(field.name());
+            if (other == null) {
+                fields.add(copy(field, SchemaConverter.nullable(field.schema())));
+            } else if (!withoutNull(field.schema()).equals(withoutNull(other.schema()))) {
+                return null;
+            } else {
+                fields.add(copy(field, other.schema().isNullable()
+                    ? SchemaConverter.nullable(field.schema()) : field.schema()));
+            }
+        }
+        for (Schema.Field field : recordSchema.getFields()) {
+            if (unified.getField(field.name()) == null) {
+                fields.add(copy(field, SchemaConverter.nullable(field.schema())));
+            }
+        }
+        Schema schema = Schema.createRecord(unified.getName(), unified.getDoc(), unified.getNamespace(),
+            unified.isError());
+        schema.setFields(fields);
+        return schema;
+    }
+
+    private static Schema.Field copy(Schema.Field field, Schema schema) {
+        // the default value of the field may not match a schema made nullable
+        Schema.Field copy = new Schema.Field(field.name(), schema, field.doc(),
+            schema == field.schema() ? field.defaultVal() : null);
+        field.getObjectProps().forEach(copy::addProp);
+        return copy;
+    }
+
+    private static Schema withoutNull(Schema schema) {
+        if (schema.getType() != Schema.Type.UNION) {
+            return schema;
+        }
+        List<Schema> types = new ArrayList<>(schema.getTypes().size());
+        for (Schema type : schema.getTypes()) {
+            if (type.getType() != Schema.Type.NULL) {
+                types.add(type);
+            }
+        }
+        return types.size() == 1 ? types.get(0) : Schema.createUnion(types);
+    }
+}
@@ -77,8 +77,16 @@ public class DeltaSinkConnectorConfig extends SinkConnectorConfig {
         }
     }
 
+    @Override
+    protected void setTargetTable(String table) {
+        tablePath = table;
+    }
+
     public static DeltaSinkConnectorConfig load(Map<String, Object> map) throws IOException {
-        return jsonMapper().readValue(new ObjectMapper().writeValueAsString(map), DeltaSinkConnectorConfig.class);
+        DeltaSinkConnectorConfig config =
+            jsonMapper().readValue(new ObjectMapper().writeValueAsString(map), DeltaSinkConnectorConfig.class);
+        config.getProperties().putAll(map);
+        return config;
     }
 
 
@@ -19,12 +19,15 @@
 
 package org.apache.pulsar.ecosystem.io.lakehouse.sink.delta;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import io.delta.standalone.CommitResult;
 import io.delta.standalone.DeltaLog;
 import io.delta.standalone.Operation;
 import io.delta.standalone.OptimisticTransaction;
+import io.delta.standalone.VersionLog;
 import io.delta.standalone.actions.Action;
 import io.delta.standalone.actions.AddFile;
+import io.delta.standalone.actions.CommitInfo;
 import io.delta.standalone.actions.Format;
 import io.delta.standalone.actions.Metadata;
 import io.delta.standalone.actions.SetTransaction;
@@ -32,7 +35,10 @@ import io.delta.standalone.types.StructType;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Random;
 import java.util.UUID;
@@ -42,12 +48,16 @@ import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericRecord;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.pulsar.ecosystem.io.lakehouse.SinkConnectorConfig;
+import org.apache.pulsar.ecosystem.io.lakehouse.common.FlightRecorderEvent;
+import org.apache.pulsar.ecosystem.io.lakehouse.common.LakehouseEvents;
 import org.apache.pulsar.ecosystem.io.lakehouse.common.SchemaConverter;
 import org.apache.pulsar.ecosystem.io.lakehouse.common.Utils;
 import org.apache.pulsar.ecosystem.io.lakehouse.parquet.DeltaParquetFileWriter;
 import org.apache.pulsar.ecosystem.io.lakehouse.parquet.DeltaParquetWriter;
 import org.apache.pulsar.ecosystem.io.lakehouse.parquet.PartitionedDeltaParquetFileWriter;
 import org.apache.pulsar.ecosystem.io.lakehouse.sink.LakehouseWriter;
+import org.apache.pulsar.ecosystem.io.lakehouse.sink.PreparedCommit;
+import org.apache.pulsar.ecosystem.io.lakehouse.sink.UnifiedSchema;
 
 /**
  * Delta writer used for write record into delta lake parquet file and then commit the snapshot.
@@ -58,11 +68,17 @@ public class DeltaWriter implements LakehouseWriter {
     protected static final String NAME = "metadata";
     protected static final String DESCRIPTION = "metadata change";
     protected static final String COMMIT_INFO = "pulsar-sink-connector-version-2.9.1";
+    // how many recent commits are read for the committed properties
+    private static final int MAX_COMMITS_SCANNED = 100;
+    private static final TypeReference<Map<String, String>> PROPERTIES_TYPE =
+        new TypeReference<Map<String, String>>() { };
 
     private final DeltaSinkConnectorConfig config;
     private final String appId;
     private DeltaLog deltaLog;
     private Schema schema;
+    // the table schema of the files committed so far, only changed by the commits
+    private Schema committedSchema;
     private DeltaParquetWriter writer;
     private Random random;
 
@@ -70,6 +86,7 @@ public class DeltaWriter implements LakehouseWriter {
         this.config = (DeltaSinkConnectorConfig) cfg;
         this.appId = config.getAppId();
         this.schema = schema;
+        this.committedSchema = schema;
 
         Configuration configuration = Utils.getDefaultHadoopConf(config);
         deltaLog = DeltaLog.forTable(configuration, config.tablePath);
@@ -102,6 +119,11 @@ public class DeltaWriter implements LakehouseWriter {
         writer.writeToParquetFile(record);
     }
 
+    @Override
+    public void writeAvroRecords(List<GenericRecord> records) throws IOException {
+        writer.writeToParquetFile(records);
+    }
+
     @Override
     public boolean flush() {
         try {
@@ -115,6 +137,68 @@ public class DeltaWriter implements LakehouseWriter {
         }
     }
 
+    @Override
+    public PreparedCommit prepareCommit() throws IOException {
+        List<DeltaParquetWriter.FileStat> fileStats = writer.closeAndFlush();
+        return new PreparedFiles(fileStats == null ? Collections.emptyList() : fileStats, schema);
+    }
+
+    /**
+     * Close the files written with the current schema, and write the following records with the new schema. The
+     * table schema is updated by the commit of the files written with it.
+     */
+    @Override
+    public PreparedCommit prepareSchemaUpdate(Schema schema) throws IOException {
+        if (this.schema.equals(schema)) {
+            return new PreparedFiles(Collections.emptyList(), schema);
+        }
+        FlightRecorderEvent.Recording event = LakehouseEvents.SCHEMA_UPDATE.begin();
+        PreparedCommit prepared = prepareCommit();
+        writer.updateSchema(schema);
+        this.schema = schema;
+        if (event.isRecording()) {
+            event.set("format", "delta")
+                .set("table", config.tablePath)
+                .set("fields", schema.getFields().size())
+                .set("changed", true)
+                .set("attempts", 1)
+                .commit();
+        }
+        return prepared;
+    }
+
+    @Override
+    public boolean commit(List<PreparedCommit> prepared) {
+        return commit(prepared, Collections.emptyMap());
+    }
+
+    /**
+     * Commit the prepared files, with the properties as the user metadata of the commit. The table schema is changed
+     * in the same commit when the files were written with new fields, so it is unified over the schemas of the files.
+     */
+    @Override
+    public boolean commit(List<PreparedCommit> prepared, Map<String, String> properties) {
+        List<DeltaParquetWriter.FileStat> fileStats = new ArrayList<>();
+        Schema tableSchema = committedSchema;
+        for (PreparedCommit preparedCommit : prepared) {
+            PreparedFiles files = (PreparedFiles) preparedCommit;
+            fileStats.addAll(files.getFileStats());
+            if (!files.isEmpty() && files.getSchema() != null && !files.getSchema().equals(tableSchema)) {
+                Schema merged = UnifiedSchema.merge(tableSchema, files.getSchema());
+                tableSchema = merged == null ? files.getSchema() : merged;
+            }
+        }
+        try {
+            commitFiles(fileStats, properties.isEmpty()
+                ? Optional.empty() : Optional.of(Utils.JSON_MAPPER.get().writeValueAsString(properties)),
+                tableSchema);
+            return true;
+        } catch (Exception e) {
+            log.error("Failed to commit {} parquet files into delta lake. ", fileStats.size(), e);
+            return false;
+        }
+    }
+
     protected void createTable(Schema schema, List<String> partitionsColumns) {
         OptimisticTransaction optimisticTransaction = deltaLog.startTransaction();
         String uuid = UUID.randomUUID().toString();
@@ -138,6 +222,7 @@ public class DeltaWriter implements LakehouseWriter {
         if (this.schema.equals(schema)) {
             return false;
         }
+        FlightRecorderEvent.Recording event = LakehouseEvents.SCHEMA_UPDATE.begin();
 
         // close and flush current writer
         commitFiles(writer.closeAndFlush());
@@ -172,22 +257,86 @@ public class DeltaWriter implements LakehouseWriter {
 
         writer.updateSchema(schema);
         this.schema = schema;
+        this.committedSchema = schema;
+        if (event.isRecording()) {
+            event.set("format", "delta")
+                .set("table", config.tablePath)
+                .set("fields", schema.getFields().size())
+                .set("changed", true)
+                .set("attempts", cnt)
+                .commit();
+        }
         return true;
     }
 
+    /**
+     * The properties recorded as user metadata by the recent commits of the table, the latest value of each key.
+     */
+    public static Map<String, String> getCommittedProperties(SinkConnectorConfig cfg, String prefix)
+        throws IOException {
+        DeltaSinkConnectorConfig config = (DeltaSinkConnectorConfig) cfg;
+        DeltaLog deltaLog = DeltaLog.forTable(Utils.getDefaultHadoopConf(config), config.tablePath);
+        Map<String, String> properties = new HashMap<>();
+        if (!deltaLog.tableExists()) {
+            return properties;
+        }
+        long latest = deltaLog.snapshot().getVersion();
+        Iterator<VersionLog> changes = deltaLog.getChanges(Math.max(0, latest - MAX_COMMITS_SCANNED + 1), false);
+        while (changes.hasNext()) {
+            VersionLog versionLog = changes.next();
+            for (Action action : versionLog.getActions()) {
+                if (!(action instanceof CommitInfo) || !((CommitInfo) action).getUserMetadata().isPresent()) {
+                    continue;
+                }
+                String userMetadata = ((CommitInfo) action).getUserMetadata().get();
+                try {
+                    Map<String, String> committed = Utils.JSON_MAPPER.get().readValue(userMetadata, PROPERTIES_TYPE);
+                    committed.forEach((key, value) -> {
+                        if (key.startsWith(prefix)) {
+                            properties.put(key, value);
+                        }
+                    });
+                } catch (IOException e) {
+                    log.debug("Skip the user metadata of version {}: {}", versionLog.getVersion(), userMetadata);
+                }
+            }
+        }
+        return properties;
+    }
+
     protected void commitFiles(List<DeltaParquetWriter.FileStat> fileStats) {
+        commitFiles(fileStats, Optional.empty());
+    }
+
+    protected void commitFiles(List<DeltaParquetWriter.FileStat> fileStats, Optional<String> userMetadata) {
+        commitFiles(fileStats, userMetadata, committedSchema);
+    }
+
+    /**
+     * Commit the files, and change the table schema in the same commit if it isn't the committed one.
+     */
+    protected void commitFiles(List<DeltaParquetWriter.FileStat> fileStats, Optional<String> userMetadata,
+                               Schema tableSchema) {
         log.info("DEBUG-commitFiles Entered");
         if (fileStats == null || fileStats.isEmpty()) {
             log.info("DEBUG-commitFiles Exited");
             return;
         }
         log.info("DEBUG-commitFiles Continued");
+        FlightRecorderEvent.Recording event = LakehouseEvents.DELTA_COMMIT.begin();
 
         OptimisticTransaction optimisticTransaction = deltaLog.startTransaction();
         SetTransaction setTransaction = new SetTransaction(appId, optimisticTransaction.txnVersion(appId) + 1,
             Optional.of(System.currentTimeMillis()));
         List<Action> filesToCommit = new ArrayList<>();
         filesToCommit.add(setTransaction);
+        boolean schemaChanged = !tableSchema.equals(committedSchema);
+        if (schemaChanged) {
+            StructType structType = SchemaConverter.convertAvroSchemaToDeltaSchema(tableSchema);
+            optimisticTransaction.updateMetadata(
+                optimisticTransaction.metadata().copyBuilder().schema(structType).build());
+            log.info("update delta schema with the commit. {}", structType.getTreeString());
+        }
 
         for (DeltaParquetWriter.FileStat fileStat : fileStats) {
             log.info("add filePath: {}, partitionValues: {}, fileSize: {}",
@@ -199,10 +348,50 @@ public class DeltaWriter implements LakehouseWriter {
         }
 
         log.info("Add parquet files: {}", filesToCommit);
-        CommitResult commitResult =
-            optimisticTransaction.commit(filesToCommit, new Operation(Operation.Name.WRITE), COMMIT_INFO);
+        Operation operation = userMetadata.isPresent()
+            ? new Operation(Operation.Name.WRITE, Collections.emptyMap(), Collections.emptyMap(), userMetadata)
+            : new Operation(Operation.Name.WRITE);
+        CommitResult commitResult = optimisticTransaction.commit(filesToCommit, operation, COMMIT_INFO);
 
+        if (schemaChanged) {
+            committedSchema = tableSchema;
+        }
         log.info("Commit to delta table succeed for fileStat size: {}, commit version: {}",
             fileStats.size(), commitResult.getVersion());
+        if (event.isRecording()) {
+            event.set("table", config.tablePath)
+                .set("files", (long) fileStats.size())
+                .set("bytes", new PreparedFiles(fileStats, tableSchema).getFileBytes())
+                .set("version", commitResult.getVersion())
+                .commit();
+        }
+    }
+
+    /**
+     * Parquet files closed by the delta writer and not committed yet, and the schema they were written with.
+     */
+    @Data
+    public static class PreparedFiles implements PreparedCommit {
+        private final List<DeltaParquetWriter.FileStat> fileStats;
+        private final Schema schema;
+
+        @Override
+        public boolean isEmpty() {
+            return fileStats.isEmpty();
+        }
+
+        @Override
+        public long getFileCount() {
+            return fileStats.size();
+        }
+
+        @Override
+        public long getFileBytes() {
+            long bytes = 0;
+            for (DeltaParquetWriter.FileStat fileStat : fileStats) {
+                bytes += fileStat.getFileSize();
+            }
+            return bytes;
+        }
     }
 }
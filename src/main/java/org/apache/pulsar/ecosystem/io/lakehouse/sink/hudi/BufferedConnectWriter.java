@@ -19,8 +19,10 @@
 package org.apache.pulsar.ecosystem.io.lakehouse.sink.hudi;
 
 import java.io.IOException;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.avro.Schema;
 import org.apache.hudi.client.HoodieJavaWriteClient;
@@ -34,6 +36,8 @@ import org.apache.hudi.common.util.collection.ExternalSpillableMap;
 import org.apache.hudi.config.HoodieWriteConfig;
 import org.apache.hudi.exception.HoodieIOException;
 import org.apache.hudi.io.IOUtils;
+import org.apache.pulsar.ecosystem.io.lakehouse.common.FlightRecorderEvent;
+import org.apache.pulsar.ecosystem.io.lakehouse.common.LakehouseEvents;
 import org.apache.pulsar.ecosystem.io.lakehouse.exception.HoodieConnectorException;
 
 @Slf4j
@@ -71,10 +75,49 @@ public class BufferedConnectWriter {
         bufferedRecords.put(record.getRecordKey(), record);
     }
 
+    /**
+     * Buffer a batch of records. A later record replaces an earlier one with the same key, as with single writes.
+     */
+    public void writeHoodieRecords(List<HoodieRecord<?>> records) {
+        Map<String, HoodieRecord<?>> batch = new LinkedHashMap<>(records.size() * 2);
+        for (HoodieRecord<?> record : records) {
+            batch.put(record.getRecordKey(), record);
+        }
+        bufferedRecords.putAll(batch);
+    }
+
     public void flushRecords() throws HoodieConnectorException {
+        FlightRecorderEvent.Recording event = LakehouseEvents.HUDI_FLUSH.begin();
+        List<HoodieRecord<?>> records = new LinkedList<>(bufferedRecords.values());
+        int files = commitRecords(records);
+        bufferedRecords.close();
+        init();
+        if (event.isRecording()) {
+            event.set("table", config.getTableName())
+                .set("records", (long) records.size())
+                .set("files", (long) files)
+                .commit();
+        }
+    }
+
+    /**
+     * Take the buffered records out of the writer, leaving an empty buffer for the following records.
+     */
+    public List<HoodieRecord<?>> drainRecords() {
+        List<HoodieRecord<?>> records = new LinkedList<>(bufferedRecords.values());
+        bufferedRecords.close();
+        init();
+        return records;
+    }
+
+    /**
+     * Write the records into the table, and commit them.
+     * @return the number of files written
+     */
+    public int commitRecords(List<HoodieRecord<?>> records) throws HoodieConnectorException {
         final String instantTime = writeClient.startCommit();
         List<WriteStatus> writerStatusList = writeClient.bulkInsertPreppedRecords(
-            new LinkedList<>(bufferedRecords.values()), instantTime, Option.empty());
+            records, instantTime, Option.empty());
         long totalErrorRecords = writerStatusList.stream().mapToLong(WriteStatus::getTotalErrorRecords).sum();
         long totalRecords = writerStatusList.stream().mapToLong(WriteStatus::getTotalRecords).sum();
         boolean hasErrors = totalErrorRecords > 0;
@@ -85,7 +128,7 @@ public class BufferedConnectWriter {
                 throw new HoodieConnectorException("Commit " + instantTime + " failed!");
             }
             log.info("Successfully flushed the records to the hudi table");
-            bufferedRecords.close();
+            return writerStatusList.size();
         } else {
             log.error("Found errors when committing data. Errors/Total={}/{}", totalErrorRecords, totalRecords);
             log.error("Printing out the top 50 errors");
@@ -108,6 +151,14 @@ public class BufferedConnectWriter {
         return context;
     }
 
+    /**
+     * Close the write client without flushing, once the buffered records were drained to be committed elsewhere.
+     */
+    public void closeClient() {
+        bufferedRecords.close();
+        writeClient.close();
+    }
+
     public void close() throws HoodieConnectorException {
         flushRecords();
         writeClient.close();
@@ -20,18 +20,29 @@ package org.apache.pulsar.ecosystem.io.lakehouse.sink.hudi;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericRecord;
 import org.apache.hudi.common.model.HoodieAvroPayload;
 import org.apache.hudi.common.model.HoodieAvroRecord;
+import org.apache.hudi.common.model.HoodieKey;
 import org.apache.hudi.common.model.HoodieRecord;
 import org.apache.hudi.common.util.Option;
 import org.apache.hudi.keygen.KeyGenerator;
 import org.apache.hudi.keygen.factory.HoodieAvroKeyGeneratorFactory;
 import org.apache.pulsar.ecosystem.io.lakehouse.SinkConnectorConfig;
+import org.apache.pulsar.ecosystem.io.lakehouse.common.FlightRecorderEvent;
+import org.apache.pulsar.ecosystem.io.lakehouse.common.LakehouseEvents;
 import org.apache.pulsar.ecosystem.io.lakehouse.exception.HoodieConnectorException;
 import org.apache.pulsar.ecosystem.io.lakehouse.sink.LakehouseWriter;
+import org.apache.pulsar.ecosystem.io.lakehouse.sink.PreparedCommit;
 
 @Slf4j
 public class HoodieWriter implements LakehouseWriter, Closeable {
@@ -40,6 +51,8 @@ public class HoodieWriter implements LakehouseWriter, Closeable {
     HoodieWriterProvider writerProvider;
     HoodieSinkConfigs hoodieSinkConfigs;
     private KeyGenerator keyGenerator;
+    // writers committing the prepared records by writer schema, only used by the commits
+    private final Map<String, BufferedConnectWriter> commitWriters = new HashMap<>();
 
     public HoodieWriter(SinkConnectorConfig sinkConnectorConfig, Schema schema) throws HoodieConnectorException {
         this.hoodieSinkConfigs = HoodieSinkConfigs.newBuilder()
@@ -55,17 +68,54 @@ public class HoodieWriter implements LakehouseWriter, Closeable {
     }
 
     @Override
-    public boolean updateSchema(Schema schema) throws IOException {
+    public synchronized boolean updateSchema(Schema schema) throws IOException {
         if (writer.getConfig().getSchema().equals(schema.toString())) {
             log.info("The schema is not changed, continue to write records into current writer");
             return true;
         }
         log.info("Schema updated, trigger flush and switch new writer with new schema to writer");
+        FlightRecorderEvent.Recording event = LakehouseEvents.SCHEMA_UPDATE.begin();
         flush();
         writer = writerProvider.open(schema.toString());
+        if (event.isRecording()) {
+            event.set("format", "hudi")
+                .set("table", writer.getConfig().getTableName())
+                .set("fields", schema.getFields().size())
+                .set("changed", true)
+                .set("attempts", 1)
+                .commit();
+        }
         return true;
     }
 
+    /**
+     * Take the buffered records out of the current writer, and buffer the following records in a writer of the new
+     * schema. The drained records keep the schema they were written with, and are committed with a write client of
+     * that schema.
+     */
+    @Override
+    public PreparedCommit prepareSchemaUpdate(Schema schema) {
+        String currentSchema = writer.getConfig().getSchema();
+        if (currentSchema.equals(schema.toString())) {
+            return new PreparedRecords(Collections.emptyList(), currentSchema);
+        }
+        log.info("Schema updated, switch to a new writer with the new schema");
+        FlightRecorderEvent.Recording event = LakehouseEvents.SCHEMA_UPDATE.begin();
+        PreparedCommit prepared = prepareCommit();
+        BufferedConnectWriter previous = writer;
+        writer = writerProvider.open(schema.toString());
+        previous.closeClient();
+        if (event.isRecording()) {
+            event.set("format", "hudi")
+                .set("table", writer.getConfig().getTableName())
+                .set("fields", schema.getFields().size())
+                .set("changed", true)
+                .set("attempts", 1)
+                .commit();
+        }
+        return prepared;
+    }
+
     @Override
     public void writeAvroRecord(GenericRecord record) throws IOException {
         if (log.isDebugEnabled()) {
@@ -76,6 +126,16 @@ public class HoodieWriter implements LakehouseWriter, Closeable {
         writer.writeHoodieRecord(hoodieRecord);
     }
 
+    @Override
+    public void writeAvroRecords(List<GenericRecord> records) throws IOException {
+        List<HoodieRecord<?>> hoodieRecords = new ArrayList<>(records.size());
+        for (GenericRecord record : records) {
+            hoodieRecords.add(new HoodieAvroRecord<>(
+                keyGenerator.getKey(record), new HoodieAvroPayload(Option.of(record))));
+        }
+        writer.writeHoodieRecords(hoodieRecords);
+    }
+
     @Override
     public boolean flush() {
         if (log.isDebugEnabled()) {
@@ -90,12 +150,80 @@ public class HoodieWriter implements LakehouseWriter, Closeable {
         }
     }
 
+    @Override
+    public PreparedCommit prepareCommit() {
+        return new PreparedRecords(writer.drainRecords(), writer.getConfig().getSchema());
+    }
+
+    /**
+     * Commit the prepared records, with one table commit per writer schema, in the order the schemas were prepared.
+     * The records of the schemas committed before a failure are removed from the prepared records, so a retry doesn't
+     * commit them again.
+     *
+     * <p>The records are bulk inserted, so a key prepared more than once, by several writers or again after a failed
+     * commit, is combined first: only its record prepared last is committed, as the buffer of a writer does.
+     */
+    @Override
+    public synchronized boolean commit(List<PreparedCommit> prepared) {
+        Map<String, List<PreparedRecords>> bySchema = new LinkedHashMap<>();
+        Map<HoodieKey, HoodieRecord<?>> latest = new HashMap<>();
+        for (PreparedCommit preparedCommit : prepared) {
+            PreparedRecords preparedRecords = (PreparedRecords) preparedCommit;
+            if (!preparedRecords.isEmpty()) {
+                bySchema.computeIfAbsent(preparedRecords.getSchema(), s -> new ArrayList<>()).add(preparedRecords);
+                for (HoodieRecord<?> record : preparedRecords.getRecords()) {
+                    latest.put(record.getKey(), record);
+                }
+            }
+        }
+        for (Map.Entry<String, List<PreparedRecords>> entry : bySchema.entrySet()) {
+            List<HoodieRecord<?>> records = new ArrayList<>();
+            for (PreparedRecords preparedRecords : entry.getValue()) {
+                for (HoodieRecord<?> record : preparedRecords.getRecords()) {
+                    if (latest.get(record.getKey()) == record) {
+                        records.add(record);
+                    }
+                }
+            }
+            try {
+                commitWriters.computeIfAbsent(entry.getKey(), writerProvider::open).commitRecords(records);
+            } catch (Exception e) {
+                log.error("Failed to commit {} records to the hudi table", records.size(), e);
+                return false;
+            }
+            for (PreparedRecords preparedRecords : entry.getValue()) {
+                preparedRecords.getRecords().clear();
+            }
+        }
+        return true;
+    }
+
     @Override
     public void close() throws IOException {
         try {
             writer.close();
         } catch (HoodieConnectorException e) {
             throw new IOException(e);
+        } finally {
+            synchronized (this) {
+                commitWriters.values().forEach(BufferedConnectWriter::closeClient);
+                commitWriters.clear();
+            }
+        }
+    }
+
+    /**
+     * Hudi records taken out of the buffered writer and not committed yet, and the writer schema their payloads were
+     * serialized with.
+     */
+    @Data
+    public static class PreparedRecords implements PreparedCommit {
+        private final List<HoodieRecord<?>> records;
+        private final String schema;
+
+        @Override
+        public boolean isEmpty() {
+            return records.isEmpty();
         }
     }
 }
@@ -119,4 +119,17 @@ public class IcebergSinkConnectorConfig extends SinkConnectorConfig {
         }
     }
 
+    /**
+     * Point the config to the given table, either a table name in the configured namespace or 'namespace.table'.
+     */
+    @Override
+    protected void setTargetTable(String table) {
+        int dot = table.lastIndexOf('.');
+        if (dot > 0) {
+            tableNamespace = table.substring(0, dot);
+            tableName = table.substring(dot + 1);
+        } else {
+            tableName = table;
+        }
+    }
 }
@@ -22,34 +22,44 @@ package org.apache.pulsar.ecosystem.io.lakehouse.sink.iceberg;
 import static org.apache.pulsar.ecosystem.io.lakehouse.sink.iceberg.IcebergSinkConnectorConfig.HADOOP_CATALOG;
 import static org.apache.pulsar.ecosystem.io.lakehouse.sink.iceberg.IcebergSinkConnectorConfig.HIVE_CATALOG;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericRecord;
+import org.apache.iceberg.DataFile;
+import org.apache.iceberg.DeleteFile;
 import org.apache.iceberg.PartitionSpec;
+import org.apache.iceberg.Snapshot;
 import org.apache.iceberg.Table;
 import org.apache.iceberg.UpdateSchema;
 import org.apache.iceberg.avro.AvroSchemaUtil;
 import org.apache.iceberg.catalog.TableIdentifier;
+import org.apache.iceberg.exceptions.CommitFailedException;
 import org.apache.iceberg.io.TaskWriter;
 import org.apache.iceberg.io.WriteResult;
 import org.apache.iceberg.types.Types;
 import org.apache.pulsar.ecosystem.io.lakehouse.SinkConnectorConfig;
+import org.apache.pulsar.ecosystem.io.lakehouse.common.FlightRecorderEvent;
+import org.apache.pulsar.ecosystem.io.lakehouse.common.LakehouseEvents;
 import org.apache.pulsar.ecosystem.io.lakehouse.common.Utils;
 import org.apache.pulsar.ecosystem.io.lakehouse.exception.IncorrectParameterException;
 import org.apache.pulsar.ecosystem.io.lakehouse.exception.LakehouseConnectorException;
 import org.apache.pulsar.ecosystem.io.lakehouse.sink.LakehouseWriter;
+import org.apache.pulsar.ecosystem.io.lakehouse.sink.PreparedCommit;
 
 /**
  * Iceberg writer.
  */
 @Slf4j
 public class IcebergWriter implements LakehouseWriter {
+    // how many recent snapshots are read for the committed properties
+    private static final int MAX_COMMITS_SCANNED = 100;
+    private static final int MAX_SCHEMA_UPDATE_ATTEMPTS = 5;
 
     private final IcebergSinkConnectorConfig config;
     private Schema schema;
@@ -62,25 +72,8 @@ public class IcebergWriter implements LakehouseWriter {
         this.config = (IcebergSinkConnectorConfig) sinkConfig;
         this.schema = schema;
 
-        CatalogLoader catalogLoader = null;
-        switch (config.catalogImpl) {
-            case HADOOP_CATALOG:
-                catalogLoader = CatalogLoader.hadoop(config.getCatalogName(),
-                    Utils.getDefaultHadoopConf(sinkConfig), config.catalogProperties);
-                break;
-            case HIVE_CATALOG:
-                catalogLoader = CatalogLoader.hive(config.getCatalogName(),
-                    Utils.getDefaultHadoopConf(sinkConfig), config.catalogProperties);
-                break;
-            default:
-                String errmsg = "Not support catalog: " + config.catalogImpl
-                    + ", catalog name: " + config.getCatalogName();
-                log.error("{}", errmsg);
-                throw new IllegalArgumentException(errmsg);
-        }
-
         TableIdentifier identifier = TableIdentifier.of(config.getTableNamespace(), config.getTableName());
-        tableLoader = TableLoader.fromCatalog(catalogLoader, identifier);
+        tableLoader = TableLoader.fromCatalog(catalogLoaderOf(config), identifier);
 
         if (!tableLoader.exist()) {
             createTable(schema, tableLoader, identifier, config.getPartitionColumns(), config.getTableProperties());
@@ -98,6 +91,49 @@ public class IcebergWriter implements LakehouseWriter {
         taskWriter = taskWriterFactory.create();
     }
 
+    private static CatalogLoader catalogLoaderOf(IcebergSinkConnectorConfig config) {
+        switch (config.catalogImpl) {
+            case HADOOP_CATALOG:
+                return CatalogLoader.hadoop(config.getCatalogName(),
+                    Utils.getDefaultHadoopConf(config), config.catalogProperties);
+            case HIVE_CATALOG:
+                return CatalogLoader.hive(config.getCatalogName(),
+                    Utils.getDefaultHadoopConf(config), config.catalogProperties);
+            default:
+                String errmsg = "Not support catalog: " + config.catalogImpl
+                    + ", catalog name: " + config.getCatalogName();
+                log.error("{}", errmsg);
+                throw new IllegalArgumentException(errmsg);
+        }
+    }
+
+    /**
+     * The properties recorded in the summaries of the recent snapshots of the table, the latest value of each key.
+     */
+    public static Map<String, String> getCommittedProperties(SinkConnectorConfig sinkConfig, String prefix)
+        throws IOException {
+        IcebergSinkConnectorConfig config = (IcebergSinkConnectorConfig) sinkConfig;
+        TableIdentifier identifier = TableIdentifier.of(config.getTableNamespace(), config.getTableName());
+        Map<String, String> properties = new HashMap<>();
+        try (TableLoader loader = TableLoader.fromCatalog(catalogLoaderOf(config), identifier)) {
+            if (!loader.exist()) {
+                return properties;
+            }
+            loader.open();
+            Table table = loader.loadTable();
+            Snapshot snapshot = table.currentSnapshot();
+            for (int i = 0; snapshot != null && i < MAX_COMMITS_SCANNED; i++) {
+                snapshot.summary().forEach((key, value) -> {
+                    if (key.startsWith(prefix)) {
+                        properties.putIfAbsent(key, value);
+                    }
+                });
+                snapshot = snapshot.parentId() == null ? null : table.snapshot(snapshot.parentId());
+            }
+        }
+        return properties;
+    }
+
     protected void createTable(Schema schema, TableLoader tableLoader,
                                TableIdentifier identifier, List<String> partitionsColumns,
                                Map<String, String> props) {
@@ -118,13 +154,15 @@ public class IcebergWriter implements LakehouseWriter {
             throw new IncorrectParameterException("schema shouldn't be null");
         }
 
-        if (taskWriter != null && schema != null) {
-            if (schema.equals(newSchema)) {
-                if (log.isDebugEnabled()) {
-                    log.debug("The schema is the same: {}", newSchema);
-                }
-                return false;
+        if (taskWriter != null && schema != null && schema.equals(newSchema)) {
+            if (log.isDebugEnabled()) {
+                log.debug("The schema is the same: {}", newSchema);
             }
+            return false;
+        }
+        FlightRecorderEvent.Recording event = LakehouseEvents.SCHEMA_UPDATE.begin();
+        int attempts = 0;
+        if (taskWriter != null && schema != null) {
             // update table schema
             // close current task write, and commit files.
             try {
@@ -137,8 +175,7 @@ public class IcebergWriter implements LakehouseWriter {
             }
 
             // step2: update table schema
-            checkAndUpdateIcebergTableSchema(newSchema);
-
+            attempts = checkAndUpdateIcebergTableSchema(newSchema);
         }
         schema = newSchema;
 
@@ -147,18 +184,72 @@ public class IcebergWriter implements LakehouseWriter {
         taskWriterFactory.initialize(0, 1);
         taskWriter = taskWriterFactory.create();
 
+        if (event.isRecording()) {
+            event.set("format", "iceberg")
+                .set("table", config.getTableName())
+                .set("fields", newSchema.getFields().size())
+                .set("changed", true)
+                .set("attempts", attempts)
+                .commit();
+        }
         return true;
     }
 
+    /**
+     * Complete the files written with the current schema without committing them, then add the new fields to the
+     * table, which the files written with the new schema need to be written with their field ids.
+     */
+    @Override
+    public synchronized PreparedCommit prepareSchemaUpdate(Schema newSchema)
+        throws IOException, LakehouseConnectorException {
+        if (newSchema == null) {
+            log.error("schema shouldn't be null");
+            throw new IncorrectParameterException("schema shouldn't be null");
+        }
+        if (newSchema.equals(schema)) {
+            return new PreparedFiles(WriteResult.builder().build());
+        }
+        FlightRecorderEvent.Recording event = LakehouseEvents.SCHEMA_UPDATE.begin();
+        WriteResult writeResult = taskWriter.complete();
+        int attempts = checkAndUpdateIcebergTableSchema(newSchema);
+        schema = newSchema;
+        taskWriterFactory = new MessageTaskWriterFactory(tableLoader.loadTable(),
+            schema, config.parquetBatchSizeInBytes, config.fileFormat, null, false);
+        taskWriterFactory.initialize(0, 1);
+        taskWriter = taskWriterFactory.create();
+        if (event.isRecording()) {
+            event.set("format", "iceberg")
+                .set("table", config.getTableName())
+                .set("fields", newSchema.getFields().size())
+                .set("changed", true)
+                .set("attempts", attempts)
+                .commit();
+        }
+        return new PreparedFiles(writeResult);
+    }
+
     public void writeAvroRecord(GenericRecord record) throws IOException {
         taskWriter.write(record);
     }
 
+    /**
+     * The fanout writers are kept by iceberg, so the batch is only handed over to the current task writer once.
+     */
+    @Override
+    public void writeAvroRecords(List<GenericRecord> records) throws IOException {
+        TaskWriter<GenericRecord> writer = taskWriter;
+        for (GenericRecord record : records) {
+            writer.write(record);
+        }
+    }
+
     public synchronized boolean flush() {
+        FlightRecorderEvent.Recording event = LakehouseEvents.ICEBERG_FLUSH.begin();
         try {
             WriteResult writeResult = taskWriter.complete();
             getFileCommitter().commit(writeResult);
             taskWriter = taskWriterFactory.create();
+            recordFlush(event, writeResult, true);
         } catch (IOException e) {
             log.error("Failed to commit. ", e);
             return false;
@@ -166,6 +257,53 @@ public class IcebergWriter implements LakehouseWriter {
         return true;
     }
 
+    @Override
+    public synchronized PreparedCommit prepareCommit() throws IOException {
+        FlightRecorderEvent.Recording event = LakehouseEvents.ICEBERG_FLUSH.begin();
+        WriteResult writeResult = taskWriter.complete();
+        taskWriter = taskWriterFactory.create();
+        recordFlush(event, writeResult, false);
+        return new PreparedFiles(writeResult);
+    }
+
+    private void recordFlush(FlightRecorderEvent.Recording event, WriteResult writeResult, boolean committed) {
+        if (event.isRecording()) {
+            PreparedFiles files = new PreparedFiles(writeResult);
+            event.set("table", config.getTableName())
+                .set("files", files.getFileCount())
+                .set("bytes", files.getFileBytes())
+                .set("committed", committed)
+                .commit();
+        }
+    }
+
+    @Override
+    public boolean commit(List<PreparedCommit> prepared) {
+        return commit(prepared, Collections.emptyMap());
+    }
+
+    /**
+     * Commit the prepared files, with the properties in the summary of the snapshot.
+     */
+    @Override
+    public boolean commit(List<PreparedCommit> prepared, Map<String, String> properties) {
+        WriteResult.Builder builder = WriteResult.builder();
+        for (PreparedCommit preparedCommit : prepared) {
+            builder.add(((PreparedFiles) preparedCommit).getWriteResult());
+        }
+        WriteResult writeResult = builder.build();
+        if (writeResult.dataFiles().length == 0 && writeResult.deleteFiles().length == 0) {
+            return true;
+        }
+        try {
+            getFileCommitter().commit(writeResult, properties);
+        } catch (Exception e) {
+            log.error("Failed to commit. ", e);
+            return false;
+        }
+        return true;
+    }
+
     public synchronized PulsarFileCommitter getFileCommitter() {
         if (fileCommitter != null) {
             return fileCommitter;
@@ -176,61 +314,60 @@ public class IcebergWriter implements LakehouseWriter {
         return fileCommitter;
     }
 
-    private void checkAndUpdateIcebergTableSchema(Schema schema) {
+    /**
+     * Add the fields of the schema which the table doesn't have. Columns are only added: each writer of the table
+     * merges the schemas of its own records, so a column missing from the schema of one writer may be written by
+     * another. A conflict with a concurrent commit is retried against the refreshed table.
+     * @return the number of commit attempts, 0 if the table has all the fields already
+     */
+    private int checkAndUpdateIcebergTableSchema(Schema schema) {
         Table table = tableLoader.loadTable();
-        org.apache.iceberg.Schema originalIcebergSchema = table.schema();
-
         // pulsar schema fields
         List<Types.NestedField> pulsarSchemaFields =
             AvroSchemaUtil.convert(schema).asNestedType().asNestedType().fields();
 
-        Map<Types.NestedField, String> fieldsToAdd = new HashMap<>();
-        List<Types.NestedField> fieldsToRemove = new ArrayList<>();
-        Set<String> pulsarSchemaFieldsNames = new HashSet<>();
-
-        // check fields to add
-        String prevFiledName = null;
-        for (Types.NestedField pulsarSchemaField : pulsarSchemaFields) {
-            String fieldName = pulsarSchemaField.name();
-            if (originalIcebergSchema.findField(fieldName) == null) {
-                fieldsToAdd.put(pulsarSchemaField, prevFiledName);
-                log.info("Fields to add: {}", pulsarSchemaField);
+        for (int attempt = 1; ; attempt++) {
+            table.refresh();
+            org.apache.iceberg.Schema originalIcebergSchema = table.schema();
+            // added in the schema order, so a field is only moved after one which exists or is added before it
+            Map<Types.NestedField, String> fieldsToAdd = new LinkedHashMap<>();
+            String prevFiledName = null;
+            for (Types.NestedField pulsarSchemaField : pulsarSchemaFields) {
+                String fieldName = pulsarSchemaField.name();
+                if (originalIcebergSchema.findField(fieldName) == null) {
+                    fieldsToAdd.put(pulsarSchemaField, prevFiledName);
+                    log.info("Fields to add: {}", pulsarSchemaField);
+                }
+                prevFiledName = fieldName;
             }
-            prevFiledName = fieldName;
-            pulsarSchemaFieldsNames.add(fieldName);
-        }
-
-        // check fields to remove
-        for (int i = 0; i < originalIcebergSchema.columns().size(); ++i) {
-            String fieldName = originalIcebergSchema.columns().get(i).name();
-            if (!pulsarSchemaFieldsNames.contains(fieldName)) {
-                fieldsToRemove.add(originalIcebergSchema.columns().get(i));
-                log.info("Fields to remove: {}", originalIcebergSchema.columns().get(i));
+            if (fieldsToAdd.isEmpty()) {
+                return attempt - 1;
             }
-        }
-
-        if (fieldsToAdd.isEmpty() && fieldsToRemove.isEmpty()) {
-            return;
-        }
-
-        log.info("Updating iceberg table: {} schema, fieldsToAdd size: {}, "
-                + "fieldsToRemove size: {}, \n oldSchema: {}, \n new schema: {}",
-            config.tableName, fieldsToAdd.size(), fieldsToRemove.size(), originalIcebergSchema, schema);
 
-        // update schema
-        UpdateSchema updateSchema = table.updateSchema();
-        fieldsToAdd.forEach((field, t) -> {
-            if (t == null) {
-                updateSchema.addColumn(field.name(), field.type()).moveFirst(field.name());
-            } else {
-                updateSchema.addColumn(field.name(), field.type()).moveAfter(field.name(), t);
+            log.info("Updating iceberg table: {} schema, fieldsToAdd size: {}, \n oldSchema: {}, \n new schema: {}",
+                config.tableName, fieldsToAdd.size(), originalIcebergSchema, schema);
+            UpdateSchema updateSchema = table.updateSchema();
+            fieldsToAdd.forEach((field, t) -> {
+                if (t == null) {
+                    updateSchema.addColumn(field.name(), field.type()).moveFirst(field.name());
+                } else {
+                    updateSchema.addColumn(field.name(), field.type()).moveAfter(field.name(), t);
+                }
+            });
+            try {
+                updateSchema.commit();
+            } catch (CommitFailedException e) {
+                if (attempt >= MAX_SCHEMA_UPDATE_ATTEMPTS) {
+                    throw e;
+                }
+                log.warn("Conflict updating iceberg table: {} schema, retry {}/{}", config.tableName, attempt,
+                    MAX_SCHEMA_UPDATE_ATTEMPTS, e);
+                continue;
             }
-        });
-        fieldsToRemove.forEach(field -> updateSchema.deleteColumn(field.name()));
-        updateSchema.commit();
-
-        log.info("Update iceberg table: {} schema succeed. Table schema after updated: {}",
-            config.tableName, table.schema().asStruct().toString());
+            log.info("Update iceberg table: {} schema succeed. Table schema after updated: {}",
+                config.tableName, table.schema().asStruct().toString());
+            return attempt;
+        }
     }
 
     public void close() throws IOException {
@@ -238,7 +375,9 @@ public class IcebergWriter implements LakehouseWriter {
             try {
                 log.info("Start to close iceberg task writer");
                 WriteResult writeResult = taskWriter.complete();
-                getFileCommitter().commit(writeResult);
+                if (!commit(Collections.singletonList(new PreparedFiles(writeResult)))) {
+                    throw new IOException("Failed to commit iceberg data files when closing the writer");
+                }
                 taskWriter.close();
                 tableLoader.close();
             } catch (IOException e) {
@@ -249,4 +388,34 @@ public class IcebergWriter implements LakehouseWriter {
             }
         }
     }
+
+    /**
+     * Data files completed by the iceberg task writer and not committed yet.
+     */
+    @Data
+    public static class PreparedFiles implements PreparedCommit {
+        private final WriteResult writeResult;
+
+        @Override
+        public boolean isEmpty() {
+            return writeResult.dataFiles().length == 0 && writeResult.deleteFiles().length == 0;
+        }
+
+        @Override
+        public long getFileCount() {
+            return writeResult.dataFiles().length + writeResult.deleteFiles().length;
+        }
+
+        @Override
+        public long getFileBytes() {
+            long bytes = 0;
+            for (DataFile dataFile : writeResult.dataFiles()) {
+                bytes += dataFile.fileSizeInBytes();
+            }
+            for (DeleteFile deleteFile : writeResult.deleteFiles()) {
+                bytes += deleteFile.fileSizeInBytes();
+            }
+            return bytes;
+        }
+    }
 }
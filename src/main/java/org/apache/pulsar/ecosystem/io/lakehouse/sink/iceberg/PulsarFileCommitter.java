@@ -20,6 +20,8 @@ package org.apache.pulsar.ecosystem.io.lakehouse.sink.iceberg;
 
 import com.google.common.collect.ImmutableList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.iceberg.RowDelta;
 import org.apache.iceberg.Table;
@@ -49,9 +51,17 @@ public class PulsarFileCommitter {
     }
 
     public void commit(WriteResult result) {
+        commit(result, Collections.emptyMap());
+    }
+
+    /**
+     * Commit the files, with the properties in the summary of the snapshot.
+     */
+    public void commit(WriteResult result, Map<String, String> properties) {
         RowDelta rowDelta = table.newRowDelta()
             .validateDataFilesExist(ImmutableList.copyOf(result.referencedDataFiles()))
             .validateDeletedFiles();
+        properties.forEach(rowDelta::set);
 
         int numDataFiles = result.dataFiles().length;
         Arrays.stream(result.dataFiles()).forEach(rowDelta::addRows);
@@ -51,6 +51,8 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.parquet.example.data.simple.SimpleGroup;
 import org.apache.parquet.schema.Type;
 import org.apache.pulsar.ecosystem.io.lakehouse.SourceConnectorConfig;
+import org.apache.pulsar.ecosystem.io.lakehouse.common.FlightRecorderEvent;
+import org.apache.pulsar.ecosystem.io.lakehouse.common.LakehouseEvents;
 import org.apache.pulsar.ecosystem.io.lakehouse.common.Murmur32Hash;
 import org.apache.pulsar.ecosystem.io.lakehouse.common.Utils;
 import org.apache.pulsar.ecosystem.io.lakehouse.parquet.DeltaParquetReader;
@@ -67,10 +69,10 @@ public class DeltaReader {
     private DeltaCheckpoint startCheckpoint;
     private DeltaLog deltaLog;
     private Function<ReadCursor, Boolean> filter;
-    private static int topicPartitionNum;
+    private final DeltaSourceState state;
     private DeltaSourceConfig config;
     private Configuration conf;
-    private static long filteredCnt = 0;
+    private long filteredCnt = 0;
 
 
     public static int getPartitionIdByDeltaPartitionValue(String partitionValue,
@@ -85,16 +87,8 @@ public class DeltaReader {
                 % topicPartitionNum;
     }
 
-    public static synchronized void setTopicPartitionNum(int partitionNum) {
-        DeltaReader.topicPartitionNum = partitionNum;
-    }
-
-    public static int getTopicPartitionNum() {
-        return topicPartitionNum;
-    }
-
-    public static synchronized long increaseFilteredCnt() {
-        return DeltaReader.filteredCnt++;
+    public synchronized long increaseFilteredCnt() {
+        return filteredCnt++;
     }
 
     /**
@@ -162,7 +156,7 @@ public class DeltaReader {
     public DeltaReader(SourceConnectorConfig config, int topicPartitionNum)
         throws Exception {
         this.config = (DeltaSourceConfig) config;
-        setTopicPartitionNum(topicPartitionNum);
+        this.state = new DeltaSourceState(topicPartitionNum);
         open(this.config);
     }
 
@@ -245,6 +239,7 @@ public class DeltaReader {
                                                               long maxBytesSize,
                                                               boolean isFullSnapshot,
                                                               SourceContext sourceContext) {
+        FlightRecorderEvent.Recording event = LakehouseEvents.SOURCE_READ_ACTIONS.begin();
         List<ReadCursor> actionList = new LinkedList<>();
         long totalReadBytes = 0;
         if (isFullSnapshot) {
@@ -358,6 +353,14 @@ public class DeltaReader {
         // expose metrics
         sourceContext.recordMetric(PREPARE_READ_FILES_COUNT, actionList.size());
         sourceContext.recordMetric(PREPARE_READ_FILES_BYTES_SIZE, totalReadBytes);
+        if (event.isRecording()) {
+            event.set("table", config.getTablePath())
+                .set("startVersion", startVersion)
+                .set("fullSnapshot", isFullSnapshot)
+                .set("actions", actionList.size())
+                .set("bytes", totalReadBytes)
+                .commit();
+        }
 
         return actionList;
     }
@@ -418,6 +421,7 @@ public class DeltaReader {
                 }
 
                 int rowNumInParquetFile = 0;
+                FlightRecorderEvent.Recording event = LakehouseEvents.SOURCE_PARQUET_PARSE.begin();
                 try {
                     DeltaParquetReader.Parquet parquet;
                     while ((parquet = reader.readBatch(config.maxReadRowCountOneRound)) != null) {
@@ -449,6 +453,7 @@ public class DeltaReader {
                         log.error("readPartParquetFileAsync close encounter exception,", e2);
                         readStatus.set(-2);
                     }
+                    event.set("path", filePath).set("rows", (long) rowNumInParquetFile).commit();
                 }
             } else if (action instanceof CommitInfo) {
                 recordData.add(new RowRecordData(startCursor, null));
@@ -45,11 +45,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NonNull;
+import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.parquet.schema.Type;
 import org.apache.pulsar.client.api.Message;
@@ -80,12 +81,12 @@ public class DeltaRecord implements Record<GenericRecord> {
 
     private Map<String, String> properties;
     private GenericRecord value;
-    private static GenericSchema<GenericRecord> pulsarSchema;
-    private static StructType deltaSchema;
+    private GenericSchema<GenericRecord> pulsarSchema;
     private String topic;
     private DeltaReader.RowRecordData rowRecordData;
-    private static Map<Integer, Long> msgSeqCntMap;
-    private static Map<Integer, DeltaCheckpoint> saveCheckpointMap;
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private final DeltaSourceState state;
     private long sequence;
     private int partition;
     private String partitionValue;
@@ -95,21 +96,28 @@ public class DeltaRecord implements Record<GenericRecord> {
                        String topic,
                        StructType deltaSchema,
                        GenericSchema<GenericRecord> pulsarSchema,
-                       AtomicInteger processingException) throws IOException {
+                       AtomicInteger processingException,
+                       DeltaSourceState state) throws IOException {
         checkArgument(!(deltaSchema != null && pulsarSchema != null),
             "deltaSchema and pulsarSchema shouldn't be set at the same time");
         this.rowRecordData = rowRecordData;
         this.processingException = processingException;
+        this.state = state;
         properties = new HashMap<>();
         this.topic = topic;
 
-        if (deltaSchema != null && !deltaSchema.equals(DeltaRecord.deltaSchema)) {
-            setDeltaSchema(deltaSchema);
-            setPulsarSchema(convertToPulsarSchema(deltaSchema));
-        }
+        StructType currentDeltaSchema;
+        synchronized (state) {
+            if (deltaSchema != null && !deltaSchema.equals(state.getDeltaSchema())) {
+                state.setDeltaSchema(deltaSchema);
+                state.setPulsarSchema(convertToPulsarSchema(deltaSchema));
+            }
 
-        if (pulsarSchema != null && !pulsarSchema.equals(DeltaRecord.pulsarSchema)) {
-            setPulsarSchema(pulsarSchema);
+            if (pulsarSchema != null && !pulsarSchema.equals(state.getPulsarSchema())) {
+                state.setPulsarSchema(pulsarSchema);
+            }
+            currentDeltaSchema = state.getDeltaSchema();
+            this.pulsarSchema = state.getPulsarSchema();
         }
 
         Action action = rowRecordData.nextCursor.act;
@@ -121,8 +129,7 @@ public class DeltaRecord implements Record<GenericRecord> {
                 DeltaReader.partitionValueToString(addFile.getPartitionValues()));
             properties.put(CAPTURE_TS_FIELD, String.valueOf(System.currentTimeMillis()));
             properties.put(TS_FIELD, String.valueOf(addFile.getModificationTime()));
-            value = getGenericRecord(DeltaRecord.deltaSchema,
-                DeltaRecord.pulsarSchema, rowRecordData);
+            value = getGenericRecord(currentDeltaSchema, this.pulsarSchema, rowRecordData);
         } else if (action instanceof RemoveFile) {
             RemoveFile removeFile = (RemoveFile) action;
             long deleteTimestamp = removeFile.getDeletionTimestamp().isPresent()
@@ -133,8 +140,7 @@ public class DeltaRecord implements Record<GenericRecord> {
                 DeltaReader.partitionValueToString(removeFile.getPartitionValues()));
             properties.put(CAPTURE_TS_FIELD,  String.valueOf(System.currentTimeMillis()));
             properties.put(TS_FIELD, String.valueOf(deleteTimestamp));
-            value = getGenericRecord(DeltaRecord.deltaSchema,
-                DeltaRecord.pulsarSchema, rowRecordData);
+            value = getGenericRecord(currentDeltaSchema, this.pulsarSchema, rowRecordData);
         } else {
             log.error("DeltaRecord: Not Support this kind of record {}", action);
             throw new IOException("DeltaRecord: not support this kind of record");
@@ -142,34 +148,8 @@ public class DeltaRecord implements Record<GenericRecord> {
 
         String partitionValueStr = properties.get(PARTITION_VALUE_FIELD);
         partition = DeltaReader.getPartitionIdByDeltaPartitionValue(partitionValueStr,
-                        DeltaReader.getTopicPartitionNum());
-        long msgCount = msgSeqCntMap == null ? 0 : msgSeqCntMap.getOrDefault((int) partition, 0L);
-        sequence = msgCount++;
-        putMsgSeqCntMap(partition, msgCount);
-    }
-
-    public static synchronized void setPulsarSchema(GenericSchema<GenericRecord> schema) {
-        DeltaRecord.pulsarSchema = schema;
-    }
-
-    public static synchronized void setDeltaSchema(StructType schema) {
-        DeltaRecord.deltaSchema = schema;
-    }
-
-    public static GenericSchema<GenericRecord> getPulsarSchema() {
-        return DeltaRecord.pulsarSchema;
-    }
-
-    public static StructType getDeltaSchema() {
-        return DeltaRecord.deltaSchema;
-    }
-
-    public static synchronized void putMsgSeqCntMap(int partition, long msgCnt) {
-        if (msgSeqCntMap == null) {
-            msgSeqCntMap = new ConcurrentHashMap<>();
-        }
-
-        msgSeqCntMap.put(partition, msgCnt);
+                        state.getTopicPartitionNum());
+        sequence = state.nextSequence(partition);
     }
 
     public static GenericSchema<GenericRecord> convertToPulsarSchema(StructType deltaSchema)
@@ -274,7 +254,7 @@ public class DeltaRecord implements Record<GenericRecord> {
                     }
                 } catch (RuntimeException e) {
                     log.warn("Failed to get value, using null instead, schema: {}, exception ",
-                        DeltaRecord.deltaSchema.getTreeString(), e);
+                        deltaSchema.getTreeString(), e);
                     value = null;
                 }
                 builder.set(field.getName(), value);
@@ -326,10 +306,6 @@ public class DeltaRecord implements Record<GenericRecord> {
         }
     }
 
-    public static Map<Integer, DeltaCheckpoint> currentSnapshot() {
-        return saveCheckpointMap;
-    }
-
     @Override
     public Optional<String> getTopicName() {
         return Optional.empty();
@@ -392,15 +368,7 @@ public class DeltaRecord implements Record<GenericRecord> {
         checkpoint.setMetadataChangeFileIndex(cursor.changeIndex);
         checkpoint.setRowNum(cursor.rowNum);
         checkpoint.setSeqCount(sequence);
-        putSaveCheckpointMap(partition, checkpoint);
-    }
-
-    public static synchronized void putSaveCheckpointMap(int partition, DeltaCheckpoint checkpoint) {
-        if (saveCheckpointMap == null) {
-            saveCheckpointMap = new ConcurrentHashMap<>();
-        }
-
-        saveCheckpointMap.put(partition, checkpoint);
+        state.putCheckpoint(partition, checkpoint);
     }
 
     @Override
@@ -0,0 +1,80 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.lakehouse.source.delta;
+
+import io.delta.standalone.types.StructType;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.pulsar.client.api.schema.GenericRecord;
+import org.apache.pulsar.client.api.schema.GenericSchema;
+
+/**
+ * The state of one source instance shared by its {@link DeltaRecord}s: the current schemas, the message sequence and
+ * the acked checkpoint of each topic partition. It is owned by the {@link DeltaReader} of the instance, so several
+ * instances can run in one JVM.
+ */
+public class DeltaSourceState {
+    private final int topicPartitionNum;
+    private volatile StructType deltaSchema;
+    private volatile GenericSchema<GenericRecord> pulsarSchema;
+    private final Map<Integer, Long> msgSeqCntMap = new ConcurrentHashMap<>();
+    private final Map<Integer, DeltaCheckpoint> saveCheckpointMap = new ConcurrentHashMap<>();
+
+    public DeltaSourceState(int topicPartitionNum) {
+        this.topicPartitionNum = topicPartitionNum;
+    }
+
+    public int getTopicPartitionNum() {
+        return topicPartitionNum;
+    }
+
+    public StructType getDeltaSchema() {
+        return deltaSchema;
+    }
+
+    public void setDeltaSchema(StructType deltaSchema) {
+        this.deltaSchema = deltaSchema;
+    }
+
+    public GenericSchema<GenericRecord> getPulsarSchema() {
+        return pulsarSchema;
+    }
+
+    public void setPulsarSchema(GenericSchema<GenericRecord> pulsarSchema) {
+        this.pulsarSchema = pulsarSchema;
+    }
+
+    /**
+     * The sequence of the next message of the partition, starting from 0.
+     */
+    public long nextSequence(int partition) {
+        return msgSeqCntMap.merge(partition, 1L, Long::sum) - 1;
+    }
+
+    public void putCheckpoint(int partition, DeltaCheckpoint checkpoint) {
+        saveCheckpointMap.put(partition, checkpoint);
+    }
+
+    /**
+     * The checkpoint of the last acked message of each partition.
+     */
+    public Map<Integer, DeltaCheckpoint> currentSnapshot() {
+        return saveCheckpointMap;
+    }
+}
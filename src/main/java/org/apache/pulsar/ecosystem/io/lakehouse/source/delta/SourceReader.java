@@ -309,10 +309,10 @@ public class SourceReader implements Runnable {
         try {
             if (deltaSchema != null) {
                 queue.put(new DeltaRecord(rowRecordData, topic, deltaSchema, null,
-                    processingException));
+                    processingException, reader.getState()));
             } else if (pulsarSchema != null) {
                 queue.put(new DeltaRecord(rowRecordData, topic, null, pulsarSchema,
-                    processingException));
+                    processingException, reader.getState()));
             }
         } catch (IOException ex) {
             log.error("delta message enqueue failed for ", ex);
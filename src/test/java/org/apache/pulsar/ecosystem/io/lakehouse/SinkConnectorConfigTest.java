@@ -21,10 +21,15 @@ package org.apache.pulsar.ecosystem.io.lakehouse;
 import static org.testng.AssertJUnit.assertEquals;
 import static org.testng.AssertJUnit.fail;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import org.apache.pulsar.ecosystem.io.lakehouse.exception.IncorrectParameterException;
+import org.apache.pulsar.ecosystem.io.lakehouse.sink.delta.DeltaSinkConnectorConfig;
+import org.apache.pulsar.ecosystem.io.lakehouse.sink.iceberg.IcebergSinkConnectorConfig;
 import org.testng.annotations.Test;
 
 public class SinkConnectorConfigTest {
@@ -38,6 +43,8 @@ public class SinkConnectorConfigTest {
         assertEquals(SinkConnectorConfig.DEFAULT_MAX_RECORDS_PER_COMMIT, config.getMaxRecordsPerCommit());
         assertEquals(SinkConnectorConfig.DEFAULT_MAX_COMMIT_FAILED_TIMES, config.getMaxCommitFailedTimes());
         assertEquals(SinkConnectorConfig.DEFAULT_SINK_CONNECTOR_QUEUE_SIZE, config.getSinkConnectorQueueSize());
+        assertEquals(SinkConnectorConfig.DEFAULT_SINK_CONNECTOR_QUEUE_MAX_BYTES,
+            config.getSinkConnectorQueueMaxBytes());
         assertEquals(Collections.emptyList(), config.getPartitionColumns());
         assertEquals("", config.getOverrideFieldName());
     }
@@ -51,12 +58,14 @@ public class SinkConnectorConfigTest {
         properties.put("maxRecordsPerCommit", 10);
         properties.put("maxCommitFailedTimes", 10);
         properties.put("sinkConnectorQueueSize", 10);
+        properties.put("sinkConnectorQueueMaxBytes", 1024);
         properties.put("overrideFieldName", "filedname");
         SinkConnectorConfig config = SinkConnectorConfig.load(properties);
         assertEquals(10, config.getMaxCommitInterval());
         assertEquals(10, config.getMaxRecordsPerCommit());
         assertEquals(10, config.getMaxCommitFailedTimes());
         assertEquals(10, config.getSinkConnectorQueueSize());
+        assertEquals(1024, config.getSinkConnectorQueueMaxBytes());
         assertEquals(Collections.singletonList("partition"), config.getPartitionColumns());
         assertEquals("filedname", config.getOverrideFieldName());
     }
@@ -74,4 +83,122 @@ public class SinkConnectorConfigTest {
             // expected exception
         }
     }
+
+    @Test
+    public void testTableRoutes() throws Exception {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("type", "delta");
+        properties.put("tablePath", "/tmp/default");
+        properties.put("maxCommitInterval", 10);
+        properties.put("tableRoutes", Collections.singletonMap("orders", "/tmp/orders"));
+        SinkConnectorConfig config = SinkConnectorConfig.load(properties);
+        config.validate();
+        assertEquals(Collections.singletonMap("orders", "/tmp/orders"), config.getTableRoutes());
+        assertEquals("", config.getTableRouteField());
+
+        DeltaSinkConnectorConfig routed = (DeltaSinkConnectorConfig) config.forTable("/tmp/orders");
+        assertEquals("/tmp/orders", routed.getTablePath());
+        assertEquals(10, routed.getMaxCommitInterval());
+        assertEquals("/tmp/default", ((DeltaSinkConnectorConfig) config).getTablePath());
+    }
+
+    @Test
+    public void testPropertiesPerInstance() throws Exception {
+        Map<String, Object> first = new HashMap<>();
+        first.put("type", "delta");
+        first.put("tablePath", "/tmp/first");
+        first.put("hadoop.fs.s3a.endpoint", "first");
+        Map<String, Object> second = new HashMap<>();
+        second.put("type", "hudi");
+        second.put("hoodie.table.name", "second");
+        SinkConnectorConfig firstConfig = SinkConnectorConfig.load(first);
+        SinkConnectorConfig secondConfig = SinkConnectorConfig.load(second);
+
+        assertEquals("first", firstConfig.getProperties().get("hadoop.fs.s3a.endpoint"));
+        assertEquals(null, firstConfig.getProperties().get("hoodie.table.name"));
+        assertEquals("second", secondConfig.getProperties().get("hoodie.table.name"));
+        assertEquals(null, secondConfig.getProperties().get("hadoop.fs.s3a.endpoint"));
+        assertEquals("first", firstConfig.forTable("/tmp/orders").getProperties().get("hadoop.fs.s3a.endpoint"));
+    }
+
+    @Test
+    public void testIcebergTableRoutes() {
+        IcebergSinkConnectorConfig config = new IcebergSinkConnectorConfig();
+        config.setType("iceberg");
+        config.setTableNamespace("db");
+        config.setTableName("events");
+
+        IcebergSinkConnectorConfig routed = (IcebergSinkConnectorConfig) config.forTable("orders");
+        assertEquals("db", routed.getTableNamespace());
+        assertEquals("orders", routed.getTableName());
+
+        routed = (IcebergSinkConnectorConfig) config.forTable("sales.orders");
+        assertEquals("sales", routed.getTableNamespace());
+        assertEquals("orders", routed.getTableName());
+    }
+
+    @Test
+    public void testHudiTableRoutes() throws Exception {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("type", "hudi");
+        properties.put("hoodie.table.name", "events");
+        properties.put("hoodie.base.path", "file:///tmp/events");
+        properties.put("tableRoutes", Collections.singletonMap("orders", "file:///tmp/orders/"));
+        SinkConnectorConfig config = SinkConnectorConfig.load(properties);
+        config.validate();
+
+        SinkConnectorConfig routed = config.forTable("file:///tmp/orders/");
+        assertEquals("orders", routed.getProperties().get("hoodie.table.name"));
+        assertEquals("file:///tmp/orders", routed.getProperties().get("hoodie.base.path"));
+        assertEquals("events", config.getProperties().get("hoodie.table.name"));
+        assertEquals("file:///tmp/events", config.getProperties().get("hoodie.base.path"));
+    }
+
+    @Test
+    public void testUpdateDynamicFields() throws Exception {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("type", "delta");
+        properties.put("tablePath", "/tmp/default");
+        SinkConnectorConfig config = SinkConnectorConfig.load(properties);
+        config.validate();
+
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("maxCommitInterval", 30);
+        settings.put("sinkConnectorQueueMaxBytes", "1024");
+        settings.put("maxRecordsPerCommit", SinkConnectorConfig.DEFAULT_MAX_RECORDS_PER_COMMIT);
+        Set<String> changed = config.updateDynamicFields(settings);
+        assertEquals(new HashSet<>(Arrays.asList("maxCommitInterval", "sinkConnectorQueueMaxBytes")), changed);
+        assertEquals(30, config.getMaxCommitInterval());
+        assertEquals(1024, config.getSinkConnectorQueueMaxBytes());
+
+        // invalid values fall back to the defaults, like at startup
+        config.updateDynamicFields(Collections.singletonMap("maxCommitInterval", -1));
+        assertEquals(SinkConnectorConfig.DEFAULT_MAX_COMMIT_INTERVAL, config.getMaxCommitInterval());
+    }
+
+    @Test
+    public void testUpdateDynamicFieldsAdjustedByValidation() throws Exception {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("type", "delta");
+        properties.put("tablePath", "/tmp/default");
+        properties.put("minCommitInterval", 20);
+        SinkConnectorConfig config = SinkConnectorConfig.load(properties);
+        config.validate();
+        assertEquals(20, config.getMinCommitInterval());
+
+        // the min commit interval is clamped to the new max commit interval, and applied with it
+        Set<String> changed = config.updateDynamicFields(Collections.singletonMap("maxCommitInterval", 5));
+        assertEquals(new HashSet<>(Arrays.asList("maxCommitInterval", "minCommitInterval")), changed);
+        assertEquals(5, config.getMaxCommitInterval());
+        assertEquals(5, config.getMinCommitInterval());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUpdateStaticField() throws Exception {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("type", "delta");
+        properties.put("tablePath", "/tmp/default");
+        SinkConnectorConfig config = SinkConnectorConfig.load(properties);
+        config.updateDynamicFields(Collections.singletonMap("tablePath", "/tmp/other"));
+    }
 }
@@ -0,0 +1,114 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.lakehouse.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.pulsar.ecosystem.io.lakehouse.common.JsonRecordDecoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Per-record cost of converting a JSON schema record into an Avro record, comparing the Avro json decoder over the
+ * re-serialized Jackson tree with {@link JsonRecordDecoder}.
+ *
+ * <p>Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.apache.pulsar.ecosystem.io.lakehouse.benchmark.JsonRecordDecoderBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonRecordDecoderBenchmark {
+
+    @Param({"10", "100"})
+    public int fields;
+
+    private JsonNode node;
+    private Schema schema;
+    private GenericDatumReader<GenericRecord> datumReader;
+    private JsonRecordDecoder decoder;
+    private GenericRecord reuse;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        SchemaBuilder.FieldAssembler<Schema> assembler = SchemaBuilder.record("record").fields();
+        ObjectNode object = new ObjectMapper().createObjectNode();
+        for (int i = 0; i < fields; i++) {
+            switch (i % 4) {
+                case 0:
+                    assembler = assembler.requiredString("field_" + i);
+                    object.put("field_" + i, "value of field " + i);
+                    break;
+                case 1:
+                    assembler = assembler.requiredLong("field_" + i);
+                    object.put("field_" + i, 1_000_000L * i);
+                    break;
+                case 2:
+                    assembler = assembler.requiredDouble("field_" + i);
+                    object.put("field_" + i, i / 3.0);
+                    break;
+                default:
+                    assembler = assembler.requiredBoolean("field_" + i);
+                    object.put("field_" + i, i % 2 == 0);
+            }
+        }
+        schema = assembler.endRecord();
+        node = object;
+        datumReader = new GenericDatumReader<>(schema, schema);
+        decoder = new JsonRecordDecoder(schema);
+    }
+
+    @Benchmark
+    public GenericRecord avroJsonDecoder() throws IOException {
+        return datumReader.read(null, DecoderFactory.get().jsonDecoder(schema, node.toString()));
+    }
+
+    @Benchmark
+    public GenericRecord compiledDecoder() throws IOException {
+        reuse = decoder.decode(node, reuse);
+        return reuse;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(JsonRecordDecoderBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.lakehouse.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.pulsar.ecosystem.io.lakehouse.common.SchemaConverter;
+import org.apache.pulsar.ecosystem.io.lakehouse.sink.SchemaCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Per-record cost of resolving the record schema in the sink writer, comparing the schema definition of every
+ * record with the current schema against looking it up in {@link SchemaCache}.
+ *
+ * <p>Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.apache.pulsar.ecosystem.io.lakehouse.benchmark.SchemaCacheBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SchemaCacheBenchmark {
+    private static final String TOPIC = "persistent://public/default/benchmark";
+
+    @Param({"10", "200"})
+    public int fields;
+
+    // whether consecutive records alternate between two schema versions
+    @Param({"false", "true"})
+    public boolean interleaved;
+
+    private byte[][] definitions;
+    private byte[][] versions;
+    private int index;
+
+    // state of the definition comparison
+    private Schema currentSchema;
+    private Schema schemaWithoutNull;
+    private GenericDatumReader<GenericRecord> datumReader;
+
+    private SchemaCache schemaCache;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        definitions = new byte[][] {
+            buildSchema("record_v1", fields).toString().getBytes(StandardCharsets.UTF_8),
+            buildSchema("record_v2", fields + 1).toString().getBytes(StandardCharsets.UTF_8)
+        };
+        versions = new byte[][] {{0, 0, 0, 0, 0, 0, 0, 1}, {0, 0, 0, 0, 0, 0, 0, 2}};
+        datumReader = new GenericDatumReader<>();
+        schemaCache = new SchemaCache();
+    }
+
+    private static Schema buildSchema(String name, int fields) {
+        SchemaBuilder.FieldAssembler<Schema> assembler = SchemaBuilder.record(name).fields();
+        for (int i = 0; i < fields; i++) {
+            assembler = assembler.optionalString("field_" + i);
+        }
+        return assembler.endRecord();
+    }
+
+    private int next() {
+        if (interleaved) {
+            index ^= 1;
+        }
+        return index;
+    }
+
+    // like SchemaInfo#getSchemaDefinition, which builds a new string on every call
+    private String definition(int i) {
+        return new String(definitions[i], StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public Object compareDefinition() {
+        String schemaStr = definition(next());
+        if (currentSchema == null || !currentSchema.toString().equals(schemaStr)) {
+            currentSchema = new Schema.Parser().parse(schemaStr);
+            schemaWithoutNull = SchemaConverter.convertPulsarAvroSchemaToNonNullSchema(currentSchema);
+            datumReader.setSchema(schemaWithoutNull);
+            datumReader.setExpected(schemaWithoutNull);
+        }
+        return datumReader;
+    }
+
+    @Benchmark
+    public Object schemaCache() {
+        int i = next();
+        return schemaCache.get(TOPIC, versions[i], () -> definition(i)).getDatumReader();
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(SchemaCacheBenchmark.class.getSimpleName()).build()).run();
+    }
+}
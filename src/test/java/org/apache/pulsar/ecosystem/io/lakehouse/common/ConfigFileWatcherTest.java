@@ -0,0 +1,58 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.lakehouse.common;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.testng.annotations.Test;
+
+/**
+ * Test for {@link ConfigFileWatcher}.
+ */
+public class ConfigFileWatcherTest {
+
+    @Test(timeOut = 30000)
+    public void testApplyChanges() throws Exception {
+        File file = File.createTempFile("lakehouse-config", ".json");
+        file.deleteOnExit();
+        Files.write(file.toPath(), "{\"maxCommitInterval\": 30}".getBytes(StandardCharsets.UTF_8));
+
+        BlockingQueue<Map<String, Object>> updates = new LinkedBlockingQueue<>();
+        try (ConfigFileWatcher watcher = new ConfigFileWatcher(file.getPath(), 50, updates::add)) {
+            assertEquals(updates.poll(10, TimeUnit.SECONDS).get("maxCommitInterval"), 30);
+
+            Files.write(file.toPath(), "{\"maxCommitInterval\": 60, \"maxRecordsPerCommit\": 100}"
+                .getBytes(StandardCharsets.UTF_8));
+            Map<String, Object> update = updates.poll(10, TimeUnit.SECONDS);
+            assertEquals(update.get("maxCommitInterval"), 60);
+            assertEquals(update.get("maxRecordsPerCommit"), 100);
+
+            // unchanged file isn't read again
+            Thread.sleep(200);
+            assertTrue(updates.isEmpty());
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.lakehouse.common;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.expectThrows;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.testng.SkipException;
+import org.testng.annotations.Test;
+
+/**
+ * Test for {@link FlightRecorderEvent}. Flight Recorder is driven through reflection, like the connector does, since
+ * the tests are compiled for Java 8 too.
+ */
+public class FlightRecorderEventTest {
+    private static final FlightRecorderEvent EVENT = FlightRecorderEvent
+        .builder("org.apache.pulsar.lakehouse.test.Flush", "Test Flush")
+        .field("table", String.class)
+        .field("files", long.class)
+        .field("committed", boolean.class)
+        .build();
+
+    @Test
+    public void testDisabled() {
+        // no recording enables the event
+        assertFalse(EVENT.isEnabled());
+        FlightRecorderEvent.Recording event = EVENT.begin();
+        assertFalse(event.isRecording());
+        // the attributes aren't checked while the event isn't recorded
+        event.set("unknown", 1L).set("table", "t1").commit();
+    }
+
+    @Test
+    public void testRecorded() throws Exception {
+        Class<?> recordingType;
+        try {
+            recordingType = Class.forName("jdk.jfr.Recording");
+        } catch (ClassNotFoundException e) {
+            throw new SkipException("Flight Recorder isn't available");
+        }
+        Object recording = recordingType.getConstructor().newInstance();
+        Path dump = Files.createTempFile("lakehouse-events", ".jfr");
+        try {
+            recordingType.getMethod("enable", String.class).invoke(recording, EVENT.getName());
+            recordingType.getMethod("start").invoke(recording);
+            assertTrue(EVENT.isEnabled());
+
+            FlightRecorderEvent.Recording event = EVENT.begin();
+            assertTrue(event.isRecording());
+            expectThrows(IllegalArgumentException.class, () -> event.set("unknown", 1L));
+            event.set("table", "t1").set("files", 3L).set("committed", true).commit();
+
+            recordingType.getMethod("stop").invoke(recording);
+            recordingType.getMethod("dump", Path.class).invoke(recording, dump);
+        } finally {
+            recordingType.getMethod("close").invoke(recording);
+        }
+
+        try {
+            Class<?> recordingFile = Class.forName("jdk.jfr.consumer.RecordingFile");
+            List<?> events = (List<?>) recordingFile.getMethod("readAllEvents", Path.class).invoke(null, dump);
+            int found = 0;
+            for (Object recorded : events) {
+                Object eventType = recorded.getClass().getMethod("getEventType").invoke(recorded);
+                if (!EVENT.getName().equals(eventType.getClass().getMethod("getName").invoke(eventType))) {
+                    continue;
+                }
+                Method getValue = recorded.getClass().getMethod("getValue", String.class);
+                assertEquals(getValue.invoke(recorded, "table"), "t1");
+                assertEquals(getValue.invoke(recorded, "files"), 3L);
+                assertEquals(getValue.invoke(recorded, "committed"), true);
+                found++;
+            }
+            assertEquals(found, 1);
+        } finally {
+            Files.deleteIfExists(dump);
+        }
+    }
+}
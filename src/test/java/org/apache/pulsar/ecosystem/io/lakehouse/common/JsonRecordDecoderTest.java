@@ -0,0 +1,207 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.lakehouse.common;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.fail;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.DecoderFactory;
+import org.testng.annotations.Test;
+
+/**
+ * Test for {@link JsonRecordDecoder}.
+ */
+public class JsonRecordDecoderTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final Schema ADDRESS = SchemaBuilder.record("Address").fields()
+        .requiredString("city")
+        .optionalInt("zip")
+        .endRecord();
+
+    private static final Schema SCHEMA = SchemaBuilder.record("User").fields()
+        .requiredString("name")
+        .requiredInt("age")
+        .requiredLong("id")
+        .requiredDouble("score")
+        .requiredFloat("ratio")
+        .requiredBoolean("active")
+        .name("level").type().enumeration("Level").symbols("LOW", "HIGH").noDefault()
+        .optionalString("phone")
+        .name("address").type(ADDRESS).noDefault()
+        .name("tags").type().array().items().stringType().noDefault()
+        .name("scores").type().map().values().longType().noDefault()
+        .name("history").type().array().items(ADDRESS).noDefault()
+        .endRecord();
+
+    private static JsonNode json(String json) throws IOException {
+        return MAPPER.readTree(json);
+    }
+
+    @Test
+    public void testDecode() throws Exception {
+        JsonNode node = json("{\"name\":\"hang\",\"age\":18,\"id\":12345678901,\"score\":59.9,\"ratio\":0.5,"
+            + "\"active\":true,\"level\":\"HIGH\",\"phone\":\"110\","
+            + "\"address\":{\"city\":\"GuangZhou\",\"zip\":510000},\"tags\":[\"a\",\"b\"],"
+            + "\"scores\":{\"math\":90,\"art\":80},\"history\":[{\"city\":\"Beijing\",\"zip\":null}]}");
+        GenericRecord record = new JsonRecordDecoder(SCHEMA).decode(node, null);
+
+        assertEquals(record.get("name"), "hang");
+        assertEquals(record.get("age"), 18);
+        assertEquals(record.get("id"), 12345678901L);
+        assertEquals(record.get("score"), 59.9);
+        assertEquals(record.get("ratio"), 0.5f);
+        assertEquals(record.get("active"), true);
+        assertEquals(record.get("level"), new GenericData.EnumSymbol(SCHEMA.getField("level").schema(), "HIGH"));
+        assertEquals(record.get("phone"), "110");
+        GenericRecord address = (GenericRecord) record.get("address");
+        assertEquals(address.get("city"), "GuangZhou");
+        assertEquals(address.get("zip"), 510000);
+        assertEquals((List<?>) record.get("tags"), Arrays.asList("a", "b"));
+        assertEquals(((Map<?, ?>) record.get("scores")).get("math"), 90L);
+        GenericRecord history = (GenericRecord) ((List<?>) record.get("history")).get(0);
+        assertEquals(history.get("city"), "Beijing");
+        assertNull(history.get("zip"));
+    }
+
+    @Test
+    public void testSameAsAvroJsonDecoder() throws Exception {
+        Schema schema = SchemaBuilder.record("Flat").fields()
+            .requiredString("name")
+            .requiredInt("age")
+            .requiredLong("id")
+            .requiredDouble("score")
+            .requiredBoolean("active")
+            .endRecord();
+        String json = "{\"name\":\"hang\",\"age\":18,\"id\":1,\"score\":59.9,\"active\":false}";
+
+        GenericDatumReader<GenericRecord> datumReader = new GenericDatumReader<>(schema, schema);
+        GenericRecord expected = datumReader.read(null, DecoderFactory.get().jsonDecoder(schema, json));
+        GenericRecord actual = new JsonRecordDecoder(schema).decode(json(json), null);
+        assertEquals(actual.toString(), expected.toString());
+    }
+
+    @Test
+    public void testNullsAndUnions() throws Exception {
+        Schema schema = SchemaBuilder.record("Nullable").fields()
+            .optionalString("name")
+            .name("value").type().unionOf().nullType().and().longType().and().stringType().endUnion().noDefault()
+            .endRecord();
+        JsonRecordDecoder decoder = new JsonRecordDecoder(schema);
+
+        GenericRecord record = decoder.decode(json("{\"value\":null}"), null);
+        assertNull(record.get("name"));
+        assertNull(record.get("value"));
+
+        assertEquals(decoder.decode(json("{\"value\":10}"), null).get("value"), 10L);
+        assertEquals(decoder.decode(json("{\"value\":\"ten\"}"), null).get("value"), "ten");
+    }
+
+    @Test
+    public void testReuse() throws Exception {
+        JsonRecordDecoder decoder = new JsonRecordDecoder(SCHEMA);
+        String template = "{\"name\":\"%s\",\"age\":1,\"id\":1,\"score\":1,\"ratio\":1,\"active\":true,"
+            + "\"level\":\"LOW\",\"address\":{\"city\":\"%s\"},\"tags\":%s,\"scores\":{},\"history\":[]}";
+
+        GenericRecord first = decoder.decode(json(String.format(template, "a", "x", "[\"1\",\"2\"]")), null);
+        Object address = first.get("address");
+        Object tags = first.get("tags");
+
+        GenericRecord second = decoder.decode(json(String.format(template, "b", "y", "[\"3\"]")), first);
+        assertSame(second, first);
+        assertSame(second.get("address"), address);
+        assertSame(second.get("tags"), tags);
+        assertEquals(second.get("name"), "b");
+        assertEquals(((GenericRecord) second.get("address")).get("city"), "y");
+        assertEquals((List<?>) second.get("tags"), Arrays.asList("3"));
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testTypeMismatch() throws Exception {
+        Schema schema = SchemaBuilder.record("Flat").fields().requiredInt("age").endRecord();
+        new JsonRecordDecoder(schema).decode(json("{\"age\":\"eighteen\"}"), null);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testNullInRequiredField() throws Exception {
+        Schema schema = SchemaBuilder.record("Flat").fields().requiredString("name").endRecord();
+        new JsonRecordDecoder(schema).decode(json("{\"name\":null}"), null);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testMissingRequiredField() throws Exception {
+        Schema schema = SchemaBuilder.record("Flat").fields().requiredString("name").requiredInt("age").endRecord();
+        new JsonRecordDecoder(schema).decode(json("{\"age\":1}"), null);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testNullInRequiredArrayElement() throws Exception {
+        Schema schema = SchemaBuilder.record("Flat").fields()
+            .name("tags").type().array().items().stringType().noDefault()
+            .endRecord();
+        new JsonRecordDecoder(schema).decode(json("{\"tags\":[\"a\",null]}"), null);
+    }
+
+    @Test
+    public void testStringTypeMismatch() throws Exception {
+        Schema schema = SchemaBuilder.record("Flat").fields().requiredString("name").endRecord();
+        JsonRecordDecoder decoder = new JsonRecordDecoder(schema);
+        for (String value : Arrays.asList("1", "true", "{\"a\":1}", "[\"a\"]")) {
+            try {
+                decoder.decode(json("{\"name\":" + value + "}"), null);
+                fail("A JSON " + value + " shouldn't decode into a string");
+            } catch (IOException e) {
+                // expected, like the Avro JSON decoder
+            }
+        }
+    }
+
+    @Test
+    public void testMissingFieldWithDefault() throws Exception {
+        Schema schema = SchemaBuilder.record("Flat").fields()
+            .requiredString("name")
+            .name("level").type().intType().intDefault(3)
+            .endRecord();
+        GenericRecord record = new JsonRecordDecoder(schema).decode(json("{\"name\":\"hang\"}"), null);
+        assertEquals(record.get("level"), 3);
+    }
+
+    @Test
+    public void testRecursiveSchema() throws Exception {
+        Schema schema = new Schema.Parser().parse("{\"type\":\"record\",\"name\":\"Node\",\"fields\":["
+            + "{\"name\":\"value\",\"type\":\"int\"},"
+            + "{\"name\":\"next\",\"type\":[\"null\",\"Node\"]}]}");
+        GenericRecord record = new JsonRecordDecoder(schema).decode(
+            json("{\"value\":1,\"next\":{\"value\":2,\"next\":null}}"), null);
+        assertEquals(((GenericRecord) record.get("next")).get("value"), 2);
+        assertNull(((GenericRecord) record.get("next")).get("next"));
+    }
+}
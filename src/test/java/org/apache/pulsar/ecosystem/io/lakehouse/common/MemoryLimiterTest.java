@@ -0,0 +1,95 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.lakehouse.common;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.testng.annotations.Test;
+
+/**
+ * Test for {@link MemoryLimiter}.
+ */
+public class MemoryLimiterTest {
+
+    @Test
+    public void testAcquireAndRelease() {
+        MemoryLimiter limiter = new MemoryLimiter(100);
+        assertTrue(limiter.tryAcquire(60));
+        assertTrue(limiter.tryAcquire(40));
+        assertFalse(limiter.tryAcquire(1));
+        assertEquals(limiter.getUsedBytes(), 100);
+
+        limiter.release(50);
+        assertEquals(limiter.getUsedBytes(), 50);
+        assertTrue(limiter.tryAcquire(50));
+        limiter.release(100);
+        assertEquals(limiter.getUsedBytes(), 0);
+    }
+
+    @Test
+    public void testOversizedElementAdmittedWhenEmpty() {
+        MemoryLimiter limiter = new MemoryLimiter(100);
+        assertTrue(limiter.tryAcquire(1000));
+        assertFalse(limiter.tryAcquire(1));
+        limiter.release(1000);
+        assertTrue(limiter.tryAcquire(1));
+    }
+
+    @Test
+    public void testSetMaxBytes() {
+        MemoryLimiter limiter = new MemoryLimiter(100);
+        assertTrue(limiter.tryAcquire(80));
+        limiter.setMaxBytes(50);
+        assertFalse(limiter.tryAcquire(1));
+        limiter.release(80);
+        assertTrue(limiter.tryAcquire(50));
+        assertFalse(limiter.tryAcquire(1));
+        limiter.setMaxBytes(200);
+        assertTrue(limiter.tryAcquire(150));
+        assertEquals(limiter.getMaxBytes(), 200);
+    }
+
+    @Test(timeOut = 10000)
+    public void testAcquireWaitsForRelease() throws Exception {
+        MemoryLimiter limiter = new MemoryLimiter(100);
+        assertTrue(limiter.tryAcquire(100));
+        assertFalse(limiter.tryAcquire(10, 10, TimeUnit.MILLISECONDS));
+
+        CompletableFuture<Boolean> acquired = CompletableFuture.supplyAsync(() -> {
+            try {
+                return limiter.tryAcquire(10, 10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Thread.sleep(100);
+        assertFalse(acquired.isDone());
+        limiter.release(100);
+        assertTrue(acquired.get());
+        assertEquals(limiter.getUsedBytes(), 10);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidMaxBytes() {
+        new MemoryLimiter(0);
+    }
+}
@@ -0,0 +1,173 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.lakehouse.common;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.DescriptorProtos;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.DynamicMessage;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Test for {@link ProtobufRecordConverter}.
+ */
+public class ProtobufRecordConverterTest {
+    private Descriptors.Descriptor order;
+    private Descriptors.Descriptor item;
+    private Descriptors.Descriptor attrsEntry;
+    private Descriptors.EnumDescriptor status;
+
+    @BeforeClass
+    public void setup() throws Descriptors.DescriptorValidationException {
+        DescriptorProtos.DescriptorProto itemProto = DescriptorProtos.DescriptorProto.newBuilder()
+            .setName("Item")
+            .addField(field("sku", 1, DescriptorProtos.FieldDescriptorProto.Type.TYPE_STRING))
+            .addField(field("price", 2, DescriptorProtos.FieldDescriptorProto.Type.TYPE_DOUBLE))
+            .build();
+        DescriptorProtos.DescriptorProto orderProto = DescriptorProtos.DescriptorProto.newBuilder()
+            .setName("Order")
+            .addField(field("id", 1, DescriptorProtos.FieldDescriptorProto.Type.TYPE_INT64))
+            .addField(field("name", 2, DescriptorProtos.FieldDescriptorProto.Type.TYPE_STRING))
+            .addField(field("tags", 3, DescriptorProtos.FieldDescriptorProto.Type.TYPE_STRING)
+                .setLabel(DescriptorProtos.FieldDescriptorProto.Label.LABEL_REPEATED))
+            .addField(field("attrs", 4, DescriptorProtos.FieldDescriptorProto.Type.TYPE_MESSAGE)
+                .setTypeName("AttrsEntry")
+                .setLabel(DescriptorProtos.FieldDescriptorProto.Label.LABEL_REPEATED))
+            .addField(field("payload", 5, DescriptorProtos.FieldDescriptorProto.Type.TYPE_BYTES))
+            .addField(field("status", 6, DescriptorProtos.FieldDescriptorProto.Type.TYPE_ENUM)
+                .setTypeName("Status"))
+            .addField(field("item", 7, DescriptorProtos.FieldDescriptorProto.Type.TYPE_MESSAGE)
+                .setTypeName("Item"))
+            .addField(field("parent", 8, DescriptorProtos.FieldDescriptorProto.Type.TYPE_MESSAGE)
+                .setTypeName("Order"))
+            .addNestedType(DescriptorProtos.DescriptorProto.newBuilder()
+                .setName("AttrsEntry")
+                .addField(field("key", 1, DescriptorProtos.FieldDescriptorProto.Type.TYPE_STRING))
+                .addField(field("value", 2, DescriptorProtos.FieldDescriptorProto.Type.TYPE_INT32))
+                .setOptions(DescriptorProtos.MessageOptions.newBuilder().setMapEntry(true)))
+            .build();
+        DescriptorProtos.FileDescriptorProto fileProto = DescriptorProtos.FileDescriptorProto.newBuilder()
+            .setName("order.proto")
+            .setPackage("test")
+            .setSyntax("proto3")
+            .addEnumType(DescriptorProtos.EnumDescriptorProto.newBuilder()
+                .setName("Status")
+                .addValue(DescriptorProtos.EnumValueDescriptorProto.newBuilder().setName("NEW").setNumber(0))
+                .addValue(DescriptorProtos.EnumValueDescriptorProto.newBuilder().setName("PAID").setNumber(1)))
+            .addMessageType(itemProto)
+            .addMessageType(orderProto)
+            .build();
+        Descriptors.FileDescriptor file =
+            Descriptors.FileDescriptor.buildFrom(fileProto, new Descriptors.FileDescriptor[0]);
+        order = file.findMessageTypeByName("Order");
+        item = file.findMessageTypeByName("Item");
+        attrsEntry = order.findNestedTypeByName("AttrsEntry");
+        status = file.findEnumTypeByName("Status");
+    }
+
+    private static DescriptorProtos.FieldDescriptorProto.Builder field(
+        String name, int number, DescriptorProtos.FieldDescriptorProto.Type type) {
+        return DescriptorProtos.FieldDescriptorProto.newBuilder()
+            .setName(name)
+            .setNumber(number)
+            .setType(type)
+            .setLabel(DescriptorProtos.FieldDescriptorProto.Label.LABEL_OPTIONAL);
+    }
+
+    @Test
+    public void testSchema() {
+        Schema schema = new ProtobufRecordConverter(order).getSchema();
+        assertEquals(schema.getFullName(), "test.Order");
+        assertEquals(schema.getField("id").schema().getType(), Schema.Type.LONG);
+        assertEquals(schema.getField("name").schema().getType(), Schema.Type.STRING);
+        assertEquals(schema.getField("tags").schema().getElementType().getType(), Schema.Type.STRING);
+        assertEquals(schema.getField("attrs").schema().getValueType().getType(), Schema.Type.INT);
+        assertEquals(schema.getField("payload").schema().getType(), Schema.Type.BYTES);
+        assertEquals(schema.getField("status").schema().getType(), Schema.Type.STRING);
+        // message fields have presence, so they are nullable
+        assertEquals(schema.getField("item").schema().getType(), Schema.Type.UNION);
+        assertEquals(schema.getField("item").schema().getTypes().get(1).getFullName(), "test.Item");
+        assertSame(schema.getField("parent").schema().getTypes().get(1), schema);
+    }
+
+    @Test
+    public void testConvert() {
+        ProtobufRecordConverter converter = new ProtobufRecordConverter(order);
+        DynamicMessage parent = DynamicMessage.newBuilder(order)
+            .setField(order.findFieldByName("id"), 1L)
+            .build();
+        DynamicMessage message = DynamicMessage.newBuilder(order)
+            .setField(order.findFieldByName("id"), 2L)
+            .setField(order.findFieldByName("name"), "second")
+            .addRepeatedField(order.findFieldByName("tags"), "a")
+            .addRepeatedField(order.findFieldByName("tags"), "b")
+            .addRepeatedField(order.findFieldByName("attrs"), DynamicMessage.newBuilder(attrsEntry)
+                .setField(attrsEntry.findFieldByName("key"), "k")
+                .setField(attrsEntry.findFieldByName("value"), 7)
+                .build())
+            .setField(order.findFieldByName("payload"), ByteString.copyFrom("data", StandardCharsets.UTF_8))
+            .setField(order.findFieldByName("status"), status.findValueByName("PAID"))
+            .setField(order.findFieldByName("item"), DynamicMessage.newBuilder(item)
+                .setField(item.findFieldByName("sku"), "sku-1")
+                .setField(item.findFieldByName("price"), 9.5)
+                .build())
+            .setField(order.findFieldByName("parent"), parent)
+            .build();
+
+        GenericRecord record = converter.convert(message, null);
+        assertEquals(record.get("id"), 2L);
+        assertEquals(record.get("name"), "second");
+        assertEquals((List<?>) record.get("tags"), Arrays.asList("a", "b"));
+        assertEquals(((Map<?, ?>) record.get("attrs")).get("k"), 7);
+        assertEquals(StandardCharsets.UTF_8.decode((ByteBuffer) record.get("payload")).toString(), "data");
+        assertEquals(record.get("status"), "PAID");
+        assertEquals(((GenericRecord) record.get("item")).get("sku"), "sku-1");
+        assertEquals(((GenericRecord) record.get("item")).get("price"), 9.5);
+        GenericRecord parentRecord = (GenericRecord) record.get("parent");
+        assertEquals(parentRecord.get("id"), 1L);
+        assertNull(parentRecord.get("item"));
+        assertNull(parentRecord.get("parent"));
+        // proto3 scalars without presence convert to their defaults
+        assertEquals(parentRecord.get("name"), "");
+        assertEquals(parentRecord.get("status"), "NEW");
+
+        // the record is reused for the next message
+        GenericRecord reused = converter.convert(parent, record);
+        assertSame(reused, record);
+        assertEquals(reused.get("id"), 1L);
+        assertEquals(((List<?>) reused.get("tags")).size(), 0);
+        assertNull(reused.get("item"));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUnexpectedMessage() {
+        new ProtobufRecordConverter(order).convert(DynamicMessage.getDefaultInstance(item), null);
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.lakehouse.common;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Test for {@link SpscRingBuffer}.
+ */
+public class SpscRingBufferTest {
+
+    @DataProvider(name = "waitStrategies")
+    public Object[][] waitStrategies() {
+        return new Object[][] {
+            {SpscRingBuffer.WaitStrategy.BLOCKING},
+            {SpscRingBuffer.WaitStrategy.BUSY_SPIN},
+            {SpscRingBuffer.WaitStrategy.PARK}
+        };
+    }
+
+    @Test
+    public void testCapacity() {
+        assertEquals(new SpscRingBuffer<Integer>(1, SpscRingBuffer.WaitStrategy.BLOCKING).capacity(), 1);
+        assertEquals(new SpscRingBuffer<Integer>(5, SpscRingBuffer.WaitStrategy.BLOCKING).capacity(), 5);
+        assertEquals(new SpscRingBuffer<Integer>(16, SpscRingBuffer.WaitStrategy.BLOCKING).capacity(), 16);
+    }
+
+    @Test
+    public void testCapacityNotRoundedUp() {
+        SpscRingBuffer<Integer> buffer = new SpscRingBuffer<>(5, SpscRingBuffer.WaitStrategy.BLOCKING);
+        Integer[] out = new Integer[8];
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 5; i++) {
+                assertTrue(buffer.offer(i));
+            }
+            assertFalse(buffer.offer(5));
+            assertEquals(buffer.size(), 5);
+            assertEquals(buffer.drainTo(out), 5);
+        }
+        buffer.setLimit(100);
+        assertEquals(buffer.getLimit(), 5);
+    }
+
+    @Test
+    public void testSetLimit() {
+        SpscRingBuffer<Integer> buffer = new SpscRingBuffer<>(8, SpscRingBuffer.WaitStrategy.BLOCKING);
+        buffer.setLimit(2);
+        assertTrue(buffer.offer(1));
+        assertTrue(buffer.offer(2));
+        assertFalse(buffer.offer(3));
+
+        buffer.setLimit(100);
+        assertEquals(buffer.getLimit(), 8);
+        for (int i = 3; i <= 8; i++) {
+            assertTrue(buffer.offer(i));
+        }
+        assertFalse(buffer.offer(9));
+        buffer.setLimit(0);
+        assertEquals(buffer.getLimit(), 1);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidCapacity() {
+        new SpscRingBuffer<Integer>(0, SpscRingBuffer.WaitStrategy.BLOCKING);
+    }
+
+    @Test
+    public void testWaitStrategyFromString() {
+        assertEquals(SpscRingBuffer.WaitStrategy.fromString("busy_spin"), SpscRingBuffer.WaitStrategy.BUSY_SPIN);
+        assertEquals(SpscRingBuffer.WaitStrategy.fromString("Park"), SpscRingBuffer.WaitStrategy.PARK);
+    }
+
+    @Test(dataProvider = "waitStrategies")
+    public void testOfferAndDrain(SpscRingBuffer.WaitStrategy waitStrategy) throws Exception {
+        SpscRingBuffer<Integer> buffer = new SpscRingBuffer<>(4, waitStrategy);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(i));
+        }
+        assertFalse(buffer.offer(4));
+        assertFalse(buffer.offer(4, 10, TimeUnit.MILLISECONDS));
+        assertEquals(buffer.size(), 4);
+
+        Integer[] out = new Integer[3];
+        assertEquals(buffer.drainTo(out), 3);
+        assertEquals(out, new Integer[] {0, 1, 2});
+        assertEquals(buffer.size(), 1);
+
+        assertTrue(buffer.offer(4));
+        assertEquals(buffer.drainTo(out), 2);
+        assertEquals(out[0].intValue(), 3);
+        assertEquals(out[1].intValue(), 4);
+        assertTrue(buffer.isEmpty());
+
+        assertEquals(buffer.drainTo(out, 10, TimeUnit.MILLISECONDS), 0);
+        assertTrue(buffer.getDrainWaitNanos() > 0);
+        assertTrue(buffer.getOfferWaitNanos() > 0);
+    }
+
+    @Test(dataProvider = "waitStrategies", timeOut = 30000)
+    public void testProducerConsumer(SpscRingBuffer.WaitStrategy waitStrategy) throws Exception {
+        final int total = 100000;
+        SpscRingBuffer<Integer> buffer = new SpscRingBuffer<>(64, waitStrategy);
+
+        CompletableFuture<Void> producer = CompletableFuture.runAsync(() -> {
+            try {
+                for (int i = 0; i < total; i++) {
+                    while (!buffer.offer(i, 100, TimeUnit.MILLISECONDS)) {
+                        // retry until the consumer makes room
+                    }
+                }
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        Integer[] out = new Integer[16];
+        int expected = 0;
+        while (expected < total) {
+            int n = buffer.drainTo(out, 100, TimeUnit.MILLISECONDS);
+            for (int i = 0; i < n; i++) {
+                assertEquals(out[i].intValue(), expected++);
+            }
+        }
+        producer.get();
+        assertTrue(buffer.isEmpty());
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.lakehouse.sink;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.apache.pulsar.ecosystem.io.lakehouse.SinkConnectorConfig;
+import org.testng.annotations.Test;
+
+public class AdaptiveCommitControllerTest {
+    private static final long MB = SinkConnectorConfig.MB;
+
+    private static SinkConnectorConfig newConfig() {
+        SinkConnectorConfig config = new SinkConnectorConfig.DefaultSinkConnectorConfig();
+        config.setMaxCommitInterval(120);
+        config.setMinCommitInterval(10);
+        config.setAdaptiveCommitFreshnessSlo(60);
+        config.setAdaptiveCommitTargetFileSize(128 * MB);
+        config.setMaxRecordsPerCommit(1_000_000);
+        return config;
+    }
+
+    private static long dispatch(AdaptiveCommitController controller, long now, long records, long recordBytes) {
+        for (long i = 0; i < records; i++) {
+            controller.onDispatched(recordBytes);
+        }
+        return now + AdaptiveCommitController.EVALUATE_INTERVAL_MS;
+    }
+
+    private static PreparedCommit files(long count, long bytes) {
+        return new PreparedCommit() {
+            @Override
+            public boolean isEmpty() {
+                return false;
+            }
+
+            @Override
+            public long getFileCount() {
+                return count;
+            }
+
+            @Override
+            public long getFileBytes() {
+                return bytes;
+            }
+        };
+    }
+
+    @Test
+    public void testLowRateCommitsWithinFreshness() {
+        AdaptiveCommitController controller = new AdaptiveCommitController(newConfig(), 1, 0);
+        assertEquals(controller.getIntervalMillis(), TimeUnit.SECONDS.toMillis(120));
+        assertFalse(controller.isDue(AdaptiveCommitController.EVALUATE_INTERVAL_MS - 1));
+
+        // 1MB/s takes 128s to fill a file, so the freshness SLO decides
+        long now = dispatch(controller, 0, 10, MB);
+        assertTrue(controller.isDue(now));
+        assertTrue(controller.evaluate(now, 0));
+        assertEquals(controller.getIntervalMillis(), TimeUnit.SECONDS.toMillis(60));
+        assertEquals(controller.getRecordsPerCommit(), 128);
+        assertEquals(controller.getMinIntervalMillis(), TimeUnit.SECONDS.toMillis(10));
+
+        // the same load doesn't change the triggers
+        now = dispatch(controller, now, 10, MB);
+        assertFalse(controller.evaluate(now, 0));
+    }
+
+    @Test
+    public void testHighRateTargetsFileSize() {
+        AdaptiveCommitController controller = new AdaptiveCommitController(newConfig(), 2, 0);
+
+        // 20MB/s fills 2 files of 128MB in 12.8s
+        long now = dispatch(controller, 0, 204_800, 1024);
+        assertTrue(controller.evaluate(now, 0));
+        assertEquals(controller.getIntervalMillis(), 12_800);
+        assertEquals(controller.getRecordsPerCommit(), 262_144);
+
+        // about 200MB/s is bounded by the min commit interval
+        controller = new AdaptiveCommitController(newConfig(), 1, 0);
+        now = dispatch(controller, 0, 2_000_000, 1024);
+        assertTrue(controller.evaluate(now, 0));
+        assertEquals(controller.getIntervalMillis(), TimeUnit.SECONDS.toMillis(10));
+        assertEquals(controller.getRecordsPerCommit(), 131_072);
+    }
+
+    @Test
+    public void testCommittedFileSizesCorrectTheEstimate() {
+        SinkConnectorConfig config = newConfig();
+        config.setAdaptiveCommitFreshnessSlo(120);
+        AdaptiveCommitController controller = new AdaptiveCommitController(config, 1, 0);
+
+        // 8MB/s fills a file in 16s
+        long now = dispatch(controller, 0, 80, MB);
+        assertTrue(controller.evaluate(now, 0));
+        assertEquals(controller.getIntervalMillis(), 16_000);
+        assertEquals(controller.getRecordsPerCommit(), 128);
+
+        // the committed files are 4 times smaller than the dispatched records, so commits move 4 times further apart
+        for (int i = 0; i < 20; i++) {
+            controller.onCommitted(0, Collections.singletonList(files(1, 20 * MB)));
+            now = dispatch(controller, now, 80, MB);
+            controller.evaluate(now, 0);
+        }
+        assertTrue(controller.getIntervalMillis() > 60_000 && controller.getIntervalMillis() <= 64_000,
+            "interval " + controller.getIntervalMillis());
+        assertTrue(controller.getRecordsPerCommit() > 500 && controller.getRecordsPerCommit() <= 512,
+            "records " + controller.getRecordsPerCommit());
+    }
+
+    @Test
+    public void testSlowCommitsBackOff() {
+        SinkConnectorConfig config = newConfig();
+        config.setMaxInFlightCommits(2);
+        AdaptiveCommitController controller = new AdaptiveCommitController(config, 1, 0);
+        controller.onCommitted(TimeUnit.SECONDS.toNanos(30), Collections.singletonList(files(0, 0)));
+
+        // the committer sustains a commit every 15s, and the freshness SLO leaves 30s
+        long now = dispatch(controller, 0, 2_000_000, 1024);
+        controller.evaluate(now, 0.1);
+        assertEquals(controller.getMinIntervalMillis(), TimeUnit.SECONDS.toMillis(15));
+        assertEquals(controller.getIntervalMillis(), TimeUnit.SECONDS.toMillis(15));
+
+        // with full queues, commits wait for the previous one
+        now = dispatch(controller, now, 2_000_000, 1024);
+        assertTrue(controller.evaluate(now, 0.9));
+        assertEquals(controller.getMinIntervalMillis(), TimeUnit.SECONDS.toMillis(30));
+        assertEquals(controller.getIntervalMillis(), TimeUnit.SECONDS.toMillis(30));
+    }
+}
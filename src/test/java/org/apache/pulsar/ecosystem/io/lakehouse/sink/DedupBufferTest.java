@@ -0,0 +1,194 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.lakehouse.sink;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class DedupBufferTest {
+    private static final Schema SCHEMA = SchemaBuilder.record("Change").fields()
+        .requiredString("id")
+        .requiredString("region")
+        .requiredLong("seq")
+        .optionalString("value")
+        .endRecord();
+
+    private File spillDir;
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        spillDir = Files.createTempDirectory("dedup").toFile();
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void cleanup() throws IOException {
+        try (Stream<Path> paths = Files.walk(spillDir.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    private static GenericRecord change(GenericRecord reuse, String id, long seq, String value) {
+        GenericRecord record = reuse == null ? new GenericData.Record(SCHEMA) : reuse;
+        record.put("id", id);
+        record.put("region", "eu");
+        record.put("seq", seq);
+        record.put("value", value);
+        return record;
+    }
+
+    /**
+     * Collects the written records by id.
+     */
+    private static class CollectingWriter implements LakehouseWriter {
+        private final Map<String, GenericRecord> records = new HashMap<>();
+        private int written;
+
+        @Override
+        public boolean updateSchema(Schema schema) {
+            return true;
+        }
+
+        @Override
+        public PreparedCommit prepareSchemaUpdate(Schema schema) {
+            return () -> true;
+        }
+
+        @Override
+        public void writeAvroRecord(GenericRecord record) {
+            written++;
+            // the records are reused by the buffer
+            records.put(record.get("id").toString(), GenericData.get().deepCopy(SCHEMA, record));
+        }
+
+        @Override
+        public boolean flush() {
+            return true;
+        }
+
+        @Override
+        public PreparedCommit prepareCommit() {
+            return () -> true;
+        }
+
+        @Override
+        public boolean commit(List<PreparedCommit> prepared) {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        String valueOf(String id) {
+            GenericRecord record = records.get(id);
+            return record == null || record.get("value") == null ? null : record.get("value").toString();
+        }
+    }
+
+    @Test
+    public void testKeepLastByArrival() throws IOException {
+        DedupBuffer buffer = new DedupBuffer(Collections.singletonList("id"), null, 1024 * 1024,
+            spillDir.getPath());
+        GenericRecord reuse = null;
+        for (int i = 0; i < 10; i++) {
+            reuse = change(reuse, "a", 10 - i, "a" + i);
+            buffer.add(reuse);
+            reuse = change(reuse, "b", i, "b" + i);
+            buffer.add(reuse);
+        }
+        CollectingWriter writer = new CollectingWriter();
+        assertEquals(buffer.writeTo(writer), 18);
+        assertEquals(writer.written, 2);
+        assertEquals(writer.valueOf("a"), "a9");
+        assertEquals(writer.valueOf("b"), "b9");
+        assertTrue(buffer.isEmpty());
+
+        // the next batch starts empty
+        buffer.add(change(null, "a", 0, "next"));
+        writer = new CollectingWriter();
+        assertEquals(buffer.writeTo(writer), 0);
+        assertEquals(writer.valueOf("a"), "next");
+        buffer.close();
+    }
+
+    @Test
+    public void testKeepGreatestOrdering() throws IOException {
+        DedupBuffer buffer = new DedupBuffer(Arrays.asList("id", "region"), "seq", 1024 * 1024,
+            spillDir.getPath());
+        buffer.add(change(null, "a", 5, "five"));
+        buffer.add(change(null, "a", 3, "three"));
+        buffer.add(change(null, "a", 7, "seven"));
+        buffer.add(change(null, "a", 6, "six"));
+        // same ordering value, the later record wins
+        buffer.add(change(null, "a", 7, "seven again"));
+
+        CollectingWriter writer = new CollectingWriter();
+        assertEquals(buffer.writeTo(writer), 4);
+        assertEquals(writer.valueOf("a"), "seven again");
+        buffer.close();
+    }
+
+    @Test
+    public void testSpillToDisk() throws IOException {
+        // a tiny memory budget spills nearly every record
+        DedupBuffer buffer = new DedupBuffer(Collections.singletonList("id"), "seq", 1, spillDir.getPath());
+        int keys = 500;
+        GenericRecord reuse = null;
+        for (int round = 0; round < 4; round++) {
+            for (int i = 0; i < keys; i++) {
+                reuse = change(reuse, "k" + i, round, "v" + round);
+                buffer.add(reuse);
+            }
+        }
+        CollectingWriter writer = new CollectingWriter();
+        assertEquals(buffer.writeTo(writer), 3 * keys);
+        assertEquals(writer.written, keys);
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < keys; i++) {
+            values.add(writer.valueOf("k" + i));
+        }
+        assertEquals(values, Collections.nCopies(keys, "v3"));
+        buffer.close();
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testMissingKeyColumn() throws IOException {
+        DedupBuffer buffer = new DedupBuffer(Collections.singletonList("missing"), null, 1024, spillDir.getPath());
+        buffer.add(change(null, "a", 0, null));
+    }
+}
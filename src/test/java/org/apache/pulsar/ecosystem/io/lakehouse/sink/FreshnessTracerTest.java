@@ -0,0 +1,171 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.lakehouse.sink;
+
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_EVENT_TO_QUERYABLE_P50;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_PUBLISH_TO_QUERYABLE_MAX;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_PUBLISH_TO_QUERYABLE_P50;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_PUBLISH_TO_QUERYABLE_P99;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_TRACE_COMMIT_TIME;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_TRACE_COMMIT_WAIT_TIME;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_TRACE_CONVERT_TIME;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_TRACE_QUEUE_WAIT_TIME;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_TRACE_WRITE_TIME;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.schema.GenericObject;
+import org.apache.pulsar.client.impl.MessageIdImpl;
+import org.apache.pulsar.functions.api.Record;
+import org.apache.pulsar.io.core.SinkContext;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class FreshnessTracerTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private Map<String, Double> recorded;
+    private SinkMetrics metrics;
+
+    @BeforeMethod
+    public void setup() {
+        recorded = new HashMap<>();
+        SinkContext sinkContext = mock(SinkContext.class);
+        doAnswer(invocation -> {
+            recorded.put(invocation.getArgument(0), invocation.getArgument(1));
+            return null;
+        }).when(sinkContext).recordMetric(anyString(), anyDouble());
+        metrics = new SinkMetrics(sinkContext, "delta");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static PulsarSinkRecord record(long publishTime, Long eventTime) {
+        Message<GenericObject> message = mock(Message.class);
+        when(message.getMessageId()).thenReturn(new MessageIdImpl(1, 2, 0));
+        when(message.getPublishTime()).thenReturn(publishTime);
+        Record<GenericObject> record = mock(Record.class);
+        when(record.getMessage()).thenReturn(Optional.of(message));
+        when(record.getTopicName()).thenReturn(Optional.of("persistent://public/default/orders"));
+        when(record.getEventTime()).thenReturn(Optional.ofNullable(eventTime));
+        return new PulsarSinkRecord(record);
+    }
+
+    /**
+     * A trace received at 0, which spent 2 ms in the queue, 1 ms converting and 3 ms writing.
+     */
+    private static FreshnessTrace trace(long publishTime, Long eventTime) {
+        FreshnessTrace trace = new FreshnessTrace(record(publishTime, eventTime), 0);
+        trace.onConverted(2 * MS, 3 * MS, 0);
+        trace.onWritten(6 * MS);
+        return trace;
+    }
+
+    @Test
+    public void testSampling() {
+        FreshnessTracer tracer = new FreshnessTracer(3, false, metrics);
+        List<PulsarSinkRecord> records = new ArrayList<>();
+        for (int i = 0; i < 9; i++) {
+            PulsarSinkRecord record = record(1000, null);
+            tracer.onReceived(record);
+            records.add(record);
+        }
+        for (int i = 0; i < 9; i++) {
+            if (i % 3 == 2) {
+                assertNotNull(records.get(i).getTrace());
+                assertEquals(records.get(i).getTrace().getPublishTime(), 1000);
+                assertEquals(records.get(i).getTrace().getEventTime(), 0);
+                tracer.onDispatched(records.get(i).getTrace());
+            } else {
+                assertNull(records.get(i).getTrace());
+            }
+        }
+        assertEquals(tracer.takeDispatched().size(), 3);
+        assertTrue(tracer.takeDispatched().isEmpty());
+    }
+
+    @Test
+    public void testCommitted() {
+        FreshnessTracer tracer = new FreshnessTracer(1, true, metrics);
+        long now = System.currentTimeMillis();
+        List<FreshnessTrace> traces = new ArrayList<>();
+        for (int i = 1; i <= 100; i++) {
+            traces.add(trace(now - i * 100L, i == 1 ? now - 5000 : null));
+        }
+        // committed 4 ms after the records were written, in 5 ms
+        tracer.onCommitted(traces, 10 * MS, 15 * MS);
+
+        assertTrue(recorded.get(SINK_PUBLISH_TO_QUERYABLE_P50) >= 5000);
+        assertTrue(recorded.get(SINK_PUBLISH_TO_QUERYABLE_P50) < 5100);
+        assertTrue(recorded.get(SINK_PUBLISH_TO_QUERYABLE_P99) >= 9900);
+        assertTrue(recorded.get(SINK_PUBLISH_TO_QUERYABLE_MAX) >= 10000);
+        assertTrue(recorded.get(SINK_PUBLISH_TO_QUERYABLE_MAX) < 10100);
+        assertTrue(recorded.get(SINK_EVENT_TO_QUERYABLE_P50) >= 5000);
+        assertEquals(recorded.get(SINK_TRACE_QUEUE_WAIT_TIME), 2.0, 0.001);
+        assertEquals(recorded.get(SINK_TRACE_CONVERT_TIME), 1.0, 0.001);
+        assertEquals(recorded.get(SINK_TRACE_WRITE_TIME), 3.0, 0.001);
+        assertEquals(recorded.get(SINK_TRACE_COMMIT_WAIT_TIME), 4.0, 0.001);
+        assertEquals(recorded.get(SINK_TRACE_COMMIT_TIME), 5.0, 0.001);
+    }
+
+    @Test
+    public void testRetainedAfterFailedCommit() {
+        FreshnessTracer tracer = new FreshnessTracer(1, false, metrics);
+        long now = System.currentTimeMillis();
+        tracer.onCommitFailed(Collections.singletonList(trace(now - 60000, null)));
+        assertTrue(recorded.isEmpty());
+
+        // the retried records are reported with the next successful commit
+        tracer.onCommitted(Collections.singletonList(trace(now - 1000, null)), 10 * MS, 15 * MS);
+        assertTrue(recorded.get(SINK_PUBLISH_TO_QUERYABLE_MAX) >= 60000);
+        assertTrue(recorded.get(SINK_PUBLISH_TO_QUERYABLE_P50) < 2000);
+    }
+
+    @Test
+    public void testNotWrittenTrace() {
+        FreshnessTracer tracer = new FreshnessTracer(1, false, metrics);
+        FreshnessTrace trace = new FreshnessTrace(record(System.currentTimeMillis(), null), 0);
+        tracer.onCommitted(Arrays.asList(trace), 10 * MS, 15 * MS);
+        assertFalse(recorded.containsKey(SINK_PUBLISH_TO_QUERYABLE_P50));
+    }
+
+    @Test
+    public void testPercentile() {
+        long[] values = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 0, 0};
+        assertEquals(FreshnessTracer.percentile(values, 10, 0.5), 5);
+        assertEquals(FreshnessTracer.percentile(values, 10, 0.99), 10);
+        assertEquals(FreshnessTracer.percentile(values, 10, 0.0), 1);
+        assertEquals(FreshnessTracer.percentile(values, 1, 0.99), 1);
+    }
+}
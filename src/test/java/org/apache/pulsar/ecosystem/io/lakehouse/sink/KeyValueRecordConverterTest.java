@@ -0,0 +1,141 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.lakehouse.sink;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.nio.charset.StandardCharsets;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.pulsar.common.schema.KeyValue;
+import org.apache.pulsar.common.schema.SchemaInfo;
+import org.apache.pulsar.common.schema.SchemaType;
+import org.testng.annotations.Test;
+
+public class KeyValueRecordConverterTest {
+    private static final Schema KEY_SCHEMA = SchemaBuilder.record("Key").fields()
+        .requiredString("id")
+        .optionalInt("shard")
+        .endRecord();
+    private static final Schema VALUE_SCHEMA = SchemaBuilder.record("Value").fields()
+        .optionalString("name")
+        .requiredLong("amount")
+        .endRecord();
+
+    private static SchemaInfo schemaInfo(SchemaType type, Schema schema) {
+        return SchemaInfo.builder()
+            .name("")
+            .type(type)
+            .schema(schema == null ? new byte[0] : schema.toString().getBytes(StandardCharsets.UTF_8))
+            .build();
+    }
+
+    @Test
+    public void testFlattenAvroKeyAndValue() throws Exception {
+        KeyValueRecordConverter converter = new KeyValueRecordConverter(schemaInfo(SchemaType.AVRO, KEY_SCHEMA),
+            schemaInfo(SchemaType.AVRO, VALUE_SCHEMA), "key_", "");
+        Schema schema = converter.getSchema();
+        assertEquals(schema.getFields().size(), 4);
+        assertEquals(schema.getFields().get(0).name(), "key_id");
+        assertEquals(schema.getFields().get(1).name(), "key_shard");
+        assertEquals(schema.getFields().get(2).name(), "name");
+        assertEquals(schema.getFields().get(3).name(), "amount");
+        for (Schema.Field field : schema.getFields()) {
+            assertTrue(field.schema().isNullable(), field.name());
+        }
+
+        GenericRecord key = new GenericData.Record(KEY_SCHEMA);
+        key.put("id", "k1");
+        key.put("shard", 3);
+        GenericRecord value = new GenericData.Record(VALUE_SCHEMA);
+        value.put("name", "n1");
+        value.put("amount", 10L);
+        GenericRecord row = converter.convert(new KeyValue<>(key, value), null);
+        assertEquals(row.get("key_id"), "k1");
+        assertEquals(row.get("key_shard"), 3);
+        assertEquals(row.get("name"), "n1");
+        assertEquals(row.get("amount"), 10L);
+
+        // the row is reused, and a missing key clears the key columns
+        GenericRecord next = converter.convert(new KeyValue<>(null, value), row);
+        assertSame(next, row);
+        assertNull(next.get("key_id"));
+        assertNull(next.get("key_shard"));
+        assertEquals(next.get("amount"), 10L);
+    }
+
+    @Test
+    public void testFlattenByFieldNames() throws Exception {
+        KeyValueRecordConverter converter = new KeyValueRecordConverter(schemaInfo(SchemaType.AVRO, KEY_SCHEMA),
+            schemaInfo(SchemaType.AVRO, VALUE_SCHEMA), "key_", "value_");
+        Schema reordered = SchemaBuilder.record("Value").fields()
+            .requiredLong("amount")
+            .optionalString("name")
+            .endRecord();
+        GenericRecord value = new GenericData.Record(reordered);
+        value.put("amount", 5L);
+        value.put("name", "n2");
+        GenericRecord row = converter.convert(new KeyValue<>(null, value), null);
+        assertEquals(row.get("value_name"), "n2");
+        assertEquals(row.get("value_amount"), 5L);
+    }
+
+    @Test
+    public void testFlattenJsonValueAndPrimitiveKey() throws Exception {
+        KeyValueRecordConverter converter = new KeyValueRecordConverter(schemaInfo(SchemaType.STRING, null),
+            schemaInfo(SchemaType.JSON, VALUE_SCHEMA), "key_", "");
+        Schema schema = converter.getSchema();
+        assertEquals(schema.getFields().size(), 3);
+        assertEquals(schema.getFields().get(0).name(), "key");
+
+        GenericRecord row = converter.convert(new KeyValue<>("k1",
+            new ObjectMapper().readTree("{\"name\": \"n1\", \"amount\": 7}")), null);
+        assertEquals(row.get("key"), "k1");
+        assertEquals(row.get("name").toString(), "n1");
+        assertEquals(row.get("amount"), 7L);
+    }
+
+    @Test
+    public void testPrimitiveKeyAndValue() throws Exception {
+        KeyValueRecordConverter converter = new KeyValueRecordConverter(schemaInfo(SchemaType.STRING, null),
+            schemaInfo(SchemaType.INT64, null), "", "");
+        assertEquals(converter.getSchema().getFields().get(0).name(), "key");
+        assertEquals(converter.getSchema().getFields().get(1).name(), "value");
+        GenericRecord row = converter.convert(new KeyValue<>("k1", 42L), null);
+        assertEquals(row.get(0), "k1");
+        assertEquals(row.get(1), 42L);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testCollidingColumns() {
+        new KeyValueRecordConverter(schemaInfo(SchemaType.AVRO, VALUE_SCHEMA),
+            schemaInfo(SchemaType.AVRO, VALUE_SCHEMA), "", "");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUnsupportedPart() {
+        new KeyValueRecordConverter(schemaInfo(SchemaType.PROTOBUF_NATIVE, null),
+            schemaInfo(SchemaType.AVRO, VALUE_SCHEMA), "key_", "");
+    }
+}
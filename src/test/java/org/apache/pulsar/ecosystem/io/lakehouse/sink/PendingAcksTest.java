@@ -0,0 +1,143 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.lakehouse.sink;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.pulsar.client.api.SubscriptionType;
+import org.apache.pulsar.client.api.schema.GenericObject;
+import org.apache.pulsar.functions.api.Record;
+import org.testng.annotations.Test;
+
+/**
+ * Test for {@link PendingAcks}.
+ */
+public class PendingAcksTest {
+
+    private static PulsarSinkRecord record(AtomicInteger acks) {
+        return record("persistent://public/default/topic-partition-0", acks);
+    }
+
+    private static PulsarSinkRecord record(String partition, AtomicInteger acks) {
+        return new PulsarSinkRecord(new Record<GenericObject>() {
+            @Override
+            public Optional<String> getPartitionId() {
+                return Optional.of(partition);
+            }
+
+            @Override
+            public GenericObject getValue() {
+                return null;
+            }
+
+            @Override
+            public void ack() {
+                acks.incrementAndGet();
+            }
+        });
+    }
+
+    @Test
+    public void testAckAll() {
+        AtomicInteger acks = new AtomicInteger();
+        PendingAcks pendingAcks = PendingAcks.individual();
+        for (int i = 0; i < 2500; i++) {
+            pendingAcks.add(record(acks));
+        }
+        assertEquals(pendingAcks.size(), 2500);
+
+        assertEquals(pendingAcks.ackAll(), 2500 * 128L);
+        assertEquals(acks.get(), 2500);
+        assertTrue(pendingAcks.isEmpty());
+
+        assertEquals(pendingAcks.ackAll(), 0);
+        assertEquals(acks.get(), 2500);
+    }
+
+    @Test
+    public void testAddAll() {
+        AtomicInteger acks = new AtomicInteger();
+        PendingAcks retained = PendingAcks.individual();
+        PendingAcks failed = PendingAcks.individual();
+        for (int i = 0; i < 1500; i++) {
+            failed.add(record(acks));
+        }
+        retained.add(record(acks));
+
+        retained.addAll(failed);
+        assertTrue(failed.isEmpty());
+        assertEquals(retained.size(), 1501);
+        assertEquals(retained.ackAll(), 1501 * 128L);
+        assertEquals(acks.get(), 1501);
+    }
+
+    @Test
+    public void testCumulativeWatermarks() {
+        AtomicInteger partition0 = new AtomicInteger();
+        AtomicInteger partition1 = new AtomicInteger();
+        AtomicInteger watermark0 = new AtomicInteger();
+        AtomicInteger watermark1 = new AtomicInteger();
+        PendingAcks pendingAcks = PendingAcks.cumulative();
+        for (int i = 0; i < 100; i++) {
+            pendingAcks.add(record("p0", partition0));
+            pendingAcks.add(record("p1", partition1));
+        }
+        pendingAcks.add(record("p0", watermark0));
+        pendingAcks.add(record("p1", watermark1));
+        assertEquals(pendingAcks.size(), 2);
+
+        pendingAcks.ackAll();
+        assertEquals(partition0.get(), 0);
+        assertEquals(partition1.get(), 0);
+        assertEquals(watermark0.get(), 1);
+        assertEquals(watermark1.get(), 1);
+        assertTrue(pendingAcks.isEmpty());
+    }
+
+    @Test
+    public void testCumulativeAddAll() {
+        AtomicInteger older = new AtomicInteger();
+        AtomicInteger newer = new AtomicInteger();
+        AtomicInteger other = new AtomicInteger();
+        PendingAcks retained = PendingAcks.cumulative();
+        PendingAcks failed = PendingAcks.cumulative();
+        retained.add(record("p0", older));
+        retained.add(record("p1", other));
+        failed.add(record("p0", newer));
+
+        retained.addAll(failed);
+        assertTrue(failed.isEmpty());
+        assertEquals(retained.size(), 2);
+        retained.ackAll();
+        assertEquals(older.get(), 0);
+        assertEquals(newer.get(), 1);
+        assertEquals(other.get(), 1);
+    }
+
+    @Test
+    public void testIndividualAckSubscriptions() {
+        assertTrue(SinkWriterCoordinator.isIndividualAck(SubscriptionType.Shared));
+        assertTrue(SinkWriterCoordinator.isIndividualAck(SubscriptionType.Key_Shared));
+        assertFalse(SinkWriterCoordinator.isIndividualAck(SubscriptionType.Failover));
+        assertFalse(SinkWriterCoordinator.isIndividualAck(SubscriptionType.Exclusive));
+    }
+}
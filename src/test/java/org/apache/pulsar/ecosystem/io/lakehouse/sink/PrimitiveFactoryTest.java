@@ -19,9 +19,19 @@
 package org.apache.pulsar.ecosystem.io.lakehouse.sink;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import org.apache.avro.LogicalTypes;
 import org.apache.avro.Schema;
 import org.apache.pulsar.common.schema.SchemaType;
 import org.testng.annotations.Test;
@@ -53,4 +63,83 @@ public class PrimitiveFactoryTest {
         assertEquals(Schema.Type.STRING, object.getSchema().getField("message").schema().getType());
         assertEquals(value.toString(), message);
     }
+
+    @Test
+    public void testPrimitiveNumbers() {
+        assertEquals(PrimitiveFactory.getPulsarPrimitiveObject(SchemaType.INT8, (byte) 8, "").getRecord()
+            .get("message"), 8);
+        assertEquals(PrimitiveFactory.getPulsarPrimitiveObject(SchemaType.INT16, (short) 16, "").getRecord()
+            .get("message"), 16);
+        assertEquals(PrimitiveFactory.getPulsarPrimitiveObject(SchemaType.INT32, 32, "").getRecord()
+            .get("message"), 32);
+        assertEquals(PrimitiveFactory.getPulsarPrimitiveObject(SchemaType.INT64, 64L, "").getRecord()
+            .get("message"), 64L);
+        assertEquals(PrimitiveFactory.getPulsarPrimitiveObject(SchemaType.FLOAT, 1.5f, "").getRecord()
+            .get("message"), 1.5f);
+        assertEquals(PrimitiveFactory.getPulsarPrimitiveObject(SchemaType.DOUBLE, 2.5, "").getRecord()
+            .get("message"), 2.5);
+        assertEquals(PrimitiveFactory.getPulsarPrimitiveObject(SchemaType.BOOLEAN, true, "").getRecord()
+            .get("message"), true);
+        assertEquals(PrimitiveFactory.getPulsarPrimitiveObject(SchemaType.INT8, (byte) 8, "").getSchema()
+            .getField("message").schema().getType(), Schema.Type.INT);
+    }
+
+    @Test
+    public void testPrimitiveTimes() {
+        long millis = TimeUnit.DAYS.toMillis(365) + TimeUnit.HOURS.toMillis(3);
+        assertEquals(PrimitiveFactory.getPulsarPrimitiveObject(SchemaType.DATE, new Date(millis), "").getRecord()
+            .get("message"), 365);
+        assertEquals(PrimitiveFactory.getPulsarPrimitiveObject(SchemaType.TIMESTAMP, new Timestamp(millis), "")
+            .getRecord().get("message"), millis);
+        assertEquals(PrimitiveFactory.getPulsarPrimitiveObject(SchemaType.TIME, new Time(millis), "").getRecord()
+            .get("message"), (int) TimeUnit.HOURS.toMillis(3));
+        // before the epoch, the date is the day the instant falls in
+        assertEquals(PrimitiveFactory.getAvroValue(SchemaType.DATE, new Date(-1)), -1);
+    }
+
+    @Test
+    public void testPrimitiveTimeLogicalTypes() {
+        assertEquals(PrimitiveFactory.getAvroSchema(SchemaType.DATE).getLogicalType(), LogicalTypes.date());
+        assertEquals(PrimitiveFactory.getAvroSchema(SchemaType.DATE).getType(), Schema.Type.INT);
+        assertEquals(PrimitiveFactory.getAvroSchema(SchemaType.TIME).getLogicalType(), LogicalTypes.timeMillis());
+        assertEquals(PrimitiveFactory.getAvroSchema(SchemaType.TIME).getType(), Schema.Type.INT);
+        assertEquals(PrimitiveFactory.getAvroSchema(SchemaType.TIMESTAMP).getLogicalType(),
+            LogicalTypes.timestampMillis());
+        assertEquals(PrimitiveFactory.getAvroSchema(SchemaType.TIMESTAMP).getType(), Schema.Type.LONG);
+        assertEquals(PrimitiveFactory.getPulsarPrimitiveObject(SchemaType.DATE, new Date(0), "").getSchema()
+            .getField("message").schema().getLogicalType(), LogicalTypes.date());
+        // the logical types are part of the wrapper schema, so a plain int isn't written with it
+        assertNotSame(PrimitiveFactory.getPulsarPrimitiveObject(SchemaType.DATE, new Date(0), "").getSchema(),
+            PrimitiveFactory.getPulsarPrimitiveObject(SchemaType.INT32, 0, "").getSchema());
+        assertNull(PrimitiveFactory.getAvroSchema(SchemaType.INT64).getLogicalType());
+    }
+
+    @Test
+    public void testWrapperSchemaIsCached() {
+        PulsarObject first = PrimitiveFactory.getPulsarPrimitiveObject(SchemaType.INT64, 1L, "");
+        PulsarObject second = PrimitiveFactory.getPulsarPrimitiveObject(SchemaType.INT64, 2L, "");
+        assertSame(first.getSchema(), second.getSchema());
+        assertNotSame(first.getSchema(),
+            PrimitiveFactory.getPulsarPrimitiveObject(SchemaType.STRING, "a", "").getSchema());
+    }
+
+    @Test
+    public void testOverrideFieldNamePerObject() {
+        PulsarObject renamed = PrimitiveFactory.getPulsarPrimitiveObject(SchemaType.INT64, 1L, "amount");
+        PulsarObject plain = PrimitiveFactory.getPulsarPrimitiveObject(SchemaType.INT64, 2L, "");
+        assertNotNull(renamed.getSchema().getField("amount"));
+        assertNotNull(plain.getSchema().getField(PulsarObject.DEFAULT_FIELD_NAME));
+        assertEquals(PulsarObject.fromGenericRecord(renamed.getRecord(), "amount"), renamed);
+        assertEquals(PulsarObject.fromGenericRecord(plain.getRecord()), plain);
+    }
+
+    @Test
+    public void testDeterministicKey() {
+        PulsarObject object = PrimitiveFactory.getPulsarPrimitiveObject(SchemaType.STRING, "a", "", "12:3:-1");
+        assertEquals(object.getRecord().get("uuid"), "12:3:-1");
+        PulsarObject random = PrimitiveFactory.getPulsarPrimitiveObject(SchemaType.STRING, "a", "", null);
+        assertNotNull(random.getRecord().get("uuid"));
+        assertTrue(PrimitiveFactory.isSupported(SchemaType.TIMESTAMP));
+        assertFalse(PrimitiveFactory.isSupported(SchemaType.AVRO));
+    }
 }
@@ -0,0 +1,142 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.lakehouse.sink;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.pulsar.client.api.schema.GenericObject;
+import org.apache.pulsar.functions.api.Record;
+import org.testng.annotations.Test;
+
+public class RecordTransformTest {
+    private static final Schema ORDER = SchemaBuilder.record("Order").fields()
+        .requiredString("id")
+        .requiredString("amount")
+        .requiredInt("qty")
+        .optionalString("note")
+        .requiredLong("extra")
+        .endRecord();
+
+    @SuppressWarnings("unchecked")
+    private static PulsarSinkRecord source() {
+        Record<GenericObject> record = mock(Record.class);
+        when(record.getTopicName()).thenReturn(Optional.of("persistent://public/default/orders"));
+        when(record.getKey()).thenReturn(Optional.of("k1"));
+        when(record.getEventTime()).thenReturn(Optional.of(1000L));
+        when(record.getMessage()).thenReturn(Optional.empty());
+        return new PulsarSinkRecord(record);
+    }
+
+    private static GenericRecord order(String id, String amount) {
+        GenericRecord record = new GenericData.Record(ORDER);
+        record.put("id", id);
+        record.put("amount", amount);
+        record.put("qty", 3);
+        record.put("note", "n");
+        record.put("extra", 7L);
+        return record;
+    }
+
+    private static List<String> names(Schema schema) {
+        return schema.getFields().stream().map(Schema.Field::name).collect(Collectors.toList());
+    }
+
+    private static RecordTransform transform() {
+        Map<String, String> cast = new LinkedHashMap<>();
+        cast.put("amount", "double");
+        cast.put("quantity", "LONG");
+        Map<String, String> add = new LinkedHashMap<>();
+        add.put("source", "crm");
+        add.put("topic", "$topic");
+        add.put("key", "$key");
+        add.put("event_time", "$eventTime");
+        add.put("order_id", "$field.id");
+        add.put("price", "$$9");
+        return new RecordTransform(Arrays.asList("id", "amount", "qty", "note"), Collections.singletonList("note"),
+            Collections.singletonMap("qty", "quantity"), cast, add);
+    }
+
+    @Test
+    public void testTransform() {
+        RecordTransform transform = transform();
+        GenericRecord record = transform.apply(source(), order("o1", "12.5"), null);
+        Schema schema = record.getSchema();
+        assertEquals(names(schema),
+            Arrays.asList("id", "amount", "quantity", "source", "topic", "key", "event_time", "order_id", "price"));
+        assertTrue(schema.getField("amount").schema().isNullable());
+        assertEquals(record.get("id"), "o1");
+        assertEquals(record.get("amount"), 12.5);
+        assertEquals(record.get("quantity"), 3L);
+        assertEquals(record.get("source"), "crm");
+        assertEquals(record.get("topic"), "persistent://public/default/orders");
+        assertEquals(record.get("key"), "k1");
+        assertEquals(record.get("event_time"), 1000L);
+        assertEquals(record.get("order_id"), "o1");
+        assertEquals(record.get("price"), "$9");
+
+        // the plan is compiled once per schema, and the output record is reused
+        GenericRecord next = transform.apply(source(), order("o2", "not a number"), record);
+        assertSame(next, record);
+        assertSame(transform.getSchema(ORDER), schema);
+        assertEquals(next.get("id"), "o2");
+        assertNull(next.get("amount"));
+    }
+
+    @Test
+    public void testMissingColumnsAreSkipped() {
+        Schema older = SchemaBuilder.record("Order").fields()
+            .requiredString("amount")
+            .requiredInt("qty")
+            .endRecord();
+        Schema schema = transform().getSchema(older);
+        assertEquals(names(schema),
+            Arrays.asList("amount", "quantity", "source", "topic", "key", "event_time", "order_id", "price"));
+        assertTrue(schema.getField("order_id").schema().isNullable());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testDuplicateColumn() {
+        new RecordTransform(null, null, Collections.singletonMap("qty", "id"), null, null).getSchema(ORDER);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUnknownCastType() {
+        new RecordTransform(null, null, null, Collections.singletonMap("qty", "decimal"), null);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUnknownDerivedValue() {
+        new RecordTransform(null, null, null, null, Collections.singletonMap("at", "$unknown"));
+    }
+}
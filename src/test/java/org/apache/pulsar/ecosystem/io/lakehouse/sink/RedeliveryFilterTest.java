@@ -0,0 +1,120 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.lakehouse.sink;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.schema.GenericObject;
+import org.apache.pulsar.client.impl.BatchMessageIdImpl;
+import org.apache.pulsar.client.impl.MessageIdImpl;
+import org.apache.pulsar.functions.api.Record;
+import org.testng.annotations.Test;
+
+public class RedeliveryFilterTest {
+
+    @SuppressWarnings("unchecked")
+    private static PulsarSinkRecord record(String partition, MessageId messageId) {
+        Message<GenericObject> message = mock(Message.class);
+        when(message.getMessageId()).thenReturn(messageId);
+        Record<GenericObject> record = mock(Record.class);
+        when(record.getPartitionId()).thenReturn(Optional.of(partition));
+        when(record.getMessage()).thenReturn(Optional.of(message));
+        return new PulsarSinkRecord(record);
+    }
+
+    private static PulsarSinkRecord record(String partition, long ledgerId, long entryId) {
+        return record(partition, new MessageIdImpl(ledgerId, entryId, 0));
+    }
+
+    @Test
+    public void testRedeliveredRecords() {
+        RedeliveryFilter filter = new RedeliveryFilter();
+        assertFalse(filter.isRedelivered(record("p-0", 1, 5)));
+        filter.onDispatched(record("p-0", 1, 5));
+        filter.onDispatched(record("p-1", 2, 1));
+
+        assertTrue(filter.isRedelivered(record("p-0", 1, 4)));
+        assertTrue(filter.isRedelivered(record("p-0", 1, 5)));
+        assertTrue(filter.isRedelivered(record("p-0", 0, 9)));
+        assertFalse(filter.isRedelivered(record("p-0", 1, 6)));
+        assertFalse(filter.isRedelivered(record("p-0", 3, 0)));
+        assertTrue(filter.isRedelivered(record("p-1", 2, 1)));
+        assertFalse(filter.isRedelivered(record("p-2", 0, 0)));
+
+        // checking a record doesn't move the position, only dispatching it
+        assertFalse(filter.isRedelivered(record("p-0", 1, 6)));
+        filter.onDispatched(record("p-0", 1, 6));
+        assertTrue(filter.isRedelivered(record("p-0", 1, 6)));
+    }
+
+    @Test
+    public void testBatchIndex() {
+        RedeliveryFilter filter = new RedeliveryFilter();
+        filter.onDispatched(record("p-0", new BatchMessageIdImpl(1, 5, 0, 2)));
+
+        assertTrue(filter.isRedelivered(record("p-0", new BatchMessageIdImpl(1, 5, 0, 1))));
+        assertTrue(filter.isRedelivered(record("p-0", new BatchMessageIdImpl(1, 5, 0, 2))));
+        assertFalse(filter.isRedelivered(record("p-0", new BatchMessageIdImpl(1, 5, 0, 3))));
+        assertFalse(filter.isRedelivered(record("p-0", 1, 6)));
+    }
+
+    @Test
+    public void testRecordsWithoutMessageId() {
+        RedeliveryFilter filter = new RedeliveryFilter();
+        filter.onDispatched(record("p-0", 1, 5));
+        assertFalse(filter.isRedelivered(record("p-0", null)));
+        filter.onDispatched(record("p-0", null));
+        assertTrue(filter.isRedelivered(record("p-0", 1, 5)));
+    }
+
+    @Test
+    public void testSeedFromWatermarks() {
+        RedeliveryFilter filter = new RedeliveryFilter();
+        filter.onDispatched(record("p-0", 1, 5));
+        filter.onDispatched(record("p-1", new BatchMessageIdImpl(2, 7, 0, 3)));
+        Map<String, String> watermarks = filter.getWatermarks();
+        assertEquals(watermarks.size(), 2);
+        assertEquals(watermarks.get(RedeliveryFilter.WATERMARK_PREFIX + "p-0"), "1:5:-1");
+        assertEquals(watermarks.get(RedeliveryFilter.WATERMARK_PREFIX + "p-1"), "2:7:3");
+
+        Map<String, String> committed = new HashMap<>(watermarks);
+        committed.put("other.property", "1:2:3");
+        committed.put(RedeliveryFilter.WATERMARK_PREFIX + "p-2", "invalid");
+        RedeliveryFilter restarted = new RedeliveryFilter();
+        restarted.seed(committed);
+        assertEquals(restarted.getWatermarks(), watermarks);
+        assertTrue(restarted.isRedelivered(record("p-0", 1, 5)));
+        assertFalse(restarted.isRedelivered(record("p-0", 1, 6)));
+        assertTrue(restarted.isRedelivered(record("p-1", new BatchMessageIdImpl(2, 7, 0, 3))));
+        assertFalse(restarted.isRedelivered(record("p-2", 0, 0)));
+
+        RedeliveryFilter empty = new RedeliveryFilter();
+        empty.seed(Collections.emptyMap());
+        assertTrue(empty.getWatermarks().isEmpty());
+    }
+}
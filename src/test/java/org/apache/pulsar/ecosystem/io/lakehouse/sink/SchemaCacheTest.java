@@ -0,0 +1,145 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.lakehouse.sink;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.testng.annotations.Test;
+
+/**
+ * Test for {@link SchemaCache}.
+ */
+public class SchemaCacheTest {
+    private static final String TOPIC = "persistent://public/default/test";
+    private static final byte[] V1 = {0, 0, 0, 0, 0, 0, 0, 1};
+    private static final byte[] V2 = {0, 0, 0, 0, 0, 0, 0, 2};
+
+    private static final Schema SCHEMA_1 = SchemaBuilder.record("test").fields()
+        .optionalString("name").endRecord();
+    private static final Schema SCHEMA_2 = SchemaBuilder.record("test").fields()
+        .optionalString("name").optionalInt("age").endRecord();
+
+    @Test
+    public void testLookupByVersion() {
+        SchemaCache cache = new SchemaCache();
+        AtomicInteger calls = new AtomicInteger();
+        Supplier<String> definition1 = () -> {
+            calls.incrementAndGet();
+            return SCHEMA_1.toString();
+        };
+
+        SchemaCache.ParsedSchema parsed = cache.get(TOPIC, V1, definition1);
+        assertEquals(parsed.getSchema(), SCHEMA_1);
+        assertEquals(parsed.getSchemaWithoutNull().getField("name").schema().getType(), Schema.Type.STRING);
+        assertSame(cache.get(TOPIC, V1.clone(), definition1), parsed);
+        assertEquals(calls.get(), 1);
+
+        // interleaved versions don't parse the schema again
+        SchemaCache.ParsedSchema parsed2 = cache.get(TOPIC, V2, SCHEMA_2::toString);
+        assertEquals(parsed2.getSchema(), SCHEMA_2);
+        assertSame(cache.get(TOPIC, V1, definition1), parsed);
+        assertSame(cache.get(TOPIC, V2, SCHEMA_2::toString), parsed2);
+        assertEquals(calls.get(), 1);
+        assertEquals(cache.size(), 2);
+    }
+
+    @Test
+    public void testSameVersionOfDifferentTopics() {
+        SchemaCache cache = new SchemaCache();
+        SchemaCache.ParsedSchema parsed = cache.get(TOPIC, V1, SCHEMA_1::toString);
+        SchemaCache.ParsedSchema other = cache.get(TOPIC + "-other", V1, SCHEMA_2::toString);
+        assertEquals(other.getSchema(), SCHEMA_2);
+        assertNotSame(other, parsed);
+
+        // the same definition is parsed only once
+        assertSame(cache.get(TOPIC + "-other", V2, SCHEMA_1::toString), parsed);
+    }
+
+    @Test
+    public void testLookupByDefinition() {
+        SchemaCache cache = new SchemaCache();
+        SchemaCache.ParsedSchema parsed = cache.get(null, null, SCHEMA_1::toString);
+        assertSame(cache.get(null, null, SCHEMA_1::toString), parsed);
+        assertNotSame(cache.get(null, null, SCHEMA_2::toString), parsed);
+        assertSame(cache.get(null, null, SCHEMA_1::toString), parsed);
+    }
+
+    @Test
+    public void testEmptyDefinition() {
+        SchemaCache cache = new SchemaCache();
+        assertNull(cache.get(TOPIC, V1, () -> " "));
+        assertEquals(cache.size(), 0);
+    }
+
+    @Test
+    public void testEviction() {
+        SchemaCache cache = new SchemaCache(1);
+        SchemaCache.ParsedSchema parsed = cache.get(TOPIC, V1, SCHEMA_1::toString);
+        cache.get(TOPIC, V2, SCHEMA_2::toString);
+        assertEquals(cache.size(), 1);
+        assertNotSame(cache.get(TOPIC, V1, SCHEMA_1::toString), parsed);
+    }
+
+    @Test
+    public void testBinaryReaderReusesRecord() throws IOException {
+        SchemaCache.ParsedSchema parsed = new SchemaCache().get(TOPIC, V2, SCHEMA_2::toString);
+        GenericDatumReader<GenericRecord> reader = parsed.getBinaryReader();
+        assertSame(parsed.getBinaryReader(), reader);
+
+        GenericRecord reused = null;
+        BinaryDecoder decoder = null;
+        for (int i = 0; i < 3; i++) {
+            GenericRecord record = new GenericData.Record(SCHEMA_2);
+            record.put("name", "name-" + i);
+            record.put("age", i);
+            decoder = DecoderFactory.get().binaryDecoder(encode(record), decoder);
+            GenericRecord decoded = reader.read(reused, decoder);
+            if (reused != null) {
+                assertSame(decoded, reused);
+            }
+            reused = decoded;
+            assertEquals(decoded.get("name").toString(), "name-" + i);
+            assertEquals(decoded.get("age"), i);
+        }
+    }
+
+    private static byte[] encode(GenericRecord record) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(out, null);
+        new GenericDatumWriter<GenericRecord>(record.getSchema()).write(record, encoder);
+        encoder.flush();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.lakehouse.sink;
+
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_BYTES_IN_RATE;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_COMMIT_FAILED_COUNT;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_COMMIT_FILES_BYTES;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_COMMIT_FILES_COUNT;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_COMMIT_RETRY_COUNT;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_CONVERT_STAGE_UTILIZATION;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_CONVERT_TIME_PER_RECORD;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_OLDEST_UNACKED_RECORD_AGE;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_RECORDS_IN_RATE;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_WRITE_STAGE_UTILIZATION;
+import static org.apache.pulsar.ecosystem.io.lakehouse.DeltaLakeConnectorStats.SINK_WRITE_TIME_PER_RECORD;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.pulsar.io.core.SinkContext;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Test for {@link SinkMetrics}.
+ */
+public class SinkMetricsTest {
+    private Map<String, Double> recorded;
+    private SinkContext sinkContext;
+
+    @BeforeMethod
+    public void setup() {
+        recorded = new HashMap<>();
+        sinkContext = mock(SinkContext.class);
+        doAnswer(invocation -> {
+            recorded.put(invocation.getArgument(0), invocation.getArgument(1));
+            return null;
+        }).when(sinkContext).recordMetric(anyString(), anyDouble());
+    }
+
+    @Test
+    public void testReport() {
+        SinkMetrics metrics = new SinkMetrics(sinkContext, "delta");
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 100; i++) {
+            metrics.onDispatched(1000);
+        }
+        metrics.onWritten(50, 5000, 15000);
+        metrics.onWritten(50, 5000, 15000);
+
+        metrics.report(now + 2000, now - 500);
+        // the report covers the time since the metrics were created, at least 2 seconds
+        assertTrue(recorded.get(SINK_RECORDS_IN_RATE) <= 50);
+        assertTrue(recorded.get(SINK_RECORDS_IN_RATE) > 0);
+        assertEquals(recorded.get(SINK_BYTES_IN_RATE), recorded.get(SINK_RECORDS_IN_RATE) * 1000, 0.001);
+        assertEquals(recorded.get(SINK_CONVERT_TIME_PER_RECORD), 100.0);
+        assertEquals(recorded.get(SINK_WRITE_TIME_PER_RECORD), 300.0);
+        assertEquals(recorded.get(SINK_OLDEST_UNACKED_RECORD_AGE), 2500.0);
+
+        // counters are reset by each report
+        metrics.report(now + 3000, 0);
+        assertEquals(recorded.get(SINK_RECORDS_IN_RATE), 0.0);
+        assertEquals(recorded.get(SINK_OLDEST_UNACKED_RECORD_AGE), 0.0);
+    }
+
+    @Test
+    public void testStageUtilization() {
+        SinkMetrics metrics = new SinkMetrics(sinkContext, "delta", 2);
+        long now = System.currentTimeMillis();
+        metrics.onWritten(100, TimeUnit.SECONDS.toNanos(1), TimeUnit.SECONDS.toNanos(2));
+
+        // 2 writers over 2 seconds
+        metrics.report(now + 2000, 0);
+        assertEquals(recorded.get(SINK_CONVERT_STAGE_UTILIZATION), 0.25, 0.01);
+        assertEquals(recorded.get(SINK_WRITE_STAGE_UTILIZATION), 0.5, 0.01);
+
+        metrics.report(now + 3000, 0);
+        assertEquals(recorded.get(SINK_CONVERT_STAGE_UTILIZATION), 0.0);
+        assertEquals(recorded.get(SINK_WRITE_STAGE_UTILIZATION), 0.0);
+    }
+
+    @Test
+    public void testCommitMetrics() {
+        SinkMetrics metrics = new SinkMetrics(sinkContext, "iceberg");
+        PreparedCommit files = new PreparedCommit() {
+            @Override
+            public boolean isEmpty() {
+                return false;
+            }
+
+            @Override
+            public long getFileCount() {
+                return 2;
+            }
+
+            @Override
+            public long getFileBytes() {
+                return 4096;
+            }
+        };
+        metrics.onFlushed(TimeUnit.MILLISECONDS.toNanos(7));
+        metrics.onCommitted(TimeUnit.MILLISECONDS.toNanos(30), Arrays.asList(files, files));
+        assertEquals(recorded.get("sink_iceberg_flush_latency"), 7.0);
+        assertEquals(recorded.get("sink_iceberg_commit_latency"), 30.0);
+        assertEquals(recorded.get(SINK_COMMIT_FILES_COUNT), 4.0);
+        assertEquals(recorded.get(SINK_COMMIT_FILES_BYTES), 8192.0);
+
+        metrics.onCommitFailed(1);
+        metrics.onCommitFailed(2);
+        assertEquals(recorded.get(SINK_COMMIT_RETRY_COUNT), 2.0);
+        assertEquals(recorded.get(SINK_COMMIT_FAILED_COUNT), 2.0);
+    }
+
+    @Test
+    public void testWithoutSinkContext() {
+        SinkMetrics metrics = new SinkMetrics(null, "hudi");
+        metrics.onDispatched(100);
+        metrics.onFlushed(1);
+        metrics.onCommitFailed(1);
+        metrics.report(System.currentTimeMillis() + 1000, 0);
+    }
+}
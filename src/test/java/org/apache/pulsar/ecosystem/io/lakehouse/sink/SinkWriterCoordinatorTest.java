@@ -0,0 +1,523 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.lakehouse.sink;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.pulsar.client.api.SubscriptionType;
+import org.apache.pulsar.client.api.schema.GenericObject;
+import org.apache.pulsar.common.schema.SchemaType;
+import org.apache.pulsar.ecosystem.io.lakehouse.SinkConnectorConfig;
+import org.apache.pulsar.ecosystem.io.lakehouse.common.TestSinkContext;
+import org.apache.pulsar.functions.api.Record;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Sink writer coordinator test, with in-memory tables in place of the lakehouse tables.
+ */
+public class SinkWriterCoordinatorTest {
+    private static final long TIMEOUT_MS = 30000;
+
+    private final Map<String, MemoryTable> tables = new ConcurrentHashMap<>();
+    private final List<Integer> acked = new CopyOnWriteArrayList<>();
+    private SinkWriterCoordinator coordinator;
+
+    @BeforeMethod
+    public void setup() {
+        tables.clear();
+        acked.clear();
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void cleanup() throws IOException {
+        if (coordinator != null) {
+            tables.values().forEach(MemoryTable::release);
+            coordinator.close();
+            coordinator = null;
+        }
+    }
+
+    /**
+     * The commits of a table. Commits can be made to fail, or to wait until the table is released.
+     */
+    private static class MemoryTable {
+        private final List<List<Integer>> commits = new CopyOnWriteArrayList<>();
+        private final List<Long> attemptTimes = new CopyOnWriteArrayList<>();
+        private final AtomicInteger failed = new AtomicInteger();
+        private volatile int failures;
+        private volatile CountDownLatch gate = new CountDownLatch(0);
+
+        boolean commit(List<PreparedCommit> prepared) {
+            attemptTimes.add(System.currentTimeMillis());
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            if (failures > 0) {
+                failures--;
+                failed.incrementAndGet();
+                return false;
+            }
+            List<Integer> ids = new ArrayList<>();
+            for (PreparedCommit preparedCommit : prepared) {
+                ids.addAll(((PreparedRecords) preparedCommit).ids);
+            }
+            // the writers prepare their records independently
+            Collections.sort(ids);
+            commits.add(ids);
+            return true;
+        }
+
+        List<Integer> committed() {
+            return commits.stream().flatMap(List::stream).sorted().collect(Collectors.toList());
+        }
+
+        void release() {
+            gate.countDown();
+        }
+    }
+
+    private static class PreparedRecords implements PreparedCommit {
+        private final List<Integer> ids;
+
+        PreparedRecords(List<Integer> ids) {
+            this.ids = ids;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return ids.isEmpty();
+        }
+    }
+
+    /**
+     * Collects the ids of the written records, and commits them into its table.
+     */
+    private static class MemoryWriter implements LakehouseWriter {
+        private final MemoryTable table;
+        private List<Integer> written = new ArrayList<>();
+
+        MemoryWriter(MemoryTable table) {
+            this.table = table;
+        }
+
+        @Override
+        public boolean updateSchema(Schema schema) {
+            return true;
+        }
+
+        @Override
+        public PreparedCommit prepareSchemaUpdate(Schema schema) {
+            return () -> true;
+        }
+
+        @Override
+        public void writeAvroRecord(GenericRecord record) {
+            written.add((Integer) record.get("id"));
+        }
+
+        @Override
+        public boolean flush() {
+            return true;
+        }
+
+        @Override
+        public PreparedCommit prepareCommit() {
+            PreparedRecords prepared = new PreparedRecords(written);
+            written = new ArrayList<>();
+            return prepared;
+        }
+
+        @Override
+        public boolean commit(List<PreparedCommit> prepared) {
+            return table.commit(prepared);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private MemoryTable table(String name) {
+        return tables.computeIfAbsent(name, t -> new MemoryTable());
+    }
+
+    private void start(Map<String, Object> settings) throws Exception {
+        Map<String, Object> config = new HashMap<>();
+        config.put("type", "delta");
+        config.put("tablePath", "memory");
+        config.put("sinkWriterThreads", 2);
+        config.putAll(settings);
+        SinkConnectorConfig sinkConnectorConfig = SinkConnectorConfig.load(config);
+        sinkConnectorConfig.validate();
+        // individual acks, so the test sees every acked record
+        TestSinkContext sinkContext = new TestSinkContext() {
+            @Override
+            public SubscriptionType getSubscriptionType() {
+                return SubscriptionType.Shared;
+            }
+        };
+        coordinator = new SinkWriterCoordinator(sinkConnectorConfig, sinkContext) {
+            @Override
+            LakehouseWriter openWriter(String table, Schema schema) {
+                return new MemoryWriter(table(table));
+            }
+        };
+        coordinator.start();
+    }
+
+    private void write(String topic, int id, String region) throws InterruptedException {
+        Map<String, SchemaType> schemaMap = new HashMap<>();
+        schemaMap.put("id", SchemaType.INT32);
+        schemaMap.put("region", SchemaType.STRING);
+        Map<String, Object> recordMap = new HashMap<>();
+        recordMap.put("id", id);
+        recordMap.put("region", region);
+        Record<GenericObject> record = SinkConnectorUtils.generateRecord(schemaMap, recordMap,
+            SchemaType.AVRO, "Event");
+        Record<GenericObject> tracked = new Record<GenericObject>() {
+            @Override
+            public GenericObject getValue() {
+                return record.getValue();
+            }
+
+            @Override
+            public org.apache.pulsar.client.api.Schema<GenericObject> getSchema() {
+                return record.getSchema();
+            }
+
+            @Override
+            public Optional<String> getTopicName() {
+                return Optional.of(topic);
+            }
+
+            @Override
+            public Optional<String> getKey() {
+                return Optional.of(String.valueOf(id));
+            }
+
+            @Override
+            public void ack() {
+                acked.add(id);
+            }
+        };
+        assertTrue(coordinator.offer(new PulsarSinkRecord(tracked), 10, TimeUnit.SECONDS));
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Timed out waiting for the condition");
+            Thread.sleep(10);
+        }
+    }
+
+    private static List<Integer> range(int from, int to) {
+        return IntStream.range(from, to).boxed().collect(Collectors.toList());
+    }
+
+    @Test
+    public void testInFlightCommitsBounded() throws Exception {
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("maxInFlightCommits", 2);
+        settings.put("maxRecordsPerCommit", 1);
+        start(settings);
+        MemoryTable table = table(SinkWriter.DEFAULT_TABLE);
+        table.gate = new CountDownLatch(1);
+
+        // each record is due for a commit, but the first commit is blocked, so only one more barrier is injected
+        // behind it and the other records wait for the next one
+        for (int i = 0; i < 10; i++) {
+            write("events", i, "eu");
+        }
+        waitUntil(() -> table.attemptTimes.size() == 1);
+        assertTrue(acked.isEmpty());
+
+        table.release();
+        waitUntil(() -> acked.size() == 10);
+        assertEquals(table.commits, Arrays.asList(range(0, 1), range(1, 2), range(2, 10)));
+        // acked in the order of the barriers
+        assertEquals(acked, range(0, 10));
+    }
+
+    @Test
+    public void testFailedCommitMergedIntoNextBarrier() throws Exception {
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("maxRecordsPerCommit", 1);
+        start(settings);
+        MemoryTable table = table(SinkWriter.DEFAULT_TABLE);
+        table.failures = 1;
+
+        write("events", 0, "eu");
+        waitUntil(() -> table.failed.get() == 1);
+        assertTrue(acked.isEmpty());
+
+        // the next barrier commits the retained data together with its own, before the retry backoff has passed
+        write("events", 1, "eu");
+        waitUntil(() -> acked.size() == 2);
+        assertEquals(table.commits, Collections.singletonList(range(0, 2)));
+        assertEquals(table.attemptTimes.size(), 2);
+        assertEquals(acked, range(0, 2));
+    }
+
+    @Test
+    public void testRetryAfterBackoff() throws Exception {
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("maxRecordsPerCommit", 1);
+        start(settings);
+        MemoryTable table = table(SinkWriter.DEFAULT_TABLE);
+        table.failures = 1;
+
+        // no more records arrive, the retained data is retried by a barrier of its own once the backoff has passed
+        write("events", 0, "eu");
+        waitUntil(() -> acked.size() == 1);
+        assertEquals(table.commits, Collections.singletonList(range(0, 1)));
+        assertEquals(table.attemptTimes.size(), 2);
+        assertTrue(table.attemptTimes.get(1) - table.attemptTimes.get(0)
+            >= SinkWriterCoordinator.MIN_RETRY_BACKOFF_MS);
+    }
+
+    @Test
+    public void testFailAfterMaxCommitFailedTimes() throws Exception {
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("maxRecordsPerCommit", 1);
+        settings.put("maxCommitFailedTimes", 1);
+        start(settings);
+        MemoryTable table = table(SinkWriter.DEFAULT_TABLE);
+        table.failures = Integer.MAX_VALUE;
+
+        write("events", 0, "eu");
+        waitUntil(() -> !coordinator.isRunning());
+        // failed once, then once more when retried after the backoff
+        assertEquals(table.failed.get(), 2);
+        assertTrue(table.attemptTimes.get(1) - table.attemptTimes.get(0)
+            >= SinkWriterCoordinator.MIN_RETRY_BACKOFF_MS);
+        assertTrue(table.commits.isEmpty());
+        assertTrue(acked.isEmpty());
+    }
+
+    private static Map<String, Object> routeByRegion() {
+        Map<String, String> routes = new HashMap<>();
+        routes.put("eu", "eu_events");
+        routes.put("us", "us_events");
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("tableRoutes", routes);
+        settings.put("tableRouteField", "region");
+        return settings;
+    }
+
+    @Test
+    public void testRouteByField() throws Exception {
+        start(routeByRegion());
+        String[] regions = {"eu", "us", "ap"};
+        for (int i = 0; i < 30; i++) {
+            write("events", i, regions[i % 3]);
+        }
+        coordinator.close();
+        coordinator = null;
+
+        assertEquals(table("eu_events").committed(), range(0, 30).stream().filter(i -> i % 3 == 0)
+            .collect(Collectors.toList()));
+        assertEquals(table("us_events").committed(), range(0, 30).stream().filter(i -> i % 3 == 1)
+            .collect(Collectors.toList()));
+        // records without a route go to the configured table
+        assertEquals(table(SinkWriter.DEFAULT_TABLE).committed(), range(0, 30).stream().filter(i -> i % 3 == 2)
+            .collect(Collectors.toList()));
+        assertEquals(acked.size(), 30);
+    }
+
+    @Test
+    public void testRouteByTopic() throws Exception {
+        Map<String, String> routes = new HashMap<>();
+        routes.put("orders", "orders_table");
+        routes.put("persistent://public/default/payments", "payments_table");
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("tableRoutes", routes);
+        start(settings);
+        for (int i = 0; i < 30; i++) {
+            // partitions of a routed topic are routed by their partitioned topic name
+            String topic = i % 2 == 0 ? "persistent://public/default/orders-partition-" + (i % 3)
+                : "persistent://public/default/payments";
+            write(topic, i, "eu");
+        }
+        coordinator.close();
+        coordinator = null;
+
+        assertEquals(table("orders_table").committed(), range(0, 30).stream().filter(i -> i % 2 == 0)
+            .collect(Collectors.toList()));
+        assertEquals(table("payments_table").committed(), range(0, 30).stream().filter(i -> i % 2 == 1)
+            .collect(Collectors.toList()));
+        assertTrue(table(SinkWriter.DEFAULT_TABLE).commits.isEmpty());
+        assertEquals(acked.size(), 30);
+    }
+
+    @Test
+    public void testUnackedRecordsBounded() throws Exception {
+        Map<String, Object> settings = new HashMap<>();
+        // 8 records of 128 bytes
+        settings.put("sinkConnectorQueueMaxBytes", 1024);
+        start(settings);
+
+        for (int i = 0; i < 100; i++) {
+            write("events", i, "eu");
+            // the records wait for their commit within the budget, the full budget triggers the commits
+            assertTrue(coordinator.getBufferedBytes() <= 1024);
+        }
+        // the acked records give their bytes back, the last ones wait for the next commit
+        waitUntil(() -> acked.size() >= 92 && coordinator.getBufferedBytes() == (100 - acked.size()) * 128L);
+    }
+
+    @Test
+    public void testFailedTableRetriedAlone() throws Exception {
+        Map<String, Object> settings = routeByRegion();
+        settings.put("maxRecordsPerCommit", 4);
+        start(settings);
+        MemoryTable eu = table("eu_events");
+        MemoryTable us = table("us_events");
+        eu.failures = 1;
+
+        for (int i = 0; i < 4; i++) {
+            write("events", i, i % 2 == 0 ? "eu" : "us");
+        }
+        waitUntil(() -> eu.failed.get() == 1 && us.commits.size() == 1);
+        // the records of the barrier are acked once all its tables are committed
+        assertTrue(acked.isEmpty());
+
+        for (int i = 4; i < 8; i++) {
+            write("events", i, i % 2 == 0 ? "eu" : "us");
+        }
+        waitUntil(() -> acked.size() == 8);
+        // the data of the failed table is committed again, and the other table isn't committed twice
+        assertEquals(eu.committed(), Arrays.asList(0, 2, 4, 6));
+        assertEquals(us.commits, Arrays.asList(Arrays.asList(1, 3), Arrays.asList(5, 7)));
+        assertEquals(acked, range(0, 8));
+    }
+
+    @Test
+    public void testShardByDedupKey() throws Exception {
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("sinkWriterThreads", 4);
+        settings.put("dedupKeyColumns", Collections.singletonList("region"));
+        start(settings);
+        // the message keys differ, but the records of a region must be deduplicated by the same writer
+        String[] regions = {"eu", "us", "ap"};
+        for (int i = 0; i < 60; i++) {
+            write("events", i, regions[i % 3]);
+        }
+        coordinator.close();
+        coordinator = null;
+
+        assertEquals(table(SinkWriter.DEFAULT_TABLE).committed(), Arrays.asList(57, 58, 59));
+        assertEquals(acked.size(), 60);
+    }
+
+    @Test
+    public void testShardColumns() throws Exception {
+        Map<String, Object> config = new HashMap<>();
+        config.put("type", "delta");
+        config.put("tablePath", "memory");
+        assertEquals(SinkWriterCoordinator.getShardColumns(SinkConnectorConfig.load(config)), null);
+
+        config.put("sinkWriterShardBy", "partition");
+        config.put("partitionColumns", Collections.singletonList("day"));
+        assertEquals(SinkWriterCoordinator.getShardColumns(SinkConnectorConfig.load(config)),
+            Collections.singletonList("day"));
+
+        // the dedup key takes precedence, and is read by its name before the rename
+        config.put("dedupKeyColumns", Arrays.asList("id", "region"));
+        config.put("renameColumns", Collections.singletonMap("user_id", "id"));
+        assertEquals(SinkWriterCoordinator.getShardColumns(SinkConnectorConfig.load(config)),
+            Arrays.asList("user_id", "region"));
+
+        // hudi records are sharded by their record key
+        Map<String, Object> hudi = new HashMap<>();
+        hudi.put("type", "hudi");
+        hudi.put("sinkWriterShardBy", "partition");
+        hudi.put("partitionColumns", Collections.singletonList("day"));
+        hudi.put("hoodie.datasource.write.recordkey.field", "id, region");
+        assertEquals(SinkWriterCoordinator.getShardColumns(SinkConnectorConfig.load(hudi)),
+            Arrays.asList("id", "region"));
+    }
+
+    @Test
+    public void testWritersOfTableCreatedOneAtATime() throws Exception {
+        AtomicInteger opening = new AtomicInteger();
+        AtomicInteger maxOpening = new AtomicInteger();
+        Map<String, Object> config = new HashMap<>();
+        config.put("type", "delta");
+        config.put("tablePath", "memory");
+        config.put("sinkWriterThreads", 4);
+        SinkConnectorConfig sinkConnectorConfig = SinkConnectorConfig.load(config);
+        sinkConnectorConfig.validate();
+        coordinator = new SinkWriterCoordinator(sinkConnectorConfig, new TestSinkContext()) {
+            @Override
+            LakehouseWriter openWriter(String table, Schema schema) {
+                maxOpening.accumulateAndGet(opening.incrementAndGet(), Math::max);
+                try {
+                    // a table creation taking a while
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                opening.decrementAndGet();
+                return new MemoryWriter(table(table));
+            }
+        };
+        coordinator.start();
+        for (int i = 0; i < 40; i++) {
+            write("events", i, "eu");
+        }
+        coordinator.close();
+        coordinator = null;
+
+        assertEquals(maxOpening.get(), 1);
+        assertEquals(table(SinkWriter.DEFAULT_TABLE).committed(), range(0, 40));
+    }
+
+    @Test
+    public void testRetryBackoff() {
+        long min = SinkWriterCoordinator.MIN_RETRY_BACKOFF_MS;
+        assertEquals(SinkWriterCoordinator.getRetryBackoffMillis(1), min);
+        assertEquals(SinkWriterCoordinator.getRetryBackoffMillis(2), 2 * min);
+        assertEquals(SinkWriterCoordinator.getRetryBackoffMillis(3), 4 * min);
+        assertEquals(SinkWriterCoordinator.getRetryBackoffMillis(1000), SinkWriterCoordinator.MAX_RETRY_BACKOFF_MS);
+    }
+}
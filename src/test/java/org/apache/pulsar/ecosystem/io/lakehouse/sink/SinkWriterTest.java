@@ -23,7 +23,6 @@ import static org.testng.Assert.fail;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.LinkedBlockingQueue;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericDatumReader;
@@ -32,6 +31,7 @@ import org.apache.pulsar.client.api.schema.GenericObject;
 import org.apache.pulsar.common.schema.SchemaType;
 import org.apache.pulsar.ecosystem.io.lakehouse.SinkConnectorConfig;
 import org.apache.pulsar.ecosystem.io.lakehouse.common.SchemaConverter;
+import org.apache.pulsar.ecosystem.io.lakehouse.common.SpscRingBuffer;
 import org.apache.pulsar.ecosystem.io.lakehouse.sink.delta.DeltaSinkConnectorConfig;
 import org.apache.pulsar.functions.api.Record;
 import org.testng.annotations.Test;
@@ -46,7 +46,8 @@ public class SinkWriterTest {
     @Test
     public void testAvroGenericDataConverter() {
         SinkConnectorConfig sinkConnectorConfig = new DeltaSinkConnectorConfig();
-        SinkWriter sinkWriter = new SinkWriter(sinkConnectorConfig, new LinkedBlockingQueue<>());
+        SinkWriter sinkWriter = new SinkWriter(sinkConnectorConfig,
+            new SpscRingBuffer<>(16, SpscRingBuffer.WaitStrategy.BLOCKING), null);
 
         Map<String, SchemaType> schemaMap = new HashMap<>();
         schemaMap.put("name", SchemaType.STRING);
@@ -84,7 +85,8 @@ public class SinkWriterTest {
     @Test
     public void testJsonGenericDataConverter() {
         SinkConnectorConfig sinkConnectorConfig = new DeltaSinkConnectorConfig();
-        SinkWriter sinkWriter = new SinkWriter(sinkConnectorConfig, new LinkedBlockingQueue<>());
+        SinkWriter sinkWriter = new SinkWriter(sinkConnectorConfig,
+            new SpscRingBuffer<>(16, SpscRingBuffer.WaitStrategy.BLOCKING), null);
 
 
         Map<String, SchemaType> schemaMap = new HashMap<>();
@@ -0,0 +1,126 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.ecosystem.io.lakehouse.sink;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.testng.annotations.Test;
+
+public class UnifiedSchemaTest {
+    private static final Schema V1 = SchemaBuilder.record("User").fields()
+        .requiredString("name")
+        .requiredInt("age")
+        .endRecord();
+    private static final Schema V2 = SchemaBuilder.record("User").fields()
+        .requiredString("name")
+        .requiredInt("age")
+        .optionalString("email")
+        .endRecord();
+
+    @Test
+    public void testInterleavedVersionsEvolveOnce() {
+        UnifiedSchema unified = new UnifiedSchema();
+        assertTrue(unified.merge(V1));
+        assertSame(unified.getSchema(), V1);
+
+        assertTrue(unified.merge(V2));
+        Schema schema = unified.getSchema();
+        assertEquals(schema.getFields().size(), 3);
+        assertFalse(schema.getField("name").schema().isNullable());
+        assertTrue(schema.getField("email").schema().isNullable());
+
+        // switching back and forth doesn't change the schema anymore
+        for (int i = 0; i < 10; i++) {
+            assertFalse(unified.merge(V1));
+            assertFalse(unified.merge(V2));
+        }
+        assertSame(unified.getSchema(), schema);
+    }
+
+    @Test
+    public void testMissingFieldBecomesNullable() {
+        UnifiedSchema unified = new UnifiedSchema();
+        unified.merge(V2);
+        Schema withoutAge = SchemaBuilder.record("User").fields()
+            .requiredString("name")
+            .endRecord();
+        assertTrue(unified.merge(withoutAge));
+        assertTrue(unified.getSchema().getField("age").schema().isNullable());
+        assertEquals(unified.getSchema().getField("age").pos(), 1);
+        assertFalse(unified.merge(V2));
+    }
+
+    @Test
+    public void testIncompatibleVersionReplacesSchema() {
+        UnifiedSchema unified = new UnifiedSchema();
+        unified.merge(V1);
+        Schema stringAge = SchemaBuilder.record("User").fields()
+            .requiredString("name")
+            .requiredString("age")
+            .endRecord();
+        assertTrue(unified.merge(stringAge));
+        assertSame(unified.getSchema(), stringAge);
+    }
+
+    @Test
+    public void testProjectRecords() {
+        UnifiedSchema unified = new UnifiedSchema();
+        unified.merge(V1);
+        unified.merge(V2);
+
+        GenericRecord v1 = new GenericData.Record(V1);
+        v1.put("name", "alice");
+        v1.put("age", 18);
+        GenericRecord projected = unified.project(v1, null);
+        assertSame(projected.getSchema(), unified.getSchema());
+        assertEquals(projected.get("name"), "alice");
+        assertEquals(projected.get("age"), 18);
+        assertNull(projected.get("email"));
+
+        // records already in the unified layout are not copied
+        GenericRecord v2 = new GenericData.Record(V2);
+        v2.put("name", "bob");
+        v2.put("age", 20);
+        v2.put("email", "bob@example.com");
+        assertSame(unified.project(v2, projected), v2);
+
+        Schema reordered = SchemaBuilder.record("User").fields()
+            .optionalString("email")
+            .requiredInt("age")
+            .requiredString("name")
+            .endRecord();
+        unified.merge(reordered);
+        GenericRecord other = new GenericData.Record(reordered);
+        other.put("email", "carol@example.com");
+        other.put("age", 30);
+        other.put("name", "carol");
+        GenericRecord reused = unified.project(other, projected);
+        assertSame(reused, projected);
+        assertEquals(reused.get(0), "carol");
+        assertEquals(reused.get(1), 30);
+        assertEquals(reused.get(2), "carol@example.com");
+    }
+}
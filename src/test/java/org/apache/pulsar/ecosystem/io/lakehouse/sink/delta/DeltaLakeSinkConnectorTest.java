@@ -39,10 +39,12 @@ import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 import java.util.UUID;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.hadoop.conf.Configuration;
@@ -51,6 +53,7 @@ import org.apache.pulsar.client.api.schema.GenericRecord;
 import org.apache.pulsar.common.schema.SchemaType;
 import org.apache.pulsar.ecosystem.io.lakehouse.SinkConnector;
 import org.apache.pulsar.ecosystem.io.lakehouse.common.TestSinkContext;
+import org.apache.pulsar.ecosystem.io.lakehouse.common.Utils;
 import org.apache.pulsar.ecosystem.io.lakehouse.sink.SinkConnectorUtils;
 import org.apache.pulsar.functions.api.Record;
 import org.testng.annotations.Test;
@@ -107,7 +110,7 @@ public class DeltaLakeSinkConnectorTest {
             sinkConnector.write(record);
         }
 
-        while (!sinkConnector.getMessages().isEmpty()) {
+        while (!sinkConnector.getCoordinator().isQueueEmpty()) {
             Thread.sleep(1000);
         }
         sinkConnector.close();
@@ -166,6 +169,108 @@ public class DeltaLakeSinkConnectorTest {
         deletePath(tablePath);
     }
 
+    @Test
+    public void testShardedWritersIntegration() throws Exception {
+        System.setProperty("hadoop.home.dir", "/");
+        String tablePath = "/tmp/delta-test-data-" + UUID.randomUUID();
+        Map<String, Object> config = new HashMap<>();
+        config.put("tablePath", tablePath);
+        config.put("type", "delta");
+        config.put("sinkWriterThreads", 4);
+
+        SinkConnector sinkConnector = new SinkConnector();
+        sinkConnector.open(config, new TestSinkContext());
+        assertEquals(sinkConnector.getCoordinator().getWriters().size(), 4);
+
+        Map<String, SchemaType> schemaMap = new HashMap<>();
+        schemaMap.put("name", SchemaType.STRING);
+        schemaMap.put("age", SchemaType.INT32);
+
+        Map<String, Object> recordMap = new HashMap<>();
+        recordMap.put("name", "hang");
+        for (int i = 0; i < 1000; ++i) {
+            recordMap.put("age", i);
+            Record<GenericObject> record = SinkConnectorUtils.generateRecord(schemaMap, recordMap,
+                SchemaType.AVRO, "MyRecord");
+            sinkConnector.write(record);
+        }
+
+        while (!sinkConnector.getCoordinator().isQueueEmpty()) {
+            Thread.sleep(1000);
+        }
+        sinkConnector.close();
+
+        // all the writers are committed into the table with a single commit
+        DeltaLog deltaLog = DeltaLog.forTable(new Configuration(), tablePath);
+        Snapshot currentSnapshot = deltaLog.snapshot();
+        assertEquals(currentSnapshot.getVersion(), 1);
+        assertEquals(currentSnapshot.getAllFiles().size(), 4);
+
+        try (CloseableIterator<RowRecord> iter = currentSnapshot.open()) {
+            int cnt = 0;
+            while (iter.hasNext()) {
+                RowRecord row = iter.next();
+                assertEquals(row.getString("name"), "hang");
+                assertTrue(row.getInt("age") >= 0 && row.getInt("age") < 1000);
+                cnt++;
+            }
+            assertEquals(cnt, 1000);
+        }
+
+        deletePath(tablePath);
+    }
+
+    @Test
+    public void testPipelinedWritersIntegration() throws Exception {
+        System.setProperty("hadoop.home.dir", "/");
+        String tablePath = "/tmp/delta-test-data-" + UUID.randomUUID();
+        Map<String, Object> config = new HashMap<>();
+        config.put("tablePath", tablePath);
+        config.put("type", "delta");
+        config.put("sinkWriterThreads", 2);
+        config.put("sinkWriterPipelineEnabled", true);
+
+        SinkConnector sinkConnector = new SinkConnector();
+        sinkConnector.open(config, new TestSinkContext());
+        assertEquals(sinkConnector.getCoordinator().getWriters().get(0).getStages().size(), 2);
+
+        Map<String, SchemaType> schemaMap = new HashMap<>();
+        schemaMap.put("name", SchemaType.STRING);
+        schemaMap.put("age", SchemaType.INT32);
+
+        Map<String, Object> recordMap = new HashMap<>();
+        recordMap.put("name", "hang");
+        for (int i = 0; i < 5000; ++i) {
+            recordMap.put("age", i);
+            Record<GenericObject> record = SinkConnectorUtils.generateRecord(schemaMap, recordMap,
+                SchemaType.AVRO, "MyRecord");
+            sinkConnector.write(record);
+        }
+
+        while (!sinkConnector.getCoordinator().isQueueEmpty()) {
+            Thread.sleep(1000);
+        }
+        // the records still converted or written by the stages are committed on close
+        sinkConnector.close();
+
+        DeltaLog deltaLog = DeltaLog.forTable(new Configuration(), tablePath);
+        Snapshot currentSnapshot = deltaLog.snapshot();
+        assertEquals(currentSnapshot.getVersion(), 1);
+        assertEquals(currentSnapshot.getAllFiles().size(), 2);
+
+        try (CloseableIterator<RowRecord> iter = currentSnapshot.open()) {
+            Set<Integer> ages = new HashSet<>();
+            while (iter.hasNext()) {
+                RowRecord row = iter.next();
+                assertEquals(row.getString("name"), "hang");
+                ages.add(row.getInt("age"));
+            }
+            assertEquals(ages.size(), 5000);
+        }
+
+        deletePath(tablePath);
+    }
+
     @Test
     public void testPartitionedIntegration() throws Exception {
         System.setProperty("hadoop.home.dir", "/");
@@ -203,7 +308,7 @@ public class DeltaLakeSinkConnectorTest {
             sinkConnector.write(record);
         }
 
-        while (!sinkConnector.getMessages().isEmpty()) {
+        while (!sinkConnector.getCoordinator().isQueueEmpty()) {
             Thread.sleep(1000);
         }
 
@@ -265,6 +370,72 @@ public class DeltaLakeSinkConnectorTest {
         deletePath(tablePath);
     }
 
+    @Test
+    public void testManyInstancesInOneJvm() throws Exception {
+        System.setProperty("hadoop.home.dir", "/");
+        int instances = 50;
+        int recordsPerInstance = 10;
+        List<SinkConnector> sinkConnectors = new ArrayList<>(instances);
+        List<String> tablePaths = new ArrayList<>(instances);
+        try {
+            for (int i = 0; i < instances; i++) {
+                String tablePath = "/tmp/delta-test-data-" + UUID.randomUUID();
+                Map<String, Object> config = new HashMap<>();
+                config.put("tablePath", tablePath);
+                config.put("type", "delta");
+                config.put("hadoop.pulsar.test.instance", String.valueOf(i));
+                SinkConnector sinkConnector = new SinkConnector();
+                sinkConnector.open(config, new TestSinkContext());
+                sinkConnectors.add(sinkConnector);
+                tablePaths.add(tablePath);
+            }
+
+            // the settings of every instance stay its own once all the instances are loaded
+            for (int i = 0; i < instances; i++) {
+                Configuration hadoopConf = Utils.getDefaultHadoopConf(sinkConnectors.get(i).getSinkConnectorConfig());
+                assertEquals(hadoopConf.get("pulsar.test.instance"), String.valueOf(i));
+                assertEquals(sinkConnectors.get(i).getSinkConnectorConfig().getProperties().get("tablePath"),
+                    tablePaths.get(i));
+            }
+
+            Map<String, SchemaType> schemaMap = new HashMap<>();
+            schemaMap.put("name", SchemaType.STRING);
+            schemaMap.put("age", SchemaType.INT32);
+            Map<String, Object> recordMap = new HashMap<>();
+            for (int n = 0; n < recordsPerInstance; n++) {
+                for (int i = 0; i < instances; i++) {
+                    recordMap.put("name", "instance-" + i);
+                    recordMap.put("age", n);
+                    sinkConnectors.get(i).write(SinkConnectorUtils.generateRecord(schemaMap, recordMap,
+                        SchemaType.AVRO, "MyRecord"));
+                }
+            }
+            for (SinkConnector sinkConnector : sinkConnectors) {
+                while (!sinkConnector.getCoordinator().isQueueEmpty()) {
+                    Thread.sleep(100);
+                }
+            }
+        } finally {
+            for (SinkConnector sinkConnector : sinkConnectors) {
+                sinkConnector.close();
+            }
+        }
+
+        // every table has the records of its own instance only
+        for (int i = 0; i < instances; i++) {
+            Snapshot snapshot = DeltaLog.forTable(new Configuration(), tablePaths.get(i)).snapshot();
+            try (CloseableIterator<RowRecord> iter = snapshot.open()) {
+                int cnt = 0;
+                while (iter.hasNext()) {
+                    assertEquals(iter.next().getString("name"), "instance-" + i);
+                    cnt++;
+                }
+                assertEquals(cnt, recordsPerInstance);
+            }
+            deletePath(tablePaths.get(i));
+        }
+    }
+
     private Record<GenericObject> generateRecord() {
         Map<String, SchemaType> schemaMap = new HashMap<>();
         schemaMap.put("name", SchemaType.STRING);
@@ -35,6 +35,7 @@ import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -45,6 +46,7 @@ import org.apache.pulsar.client.api.schema.GenericObject;
 import org.apache.pulsar.common.schema.SchemaType;
 import org.apache.pulsar.ecosystem.io.lakehouse.common.SchemaConverter;
 import org.apache.pulsar.ecosystem.io.lakehouse.parquet.DeltaParquetWriter;
+import org.apache.pulsar.ecosystem.io.lakehouse.sink.PreparedCommit;
 import org.apache.pulsar.ecosystem.io.lakehouse.sink.PrimitiveFactory;
 import org.apache.pulsar.ecosystem.io.lakehouse.sink.PulsarObject;
 import org.apache.pulsar.ecosystem.io.lakehouse.sink.SinkConnectorUtils;
@@ -266,6 +268,47 @@ public class DeltaWriterTest {
 
     }
 
+    @Test
+    public void testPrepareSchemaUpdate() throws IOException {
+        DeltaWriter writer = new DeltaWriter(config, schema);
+        writer.writeAvroRecord(genericRecord);
+
+        // the same schema doesn't close the files
+        assertTrue(writer.prepareSchemaUpdate(schema).isEmpty());
+
+        Map<String, SchemaType> schemaMap = new HashMap<>(this.schemaMap);
+        schemaMap.put("grade", SchemaType.INT32);
+        Map<String, Object> recordMap = new HashMap<>(this.recordMap);
+        recordMap.put("grade", 1);
+        Record<GenericObject> record = SinkConnectorUtils.generateRecord(schemaMap, recordMap,
+            SchemaType.AVRO, "MyRecord");
+        Schema newSchema = new Schema.Parser().parse(record.getSchema().getSchemaInfo().getSchemaDefinition());
+
+        // the files of the old schema are handed back, and neither the files nor the schema are committed
+        PreparedCommit oldFiles = writer.prepareSchemaUpdate(newSchema);
+        assertEquals(oldFiles.getFileCount(), 1);
+        DeltaLog deltaLog = writer.getDeltaLog();
+        assertEquals(deltaLog.update().getVersion(), 0);
+
+        writer.writeAvroRecord((org.apache.avro.generic.GenericRecord) record.getValue().getNativeObject());
+        PreparedCommit newFiles = writer.prepareCommit();
+
+        // a single commit adds the files of both schemas and changes the table schema
+        assertTrue(writer.commit(Arrays.asList(oldFiles, newFiles)));
+        Snapshot snapshot = deltaLog.update();
+        assertEquals(snapshot.getVersion(), 1);
+        assertEquals(snapshot.getAllFiles().size(), 2);
+        assertEquals(snapshot.getMetadata().getSchema(), SchemaConverter.convertAvroSchemaToDeltaSchema(newSchema));
+
+        // the table schema isn't changed again by the next commits
+        writer.writeAvroRecord((org.apache.avro.generic.GenericRecord) record.getValue().getNativeObject());
+        assertTrue(writer.commit(Collections.singletonList(writer.prepareCommit())));
+        assertEquals(deltaLog.update().getVersion(), 2);
+        assertEquals(deltaLog.snapshot().getMetadata().getSchema(),
+            SchemaConverter.convertAvroSchemaToDeltaSchema(newSchema));
+        writer.close();
+    }
+
     @Test
     public void testPartitionedDeltaTable() throws IOException {
         String partitionedTablePath = "/tmp/delta-test-data-" + UUID.randomUUID();
@@ -375,4 +418,49 @@ public class DeltaWriterTest {
 
         deletePath(partitionedTablePath);
     }
+
+    @Test
+    public void testBatchWritePartitionedDeltaTable() throws IOException {
+        String partitionedTablePath = "/tmp/delta-test-data-" + UUID.randomUUID();
+        Map<String, Object> configMap = new HashMap<>();
+        configMap.put("tablePath", partitionedTablePath);
+        configMap.put("partitionColumns", Arrays.asList("name", "age"));
+        configMap.put("type", "delta");
+
+        DeltaSinkConnectorConfig partitionedConfig = DeltaSinkConnectorConfig.load(configMap);
+        partitionedConfig.validate();
+
+        DeltaWriter writer = new DeltaWriter(partitionedConfig, schema);
+        try {
+            List<org.apache.avro.generic.GenericRecord> records = new ArrayList<>();
+            for (int i = 0; i < 100; ++i) {
+                recordMap.put("age", 18 + i % 10);
+                Record<GenericObject> record = SinkConnectorUtils.generateRecord(schemaMap, recordMap,
+                    SchemaType.AVRO, "MyRecord");
+                records.add((org.apache.avro.generic.GenericRecord) record.getValue().getNativeObject());
+                if (records.size() == 30) {
+                    writer.writeAvroRecords(records);
+                    records.clear();
+                }
+            }
+            writer.writeAvroRecords(records);
+
+            List<DeltaParquetWriter.FileStat> fileStats = writer.getWriter().closeAndFlush();
+            writer.commitFiles(fileStats);
+            writer.close();
+
+            assertEquals(fileStats.size(), 10);
+            for (DeltaParquetWriter.FileStat fileStat : fileStats) {
+                assertEquals(fileStat.getPartitionValues().get("name"), "hang");
+            }
+            Snapshot snapshot = writer.getDeltaLog().snapshot();
+            assertEquals(snapshot.getVersion(), 1);
+            assertEquals(snapshot.getAllFiles().size(), 10);
+        } catch (IOException e) {
+            log.error("Failed to write records. ", e);
+            fail();
+        }
+
+        deletePath(partitionedTablePath);
+    }
 }
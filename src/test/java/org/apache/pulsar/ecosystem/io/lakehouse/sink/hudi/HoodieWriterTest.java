@@ -27,6 +27,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
@@ -54,6 +55,7 @@ import org.apache.hudi.io.storage.HoodieFileReaderFactory;
 import org.apache.pulsar.common.schema.SchemaType;
 import org.apache.pulsar.ecosystem.io.lakehouse.SinkConnectorConfig;
 import org.apache.pulsar.ecosystem.io.lakehouse.common.Utils;
+import org.apache.pulsar.ecosystem.io.lakehouse.sink.PreparedCommit;
 import org.apache.pulsar.ecosystem.io.lakehouse.sink.PrimitiveFactory;
 import org.apache.pulsar.ecosystem.io.lakehouse.sink.PulsarObject;
 import org.intellij.lang.annotations.Language;
@@ -303,6 +305,105 @@ public class HoodieWriterTest {
         hoodieWriter.close();
     }
 
+    @Test(timeOut = 10 * 60 * 1000)
+    public void testPrepareSchemaUpdate() throws Exception {
+        HoodieTestDataV1 v1Data = new HoodieTestDataV1();
+        HoodieWriter hoodieWriter = new HoodieWriter(sinkConfig, v1Data.getSchema());
+        Configuration hadoopConf = hoodieWriter.writer.getContext().getHadoopConf().get();
+        Optional<FileSystem> hdfs = Optional.empty();
+
+        List<HoodieTestDataV1> writeSetV1 = new LinkedList<>();
+        for (int i = 0; i < 3; i++) {
+            HoodieTestDataV1 data = new HoodieTestDataV1(i, i + "-" + TestUtils.randomString(4));
+            hoodieWriter.writeAvroRecord(data.genericRecord());
+            writeSetV1.add(data);
+        }
+
+        // the v1 records are handed back with their schema, and nothing is committed yet
+        HoodieTestDataV2 v2Data = new HoodieTestDataV2();
+        PreparedCommit preparedV1 = hoodieWriter.prepareSchemaUpdate(v2Data.getSchema());
+        Assert.assertEquals(((HoodieWriter.PreparedRecords) preparedV1).getRecords().size(), 3);
+        Assert.assertEquals(getCommittedFiles(testPath, STORAGE_LOCAL, hdfs).count(), 0);
+
+        Random random = new SecureRandom();
+        List<HoodieTestDataV2> writeSetV2 = new LinkedList<>();
+        for (int i = 3; i < 6; i++) {
+            HoodieTestDataV2 data = new HoodieTestDataV2(i, i + "-" + TestUtils.randomString(4), random.nextDouble());
+            hoodieWriter.writeAvroRecord(data.genericRecord());
+            writeSetV2.add(data);
+        }
+        PreparedCommit preparedV2 = hoodieWriter.prepareCommit();
+
+        // both versions are committed together, each with a write client of its own schema
+        Assert.assertTrue(hoodieWriter.commit(Arrays.asList(preparedV1, preparedV2)));
+        List<GenericRecord> readSet = getCommittedFiles(testPath, STORAGE_LOCAL, hdfs)
+            .map(p -> {
+                try {
+                    return readRecordsFromFile(p, hadoopConf);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            })
+            .flatMap(Collection::stream)
+            .collect(Collectors.toList());
+        Assert.assertEquals(readSet.size(), writeSetV1.size() + writeSetV2.size());
+
+        List<HoodieTestDataV1> v1 = readSet.stream()
+            .filter(r -> !r.hasField("aDouble"))
+            .map(HoodieTestDataV1::fromGenericRecord)
+            .collect(Collectors.toList());
+        Assert.assertTrue(writeSetV1.removeAll(v1));
+        Assert.assertEquals(writeSetV1.size(), 0);
+
+        List<HoodieTestDataV2> v2 = readSet.stream()
+            .filter(r -> r.hasField("aDouble"))
+            .map(HoodieTestDataV2::fromGenericRecord)
+            .collect(Collectors.toList());
+        Assert.assertTrue(writeSetV2.removeAll(v2));
+        Assert.assertEquals(writeSetV2.size(), 0);
+
+        // the committed records aren't committed again by a retry
+        Assert.assertTrue(preparedV1.isEmpty());
+        Assert.assertTrue(preparedV2.isEmpty());
+        hoodieWriter.close();
+    }
+
+    @Test(timeOut = 10 * 60 * 1000)
+    public void testCommitCombinesKeys() throws Exception {
+        HoodieTestDataV1 v1Data = new HoodieTestDataV1();
+        // two writers of the same table, as with several sink writer threads
+        HoodieWriter first = new HoodieWriter(sinkConfig, v1Data.getSchema());
+        HoodieWriter second = new HoodieWriter(sinkConfig, v1Data.getSchema());
+        Configuration hadoopConf = first.writer.getContext().getHadoopConf().get();
+        Optional<FileSystem> hdfs = Optional.empty();
+
+        first.writeAvroRecord(new HoodieTestDataV1(0, "first-0").genericRecord());
+        first.writeAvroRecord(new HoodieTestDataV1(1, "first-1").genericRecord());
+        PreparedCommit retained = first.prepareCommit();
+        second.writeAvroRecord(new HoodieTestDataV1(1, "second-1").genericRecord());
+        second.writeAvroRecord(new HoodieTestDataV1(2, "second-2").genericRecord());
+        PreparedCommit prepared = second.prepareCommit();
+
+        // the key prepared twice is committed once, with the record prepared last
+        Assert.assertTrue(first.commit(Arrays.asList(retained, prepared)));
+        List<HoodieTestDataV1> readSet = getCommittedFiles(testPath, STORAGE_LOCAL, hdfs)
+            .map(p -> {
+                try {
+                    return readRecordsFromFile(p, hadoopConf);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            })
+            .flatMap(Collection::stream)
+            .map(HoodieTestDataV1::fromGenericRecord)
+            .collect(Collectors.toList());
+        Assert.assertEquals(readSet.size(), 3);
+        Assert.assertTrue(readSet.containsAll(Arrays.asList(new HoodieTestDataV1(0, "first-0"),
+            new HoodieTestDataV1(1, "second-1"), new HoodieTestDataV1(2, "second-2"))));
+        first.close();
+        second.close();
+    }
+
     @Test(dataProvider = "storage", timeOut = 10 * 60 * 1000)
     public void testConcurrentWrite(String storage) throws Exception {
         setCloudProperties(storage);
@@ -39,6 +39,7 @@ import java.util.TreeMap;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.avro.SchemaBuilder;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.iceberg.CatalogProperties;
 import org.apache.iceberg.DataFile;
@@ -54,6 +55,7 @@ import org.apache.iceberg.types.Types;
 import org.apache.pulsar.client.api.schema.GenericObject;
 import org.apache.pulsar.common.schema.SchemaType;
 import org.apache.pulsar.ecosystem.io.lakehouse.SinkConnector;
+import org.apache.pulsar.ecosystem.io.lakehouse.SinkConnectorConfig;
 import org.apache.pulsar.ecosystem.io.lakehouse.common.TestSinkContext;
 import org.apache.pulsar.ecosystem.io.lakehouse.sink.SinkConnectorUtils;
 import org.apache.pulsar.functions.api.Record;
@@ -118,7 +120,7 @@ public class IcebergSinkConnectorTest {
         }
 
 
-        Awaitility.waitAtMost(120, TimeUnit.SECONDS).until(() -> sinkConnector.getMessages().isEmpty());
+        Awaitility.waitAtMost(120, TimeUnit.SECONDS).until(() -> sinkConnector.getCoordinator().isQueueEmpty());
         sinkConnector.close();
 
         // read message from iceberg table using java api to check the data correctness.
@@ -220,7 +222,7 @@ public class IcebergSinkConnectorTest {
             sinkConnector.write(record);
         }
 
-        Awaitility.await().until(() -> sinkConnector.getMessages().isEmpty());
+        Awaitility.await().until(() -> sinkConnector.getCoordinator().isQueueEmpty());
         sinkConnector.close();
 
         // read message from iceberg table uisng java api to check the data correctness.
@@ -303,6 +305,47 @@ public class IcebergSinkConnectorTest {
         deletePath(tablePath);
     }
 
+    @Test
+    public void testWritersOnlyAddColumns() throws Exception {
+        System.setProperty("hadoop.home.dir", "/");
+        String tablePath = "/tmp/iceberg-test-data-" + UUID.randomUUID();
+        Map<String, Object> config = new HashMap<>();
+        config.put("tableNamespace", "test-ns");
+        config.put("tableName", "test-tb_v1");
+        config.put("catalogName", "test-pulsar-catalog");
+        Map<String, String> catalogProp = new HashMap<>();
+        catalogProp.put(CatalogProperties.WAREHOUSE_LOCATION, tablePath);
+        config.put("catalogProperties", catalogProp);
+        config.put("type", "iceberg");
+        IcebergSinkConnectorConfig sinkConnectorConfig = (IcebergSinkConnectorConfig) SinkConnectorConfig.load(config);
+        sinkConnectorConfig.validate();
+
+        org.apache.avro.Schema base = SchemaBuilder.record("MyRecord").fields()
+            .requiredInt("id").optionalString("name").endRecord();
+        // two writers of the table, each merging the schemas of its own records
+        IcebergWriter first = new IcebergWriter(sinkConnectorConfig, base);
+        IcebergWriter second = new IcebergWriter(sinkConnectorConfig, base);
+        second.prepareSchemaUpdate(SchemaBuilder.record("MyRecord").fields()
+            .requiredInt("id").optionalString("name").optionalInt("c").endRecord());
+        // the first writer never saw c, the column written by the second one is kept
+        first.prepareSchemaUpdate(SchemaBuilder.record("MyRecord").fields()
+            .requiredInt("id").optionalString("name").optionalInt("d").endRecord());
+        first.close();
+        second.close();
+
+        CatalogLoader hadoopCatalogLoader = CatalogLoader.hadoop(sinkConnectorConfig.getCatalogName(),
+            new Configuration(), sinkConnectorConfig.catalogProperties);
+        TableIdentifier identifier =
+            TableIdentifier.of(sinkConnectorConfig.tableNamespace, sinkConnectorConfig.getTableName());
+        TableLoader tableLoader = TableLoader.fromCatalog(hadoopCatalogLoader, identifier);
+        Set<String> columns = new HashSet<>();
+        tableLoader.loadTable().schema().columns().forEach(field -> columns.add(field.name()));
+        assertEquals(columns, new HashSet<>(Arrays.asList("id", "name", "c", "d")));
+        tableLoader.close();
+
+        deletePath(tablePath);
+    }
+
     private void deletePath(String path) {
         try {
             Path dir = Paths.get(path);
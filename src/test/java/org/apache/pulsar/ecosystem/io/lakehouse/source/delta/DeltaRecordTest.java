@@ -153,16 +153,16 @@ public class DeltaRecordTest {
 
             int cnt = 0;
             String topic = "lakehouse_test_v1";
-            DeltaReader.setTopicPartitionNum(10);
+            DeltaSourceState state = new DeltaSourceState(10);
             GenericSchema<GenericRecord> pulsarSchema = DeltaRecord.convertToPulsarSchema(deltaSchema);
             AtomicInteger processingException = new AtomicInteger(0);
             while (!queue.isEmpty() && cnt < 10) {
                 rowRecordData = queue.get(cnt);
                 DeltaRecord deltaRecord = new DeltaRecord(rowRecordData, topic,
-                    deltaSchema, null, processingException);
-                assertEquals(deltaSchema, DeltaRecord.getDeltaSchema());
+                    deltaSchema, null, processingException, state);
+                assertEquals(deltaSchema, state.getDeltaSchema());
                 assertEquals(pulsarSchema.getSchemaInfo().getSchemaDefinition(),
-                    DeltaRecord.getPulsarSchema().getSchemaInfo().getSchemaDefinition());
+                    state.getPulsarSchema().getSchemaInfo().getSchemaDefinition());
                 assertEquals(topic, deltaRecord.getTopic());
 
                 // validate record
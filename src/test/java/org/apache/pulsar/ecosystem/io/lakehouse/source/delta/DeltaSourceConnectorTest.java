@@ -407,7 +407,7 @@ public class DeltaSourceConnectorTest {
             sinkConnector.write(record);
         }
 
-        while (!sinkConnector.getMessages().isEmpty()) {
+        while (!sinkConnector.getCoordinator().isQueueEmpty()) {
             Thread.sleep(1000);
         }
         sinkConnector.close();